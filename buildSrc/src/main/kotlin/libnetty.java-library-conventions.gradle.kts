@@ -32,6 +32,8 @@ dependencies {
         // mockito
         testImplementation("org.mockito:mockito-core:3.12.4")
         testImplementation("org.mockito:mockito-inline:3.12.4")
+        // compile-testing
+        testImplementation("com.google.testing.compile:compile-testing:0.19")
 	}
     // log4j2
     implementation(platform("org.apache.logging.log4j:log4j-bom:2.14.1"))
@@ -13,6 +13,7 @@ dependencies {
         api(project(":libnetty-http"))
         api(project(":libnetty-http-client"))
         api(project(":libnetty-http-server"))
+        api(project(":libnetty-http-server-processor"))
         api(project(":libnetty-resp"))
         api(project(":libnetty-resp3"))
         api(project(":libnetty-transport"))
@@ -7,6 +7,7 @@ dependencies {
 
     compileOnly("org.projectlombok:lombok")
     annotationProcessor("org.projectlombok:lombok")
+    annotationProcessor(project(":libnetty-http-server-processor"))
     implementation("org.slf4j:slf4j-api")
     implementation("org.apache.logging.log4j:log4j-slf4j-impl")
     implementation(project(":libnetty-fastcgi"))
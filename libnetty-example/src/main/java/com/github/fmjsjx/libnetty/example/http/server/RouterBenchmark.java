@@ -0,0 +1,224 @@
+package com.github.fmjsjx.libnetty.example.http.server;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResponder;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+import com.github.fmjsjx.libnetty.http.server.HttpServiceInvoker;
+import com.github.fmjsjx.libnetty.http.server.PathVariables;
+import com.github.fmjsjx.libnetty.http.server.component.HttpServerComponent;
+import com.github.fmjsjx.libnetty.http.server.middleware.MiddlewareChain;
+import com.github.fmjsjx.libnetty.http.server.middleware.PathMatcher;
+import com.github.fmjsjx.libnetty.http.server.middleware.Router;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compares the dispatch cost of the linear regular expression scan (the
+ * routing algorithm before 2.3) and the compiled route table of
+ * {@link Router}, across 10, 100 and 1000 routes.
+ */
+@Slf4j
+public class RouterBenchmark {
+
+    private static final CompletionStage<HttpResult> RESULT = CompletableFuture.completedFuture(null);
+    private static final HttpServiceInvoker SERVICE = ctx -> RESULT;
+    private static final MiddlewareChain NOT_FOUND = ctx -> RESULT;
+
+    private static final int WARMUP_ITERATIONS = 1_000_000;
+    private static final int MEASURE_ITERATIONS = 2_000_000;
+
+    public static void main(String[] args) {
+        for (int routes : new int[] { 10, 100, 1000 }) {
+            String[] patterns = patterns(routes);
+            String[] paths = paths(routes, 1024);
+            PathMatcher[] matchers = Stream.of(patterns).map(PathMatcher::fromPattern).toArray(PathMatcher[]::new);
+            Router router = new Router();
+            for (String pattern : patterns) {
+                router.get(pattern, SERVICE);
+            }
+            router.init();
+            BenchmarkContext[] contexts = Stream.of(paths).map(BenchmarkContext::new)
+                    .toArray(BenchmarkContext[]::new);
+
+            run(contexts, ctx -> linear(matchers, ctx), WARMUP_ITERATIONS);
+            long linearNanos = run(contexts, ctx -> linear(matchers, ctx), MEASURE_ITERATIONS);
+            run(contexts, ctx -> router.apply(ctx, NOT_FOUND), WARMUP_ITERATIONS);
+            long tableNanos = run(contexts, ctx -> router.apply(ctx, NOT_FOUND), MEASURE_ITERATIONS);
+
+            log.info("routes={}: linear scan {} ns/op, route table {} ns/op", routes,
+                    String.format("%.1f", linearNanos / (double) MEASURE_ITERATIONS),
+                    String.format("%.1f", tableNanos / (double) MEASURE_ITERATIONS));
+        }
+    }
+
+    private static String[] patterns(int routes) {
+        String[] patterns = new String[routes];
+        for (int i = 0; i < routes; i++) {
+            switch (i % 3) {
+            case 0:
+                patterns[i] = "/api/v1/resource" + i + "/list";
+                break;
+            case 1:
+                patterns[i] = "/api/v1/resource" + i + "/{id}";
+                break;
+            default:
+                patterns[i] = "/api/v1/resource" + i + "/{id}/items/{itemId}";
+                break;
+            }
+        }
+        return patterns;
+    }
+
+    private static String[] paths(int routes, int count) {
+        String[] paths = new String[count];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < count; i++) {
+            int route = random.nextInt(routes);
+            switch (route % 3) {
+            case 0:
+                paths[i] = "/api/v1/resource" + route + "/list";
+                break;
+            case 1:
+                paths[i] = "/api/v1/resource" + route + "/" + random.nextInt(100000);
+                break;
+            default:
+                paths[i] = "/api/v1/resource" + route + "/" + random.nextInt(100000) + "/items/"
+                        + random.nextInt(100);
+                break;
+            }
+        }
+        return paths;
+    }
+
+    private static CompletionStage<HttpResult> linear(PathMatcher[] matchers, HttpRequestContext ctx) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(ctx)) {
+                return SERVICE.invoke(ctx);
+            }
+        }
+        return NOT_FOUND.doNext(ctx);
+    }
+
+    private static long run(BenchmarkContext[] contexts, HttpServiceInvoker dispatcher, int iterations) {
+        int mask = contexts.length - 1;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            dispatcher.invoke(contexts[i & mask]);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static final class BenchmarkContext implements HttpRequestContext {
+
+        private final String path;
+        private PathVariables pathVariables;
+
+        private BenchmarkContext(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public HttpMethod method() {
+            return HttpMethod.GET;
+        }
+
+        @Override
+        public String path() {
+            return path;
+        }
+
+        @Override
+        public long receivedNanoTime() {
+            return 0;
+        }
+
+        @Override
+        public ZonedDateTime receivedTime() {
+            return null;
+        }
+
+        @Override
+        public Channel channel() {
+            return null;
+        }
+
+        @Override
+        public String remoteAddress() {
+            return null;
+        }
+
+        @Override
+        public FullHttpRequest request() {
+            return null;
+        }
+
+        @Override
+        public int contentLength() {
+            return 0;
+        }
+
+        @Override
+        public Optional<CharSequence> contentType() {
+            return Optional.empty();
+        }
+
+        @Override
+        public QueryStringDecoder queryStringDecoder() {
+            return null;
+        }
+
+        @Override
+        public PathVariables pathVariables() {
+            return pathVariables;
+        }
+
+        @Override
+        public HttpResponder pathVariables(PathVariables pathVariables) {
+            this.pathVariables = pathVariables;
+            return this;
+        }
+
+        @Override
+        public <C extends HttpServerComponent> Optional<C> component(Class<? extends C> componentType) {
+            return Optional.empty();
+        }
+
+        @Override
+        public <T> Optional<T> property(Object key) {
+            return Optional.empty();
+        }
+
+        @Override
+        public <T> Optional<T> property(Object key, Class<T> type) {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpResponder property(Object key, Object value) {
+            return this;
+        }
+
+        @Override
+        public Stream<String> propertyKeyNames() {
+            return Stream.empty();
+        }
+
+        @Override
+        public HttpResponseFactory responseFactory() {
+            return null;
+        }
+
+    }
+
+}
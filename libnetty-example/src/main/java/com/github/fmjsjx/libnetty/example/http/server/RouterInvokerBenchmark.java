@@ -0,0 +1,247 @@
+package com.github.fmjsjx.libnetty.example.http.server;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.NO_CONTENT;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResponder;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+import com.github.fmjsjx.libnetty.http.server.HttpServiceInvoker;
+import com.github.fmjsjx.libnetty.http.server.PathVariables;
+import com.github.fmjsjx.libnetty.http.server.annotation.HttpGet;
+import com.github.fmjsjx.libnetty.http.server.annotation.RemoteAddr;
+import com.github.fmjsjx.libnetty.http.server.component.HttpServerComponent;
+import com.github.fmjsjx.libnetty.http.server.middleware.MiddlewareChain;
+import com.github.fmjsjx.libnetty.http.server.middleware.Router;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compares the invocation cost of the routing methods between the reflective
+ * invokers (the invocation before 2.3) and the invokers generated by
+ * {@code RouterUtil} through {@code LambdaMetafactory}, for 0, 1 and 4
+ * arguments.
+ * <p>
+ * The {@link BenchmarkController} is not annotated with {@code @HttpPath}, so
+ * the annotation processor does not generate a route registrar for it and
+ * {@code RouterUtil} always registers it by reflection.
+ */
+@Slf4j
+public class RouterInvokerBenchmark {
+
+    private static final CompletableFuture<HttpResult> RESULT = CompletableFuture.completedFuture(null);
+    private static final CompletionStage<Void> DONE = CompletableFuture.completedFuture(null);
+    private static final MiddlewareChain NOT_FOUND = ctx -> RESULT;
+
+    private static final int WARMUP_ITERATIONS = 2_000_000;
+    private static final int MEASURE_ITERATIONS = 5_000_000;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkController controller = new BenchmarkController();
+        Router invokers = new Router().register(controller);
+        invokers.init();
+        Router reflective = new Router();
+        for (String name : new String[] { "zero", "one", "four" }) {
+            reflective.get("/bench/" + name, reflectiveInvoker(controller, name));
+        }
+        reflective.init();
+
+        for (String name : new String[] { "zero", "one", "four" }) {
+            BenchmarkContext ctx = new BenchmarkContext("/bench/" + name);
+            run(ctx, reflective, WARMUP_ITERATIONS);
+            long reflectiveNanos = run(ctx, reflective, MEASURE_ITERATIONS);
+            run(ctx, invokers, WARMUP_ITERATIONS);
+            long invokerNanos = run(ctx, invokers, MEASURE_ITERATIONS);
+
+            log.info("{}: reflection {} ns/op, lambda invoker {} ns/op", name,
+                    String.format("%.1f", reflectiveNanos / (double) MEASURE_ITERATIONS),
+                    String.format("%.1f", invokerNanos / (double) MEASURE_ITERATIONS));
+        }
+    }
+
+    private static long run(BenchmarkContext ctx, Router router, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            router.apply(ctx, NOT_FOUND);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Returns an invoker works the same as {@code RouterUtil} did before 2.3.
+     */
+    @SuppressWarnings("unchecked")
+    private static HttpServiceInvoker reflectiveInvoker(Object controller, String name) {
+        Method method = Arrays.stream(controller.getClass().getDeclaredMethods())
+                .filter(m -> m.getName().equals(name)).findFirst().orElseThrow();
+        method.setAccessible(true);
+        Function<HttpRequestContext, Object>[] mappers = Arrays.stream(method.getParameters())
+                .map(RouterInvokerBenchmark::toParameterMapper).toArray(Function[]::new);
+        return ctx -> {
+            try {
+                Object[] args = new Object[mappers.length];
+                for (int i = 0; i < mappers.length; i++) {
+                    args[i] = mappers[i].apply(ctx);
+                }
+                return ((CompletionStage<Void>) method.invoke(controller, args))
+                        .handle((nil, cause) -> ctx.simpleRespond(NO_CONTENT)).thenCompose(Function.identity());
+            } catch (InvocationTargetException e) {
+                return ctx.respondError(e.getTargetException());
+            } catch (Exception e) {
+                return ctx.respondError(e);
+            }
+        };
+    }
+
+    private static Function<HttpRequestContext, Object> toParameterMapper(Parameter param) {
+        if (param.getType() == String.class) {
+            return HttpRequestContext::remoteAddress;
+        } else if (param.getType() == HttpRequestContext.HttpResponseFactory.class) {
+            return HttpRequestContext::responseFactory;
+        }
+        return ctx -> ctx;
+    }
+
+    public static class BenchmarkController {
+
+        @HttpGet("/bench/zero")
+        public CompletionStage<Void> zero() {
+            return DONE;
+        }
+
+        @HttpGet("/bench/one")
+        public CompletionStage<Void> one(HttpRequestContext ctx) {
+            return DONE;
+        }
+
+        @HttpGet("/bench/four")
+        public CompletionStage<Void> four(HttpRequestContext ctx, HttpResponder responder,
+                HttpRequestContext.HttpResponseFactory responseFactory, @RemoteAddr String remoteAddress) {
+            return DONE;
+        }
+
+    }
+
+    private static final class BenchmarkContext implements HttpRequestContext {
+
+        private final String path;
+        private PathVariables pathVariables;
+
+        private BenchmarkContext(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public HttpMethod method() {
+            return HttpMethod.GET;
+        }
+
+        @Override
+        public String path() {
+            return path;
+        }
+
+        @Override
+        public long receivedNanoTime() {
+            return 0;
+        }
+
+        @Override
+        public ZonedDateTime receivedTime() {
+            return null;
+        }
+
+        @Override
+        public Channel channel() {
+            return null;
+        }
+
+        @Override
+        public String remoteAddress() {
+            return null;
+        }
+
+        @Override
+        public FullHttpRequest request() {
+            return null;
+        }
+
+        @Override
+        public int contentLength() {
+            return 0;
+        }
+
+        @Override
+        public Optional<CharSequence> contentType() {
+            return Optional.empty();
+        }
+
+        @Override
+        public QueryStringDecoder queryStringDecoder() {
+            return null;
+        }
+
+        @Override
+        public PathVariables pathVariables() {
+            return pathVariables;
+        }
+
+        @Override
+        public HttpResponder pathVariables(PathVariables pathVariables) {
+            this.pathVariables = pathVariables;
+            return this;
+        }
+
+        @Override
+        public <C extends HttpServerComponent> Optional<C> component(Class<? extends C> componentType) {
+            return Optional.empty();
+        }
+
+        @Override
+        public <T> Optional<T> property(Object key) {
+            return Optional.empty();
+        }
+
+        @Override
+        public <T> Optional<T> property(Object key, Class<T> type) {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpResponder property(Object key, Object value) {
+            return this;
+        }
+
+        @Override
+        public Stream<String> propertyKeyNames() {
+            return Stream.empty();
+        }
+
+        @Override
+        public HttpResponseFactory responseFactory() {
+            return null;
+        }
+
+        @Override
+        public CompletableFuture<HttpResult> simpleRespond(HttpResponseStatus status) {
+            return RESULT;
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+plugins {
+    id("libnetty.java-library-conventions")
+    id("libnetty.publish-conventions")
+}
+
+dependencies {
+
+    testImplementation(project(":libnetty-http-server"))
+    testImplementation("com.google.testing.compile:compile-testing")
+    testImplementation("org.junit.jupiter:junit-jupiter-api")
+    testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine")
+
+}
+
+description = "libnetty/HTTP-Server-Processor"
+
+tasks.test {
+    // Use junit platform for unit tests.
+    useJUnitPlatform()
+}
+
+publishing {
+    publications {
+        create<MavenPublication>("mavenJava") {
+            from(components["java"])
+            versionMapping {
+                usage("java-api") {
+                    fromResolutionOf("runtimeClasspath")
+                }
+                usage("java-runtime") {
+                    fromResolutionResult()
+                }
+            }
+            pom {
+                name.set("libnetty/HTTP-Server-Processor")
+                description.set("A set of some useful libraries based on netty4.1.x.")
+                url.set("https://github.com/fmjsjx/libnetty")
+                licenses {
+                    license {
+                        name.set("MIT License")
+                        url.set("https://opensource.org/licenses/MIT")
+                    }
+                }
+                developers {
+                    developer {
+                        id.set("fmjsjx")
+                        name.set("MJ Fang")
+                        email.set("fmjsjx@163.com")
+                        url.set("https://github.com/fmjsjx")
+                        organization.set("fmjsjx")
+                        organizationUrl.set("https://github.com/fmjsjx")
+                    }
+                }
+                scm {
+                    url.set("https://github.com/fmjsjx/libnetty")
+                    connection.set("scm:git:https://github.com/fmjsjx/libnetty.git")
+                    developerConnection.set("scm:git:https://github.com/fmjsjx/libnetty.git")
+                }
+            }
+        }
+    }
+}
+
+signing {
+    sign(publishing.publications["mavenJava"])
+}
@@ -0,0 +1,599 @@
+package com.github.fmjsjx.libnetty.http.server.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * An annotation processor generates a {@code RouteRegistrar} for each HTTP
+ * controller annotated by {@code @HttpPath}.
+ * <p>
+ * The generated registrar binds the parameters and invokes the routing methods
+ * by plain Java code, so that {@code Router.register(controller)} doesn't need
+ * any reflection at runtime. The registrar is placed in the same package with
+ * the controller, and is registered into
+ * {@code META-INF/services/com.github.fmjsjx.libnetty.http.server.middleware.RouteRegistrar}.
+ * <p>
+ * Controllers that can't be accessed from generated code (such as private
+ * classes or classes with private routing methods) are skipped with a warning,
+ * and will be registered reflectively as before.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+@SupportedAnnotationTypes(HttpRouteProcessor.HTTP_PATH)
+public class HttpRouteProcessor extends AbstractProcessor {
+
+    private static final String SERVER_PACKAGE = "com.github.fmjsjx.libnetty.http.server";
+    private static final String ANNOTATION_PACKAGE = SERVER_PACKAGE + ".annotation";
+
+    static final String HTTP_PATH = ANNOTATION_PACKAGE + ".HttpPath";
+    private static final String HTTP_ROUTE = ANNOTATION_PACKAGE + ".HttpRoute";
+    private static final String PATH_VAR = ANNOTATION_PACKAGE + ".PathVar";
+    private static final String QUERY_VAR = ANNOTATION_PACKAGE + ".QueryVar";
+    private static final String JSON_BODY = ANNOTATION_PACKAGE + ".JsonBody";
+    private static final String STRING_BODY = ANNOTATION_PACKAGE + ".StringBody";
+    private static final String HEADER_VALUE = ANNOTATION_PACKAGE + ".HeaderValue";
+    private static final String REMOTE_ADDR = ANNOTATION_PACKAGE + ".RemoteAddr";
+    private static final String COMPONENT_VALUE = ANNOTATION_PACKAGE + ".ComponentValue";
+    private static final String PROPERTY_VALUE = ANNOTATION_PACKAGE + ".PropertyValue";
+    private static final String HTTP_BULKHEAD = ANNOTATION_PACKAGE + ".HttpBulkhead";
+
+    private static final String HTTP_REQUEST_CONTEXT = SERVER_PACKAGE + ".HttpRequestContext";
+    private static final String HTTP_RESPONDER = SERVER_PACKAGE + ".HttpResponder";
+    private static final String HTTP_RESPONSE_FACTORY = HTTP_REQUEST_CONTEXT + ".HttpResponseFactory";
+    private static final String HTTP_RESULT = SERVER_PACKAGE + ".HttpResult";
+    private static final String HTTP_REQUEST = "io.netty.handler.codec.http.HttpRequest";
+    private static final String FULL_HTTP_REQUEST = "io.netty.handler.codec.http.FullHttpRequest";
+    private static final String HTTP_HEADERS = "io.netty.handler.codec.http.HttpHeaders";
+    private static final String QUERY_STRING_DECODER = "io.netty.handler.codec.http.QueryStringDecoder";
+    private static final String EVENT_LOOP = "io.netty.channel.EventLoop";
+    private static final String COMPLETION_STAGE = "java.util.concurrent.CompletionStage";
+
+    private static final String REGISTRAR_SUFFIX = "_RouteRegistrar";
+    private static final String SERVICE_FILE = "META-INF/services/" + SERVER_PACKAGE
+            + ".middleware.RouteRegistrar";
+
+    private final Set<String> registrars = new TreeSet<>();
+
+    private Elements elements;
+    private Types types;
+    private Filer filer;
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        filer = processingEnv.getFiler();
+        messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement httpPath = elements.getTypeElement(HTTP_PATH);
+        if (httpPath != null) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(httpPath)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    processController((TypeElement) element);
+                }
+            }
+        }
+        if (roundEnv.processingOver()) {
+            writeServiceFile();
+        }
+        return false;
+    }
+
+    private void processController(TypeElement controller) {
+        if (!isAccessible(controller)) {
+            messager.printMessage(Kind.WARNING,
+                    "Skip generating route registrar for inaccessible controller, reflection will be used", controller);
+            return;
+        }
+        if (!controller.getTypeParameters().isEmpty()) {
+            messager.printMessage(Kind.WARNING,
+                    "Skip generating route registrar for generic controller, reflection will be used", controller);
+            return;
+        }
+        String pathPrefix = getPathPrefix(controller);
+        List<Route> routes = new ArrayList<>();
+        for (Element member : controller.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            ExecutableElement method = (ExecutableElement) member;
+            Route route = toRoute(pathPrefix, method);
+            if (route == null) {
+                continue;
+            }
+            if (method.getModifiers().contains(Modifier.PRIVATE)) {
+                messager.printMessage(Kind.WARNING,
+                        "Skip generating route registrar for controller with private routing method, reflection will be used",
+                        method);
+                return;
+            }
+            routes.add(route);
+        }
+        String packageName = elements.getPackageOf(controller).getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(controller).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + REGISTRAR_SUFFIX;
+        StringBuilder code = new StringBuilder();
+        if (!generate(code, controller, packageName, simpleName, routes)) {
+            return;
+        }
+        String registrarName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = filer.createSourceFile(registrarName, controller).openWriter()) {
+            writer.write(code.toString());
+        } catch (IOException e) {
+            messager.printMessage(Kind.ERROR, "Generate route registrar " + registrarName + " failed: " + e,
+                    controller);
+            return;
+        }
+        registrars.add(registrarName);
+    }
+
+    private static final boolean isAccessible(TypeElement type) {
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getPathPrefix(TypeElement controller) {
+        AnnotationMirror path = findAnnotation(controller, HTTP_PATH);
+        return "/" + String.join("/", stringValues(path, "value"));
+    }
+
+    private Route toRoute(String pathPrefix, ExecutableElement method) {
+        AnnotationMirror route = findAnnotation(method, HTTP_ROUTE);
+        if (route != null) {
+            return new Route(method, httpPathJoin(pathPrefix, stringValues(route, "value")), httpMethods(route));
+        }
+        for (AnnotationMirror ma : method.getAnnotationMirrors()) {
+            AnnotationMirror methodRoute = findAnnotation(ma.getAnnotationType().asElement(), HTTP_ROUTE);
+            if (methodRoute != null) {
+                return new Route(method, httpPathJoin(pathPrefix, stringValues(ma, "value")),
+                        httpMethods(methodRoute));
+            }
+        }
+        return null;
+    }
+
+    private static final String httpPathJoin(String pathPrefix, List<String> value) {
+        return (pathPrefix + "/" + String.join("/", value)).replaceAll("//+", "/");
+    }
+
+    private List<String> httpMethods(AnnotationMirror route) {
+        return listValue(route, "method").stream().map(v -> ((VariableElement) v.getValue()).getSimpleName())
+                .map(Object::toString).collect(Collectors.toList());
+    }
+
+    private boolean generate(StringBuilder code, TypeElement controller, String packageName, String simpleName,
+            List<Route> routes) {
+        String controllerType = controller.getQualifiedName().toString();
+        if (!packageName.isEmpty()) {
+            code.append("package ").append(packageName).append(";\n\n");
+        }
+        code.append("import java.util.function.Function;\n\n");
+        code.append("import javax.annotation.processing.Generated;\n\n");
+        code.append("import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;\n");
+        code.append("import com.github.fmjsjx.libnetty.http.server.middleware.Bulkhead;\n");
+        code.append("import com.github.fmjsjx.libnetty.http.server.middleware.RouteRegistrar;\n");
+        code.append("import com.github.fmjsjx.libnetty.http.server.middleware.RouteSupport;\n");
+        code.append("import com.github.fmjsjx.libnetty.http.server.middleware.Router;\n\n");
+        code.append("import io.netty.handler.codec.http.HttpMethod;\n\n");
+        code.append("/**\n * Generated {@link RouteRegistrar} for {@link ").append(controllerType).append("}.\n */\n");
+        code.append("@Generated(\"").append(HttpRouteProcessor.class.getName()).append("\")\n");
+        code.append("public final class ").append(simpleName).append(" implements RouteRegistrar<")
+                .append(controllerType).append("> {\n\n");
+        code.append("    @Override\n");
+        code.append("    public Class<").append(controllerType).append("> controllerType() {\n");
+        code.append("        return ").append(controllerType).append(".class;\n");
+        code.append("    }\n\n");
+        code.append("    @Override\n");
+        code.append("    public int register(Router router, ").append(controllerType).append(" controller) {\n");
+        String controllerBulkhead = null;
+        AnnotationMirror bulkhead = findAnnotation(controller, HTTP_BULKHEAD);
+        if (bulkhead != null) {
+            controllerBulkhead = "controllerBulkhead";
+            code.append("        Bulkhead controllerBulkhead = ").append(newBulkhead(bulkhead)).append(";\n");
+        }
+        boolean success = true;
+        for (int i = 0; i < routes.size(); i++) {
+            success &= generateRoute(code, controllerType, i, routes.get(i), controllerBulkhead);
+        }
+        code.append("        return ").append(routes.size()).append(";\n");
+        code.append("    }\n\n");
+        code.append("}\n");
+        return success;
+    }
+
+    private String newBulkhead(AnnotationMirror bulkhead) {
+        return "new Bulkhead(" + value(bulkhead, "maxConcurrency") + ", " + value(bulkhead, "maxQueueSize") + ", "
+                + value(bulkhead, "retryAfter") + ")";
+    }
+
+    private boolean generateRoute(StringBuilder code, String controllerType, int index, Route route,
+            String controllerBulkhead) {
+        ExecutableElement method = route.method;
+        boolean isStatic = method.getModifiers().contains(Modifier.STATIC);
+        if (isStatic) {
+            messager.printMessage(Kind.WARNING, "It is not recommended to declare a routing method as a static method!",
+                    method);
+        }
+        TypeMirror returnType = method.getReturnType();
+        boolean blocking = !types.isAssignable(types.erasure(returnType), erasure(COMPLETION_STAGE));
+        TypeMirror resultType;
+        if (blocking) {
+            resultType = returnType;
+        } else {
+            List<? extends TypeMirror> typeArguments = ((DeclaredType) returnType).getTypeArguments();
+            if (typeArguments.isEmpty()) {
+                messager.printMessage(Kind.ERROR, "The return type must be a parameterized CompletionStage", method);
+                return false;
+            }
+            resultType = typeArguments.get(0);
+        }
+        code.append("        // ").append(String.join(", ", route.httpMethods)).append(" ").append(route.path)
+                .append(" -> ").append(method.getSimpleName()).append("\n");
+        List<String> args = new ArrayList<>();
+        List<? extends VariableElement> params = method.getParameters();
+        boolean success = true;
+        for (int i = 0; i < params.size(); i++) {
+            String arg = toArgument(code, "binder" + index + "_" + i, params.get(i));
+            if (arg == null) {
+                success = false;
+            }
+            args.add(arg);
+        }
+        if (!success) {
+            return false;
+        }
+        String call = (isStatic ? controllerType : "controller") + "." + method.getSimpleName() + "("
+                + String.join(", ", args) + ")";
+        String invoker = returnType.getKind() == TypeKind.VOID ? "ctx -> {\n            " + call
+                + ";\n            return null;\n        }" : "ctx -> " + call;
+        String service;
+        if (isVoidType(resultType)) {
+            service = "RouteSupport.voidResponse(" + invoker + ", " + blocking + ")";
+        } else if (findAnnotation(method, JSON_BODY) != null) {
+            service = "RouteSupport.jsonResponse(" + invoker + ", " + blocking + ")";
+        } else if (findAnnotation(method, STRING_BODY) != null) {
+            if (resultType.getKind() != TypeKind.DECLARED
+                    || !types.isAssignable(resultType, erasure(CharSequence.class.getName()))) {
+                messager.printMessage(Kind.ERROR,
+                        "The return type must be or extend CharSequence when @StringBody is present!", method);
+                return false;
+            }
+            service = "RouteSupport.stringResponse(" + invoker + ", " + blocking + ")";
+        } else {
+            if (blocking || !types.isAssignable(types.erasure(resultType), erasure(HTTP_RESULT))) {
+                messager.printMessage(Kind.ERROR, "the return type must be a CompletionStage<HttpResult>", method);
+                return false;
+            }
+            if (params.stream().noneMatch(p -> isType(p.asType(), HTTP_REQUEST_CONTEXT))) {
+                messager.printMessage(Kind.ERROR, "missing parameter as type HttpRequestContext", method);
+                return false;
+            }
+            service = "RouteSupport.resultResponse(" + invoker + ")";
+        }
+        String bulkhead = controllerBulkhead;
+        AnnotationMirror methodBulkhead = findAnnotation(method, HTTP_BULKHEAD);
+        if (methodBulkhead != null) {
+            bulkhead = "bulkhead" + index;
+            code.append("        Bulkhead ").append(bulkhead).append(" = ").append(newBulkhead(methodBulkhead))
+                    .append(";\n");
+        }
+        code.append("        router.add(").append(service);
+        if (bulkhead != null) {
+            code.append(", ").append(bulkhead);
+        }
+        code.append(", \"").append(escape(route.path)).append("\"");
+        for (String httpMethod : route.httpMethods) {
+            code.append(", HttpMethod.").append(httpMethod);
+        }
+        code.append(");\n");
+        return true;
+    }
+
+    private String toArgument(StringBuilder code, String binderName, VariableElement param) {
+        TypeMirror type = param.asType();
+        if (isType(type, HTTP_REQUEST_CONTEXT) || isType(type, HTTP_RESPONDER)) {
+            return "ctx";
+        } else if (isType(type, HTTP_RESPONSE_FACTORY)) {
+            return "ctx.responseFactory()";
+        } else if (isType(type, HTTP_REQUEST) || isType(type, FULL_HTTP_REQUEST)) {
+            return "ctx.request()";
+        } else if (isType(type, HTTP_HEADERS)) {
+            return "ctx.headers()";
+        } else if (isType(type, QUERY_STRING_DECODER)) {
+            return "ctx.queryStringDecoder()";
+        } else if (type.getKind() == TypeKind.DECLARED && types.isAssignable(erasure(EVENT_LOOP), type)) {
+            return "ctx.eventLoop()";
+        }
+        String binder = null;
+        AnnotationMirror annotation;
+        if ((annotation = findAnnotation(param, PATH_VAR)) != null) {
+            String name = stringValue(annotation, "value");
+            if (name.isEmpty()) {
+                name = param.getSimpleName().toString();
+            }
+            binder = "RouteSupport.pathVar(\"" + escape(name) + "\", " + classLiteral(type) + ")";
+        } else if ((annotation = findAnnotation(param, QUERY_VAR)) != null) {
+            String name = stringValue(annotation, "value");
+            if (name.isEmpty()) {
+                name = param.getSimpleName().toString();
+            }
+            String typeExpr = typeExpression(type, param);
+            if (typeExpr == null) {
+                return null;
+            }
+            binder = "RouteSupport.queryVar(\"" + escape(name) + "\", " + value(annotation, "required") + ", "
+                    + typeExpr + ")";
+        } else if (findAnnotation(param, JSON_BODY) != null) {
+            String typeExpr = typeExpression(type, param);
+            if (typeExpr == null) {
+                return null;
+            }
+            binder = "RouteSupport.jsonBody(" + typeExpr + ")";
+        } else if (findAnnotation(param, STRING_BODY) != null) {
+            if (!isType(type, String.class.getName()) && !isType(type, CharSequence.class.getName())) {
+                messager.printMessage(Kind.ERROR,
+                        "The type of the parameter must be String or CharSequence when @StringBody is present!",
+                        param);
+                return null;
+            }
+            binder = "RouteSupport.stringBody()";
+        } else if ((annotation = findAnnotation(param, HEADER_VALUE)) != null) {
+            String typeExpr = typeExpression(type, param);
+            if (typeExpr == null) {
+                return null;
+            }
+            binder = "RouteSupport.headerValue(\"" + escape(stringValue(annotation, "value")) + "\", "
+                    + value(annotation, "required") + ", " + typeExpr + ")";
+        } else if (findAnnotation(param, REMOTE_ADDR) != null) {
+            if (!isType(type, String.class.getName())) {
+                messager.printMessage(Kind.ERROR, "unsupperted type " + type + " for @RemoteAddr, only support String",
+                        param);
+                return null;
+            }
+            return "ctx.remoteAddress()";
+        } else if ((annotation = findAnnotation(param, COMPONENT_VALUE)) != null) {
+            String typeExpr = typeExpression(type, param);
+            if (typeExpr == null) {
+                return null;
+            }
+            TypeMirror componentType = (TypeMirror) value(annotation, "value");
+            binder = "RouteSupport.componentValue(" + types.erasure(componentType) + ".class, "
+                    + value(annotation, "required") + ", " + typeExpr + ")";
+        } else if ((annotation = findAnnotation(param, PROPERTY_VALUE)) != null) {
+            String typeExpr = typeExpression(type, param);
+            if (typeExpr == null) {
+                return null;
+            }
+            binder = "RouteSupport.propertyValue(\"" + escape(stringValue(annotation, "value")) + "\", "
+                    + value(annotation, "required") + ", " + typeExpr + ")";
+        }
+        if (binder == null) {
+            return zeroValue(type);
+        }
+        code.append("        Function<HttpRequestContext, ").append(boxed(type)).append("> ").append(binderName)
+                .append(" = ").append(binder).append(";\n");
+        return binderName + ".apply(ctx)";
+    }
+
+    private static final String zeroValue(TypeMirror type) {
+        switch (type.getKind()) {
+        case BOOLEAN:
+            return "false";
+        case CHAR:
+            return "(char) 0";
+        case BYTE:
+            return "(byte) 0";
+        case SHORT:
+            return "(short) 0";
+        case INT:
+            return "0";
+        case LONG:
+            return "0L";
+        case FLOAT:
+            return "0F";
+        case DOUBLE:
+            return "0D";
+        default:
+            return "null";
+        }
+    }
+
+    private String boxed(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return types.boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    private String classLiteral(TypeMirror type) {
+        return types.erasure(type) + ".class";
+    }
+
+    private String typeExpression(TypeMirror type, Element element) {
+        switch (type.getKind()) {
+        case ARRAY:
+            if (((ArrayType) type).getComponentType().getKind() == TypeKind.TYPEVAR) {
+                break;
+            }
+            return classLiteral(type);
+        case DECLARED:
+            List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+            if (typeArguments.isEmpty()) {
+                return classLiteral(type);
+            }
+            StringBuilder b = new StringBuilder("RouteSupport.parameterized(").append(classLiteral(type));
+            for (TypeMirror typeArgument : typeArguments) {
+                String typeArgumentExpr = typeExpression(typeArgument, element);
+                if (typeArgumentExpr == null) {
+                    return null;
+                }
+                b.append(", ").append(typeArgumentExpr);
+            }
+            return b.append(")").toString();
+        default:
+            if (type.getKind().isPrimitive()) {
+                return classLiteral(type);
+            }
+            break;
+        }
+        messager.printMessage(Kind.WARNING,
+                "Skip generating route registrar for unsupported type " + type + ", reflection will be used", element);
+        return null;
+    }
+
+    private static final boolean isVoidType(TypeMirror type) {
+        return type.getKind() == TypeKind.VOID || type.toString().equals(Void.class.getName());
+    }
+
+    private boolean isType(TypeMirror type, String name) {
+        return type.getKind() == TypeKind.DECLARED && types.erasure(type).toString().equals(name);
+    }
+
+    private TypeMirror erasure(String name) {
+        TypeElement element = elements.getTypeElement(name);
+        if (element == null) {
+            return types.getNoType(TypeKind.NONE);
+        }
+        return types.erasure(element.asType());
+    }
+
+    private static final AnnotationMirror findAnnotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(name)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private Object value(AnnotationMirror annotation, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : elements
+                .getElementValuesWithDefaults(annotation).entrySet()) {
+            if (e.getKey().getSimpleName().contentEquals(name)) {
+                return e.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private String stringValue(AnnotationMirror annotation, String name) {
+        Object value = value(annotation, name);
+        return value == null ? "" : value.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<? extends AnnotationValue> listValue(AnnotationMirror annotation, String name) {
+        Object value = value(annotation, name);
+        return value == null ? List.of() : (List<? extends AnnotationValue>) value;
+    }
+
+    private List<String> stringValues(AnnotationMirror annotation, String name) {
+        return listValue(annotation, name).stream().map(v -> v.getValue().toString()).collect(Collectors.toList());
+    }
+
+    private static final String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private void writeServiceFile() {
+        if (registrars.isEmpty()) {
+            return;
+        }
+        Set<String> all = new TreeSet<>();
+        try {
+            // merge with the existing file for incremental compilation
+            FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+                reader.lines().map(String::trim).filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .filter(this::isRegistrarPresent).forEach(all::add);
+            }
+        } catch (IOException e) {
+            // file not exists
+        }
+        all.addAll(registrars);
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (PrintWriter writer = new PrintWriter(
+                    new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8))) {
+                all.forEach(writer::println);
+            }
+        } catch (IOException e) {
+            messager.printMessage(Kind.ERROR, "Write " + SERVICE_FILE + " failed: " + e);
+        }
+    }
+
+    private boolean isRegistrarPresent(String name) {
+        return elements.getTypeElement(name) != null;
+    }
+
+    private static final class Route {
+
+        private final ExecutableElement method;
+        private final String path;
+        private final List<String> httpMethods;
+
+        private Route(ExecutableElement method, String path, List<String> httpMethods) {
+            this.method = method;
+            this.path = path;
+            this.httpMethods = httpMethods;
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.fmjsjx.libnetty.http.server.processor.HttpRouteProcessor;
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+
+public class GeneratedRouteRegistrarTest {
+
+    private static final String CONTROLLER = "com.example.SampleController";
+    private static final String REGISTRAR = "com.example.SampleController_RouteRegistrar";
+    private static final String SERVICE_FILE = "META-INF/services/" + RouteRegistrar.class.getName();
+
+    private static final JavaFileObject SOURCE = JavaFileObjects.forSourceLines(CONTROLLER,
+            "package com.example;",
+            "",
+            "import java.util.concurrent.CompletionStage;",
+            "",
+            "import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;",
+            "import com.github.fmjsjx.libnetty.http.server.HttpResult;",
+            "import com.github.fmjsjx.libnetty.http.server.annotation.HttpGet;",
+            "import com.github.fmjsjx.libnetty.http.server.annotation.HttpPath;",
+            "import com.github.fmjsjx.libnetty.http.server.annotation.PathVar;",
+            "",
+            "import io.netty.handler.codec.http.HttpResponseStatus;",
+            "",
+            "@HttpPath(\"/api\")",
+            "public class SampleController {",
+            "",
+            "    @HttpGet(\"/users/{id}\")",
+            "    public CompletionStage<HttpResult> getUser(HttpRequestContext ctx, @PathVar(\"id\") int id) {",
+            "        return ctx.simpleRespond(HttpResponseStatus.OK);",
+            "    }",
+            "",
+            "}");
+
+    private static final JavaFileObject UNSUPPORTED_SOURCE = JavaFileObjects.forSourceLines(
+            "com.example.WildcardController",
+            "package com.example;",
+            "",
+            "import java.util.List;",
+            "import java.util.concurrent.CompletionStage;",
+            "",
+            "import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;",
+            "import com.github.fmjsjx.libnetty.http.server.HttpResult;",
+            "import com.github.fmjsjx.libnetty.http.server.annotation.HttpGet;",
+            "import com.github.fmjsjx.libnetty.http.server.annotation.HttpPath;",
+            "import com.github.fmjsjx.libnetty.http.server.annotation.QueryVar;",
+            "",
+            "import io.netty.handler.codec.http.HttpResponseStatus;",
+            "",
+            "@HttpPath(\"/api\")",
+            "public class WildcardController {",
+            "",
+            "    @HttpGet(\"/items\")",
+            "    public CompletionStage<HttpResult> getItems(HttpRequestContext ctx, @QueryVar(\"id\") List<?> ids) {",
+            "        return ctx.simpleRespond(HttpResponseStatus.OK);",
+            "    }",
+            "",
+            "}");
+
+    private static List<File> classpath() {
+        return Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator)).map(File::new)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testGenerate(@TempDir Path classOutput) throws Exception {
+        Compilation compilation = javac().withProcessors(new HttpRouteProcessor()).withClasspath(classpath())
+                .compile(SOURCE);
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile(REGISTRAR);
+        assertThat(compilation).generatedFile(StandardLocation.CLASS_OUTPUT, SERVICE_FILE).contentsAsUtf8String()
+                .contains(REGISTRAR);
+
+        // write the compiled classes and the service file to load them
+        String prefix = "/" + StandardLocation.CLASS_OUTPUT.getName() + "/";
+        for (JavaFileObject file : compilation.generatedFiles()) {
+            String path = file.toUri().getPath();
+            if (!path.startsWith(prefix)) {
+                continue;
+            }
+            Path target = classOutput.resolve(path.substring(prefix.length()));
+            Files.createDirectories(target.getParent());
+            try (InputStream in = file.openInputStream()) {
+                Files.copy(in, target);
+            }
+        }
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] { classOutput.toUri().toURL() },
+                getClass().getClassLoader())) {
+            Class<?> controllerType = classLoader.loadClass(CONTROLLER);
+            assertEquals(REGISTRAR, RouteRegistrars.registrarName(controllerType));
+            Optional<? extends RouteRegistrar<?>> registrar = RouteRegistrars.find(controllerType);
+            assertTrue(registrar.isPresent());
+            assertEquals(REGISTRAR, registrar.get().getClass().getName());
+            assertSame(controllerType, registrar.get().controllerType());
+
+            @SuppressWarnings("unchecked")
+            RouteRegistrar<Object> routeRegistrar = (RouteRegistrar<Object>) registrar.get();
+            Object controller = controllerType.getDeclaredConstructor().newInstance();
+            assertEquals(1, routeRegistrar.register(new Router(), controller));
+        }
+    }
+
+    @Test
+    public void testUnsupportedType() throws Exception {
+        Compilation compilation = javac().withProcessors(new HttpRouteProcessor()).withClasspath(classpath())
+                .compile(UNSUPPORTED_SOURCE);
+        // the controller still compiles and falls back to RouterUtil at runtime
+        assertThat(compilation).succeeded();
+        assertThat(compilation).hadWarningContaining("Skip generating route registrar for unsupported type");
+        assertTrue(compilation.generatedSourceFiles().isEmpty());
+        assertFalse(compilation.generatedFile(StandardLocation.CLASS_OUTPUT, SERVICE_FILE).isPresent());
+    }
+
+}
@@ -18,6 +18,7 @@ dependencies {
     api(project(":libnetty-handler"))
     api(project(":libnetty-http"))
     api(project(":libnetty-transport"))
+    api("io.netty:netty-codec-http2")
     "nettyNativeSupportImplementation"(group = "io.netty", name = "netty-transport-native-epoll", classifier = "linux-x86_64")
     "nettyNativeSupportImplementation"(group = "io.netty", name = "netty-transport-native-kqueue", classifier = "osx-x86_64")
     "nettyNativeSupportImplementation"(group = "io.netty", name = "netty-tcnative-boringssl-static", classifier = "linux-aarch_64")
@@ -32,6 +33,7 @@ dependencies {
 
     testImplementation("org.junit.jupiter:junit-jupiter-api")
     testImplementation("org.mockito:mockito-core")
+    testImplementation(group = "io.netty", name = "netty-transport-native-epoll", classifier = "linux-x86_64")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine")
     testImplementation("org.apache.logging.log4j:log4j-slf4j-impl")
 
@@ -0,0 +1,343 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http2.DefaultHttp2GoAwayFrame;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.util.AttributeKey;
+
+/**
+ * Drains the connections of {@link DefaultHttpServer} gracefully on shutdown.
+ * <p>
+ * The drainer keeps track of the accepted connections and the number of the
+ * in-flight requests of each connection. When draining:
+ * <ul>
+ * <li>the idle connections are closed immediately</li>
+ * <li>the next response of each HTTP/1.x connection is sent with
+ * {@code Connection: close}</li>
+ * <li>a {@code GOAWAY} frame is sent on each HTTP/2 connection, so that the
+ * clients stop opening new streams</li>
+ * <li>each connection is closed as soon as all of its in-flight requests are
+ * responded</li>
+ * <li>the connections still open at the deadline are aborted</li>
+ * </ul>
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ *
+ * @see DefaultHttpServer#gracefulShutdown(Duration)
+ */
+public class ConnectionDrainer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionDrainer.class);
+
+    private static final AttributeKey<Connection> CONNECTION = AttributeKey.valueOf(ConnectionDrainer.class,
+            "connection");
+    private static final AttributeKey<Boolean> STREAM_IN_FLIGHT = AttributeKey.valueOf(ConnectionDrainer.class,
+            "streamInFlight");
+
+    private static final long ABORT_WAIT_SECONDS = 1;
+
+    private final class Connection {
+
+        private final Channel channel;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile boolean aborted;
+
+        private Connection(Channel channel) {
+            this.channel = channel;
+        }
+
+        private void drain() {
+            if (channel.eventLoop().inEventLoop()) {
+                if (channel.pipeline().get(Http2FrameCodec.class) != null) {
+                    // stop the client opening new streams
+                    channel.writeAndFlush(new DefaultHttp2GoAwayFrame(Http2Error.NO_ERROR));
+                }
+                if (inFlight.get() == 0) {
+                    channel.close();
+                }
+            } else {
+                channel.eventLoop().execute(this::drain);
+            }
+        }
+
+        private void responded() {
+            if (inFlight.decrementAndGet() <= 0 && draining) {
+                channel.close();
+            }
+        }
+
+        private ChannelFuture abort() {
+            aborted = true;
+            return channel.close();
+        }
+
+    }
+
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final LongAdder drainedCount = new LongAdder();
+    private final LongAdder abortedCount = new LongAdder();
+
+    private final DrainHandler connectionHandler = new DrainHandler(false);
+    private final DrainHandler streamHandler = new DrainHandler(true);
+
+    private volatile boolean draining;
+    private volatile CompletableFuture<Void> drainedFuture = new CompletableFuture<>();
+
+    void start() {
+        draining = false;
+        drainedFuture = new CompletableFuture<>();
+    }
+
+    void register(Channel channel) {
+        Connection connection = new Connection(channel);
+        channel.attr(CONNECTION).set(connection);
+        connections.add(connection);
+        channel.closeFuture().addListener(f -> unregister(connection));
+        if (draining) {
+            // accepted just before the server channel closed
+            connection.drain();
+        }
+    }
+
+    private void unregister(Connection connection) {
+        if (connections.remove(connection) && draining) {
+            if (connection.aborted) {
+                abortedCount.increment();
+            } else {
+                drainedCount.increment();
+            }
+            if (connections.isEmpty()) {
+                drainedFuture.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Returns the handler tracks the requests of an HTTP/1.x connection, or of
+     * an HTTP/2 stream if {@code http2Stream} is {@code true}.
+     *
+     * @param http2Stream if the handler is added to an HTTP/2 stream
+     * @return the handler
+     */
+    ChannelHandler handler(boolean http2Stream) {
+        return http2Stream ? streamHandler : connectionHandler;
+    }
+
+    /**
+     * Starts draining and returns the future completed when all connections are
+     * closed.
+     *
+     * @return the future completed when all connections are closed
+     */
+    CompletableFuture<Void> startDraining() {
+        CompletableFuture<Void> drainedFuture = this.drainedFuture;
+        draining = true;
+        for (Connection connection : connections) {
+            connection.drain();
+        }
+        if (connections.isEmpty()) {
+            drainedFuture.complete(null);
+        }
+        return drainedFuture;
+    }
+
+    /**
+     * Drains all connections, and waits until all connections are closed or the
+     * timeout elapsed. The connections still open after the timeout are aborted.
+     *
+     * @param timeout the maximum time to wait
+     * @return {@code true} if all connections are drained, {@code false} if any
+     *         connection is aborted
+     * @throws InterruptedException if the current thread is interrupted while
+     *                              waiting
+     */
+    public boolean drain(Duration timeout) throws InterruptedException {
+        Objects.requireNonNull(timeout, "timeout must not be null");
+        CompletableFuture<Void> drainedFuture = startDraining();
+        try {
+            drainedFuture.get(Math.max(0, timeout.toNanos()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            int inFlight = inFlightCount();
+            logger.warn("Drain timeout after {}, abort {} connections with {} in-flight requests", timeout,
+                    connections.size(), inFlight);
+            List<Connection> aborting = new ArrayList<>(connections);
+            CountDownLatch closed = new CountDownLatch(aborting.size());
+            for (Connection connection : aborting) {
+                // the listener runs after the one counts the connection as aborted
+                connection.abort().addListener(f -> closed.countDown());
+            }
+            if (!closed.await(ABORT_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("{} aborted connections are still not closed after {} seconds", closed.getCount(),
+                        ABORT_WAIT_SECONDS);
+            }
+            return false;
+        } catch (ExecutionException e) {
+            // never happen
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns {@code true} if this drainer is draining.
+     *
+     * @return {@code true} if this drainer is draining
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Returns the number of the open connections.
+     *
+     * @return the number of the open connections
+     */
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Returns the number of the in-flight requests of all open connections.
+     *
+     * @return the number of the in-flight requests
+     */
+    public int inFlightCount() {
+        int count = 0;
+        for (Connection connection : connections) {
+            count += Math.max(0, connection.inFlight.get());
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of the connections closed gracefully while draining.
+     *
+     * @return the number of the drained connections
+     */
+    public long drainedCount() {
+        return drainedCount.sum();
+    }
+
+    /**
+     * Returns the number of the connections aborted at the drain deadline.
+     *
+     * @return the number of the aborted connections
+     */
+    public long abortedCount() {
+        return abortedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionDrainer(draining=" + draining + ", connections=" + connectionCount() + ", drained="
+                + drainedCount() + ", aborted=" + abortedCount() + ")";
+    }
+
+    @Sharable
+    private final class DrainHandler extends ChannelDuplexHandler {
+
+        private final boolean http2Stream;
+
+        private DrainHandler(boolean http2Stream) {
+            this.http2Stream = http2Stream;
+        }
+
+        private Connection connection(ChannelHandlerContext ctx) {
+            Channel channel = http2Stream ? ctx.channel().parent() : ctx.channel();
+            return channel == null ? null : channel.attr(CONNECTION).get();
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof HttpRequest) {
+                Connection connection = connection(ctx);
+                if (connection != null) {
+                    connection.inFlight.incrementAndGet();
+                    if (http2Stream) {
+                        ctx.channel().attr(STREAM_IN_FLIGHT).set(Boolean.TRUE);
+                    }
+                }
+            }
+            ctx.fireChannelRead(msg);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            if (http2Stream) {
+                // the stream is reset or closed before the response is completed
+                streamResponded(ctx);
+            }
+            ctx.fireChannelInactive();
+        }
+
+        private void streamResponded(ChannelHandlerContext ctx) {
+            if (ctx.channel().attr(STREAM_IN_FLIGHT).getAndSet(null) != null) {
+                Connection connection = connection(ctx);
+                if (connection != null) {
+                    connection.responded();
+                }
+            }
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (msg instanceof HttpResponse) {
+                HttpResponse response = (HttpResponse) msg;
+                if (response.status().codeClass() == HttpStatusClass.INFORMATIONAL) {
+                    // 100 Continue is not the end of the request
+                    ctx.write(msg, promise);
+                    return;
+                }
+                if (draining && !http2Stream) {
+                    HttpUtil.setKeepAlive(response, false);
+                }
+            }
+            if (msg instanceof LastHttpContent) {
+                if (http2Stream) {
+                    promise = promise.unvoid();
+                    promise.addListener(f -> streamResponded(ctx));
+                } else {
+                    Connection connection = connection(ctx);
+                    if (connection != null) {
+                        promise = promise.unvoid();
+                        promise.addListener(f -> connection.responded());
+                    }
+                }
+            }
+            ctx.write(msg, promise);
+        }
+
+    }
+
+}
@@ -4,14 +4,19 @@ import static io.netty.handler.codec.http.HttpHeaderNames.*;
 import static io.netty.handler.codec.http.HttpHeaderValues.*;
 
 import java.nio.charset.Charset;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
 import com.github.fmjsjx.libnetty.http.HttpCommonUtil;
@@ -20,6 +25,8 @@ import com.github.fmjsjx.libnetty.http.server.component.HttpServerComponent;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
@@ -32,6 +39,12 @@ import io.netty.handler.codec.http.QueryStringDecoder;
 
 /**
  * The default implementation of {@link DefaultHttpRequestContext}.
+ * <p>
+ * Since 2.3, only the timestamps are recorded when a context is created, all
+ * other fields (properties, path variables, response factory, etc.) are
+ * created lazily. A context is confined to one thread at a time (the event
+ * loop, or the worker the request was handed over to), so none of the lazy
+ * fields are thread-safe.
  * 
  * @since 1.1
  *
@@ -42,7 +55,8 @@ class DefaultHttpRequestContext implements HttpRequestContext {
     private static final Function<Object, String> PROPERTY_KEY_ENCODER = String::valueOf;
 
     private final long recievedNanoTime = System.nanoTime();
-    private final ZonedDateTime receivedTime = ZonedDateTime.now();
+    private final long receivedTimeMillis = System.currentTimeMillis();
+    private ZonedDateTime receivedTime;
 
     private final Channel channel;
     private final FullHttpRequest request;
@@ -52,12 +66,15 @@ class DefaultHttpRequestContext implements HttpRequestContext {
     private int keepAliveFlag = -1;
     private Optional<CharSequence> contentType;
     private QueryStringDecoder queryStringDecoder;
-    private AtomicReference<PathVariables> pathVariablesRef = new AtomicReference<>();
+    private PathVariables pathVariables;
 
     private final Map<Class<?>, Object> components;
-    private final ConcurrentMap<Object, Object> properties = new ConcurrentHashMap<>();
-    private final HttpResponseFactoryImpl responseFactory = new HttpResponseFactoryImpl();
-    private final Optional<Consumer<HttpHeaders>> addHeaders;
+    private Map<Object, Object> properties;
+    private HttpResponseFactoryImpl responseFactory;
+    private final Consumer<HttpHeaders> addHeaders;
+    private final StreamingRequestBody streamingBody;
+
+    private long sequence = -1;
 
     DefaultHttpRequestContext(Channel channel, FullHttpRequest request, Map<Class<?>, Object> components) {
         this(channel, request, components, null);
@@ -65,11 +82,25 @@ class DefaultHttpRequestContext implements HttpRequestContext {
 
     DefaultHttpRequestContext(Channel channel, FullHttpRequest request, Map<Class<?>, Object> components,
             Consumer<HttpHeaders> addHeaders) {
+        this(channel, request, components, addHeaders, null);
+    }
+
+    DefaultHttpRequestContext(Channel channel, FullHttpRequest request, Map<Class<?>, Object> components,
+            Consumer<HttpHeaders> addHeaders, StreamingRequestBody streamingBody) {
         this.channel = channel;
         this.request = request;
         this.contentLength = request.content().readableBytes();
         this.components = components;
-        this.addHeaders = Optional.ofNullable(addHeaders);
+        this.addHeaders = addHeaders;
+        this.streamingBody = streamingBody;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    void sequence(long sequence) {
+        this.sequence = sequence;
     }
 
     @Override
@@ -79,7 +110,21 @@ class DefaultHttpRequestContext implements HttpRequestContext {
 
     @Override
     public ZonedDateTime receivedTime() {
-        return receivedTime;
+        ZonedDateTime time = receivedTime;
+        if (time == null) {
+            receivedTime = time = Instant.ofEpochMilli(receivedTimeMillis).atZone(ZoneId.systemDefault());
+        }
+        return time;
+    }
+
+    /**
+     * Returns the time, in milliseconds since the epoch, when the request was
+     * received.
+     * 
+     * @return the received time in milliseconds
+     */
+    long receivedTimeMillis() {
+        return receivedTimeMillis;
     }
 
     @Override
@@ -110,6 +155,11 @@ class DefaultHttpRequestContext implements HttpRequestContext {
         return flag == 1;
     }
 
+    @Override
+    public Optional<Flow.Publisher<ByteBuf>> streamingBody() {
+        return Optional.ofNullable(streamingBody);
+    }
+
     @Override
     public int contentLength() {
         return contentLength;
@@ -135,12 +185,12 @@ class DefaultHttpRequestContext implements HttpRequestContext {
 
     @Override
     public PathVariables pathVariables() {
-        return pathVariablesRef.get();
+        return pathVariables;
     }
 
     @Override
     public HttpResponder pathVariables(PathVariables pathVariables) {
-        this.pathVariablesRef.set(pathVariables);
+        this.pathVariables = pathVariables;
         return this;
     }
 
@@ -162,6 +212,10 @@ class DefaultHttpRequestContext implements HttpRequestContext {
     }
 
     private Object getProperty(Object key) {
+        Map<Object, Object> properties = this.properties;
+        if (properties == null) {
+            return null;
+        }
         return properties.get(PROPERTY_KEY_ENCODER.apply(key));
     }
 
@@ -174,9 +228,15 @@ class DefaultHttpRequestContext implements HttpRequestContext {
     @Override
     public DefaultHttpRequestContext property(Object key, Object value) {
         String keyName = PROPERTY_KEY_ENCODER.apply(key);
+        Map<Object, Object> properties = this.properties;
         if (value == null) {
-            properties.remove(keyName);
+            if (properties != null) {
+                properties.remove(keyName);
+            }
         } else {
+            if (properties == null) {
+                this.properties = properties = new HashMap<>();
+            }
             properties.put(keyName, value);
         }
         return this;
@@ -184,25 +244,113 @@ class DefaultHttpRequestContext implements HttpRequestContext {
 
     @Override
     public boolean hasProperty(Object key) {
-        return properties.containsKey(PROPERTY_KEY_ENCODER.apply(key));
+        Map<Object, Object> properties = this.properties;
+        return properties != null && properties.containsKey(PROPERTY_KEY_ENCODER.apply(key));
     }
 
     @Override
     public Stream<String> propertyKeyNames() {
+        Map<Object, Object> properties = this.properties;
+        if (properties == null) {
+            return Stream.empty();
+        }
         return properties.keySet().stream().map(PROPERTY_KEY_ENCODER);
     }
 
     @Override
     public HttpResponseFactory responseFactory() {
-        return responseFactory;
+        HttpResponseFactoryImpl factory = responseFactory;
+        if (factory == null) {
+            responseFactory = factory = new HttpResponseFactoryImpl();
+        }
+        return factory;
+    }
+
+    @Override
+    public boolean release() {
+        return onReleased(request.release());
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return onReleased(request.release(decrement));
+    }
+
+    private boolean onReleased(boolean deallocated) {
+        StreamingRequestBody streamingBody = this.streamingBody;
+        if (deallocated && streamingBody != null) {
+            // discard the remaining streaming body
+            if (channel.eventLoop().inEventLoop()) {
+                streamingBody.discard();
+            } else {
+                channel.eventLoop().execute(streamingBody::discard);
+            }
+        }
+        return deallocated;
+    }
+
+    @Override
+    public ChannelFuture write(Object msg) {
+        long sequence = this.sequence;
+        return channel.write(sequence < 0 ? msg : HttpPipeliningHandler.sequenced(sequence, msg));
+    }
+
+    @Override
+    public ChannelFuture writeAndFlush(Object msg) {
+        long sequence = this.sequence;
+        return channel.writeAndFlush(sequence < 0 ? msg : HttpPipeliningHandler.sequenced(sequence, msg));
+    }
+
+    @Override
+    public CompletableFuture<HttpResult> sendResponse(FullHttpResponse response, int contentLength) {
+        long sequence = this.sequence;
+        if (sequence < 0) {
+            return HttpRequestContext.super.sendResponse(response, contentLength);
+        }
+        // pipelined request, let the response be written in the order of requests
+        CompletableFuture<HttpResult> future = new CompletableFuture<>();
+        ChannelFuture sendFuture = channel().writeAndFlush(HttpPipeliningHandler.sequenced(sequence, response));
+        sendFuture.addListener((ChannelFuture cf) -> {
+            if (cf.isSuccess()) {
+                future.complete(new DefaultHttpResult(this, contentLength, response.status()));
+            } else if (cf.cause() != null) {
+                future.completeExceptionally(cf.cause());
+            }
+        });
+        if (!isKeepAlive()) {
+            sendFuture.addListener(ChannelFutureListener.CLOSE);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<HttpResult> sendStreamingResponse(HttpResponse response,
+            Flow.Publisher<ByteBuf> publisher) {
+        return StreamingResponses.send(this, response, publisher, outboundWrapper());
+    }
+
+    @Override
+    public CompletableFuture<HttpResult> sendStreamingResponse(HttpResponse response, Iterator<ByteBuf> iterator) {
+        return StreamingResponses.send(this, response, iterator, outboundWrapper());
+    }
+
+    private UnaryOperator<Object> outboundWrapper() {
+        long sequence = this.sequence;
+        if (sequence < 0) {
+            return UnaryOperator.identity();
+        }
+        // pipelined request, let the response be written in the order of requests
+        return msg -> HttpPipeliningHandler.sequenced(sequence, msg);
     }
 
     @Override
     public String toString() {
-        StringBuilder b = new StringBuilder().append("DefaultHttpRequestContext(receivedTime: ").append(receivedTime)
+        Map<Object, Object> properties = this.properties;
+        StringBuilder b = new StringBuilder().append("DefaultHttpRequestContext(receivedTime: ").append(receivedTime())
                 .append(", channel: ").append(channel()).append(", remoteAddress: ").append(remoteAddress())
                 .append(", query: ").append(queryStringDecoder).append(", contentLength: ").append(contentLength)
-                .append(", properties: ").append(properties).append(")\n");
+                .append(", properties: ").append(properties == null ? Collections.emptyMap() : properties)
+                .append(")\n");
         b.append(request().toString());
         return b.toString();
     }
@@ -218,9 +366,9 @@ class DefaultHttpRequestContext implements HttpRequestContext {
 
         private HttpHeaders initHeaders(HttpResponse response) {
             HttpHeaders headers = response.headers();
-            Optional<Consumer<HttpHeaders>> addHeaders = DefaultHttpRequestContext.this.addHeaders;
-            if (addHeaders.isPresent()) {
-                addHeaders.get().accept(headers);
+            Consumer<HttpHeaders> addHeaders = DefaultHttpRequestContext.this.addHeaders;
+            if (addHeaders != null) {
+                addHeaders.accept(headers);
             }
             HttpUtil.setKeepAlive(headers, response.protocolVersion(), isKeepAlive());
             return headers;
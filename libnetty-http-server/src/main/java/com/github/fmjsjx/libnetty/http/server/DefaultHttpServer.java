@@ -9,6 +9,7 @@ import static java.util.Objects.requireNonNull;
 import java.net.InetAddress;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +17,7 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -27,6 +29,7 @@ import com.github.fmjsjx.libnetty.http.exception.HttpRuntimeException;
 import com.github.fmjsjx.libnetty.http.server.component.ExceptionHandler;
 import com.github.fmjsjx.libnetty.http.server.component.HttpServerComponent;
 import com.github.fmjsjx.libnetty.http.server.component.JsonLibrary;
+import com.github.fmjsjx.libnetty.http.server.component.VirtualThreadWorkerPool;
 import com.github.fmjsjx.libnetty.http.server.component.WorkerPool;
 import com.github.fmjsjx.libnetty.transport.TransportLibrary;
 
@@ -37,8 +40,13 @@ import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.cors.CorsConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.SslContext;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 /**
@@ -58,6 +66,7 @@ public class DefaultHttpServer implements HttpServer {
 
     private static final int DEFAULT_MAX_CONTENT_LENGTH = Integer.MAX_VALUE;
     private static final int DEFAULT_TIMEOUT_SECONDS = 60;
+    private static final int DEFAULT_MAX_PIPELINED_REQUESTS = 1;
 
     private static final Consumer<HttpHeaders> defaultAddHeaders = headers -> {
         headers.set(SERVER, "libnetty");
@@ -68,6 +77,7 @@ public class DefaultHttpServer implements HttpServer {
     private InetAddress address;
     private int port;
     private int ioThreads;
+    private int listeners = 1;
 
     private final AtomicBoolean running = new AtomicBoolean();
 
@@ -76,12 +86,16 @@ public class DefaultHttpServer implements HttpServer {
     private volatile boolean closeGroupsWhenShutdown;
     private Class<? extends ServerChannel> channelClass;
     private ServerChannel channel;
+    private List<ServerChannel> channels = Collections.emptyList();
 
     private int timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
     private int maxContentLength = DEFAULT_MAX_CONTENT_LENGTH;
+    private int maxPipelinedRequests = DEFAULT_MAX_PIPELINED_REQUESTS;
+    private Predicate<HttpRequest> streamingRequestPredicate;
     private CorsConfig corsConfig;
 
     private SslContextProvider sslContextProvider;
+    private boolean http2Enabled;
 
     private ServerBootstrap bootstrap = new ServerBootstrap();
 
@@ -90,6 +104,11 @@ public class DefaultHttpServer implements HttpServer {
 
     private HttpServerHandlerProvider handlerProvider;
 
+    private EventLoopMonitor eventLoopMonitor;
+
+    private Duration drainTimeout;
+    private ConnectionDrainer connectionDrainer;
+
     private Map<Class<?>, HttpServerComponent> components = new LinkedHashMap<>();
     private Consumer<HttpHeaders> addHeaders = defaultAddHeaders;
 
@@ -295,6 +314,46 @@ public class DefaultHttpServer implements HttpServer {
         return this;
     }
 
+    /**
+     * Returns the number of the listener channels bound by this server.
+     * 
+     * @return the number of the listener channels
+     * 
+     * @since 2.3
+     */
+    public int listeners() {
+        return listeners;
+    }
+
+    /**
+     * Bind the specified number of listener channels on the same address with
+     * {@code SO_REUSEPORT}, so that the kernel load-balances the new connections
+     * across the listeners, and each listener accepts on its own parent event
+     * loop.
+     * <p>
+     * {@code SO_REUSEPORT} is only supported by the epoll transport. On other
+     * transports only one listener channel is bound.
+     * <p>
+     * If the parent group is not specified by
+     * {@link #transport(EventLoopGroup, EventLoopGroup, Class)}, the parent group
+     * created by this server has one thread for each listener.
+     * <p>
+     * The default value is {@code 1}.
+     * 
+     * @param listeners the number of the listener channels
+     * @return this server
+     * 
+     * @since 2.3
+     */
+    public DefaultHttpServer reusePort(int listeners) {
+        ensureNotStarted();
+        if (listeners < 1) {
+            throw new IllegalArgumentException("listeners must be positive");
+        }
+        this.listeners = listeners;
+        return this;
+    }
+
     /**
      * Specify the transport components of this server.
      * 
@@ -364,6 +423,93 @@ public class DefaultHttpServer implements HttpServer {
         return this;
     }
 
+    /**
+     * Returns the maximum number of pipelined HTTP/1.1 requests that can be
+     * processed concurrently on one connection.
+     * 
+     * @return the maximum number of pipelined requests
+     * @since 2.3
+     */
+    public int maxPipelinedRequests() {
+        return maxPipelinedRequests;
+    }
+
+    /**
+     * Set the maximum number of pipelined HTTP/1.1 requests that can be processed
+     * concurrently on one connection.
+     * <p>
+     * When the value is greater than {@code 1}, up to {@code maxPipelinedRequests}
+     * requests will be read ahead and dispatched concurrently, and the responses
+     * will still be written in the order of the requests.
+     * <p>
+     * The default value is {@code 1}, means requests on one connection are
+     * processed one by one.
+     * 
+     * @param maxPipelinedRequests the maximum number of pipelined requests
+     * @return this server
+     * @since 2.3
+     */
+    public DefaultHttpServer maxPipelinedRequests(int maxPipelinedRequests) {
+        ensureNotStarted();
+        if (maxPipelinedRequests < 1) {
+            throw new IllegalArgumentException("maxPipelinedRequests must be positive");
+        }
+        this.maxPipelinedRequests = maxPipelinedRequests;
+        return this;
+    }
+
+    /**
+     * Let the HTTP requests matched by the specified {@link Predicate} be
+     * processed in streaming mode.
+     * <p>
+     * Streaming requests are not aggregated. The {@link HttpRequestContext} is
+     * created as soon as the headers are received, and the body must be consumed
+     * through {@link HttpRequestContext#streamingBody()}, which reads the
+     * connection on demand. The {@code maxContentLength} is not applied to
+     * streaming requests.
+     * <p>
+     * This method can be called multiple times, a request will be processed in
+     * streaming mode if it matches any of the predicates.
+     * 
+     * @param predicate the {@code Predicate} to select streaming requests
+     * @return this server
+     * @since 2.3
+     */
+    public DefaultHttpServer streamingRequests(Predicate<HttpRequest> predicate) {
+        ensureNotStarted();
+        requireNonNull(predicate, "predicate must not be null");
+        Predicate<HttpRequest> streamingRequestPredicate = this.streamingRequestPredicate;
+        this.streamingRequestPredicate = streamingRequestPredicate == null ? predicate
+                : streamingRequestPredicate.or(predicate);
+        return this;
+    }
+
+    /**
+     * Let the HTTP requests with the specified path prefix be processed in
+     * streaming mode.
+     * 
+     * @param pathPrefix the path prefix, such as {@code "/upload"}
+     * @return this server
+     * @since 2.3
+     * @see #streamingRequests(Predicate)
+     */
+    public DefaultHttpServer streamingRequests(String pathPrefix) {
+        requireNonNull(pathPrefix, "pathPrefix must not be null");
+        return streamingRequests(request -> matchesPathPrefix(request.uri(), pathPrefix));
+    }
+
+    private static final boolean matchesPathPrefix(String uri, String pathPrefix) {
+        if (!uri.startsWith(pathPrefix)) {
+            return false;
+        }
+        int length = pathPrefix.length();
+        if (uri.length() == length || pathPrefix.endsWith("/")) {
+            return true;
+        }
+        char next = uri.charAt(length);
+        return next == '/' || next == '?';
+    }
+
     /**
      * Returns the time in seconds that connectors wait for another HTTP request
      * before closing the connection.
@@ -523,6 +669,49 @@ public class DefaultHttpServer implements HttpServer {
         return this;
     }
 
+    /**
+     * Returns {@code true} if HTTP/2 is enabled.
+     * 
+     * @return {@code true} if HTTP/2 is enabled
+     * @since 2.3
+     */
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    /**
+     * Enable HTTP/2 support.
+     * <p>
+     * When SSL is enabled, {@code h2} is negotiated by ALPN, so the
+     * {@link SslContext} provided must be configured with the
+     * {@link ApplicationProtocolConfig} supports {@code h2} and
+     * {@code http/1.1}. Otherwise, both {@code h2c} with prior knowledge and
+     * {@code h2c} upgrade from HTTP/1.1 are supported.
+     * <p>
+     * Each HTTP/2 stream is mapped onto an {@link HttpRequestContext}, so all
+     * handlers and middlewares work unchanged.
+     * 
+     * @return this server
+     * @since 2.3
+     */
+    public DefaultHttpServer enableHttp2() {
+        ensureNotStarted();
+        this.http2Enabled = true;
+        return this;
+    }
+
+    /**
+     * Disable HTTP/2 support.
+     * 
+     * @return this server
+     * @since 2.3
+     */
+    public DefaultHttpServer disableHttp2() {
+        ensureNotStarted();
+        this.http2Enabled = false;
+        return this;
+    }
+
     /**
      * Enable HTTP content compression feature and apply compression settings.
      * 
@@ -577,6 +766,91 @@ public class DefaultHttpServer implements HttpServer {
         return (DefaultHttpServerHandlerProvider) (handlerProvider = new DefaultHttpServerHandlerProvider());
     }
 
+    /**
+     * Set the {@link EventLoopMonitor} to monitor the event loops of this
+     * server.
+     * <p>
+     * The monitor is started after this server started, and closed when this
+     * server is shutdown.
+     * 
+     * @param eventLoopMonitor the {@code EventLoopMonitor}
+     * @return this server
+     * 
+     * @since 2.3
+     */
+    public DefaultHttpServer eventLoopMonitor(EventLoopMonitor eventLoopMonitor) {
+        ensureNotStarted();
+        this.eventLoopMonitor = requireNonNull(eventLoopMonitor, "eventLoopMonitor must not be null");
+        return this;
+    }
+
+    /**
+     * Monitor the event loops of this server with the specified probe interval
+     * and blocked threshold.
+     * <p>
+     * This method is equivalent to:
+     * {@code eventLoopMonitor(new EventLoopMonitor(probeInterval, blockedThreshold))}.
+     * 
+     * @param probeInterval    the interval between the probes
+     * @param blockedThreshold the time after which an event loop is considered
+     *                         to be blocked
+     * @return this server
+     * 
+     * @since 2.3
+     */
+    public DefaultHttpServer monitorEventLoops(Duration probeInterval, Duration blockedThreshold) {
+        return eventLoopMonitor(new EventLoopMonitor(probeInterval, blockedThreshold));
+    }
+
+    /**
+     * Returns the {@link EventLoopMonitor} of this server.
+     * 
+     * @return an {@code Optional<EventLoopMonitor>}
+     * 
+     * @since 2.3
+     */
+    public Optional<EventLoopMonitor> eventLoopMonitor() {
+        return Optional.ofNullable(eventLoopMonitor);
+    }
+
+    /**
+     * Enable graceful shutdown with the specified drain timeout.
+     * <p>
+     * When this server is shutdown, it stops accepting new connections first,
+     * and then drains the open connections by the {@link ConnectionDrainer}:
+     * the idle connections are closed, the next response of each keep-alive
+     * connection is sent with {@code Connection: close}, and the connections
+     * are closed after their in-flight requests completed. The connections still
+     * open after the drain timeout are aborted. The handler provider, the
+     * components and the event loop groups are closed after draining.
+     * 
+     * @param drainTimeout the maximum time to wait for the in-flight requests
+     * @return this server
+     * 
+     * @since 2.3
+     */
+    public DefaultHttpServer gracefulShutdown(Duration drainTimeout) {
+        ensureNotStarted();
+        requireNonNull(drainTimeout, "drainTimeout must not be null");
+        if (drainTimeout.isNegative()) {
+            throw new IllegalArgumentException("drainTimeout must not be negative");
+        }
+        this.drainTimeout = drainTimeout;
+        this.connectionDrainer = new ConnectionDrainer();
+        return this;
+    }
+
+    /**
+     * Returns the {@link ConnectionDrainer} of this server.
+     * 
+     * @return an {@code Optional<ConnectionDrainer>}
+     * 
+     * @since 2.3
+     */
+    public Optional<ConnectionDrainer> connectionDrainer() {
+        return Optional.ofNullable(connectionDrainer);
+    }
+
     /**
      * Set an {@link HttpServerComponent}.
      * 
@@ -611,6 +885,42 @@ public class DefaultHttpServer implements HttpServer {
         return component(JsonLibrary.getInstance());
     }
 
+    /**
+     * Use a {@link VirtualThreadWorkerPool} as the {@link WorkerPool} of this
+     * server.
+     * <p>
+     * This method is equivalent to:
+     * {@code component(new VirtualThreadWorkerPool())}.
+     * 
+     * @return this server
+     * @throws UnsupportedOperationException if the virtual threads are not
+     *                                       available
+     * 
+     * @since 2.3
+     */
+    public DefaultHttpServer useVirtualThreadWorkerPool() {
+        return useVirtualThreadWorkerPool(0);
+    }
+
+    /**
+     * Use a {@link VirtualThreadWorkerPool} with the specified concurrency cap as
+     * the {@link WorkerPool} of this server.
+     * <p>
+     * This method is equivalent to:
+     * {@code component(new VirtualThreadWorkerPool(maxConcurrency))}.
+     * 
+     * @param maxConcurrency the maximum number of the blocking invocations
+     *                       running at the same time, {@code 0} means unlimited
+     * @return this server
+     * @throws UnsupportedOperationException if the virtual threads are not
+     *                                       available
+     * 
+     * @since 2.3
+     */
+    public DefaultHttpServer useVirtualThreadWorkerPool(int maxConcurrency) {
+        return component(new VirtualThreadWorkerPool(maxConcurrency));
+    }
+
     /**
      * Set the function to add HTTP response headers. Include default headers.
      * <p>
@@ -666,16 +976,21 @@ public class DefaultHttpServer implements HttpServer {
         port = DEFAULT_PORT_HTTP;
 
         ioThreads = 0;
+        listeners = 1;
         parentGroup = null;
         childGroup = null;
         channelClass = null;
         channel = null;
+        channels = Collections.emptyList();
 
         timeoutSeconds = DEFAULT_TIMEOUT_SECONDS;
         maxContentLength = DEFAULT_MAX_CONTENT_LENGTH;
+        maxPipelinedRequests = DEFAULT_MAX_PIPELINED_REQUESTS;
+        streamingRequestPredicate = null;
         corsConfig = null;
 
         sslContextProvider = null;
+        http2Enabled = false;
 
         bootstrap = new ServerBootstrap();
 
@@ -683,6 +998,11 @@ public class DefaultHttpServer implements HttpServer {
 
         handlerProvider = null;
 
+        eventLoopMonitor = null;
+
+        drainTimeout = null;
+        connectionDrainer = null;
+
         addHeaders = defaultAddHeaders;
         return this;
     }
@@ -704,23 +1024,61 @@ public class DefaultHttpServer implements HttpServer {
             Map<Class<?>, Object> components = this.components.entrySet().stream()
                     .collect(Collectors.toMap(Entry::getKey, e -> Optional.ofNullable(e.getValue())));
             DefaultHttpServerChannelInitializer initializer = new DefaultHttpServerChannelInitializer(timeoutSeconds,
-                    maxContentLength, corsConfig, sslContextProvider, httpContentCompressorFactory, handlerProvider,
-                    components, addHeaders);
+                    maxContentLength, maxPipelinedRequests, corsConfig, sslContextProvider, httpContentCompressorFactory,
+                    handlerProvider, components, addHeaders, http2Enabled,
+                    streamingRequestPredicate, connectionDrainer);
 
             bootstrap.childHandler(initializer);
+            ConnectionDrainer connectionDrainer = this.connectionDrainer;
+            if (connectionDrainer != null) {
+                connectionDrainer.start();
+            }
+            EventLoopMonitor eventLoopMonitor = this.eventLoopMonitor;
+            if (eventLoopMonitor != null) {
+                // start before bind, so that all the accepted connections are counted
+                eventLoopMonitor.start(parentGroup, childGroup);
+                bootstrap.handler(eventLoopMonitor.connectionCounter());
+            }
 
-            ChannelFuture channelFuture = bind(bootstrap).sync();
-            if (channelFuture.cause() != null) {
-                throw new HttpRuntimeException("HTTP server start failed!", channelFuture.cause());
+            int listeners = this.listeners;
+            if (listeners > 1) {
+                if (isEpoll(channelClass)) {
+                    bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+                } else {
+                    log.warn("SO_REUSEPORT is not supported by {}, bind only one listener for HTTP server '{}'",
+                            channelClass.getSimpleName(), name);
+                    listeners = 1;
+                }
+            }
+            List<ServerChannel> channels = new ArrayList<>(listeners);
+            this.channels = Collections.unmodifiableList(channels);
+            for (int i = 0; i < listeners; i++) {
+                // the other listeners must bind the same port, even if a random port is used
+                ChannelFuture channelFuture = i == 0 ? bind(bootstrap)
+                        : bootstrap.bind(channels.get(0).localAddress());
+                channelFuture.sync();
+                if (channelFuture.cause() != null) {
+                    throw new HttpRuntimeException("HTTP server start failed!", channelFuture.cause());
+                }
+                channels.add((ServerChannel) channelFuture.channel());
             }
 
-            channel = (ServerChannel) channelFuture.channel();
+            channel = channels.get(0);
 
-            log.info("HTTP server '{}' started at {}.", name, channel.localAddress());
+            if (listeners > 1) {
+                log.info("HTTP server '{}' started at {} with {} listeners.", name, channel.localAddress(), listeners);
+            } else {
+                log.info("HTTP server '{}' started at {}.", name, channel.localAddress());
+            }
 
             return this;
         } catch (Exception e) {
             running.set(false);
+            closeChannels();
+            EventLoopMonitor eventLoopMonitor = this.eventLoopMonitor;
+            if (eventLoopMonitor != null) {
+                eventLoopMonitor.close();
+            }
             if (closeGroupsWhenShutdown) {
                 closeGroups();
             }
@@ -736,7 +1094,9 @@ public class DefaultHttpServer implements HttpServer {
             throw new IllegalArgumentException("missing handlerProvider for HTTP server '" + name + "'");
         }
         if (parentGroup == null) {
-            parentGroup = TransportLibrary.getDefault().createGroup(1, new DefaultThreadFactory("http-parent"));
+            int parentThreads = isEpoll(TransportLibrary.getDefault().serverChannelClass()) ? listeners : 1;
+            parentGroup = TransportLibrary.getDefault().createGroup(parentThreads,
+                    new DefaultThreadFactory("http-parent"));
             closeGroupsWhenShutdown = true;
         }
         if (childGroup == null) {
@@ -756,6 +1116,16 @@ public class DefaultHttpServer implements HttpServer {
         }
     }
 
+    private static final boolean isEpoll(Class<? extends ServerChannel> channelClass) {
+        try {
+            // only TCP, the domain socket channels do not support SO_REUSEPORT
+            return EpollServerSocketChannel.class.isAssignableFrom(channelClass);
+        } catch (NoClassDefFoundError e) {
+            // the optional native epoll library is not in the class path
+            return false;
+        }
+    }
+
     private ChannelFuture bind(ServerBootstrap bootstrap) {
         if (address != null) {
             return bootstrap.bind(address, port);
@@ -771,11 +1141,39 @@ public class DefaultHttpServer implements HttpServer {
         return channel;
     }
 
+    /**
+     * Returns all listener channels of this server.
+     * 
+     * @return the list of the listener channels
+     * 
+     * @since 2.3
+     */
+    public List<ServerChannel> channels() {
+        return channels;
+    }
+
+    private void closeChannels() {
+        for (ServerChannel channel : channels) {
+            log.debug("Close listener: {}", channel);
+            channel.close().syncUninterruptibly();
+        }
+    }
+
     @Override
     public HttpServer shutdown() throws Exception {
         if (!running.compareAndSet(true, false)) {
             throw new IllegalStateException("The HTTP server '" + name + "' is not running!");
         }
+        closeChannels();
+        ConnectionDrainer connectionDrainer = this.connectionDrainer;
+        if (connectionDrainer != null) {
+            log.debug("Drain connections: {}", connectionDrainer);
+            long drained = connectionDrainer.drainedCount();
+            long aborted = connectionDrainer.abortedCount();
+            connectionDrainer.drain(drainTimeout);
+            log.info("HTTP server '{}' drained {} connections, {} aborted.", name,
+                    connectionDrainer.drainedCount() - drained, connectionDrainer.abortedCount() - aborted);
+        }
         HttpServerHandlerProvider handlerProvider = this.handlerProvider;
         log.debug("Close handler provider: {}", handlerProvider);
         handlerProvider.close();
@@ -783,6 +1181,11 @@ public class DefaultHttpServer implements HttpServer {
             log.debug("Close component: {}", component);
             component.onServerClosed();
         }
+        EventLoopMonitor eventLoopMonitor = this.eventLoopMonitor;
+        if (eventLoopMonitor != null) {
+            log.debug("Close event loop monitor: {}", eventLoopMonitor);
+            eventLoopMonitor.close();
+        }
         if (closeGroupsWhenShutdown) {
             closeGroups();
         }
@@ -1,24 +1,43 @@
 package com.github.fmjsjx.libnetty.http.server;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import com.github.fmjsjx.libnetty.handler.ssl.SslContextProvider;
 import com.github.fmjsjx.libnetty.http.HttpContentCompressorFactory;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpContentDecompressor;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
 import io.netty.handler.codec.http.cors.CorsConfig;
 import io.netty.handler.codec.http.cors.CorsHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler.PriorKnowledgeUpgradeEvent;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.AsciiString;
 
 /**
  * The default implementation of {@link ChannelInitializer} for HTTP server.
@@ -31,6 +50,7 @@ class DefaultHttpServerChannelInitializer extends ChannelInitializer<Channel> {
 
     private final int timeoutSeconds;
     private final int maxContentLength;
+    private final int maxPipelinedRequests;
 
     private final Optional<CorsConfig> corsConfig;
 
@@ -43,13 +63,25 @@ class DefaultHttpServerChannelInitializer extends ChannelInitializer<Channel> {
     private final HttpServerHandlerProvider handlerProvider;
 
     private final HttpRequestContextDecoder contextDecoder;
+    private final Map<Class<?>, Object> components;
+    private final Consumer<HttpHeaders> addHeaders;
 
-    DefaultHttpServerChannelInitializer(int timeoutSeconds, int maxContentLength, CorsConfig corsConfig,
-            SslContextProvider sslContextProvider, HttpContentCompressorFactory httpContentCompressorFactory,
-            HttpServerHandlerProvider handlerProvider, Map<Class<?>, Object> components,
-            Consumer<HttpHeaders> addHeaders) {
+    private final Predicate<HttpRequest> streamingRequestPredicate;
+
+    private final ConnectionDrainer connectionDrainer;
+
+    private final boolean http2Enabled;
+    private final Http2StreamFrameToHttpObjectCodec http2StreamCodec = new Http2StreamFrameToHttpObjectCodec(true);
+    private final Http2StreamInitializer http2StreamInitializer = new Http2StreamInitializer();
+
+    DefaultHttpServerChannelInitializer(int timeoutSeconds, int maxContentLength, int maxPipelinedRequests,
+            CorsConfig corsConfig, SslContextProvider sslContextProvider,
+            HttpContentCompressorFactory httpContentCompressorFactory, HttpServerHandlerProvider handlerProvider,
+            Map<Class<?>, Object> components, Consumer<HttpHeaders> addHeaders, boolean http2Enabled,
+            Predicate<HttpRequest> streamingRequestPredicate, ConnectionDrainer connectionDrainer) {
         this.timeoutSeconds = timeoutSeconds;
         this.maxContentLength = maxContentLength;
+        this.maxPipelinedRequests = maxPipelinedRequests;
         this.corsConfig = Optional.ofNullable(corsConfig);
         this.sslEnabled = sslContextProvider != null;
         this.sslContextProvider = sslContextProvider;
@@ -57,11 +89,20 @@ class DefaultHttpServerChannelInitializer extends ChannelInitializer<Channel> {
         this.httpContentCompressorFactory = httpContentCompressorFactory;
         this.handlerProvider = handlerProvider;
         this.contextDecoder = new HttpRequestContextDecoder(components, addHeaders);
+        this.components = components;
+        this.addHeaders = addHeaders;
+        this.http2Enabled = http2Enabled;
+        this.streamingRequestPredicate = streamingRequestPredicate;
+        this.connectionDrainer = connectionDrainer;
     }
 
     @Override
     protected void initChannel(Channel ch) throws Exception {
         ChannelPipeline pipeline = ch.pipeline();
+        ConnectionDrainer connectionDrainer = this.connectionDrainer;
+        if (connectionDrainer != null) {
+            connectionDrainer.register(ch);
+        }
         int timeoutSeconds = this.timeoutSeconds;
         if (timeoutSeconds > 0) {
             pipeline.addLast(new ReadTimeoutHandler(timeoutSeconds));
@@ -69,21 +110,202 @@ class DefaultHttpServerChannelInitializer extends ChannelInitializer<Channel> {
         if (sslEnabled) {
             SslContext sslContext = sslContextProvider.get();
             pipeline.addLast(sslContext.newHandler(ch.alloc()));
+            if (http2Enabled) {
+                // protocol will be negotiated by ALPN
+                pipeline.addLast(new Http2OrHttpNegotiationHandler());
+                return;
+            }
+            pipeline.addLast(new HttpServerCodec());
+        } else if (http2Enabled) {
+            // support both h2c prior knowledge and HTTP/1.1 upgrade
+            HttpServerCodec codec = new HttpServerCodec();
+            HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(codec, protocol -> {
+                if (AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+                    return new Http2UpgradeCodec();
+                }
+                return null;
+            }, maxContentLength);
+            pipeline.addLast(new CleartextHttp2ServerUpgradeHandler(codec, upgradeHandler, new Http2Installer()));
+            pipeline.addLast(new Http2UpgradeListener());
+        } else {
+            pipeline.addLast(new HttpServerCodec());
+        }
+        addHttpHandlers(pipeline, false);
+    }
+
+    private void addHttpHandlers(ChannelPipeline pipeline, boolean http2Stream) {
+        if (connectionDrainer != null) {
+            pipeline.addLast(connectionDrainer.handler(http2Stream));
         }
-        pipeline.addLast(new HttpServerCodec());
         if (autoCompressionEnabled) {
             pipeline.addLast(httpContentCompressorFactory.create());
         }
         pipeline.addLast(new HttpContentDecompressor());
-        pipeline.addLast(new HttpObjectAggregator(maxContentLength));
-        pipeline.addLast(AutoReadNextHandler.getInstance());
+        Predicate<HttpRequest> streamingRequestPredicate = this.streamingRequestPredicate;
+        if (streamingRequestPredicate == null) {
+            pipeline.addLast(new HttpObjectAggregator(maxContentLength));
+        } else {
+            pipeline.addLast(new StreamingHttpObjectAggregator(maxContentLength, streamingRequestPredicate));
+        }
+        if (!http2Stream) {
+            pipeline.addLast(AutoReadNextHandler.getInstance());
+        }
         if (sslEnabled) {
             pipeline.addLast(HstsHandler.getInstance());
         }
         corsConfig.map(CorsHandler::new).ifPresent(pipeline::addLast);
         pipeline.addLast(new ChunkedWriteHandler());
+        if (streamingRequestPredicate != null) {
+            pipeline.addLast(new StreamingRequestDecoder(components, addHeaders));
+        }
         pipeline.addLast(contextDecoder);
+        if (!http2Stream && maxPipelinedRequests > 1) {
+            pipeline.addLast(new HttpPipeliningHandler(maxPipelinedRequests));
+        }
         pipeline.addLast(handlerProvider.get());
     }
 
+    private Http2FrameCodec newHttp2FrameCodec() {
+        return Http2FrameCodecBuilder.forServer().build();
+    }
+
+    private Http2MultiplexHandler newHttp2MultiplexHandler() {
+        return new Http2MultiplexHandler(http2StreamInitializer);
+    }
+
+    private void installHttp2(ChannelHandlerContext ctx) {
+        ChannelPipeline pipeline = ctx.pipeline();
+        Http2FrameCodec frameCodec = newHttp2FrameCodec();
+        pipeline.addAfter(ctx.name(), null, frameCodec);
+        pipeline.addAfter(pipeline.context(frameCodec).name(), null, newHttp2MultiplexHandler());
+        // HTTP/2 connections must be read continuously, streams are flow-controlled by
+        // the HTTP/2 codec itself
+        ctx.channel().config().setAutoRead(true);
+    }
+
+    private static void removeHttp1Handlers(ChannelPipeline pipeline, ChannelHandler lastHttp2Handler) {
+        for (ChannelHandler last = pipeline.last(); last != lastHttp2Handler; last = pipeline.last()) {
+            pipeline.removeLast();
+        }
+        // HTTP/2 connections must be read continuously
+        pipeline.channel().config().setAutoRead(true);
+    }
+
+    /**
+     * Maps each HTTP/2 stream onto the same handlers as HTTP/1.x, so that
+     * {@link HttpRequestContext}s are created as usual.
+     */
+    private final class Http2StreamInitializer extends ChannelInitializer<Channel> {
+
+        @Override
+        protected void initChannel(Channel ch) throws Exception {
+            ChannelPipeline pipeline = ch.pipeline();
+            pipeline.addLast(http2StreamCodec);
+            addHttpHandlers(pipeline, true);
+        }
+
+    }
+
+    /**
+     * Installs the HTTP/2 handlers or the HTTP/1.1 handlers by the protocol
+     * negotiated by ALPN.
+     */
+    private final class Http2OrHttpNegotiationHandler extends ApplicationProtocolNegotiationHandler {
+
+        private Http2OrHttpNegotiationHandler() {
+            super(ApplicationProtocolNames.HTTP_1_1);
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            // AUTO_READ is disabled, so read for the TLS handshake manually
+            ctx.read();
+            super.channelActive(ctx);
+        }
+
+        @Override
+        protected void configurePipeline(ChannelHandlerContext ctx, String protocol) throws Exception {
+            if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                installHttp2(ctx);
+                return;
+            }
+            if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+                ChannelPipeline pipeline = ctx.pipeline();
+                pipeline.addLast(new HttpServerCodec());
+                addHttpHandlers(pipeline, false);
+                // handlers are added after the channel is active, so read the first request
+                // manually
+                ctx.read();
+                return;
+            }
+            throw new IllegalStateException("unknown protocol: " + protocol);
+        }
+
+    }
+
+    /**
+     * Installs the HTTP/2 handlers when the h2c connection preface has been
+     * received.
+     */
+    private final class Http2Installer extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+            installHttp2(ctx);
+            ctx.pipeline().remove(this);
+        }
+
+    }
+
+    /**
+     * Upgrades the HTTP/1.1 connection to HTTP/2 and removes the HTTP/1.1
+     * handlers.
+     * <p>
+     * The {@link HttpServerUpgradeHandler.UpgradeEvent} is consumed by the
+     * {@link Http2FrameCodec}, so the HTTP/1.1 handlers must be removed here
+     * rather than by an event listener.
+     */
+    private final class Http2UpgradeCodec implements HttpServerUpgradeHandler.UpgradeCodec {
+
+        private final Http2MultiplexHandler multiplexHandler = newHttp2MultiplexHandler();
+        private final Http2ServerUpgradeCodec delegate = new Http2ServerUpgradeCodec(newHttp2FrameCodec(),
+                multiplexHandler);
+
+        @Override
+        public Collection<CharSequence> requiredUpgradeHeaders() {
+            return delegate.requiredUpgradeHeaders();
+        }
+
+        @Override
+        public boolean prepareUpgradeResponse(ChannelHandlerContext ctx, FullHttpRequest upgradeRequest,
+                HttpHeaders upgradeHeaders) {
+            return delegate.prepareUpgradeResponse(ctx, upgradeRequest, upgradeHeaders);
+        }
+
+        @Override
+        public void upgradeTo(ChannelHandlerContext ctx, FullHttpRequest upgradeRequest) {
+            delegate.upgradeTo(ctx, upgradeRequest);
+            removeHttp1Handlers(ctx.pipeline(), multiplexHandler);
+        }
+
+    }
+
+    /**
+     * Removes the HTTP/1.1 handlers after the h2c connection preface has been
+     * received.
+     */
+    private final class Http2UpgradeListener extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof PriorKnowledgeUpgradeEvent) {
+                ChannelPipeline pipeline = ctx.pipeline();
+                removeHttp1Handlers(pipeline, this);
+                pipeline.remove(this);
+            }
+            ctx.fireUserEventTriggered(evt);
+        }
+
+    }
+
 }
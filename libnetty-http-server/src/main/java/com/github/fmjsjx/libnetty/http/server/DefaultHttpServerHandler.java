@@ -42,7 +42,10 @@ class DefaultHttpServerHandler extends HttpRequestContextHandler {
 
     @Override
     protected void messageReceived(ChannelHandlerContext ctx, HttpRequestContext msg) throws Exception {
-        firstChain.doNext(msg.retain()).whenComplete((r, e) -> ReferenceCountUtil.safeRelease(msg));
+        firstChain.doNext(msg.retain()).whenComplete((r, e) -> {
+            HttpPipeliningHandler.requestCompleted(msg);
+            ReferenceCountUtil.safeRelease(msg);
+        });
     }
 
     void onServerClosed() throws MultiErrorsException, HttpRuntimeException {
@@ -0,0 +1,195 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import java.time.ZonedDateTime;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+
+import com.github.fmjsjx.libnetty.http.server.component.HttpServerComponent;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+/**
+ * An implementation of {@link HttpRequestContext} which delegates all methods
+ * to another {@link HttpRequestContext}.
+ * <p>
+ * Middlewares can extend this class and override
+ * {@link #sendResponse(FullHttpResponse, int)} to observe or transform the
+ * responses sent by the rest of the middleware chain. All the
+ * {@code simpleRespond} and {@code sendRedirect} methods end up in
+ * {@link #sendResponse(FullHttpResponse, int)}.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+public class DelegatingHttpRequestContext implements HttpRequestContext {
+
+    protected final HttpRequestContext delegate;
+
+    /**
+     * Constructs a new {@link DelegatingHttpRequestContext} with the specified
+     * delegate.
+     *
+     * @param delegate the delegated {@link HttpRequestContext}
+     */
+    public DelegatingHttpRequestContext(HttpRequestContext delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the delegated {@link HttpRequestContext}.
+     *
+     * @return the delegated {@code HttpRequestContext}
+     */
+    public HttpRequestContext delegate() {
+        return delegate;
+    }
+
+    @Override
+    public long receivedNanoTime() {
+        return delegate.receivedNanoTime();
+    }
+
+    @Override
+    public ZonedDateTime receivedTime() {
+        return delegate.receivedTime();
+    }
+
+    @Override
+    public Channel channel() {
+        return delegate.channel();
+    }
+
+    @Override
+    public ChannelFuture write(Object msg) {
+        return delegate.write(msg);
+    }
+
+    @Override
+    public ChannelFuture writeAndFlush(Object msg) {
+        return delegate.writeAndFlush(msg);
+    }
+
+    @Override
+    public String remoteAddress() {
+        return delegate.remoteAddress();
+    }
+
+    @Override
+    public FullHttpRequest request() {
+        return delegate.request();
+    }
+
+    @Override
+    public boolean isKeepAlive() {
+        return delegate.isKeepAlive();
+    }
+
+    @Override
+    public Optional<Flow.Publisher<ByteBuf>> streamingBody() {
+        return delegate.streamingBody();
+    }
+
+    @Override
+    public int contentLength() {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public Optional<CharSequence> contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public QueryStringDecoder queryStringDecoder() {
+        return delegate.queryStringDecoder();
+    }
+
+    @Override
+    public PathVariables pathVariables() {
+        return delegate.pathVariables();
+    }
+
+    @Override
+    public HttpResponder pathVariables(PathVariables pathVariables) {
+        delegate.pathVariables(pathVariables);
+        return this;
+    }
+
+    @Override
+    public <C extends HttpServerComponent> Optional<C> component(Class<? extends C> componentType) {
+        return delegate.component(componentType);
+    }
+
+    @Override
+    public <T> Optional<T> property(Object key) throws ClassCastException {
+        return delegate.property(key);
+    }
+
+    @Override
+    public <T> Optional<T> property(Object key, Class<T> type) throws ClassCastException {
+        return delegate.property(key, type);
+    }
+
+    @Override
+    public HttpResponder property(Object key, Object value) {
+        delegate.property(key, value);
+        return this;
+    }
+
+    @Override
+    public boolean hasProperty(Object key) {
+        return delegate.hasProperty(key);
+    }
+
+    @Override
+    public Stream<String> propertyKeyNames() {
+        return delegate.propertyKeyNames();
+    }
+
+    @Override
+    public HttpResponseFactory responseFactory() {
+        return delegate.responseFactory();
+    }
+
+    @Override
+    public boolean release() {
+        return delegate.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return delegate.release(decrement);
+    }
+
+    @Override
+    public CompletableFuture<HttpResult> sendResponse(FullHttpResponse response, int contentLength) {
+        return delegate.sendResponse(response, contentLength);
+    }
+
+    @Override
+    public CompletableFuture<HttpResult> sendStreamingResponse(HttpResponse response,
+            Flow.Publisher<ByteBuf> publisher) {
+        return delegate.sendStreamingResponse(response, publisher);
+    }
+
+    @Override
+    public CompletableFuture<HttpResult> sendStreamingResponse(HttpResponse response, Iterator<ByteBuf> iterator) {
+        return delegate.sendStreamingResponse(response, iterator);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + delegate + ")";
+    }
+
+}
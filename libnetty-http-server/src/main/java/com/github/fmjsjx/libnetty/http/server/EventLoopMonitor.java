@@ -0,0 +1,435 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+/**
+ * Monitors the health of the event loops of {@link DefaultHttpServer}.
+ * <p>
+ * A background thread submits a probe task to each event loop periodically,
+ * and reports for each event loop:
+ * <ul>
+ * <li>the scheduling lag, the time between the probe task submitted and
+ * run</li>
+ * <li>the number of the pending tasks</li>
+ * <li>the busy ratio, the CPU time of the event loop thread divided by the
+ * wall time, if thread CPU time is supported by the JVM</li>
+ * <li>the number of the connections registered</li>
+ * </ul>
+ * If a probe task is not run longer than the blocked threshold, the event loop
+ * is considered to be blocked by a long running task. A warning with the
+ * current stack trace of the event loop thread is logged, and the stack trace
+ * is kept in {@link LoopStats#lastBlockedStackTrace()}.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ *
+ * @see DefaultHttpServer#eventLoopMonitor(EventLoopMonitor)
+ */
+public class EventLoopMonitor implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventLoopMonitor.class);
+
+    private static final AttributeKey<LoopStats> COUNTED_STATS = AttributeKey
+            .valueOf(EventLoopMonitor.class, "COUNTED_STATS");
+
+    /**
+     * The statistics of one event loop.
+     *
+     * @since 2.3
+     *
+     * @author MJ Fang
+     */
+    public static final class LoopStats {
+
+        private final String group;
+        private final int index;
+        private final EventExecutor executor;
+        private final AtomicInteger connections = new AtomicInteger();
+        private final LongAdder blockedCount = new LongAdder();
+
+        private volatile Thread thread;
+        private volatile long probeSubmittedNanos;
+        private volatile long lastLagNanos;
+        private volatile long maxLagNanos;
+        private volatile int pendingTasks;
+        private volatile double busyRatio = -1;
+        private volatile StackTraceElement[] lastBlockedStackTrace;
+
+        // only accessed by the monitor thread
+        private boolean blockedReported;
+        private long lastCpuNanos = -1;
+        private long lastWallNanos;
+
+        private final Runnable probe = this::probe;
+
+        private LoopStats(String group, int index, EventExecutor executor) {
+            this.group = group;
+            this.index = index;
+            this.executor = executor;
+        }
+
+        private void probe() {
+            thread = Thread.currentThread();
+            long lag = System.nanoTime() - probeSubmittedNanos;
+            lastLagNanos = lag;
+            if (lag > maxLagNanos) {
+                maxLagNanos = lag;
+            }
+            probeSubmittedNanos = 0;
+        }
+
+        /**
+         * Returns the name of the group, {@code "parent"} or {@code "child"}.
+         *
+         * @return the name of the group
+         */
+        public String group() {
+            return group;
+        }
+
+        /**
+         * Returns the index of the event loop in the group.
+         *
+         * @return the index of the event loop
+         */
+        public int index() {
+            return index;
+        }
+
+        /**
+         * Returns the name of the event loop thread, or {@code null} if the
+         * thread is not known yet.
+         *
+         * @return the name of the event loop thread
+         */
+        public String threadName() {
+            Thread thread = this.thread;
+            return thread == null ? null : thread.getName();
+        }
+
+        /**
+         * Returns the scheduling lag of the last probe.
+         *
+         * @return the scheduling lag of the last probe
+         */
+        public Duration schedulingLag() {
+            return Duration.ofNanos(lastLagNanos);
+        }
+
+        /**
+         * Returns the maximum scheduling lag since the monitor started.
+         *
+         * @return the maximum scheduling lag
+         */
+        public Duration maxSchedulingLag() {
+            return Duration.ofNanos(maxLagNanos);
+        }
+
+        /**
+         * Returns the number of the pending tasks at the last sample.
+         *
+         * @return the number of the pending tasks
+         */
+        public int pendingTasks() {
+            return pendingTasks;
+        }
+
+        /**
+         * Returns the ratio of the CPU time to the wall time of the event loop
+         * thread in the last sample interval. The rest is the time waiting for
+         * I/O events.
+         *
+         * @return the busy ratio, or {@code -1} if not supported
+         */
+        public double busyRatio() {
+            return busyRatio;
+        }
+
+        /**
+         * Returns the number of the connections registered to the event loop.
+         *
+         * @return the number of the connections
+         */
+        public int connections() {
+            return connections.get();
+        }
+
+        /**
+         * Returns the number of times the event loop was detected blocked.
+         *
+         * @return the number of times blocked
+         */
+        public long blockedCount() {
+            return blockedCount.sum();
+        }
+
+        /**
+         * Returns the stack trace of the event loop thread captured when it was
+         * detected blocked last time.
+         *
+         * @return the stack trace, or {@code null} if never blocked
+         */
+        public StackTraceElement[] lastBlockedStackTrace() {
+            return lastBlockedStackTrace;
+        }
+
+        @Override
+        public String toString() {
+            return "LoopStats(group=" + group + ", index=" + index + ", thread=" + threadName() + ", schedulingLag="
+                    + schedulingLag() + ", maxSchedulingLag=" + maxSchedulingLag() + ", pendingTasks=" + pendingTasks
+                    + ", busyRatio=" + busyRatio + ", connections=" + connections() + ", blockedCount="
+                    + blockedCount() + ")";
+        }
+
+    }
+
+    private final Duration probeInterval;
+    private final long blockedThresholdNanos;
+    private final ThreadMXBean threadMXBean;
+
+    // an immutable map published when started, read by the event loops
+    private volatile Map<EventExecutor, LoopStats> loops = Collections.emptyMap();
+    private volatile List<LoopStats> loopList = Collections.emptyList();
+    private ScheduledExecutorService scheduler;
+
+    private final ConnectionCounter connectionCounter = new ConnectionCounter();
+
+    /**
+     * Constructs a new {@link EventLoopMonitor} with the default probe interval
+     * {@code 100 milliseconds} and blocked threshold {@code 1 second}.
+     */
+    public EventLoopMonitor() {
+        this(Duration.ofMillis(100), Duration.ofSeconds(1));
+    }
+
+    /**
+     * Constructs a new {@link EventLoopMonitor} with the specified probe
+     * interval and blocked threshold.
+     *
+     * @param probeInterval    the interval between the probes
+     * @param blockedThreshold the time a probe task is not run after which the
+     *                         event loop is considered to be blocked
+     */
+    public EventLoopMonitor(Duration probeInterval, Duration blockedThreshold) {
+        this.probeInterval = Objects.requireNonNull(probeInterval, "probeInterval must not be null");
+        this.blockedThresholdNanos = Objects.requireNonNull(blockedThreshold, "blockedThreshold must not be null")
+                .toNanos();
+        if (probeInterval.isNegative() || probeInterval.isZero()) {
+            throw new IllegalArgumentException("probeInterval must be positive");
+        }
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        this.threadMXBean = threadMXBean.isThreadCpuTimeSupported() ? threadMXBean : null;
+    }
+
+    /**
+     * Starts monitoring the specified event loop groups.
+     *
+     * @param parentGroup the parent (acceptor) group
+     * @param childGroup  the child (client) group
+     */
+    synchronized void start(EventLoopGroup parentGroup, EventLoopGroup childGroup) {
+        if (scheduler != null) {
+            throw new IllegalStateException("EventLoopMonitor is already started");
+        }
+        Map<EventExecutor, LoopStats> loops = new IdentityHashMap<>();
+        addGroup(loops, "parent", parentGroup);
+        addGroup(loops, "child", childGroup);
+        this.loopList = Collections.unmodifiableList(new ArrayList<>(loops.values()));
+        this.loops = Collections.unmodifiableMap(loops);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("event-loop-monitor", true));
+        long interval = probeInterval.toNanos();
+        scheduler.scheduleWithFixedDelay(this::sample, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    private static void addGroup(Map<EventExecutor, LoopStats> loops, String group, EventLoopGroup eventLoopGroup) {
+        int index = 0;
+        for (EventExecutor executor : eventLoopGroup) {
+            if (!loops.containsKey(executor)) {
+                loops.put(executor, new LoopStats(group, index, executor));
+            }
+            index++;
+        }
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        for (LoopStats stats : loopList) {
+            try {
+                sample(stats, now);
+            } catch (Exception e) {
+                logger.warn("Sample event loop {} failed", stats, e);
+            }
+        }
+    }
+
+    private void sample(LoopStats stats, long now) {
+        EventExecutor executor = stats.executor;
+        if (executor.isShuttingDown()) {
+            return;
+        }
+        if (executor instanceof SingleThreadEventExecutor) {
+            stats.pendingTasks = ((SingleThreadEventExecutor) executor).pendingTasks();
+        }
+        Thread thread = stats.thread;
+        ThreadMXBean threadMXBean = this.threadMXBean;
+        if (thread != null && threadMXBean != null) {
+            long cpuNanos = threadMXBean.getThreadCpuTime(thread.getId());
+            if (cpuNanos >= 0 && stats.lastCpuNanos >= 0 && now > stats.lastWallNanos) {
+                stats.busyRatio = Math.min(1.0, (double) (cpuNanos - stats.lastCpuNanos) / (now - stats.lastWallNanos));
+            }
+            stats.lastCpuNanos = cpuNanos;
+            stats.lastWallNanos = now;
+        }
+        long submitted = stats.probeSubmittedNanos;
+        if (submitted == 0) {
+            stats.blockedReported = false;
+            stats.probeSubmittedNanos = now;
+            executor.execute(stats.probe);
+        } else if (!stats.blockedReported && now - submitted >= blockedThresholdNanos) {
+            stats.blockedReported = true;
+            stats.blockedCount.increment();
+            if (thread != null) {
+                StackTraceElement[] stackTrace = thread.getStackTrace();
+                stats.lastBlockedStackTrace = stackTrace;
+                BlockedStackTrace trace = new BlockedStackTrace(thread.getName(), stackTrace);
+                logger.warn("Event loop {} is blocked for more than {} ms", thread.getName(),
+                        TimeUnit.NANOSECONDS.toMillis(now - submitted), trace);
+            } else {
+                logger.warn("Event loop {}-{} is blocked for more than {} ms", stats.group, stats.index,
+                        TimeUnit.NANOSECONDS.toMillis(now - submitted));
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics of all the monitored event loops.
+     *
+     * @return the statistics of the event loops
+     */
+    public List<LoopStats> loops() {
+        return loopList;
+    }
+
+    /**
+     * Returns the total number of times the event loops were detected blocked.
+     *
+     * @return the total number of times blocked
+     */
+    public long blockedCount() {
+        return loopList.stream().mapToLong(LoopStats::blockedCount).sum();
+    }
+
+    /**
+     * Returns the {@link ChannelHandler} should be added to the server channel
+     * pipeline to count the connections of each event loop.
+     *
+     * @return the {@code ChannelHandler}
+     */
+    ChannelHandler connectionCounter() {
+        return connectionCounter;
+    }
+
+    /**
+     * Stops monitoring.
+     */
+    @Override
+    public synchronized void close() {
+        ScheduledExecutorService scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EventLoopMonitor(probeInterval=" + probeInterval + ", blockedThreshold="
+                + Duration.ofNanos(blockedThresholdNanos) + ", loops=" + loopList.size() + ")";
+    }
+
+    /**
+     * Counts the child channels accepted by the server channel.
+     */
+    @Sharable
+    private final class ConnectionCounter extends ChannelInboundHandlerAdapter {
+
+        private final ChannelInboundHandlerAdapter childCounter = new ChildCounter();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof Channel) {
+                ((Channel) msg).pipeline().addFirst(childCounter);
+            }
+            ctx.fireChannelRead(msg);
+        }
+
+    }
+
+    @Sharable
+    private final class ChildCounter extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+            LoopStats stats = loops.get(ctx.channel().eventLoop());
+            if (stats != null) {
+                stats.connections.incrementAndGet();
+                ctx.channel().attr(COUNTED_STATS).set(stats);
+            }
+            ctx.fireChannelRegistered();
+        }
+
+        @Override
+        public void channelUnregistered(ChannelHandlerContext ctx) throws Exception {
+            // only the channels counted when registered are decreased
+            LoopStats stats = ctx.channel().attr(COUNTED_STATS).getAndSet(null);
+            if (stats != null) {
+                stats.connections.decrementAndGet();
+            }
+            ctx.fireChannelUnregistered();
+        }
+
+    }
+
+    /**
+     * Carries the stack trace of a blocked event loop thread for logging.
+     */
+    private static final class BlockedStackTrace extends Throwable {
+
+        private static final long serialVersionUID = 1L;
+
+        private BlockedStackTrace(String threadName, StackTraceElement[] stackTrace) {
+            super("Stack trace of " + threadName, null, false, true);
+            setStackTrace(stackTrace);
+        }
+
+    }
+
+}
@@ -0,0 +1,272 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.PendingWriteQueue;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * A special {@link ChannelDuplexHandler} which supports bounded HTTP/1.1
+ * pipelining.
+ * <p>
+ * Up to {@code maxPipelinedRequests} requests will be read ahead and dispatched
+ * concurrently, and the responses are always written in the order of the
+ * requests. Flushes issued during a read batch are consolidated into one flush
+ * at the end of the batch.
+ * <p>
+ * Messages written by {@link HttpRequestContext#sendResponse} or written
+ * synchronously while the request is being dispatched are ordered
+ * automatically. Other messages are written through directly.
+ * <p>
+ * A response is completed when its last message is written, or when the
+ * {@link HttpResult} of the request is completed, so that a request responded
+ * without a last message never stalls the responses after it.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+class HttpPipeliningHandler extends ChannelDuplexHandler {
+
+    /**
+     * Wraps the specified message with the sequence of the request it responds.
+     *
+     * @param sequence the sequence of the request
+     * @param msg      the message to be written
+     * @return the wrapped message
+     */
+    static final Object sequenced(long sequence, Object msg) {
+        return new SequencedMessage(sequence, msg);
+    }
+
+    /**
+     * Notifies the {@link HttpPipeliningHandler} of the channel that the
+     * {@link HttpResult} of the specified request is completed.
+     * 
+     * @param requestContext the request context
+     */
+    static final void requestCompleted(HttpRequestContext requestContext) {
+        if (!(requestContext instanceof DefaultHttpRequestContext)) {
+            return;
+        }
+        long sequence = ((DefaultHttpRequestContext) requestContext).sequence();
+        if (sequence < 0) {
+            return;
+        }
+        Channel channel = requestContext.channel();
+        ChannelHandlerContext ctx = channel.pipeline().context(HttpPipeliningHandler.class);
+        if (ctx == null) {
+            return;
+        }
+        HttpPipeliningHandler handler = (HttpPipeliningHandler) ctx.handler();
+        if (ctx.executor().inEventLoop()) {
+            handler.requestCompleted(ctx, sequence);
+        } else {
+            ctx.executor().execute(() -> handler.requestCompleted(ctx, sequence));
+        }
+    }
+
+    private static final boolean isLast(Object msg) {
+        return msg instanceof LastHttpContent || msg instanceof HttpChunkedInput;
+    }
+
+    private final int maxPipelinedRequests;
+
+    private final ArrayDeque<DefaultHttpRequestContext> waitingRequests = new ArrayDeque<>();
+    private final Map<Long, PendingResponse> pendingResponses = new HashMap<>();
+
+    private long nextSequence;
+    private long writingSequence;
+    private long dispatchingSequence = -1;
+    private int inflight;
+    private boolean reading;
+    private boolean flushPending;
+    private boolean closing;
+
+    HttpPipeliningHandler(int maxPipelinedRequests) {
+        this.maxPipelinedRequests = maxPipelinedRequests;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        reading = true;
+        if (!(msg instanceof DefaultHttpRequestContext)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        DefaultHttpRequestContext requestContext = (DefaultHttpRequestContext) msg;
+        if (closing) {
+            // connection will be closed after the previous response, just discard it
+            ReferenceCountUtil.safeRelease(requestContext);
+            return;
+        }
+        requestContext.sequence(nextSequence++);
+        if (!requestContext.isKeepAlive()) {
+            closing = true;
+        }
+        if (inflight < maxPipelinedRequests) {
+            dispatch(ctx, requestContext);
+        } else {
+            waitingRequests.add(requestContext);
+        }
+        readIfAvailable(ctx);
+    }
+
+    private void dispatch(ChannelHandlerContext ctx, DefaultHttpRequestContext requestContext) {
+        inflight++;
+        long previous = dispatchingSequence;
+        dispatchingSequence = requestContext.sequence();
+        try {
+            ctx.fireChannelRead(requestContext);
+        } finally {
+            dispatchingSequence = previous;
+        }
+    }
+
+    private void readIfAvailable(ChannelHandlerContext ctx) {
+        if (!closing && inflight + waitingRequests.size() < maxPipelinedRequests) {
+            ctx.read();
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        reading = false;
+        if (flushPending) {
+            flushPending = false;
+            ctx.flush();
+        }
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        for (DefaultHttpRequestContext requestContext; (requestContext = waitingRequests.poll()) != null;) {
+            ReferenceCountUtil.safeRelease(requestContext);
+        }
+        if (!pendingResponses.isEmpty()) {
+            ClosedChannelException cause = new ClosedChannelException();
+            for (PendingResponse pending : pendingResponses.values()) {
+                pending.queue.removeAndFailAll(cause);
+            }
+            pendingResponses.clear();
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void read(ChannelHandlerContext ctx) throws Exception {
+        // reading is driven by this handler, so the pipelining depth is never exceeded
+        readIfAvailable(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        long sequence;
+        if (msg instanceof SequencedMessage) {
+            SequencedMessage sequenced = (SequencedMessage) msg;
+            sequence = sequenced.sequence;
+            msg = sequenced.message;
+        } else if (dispatchingSequence >= 0) {
+            sequence = dispatchingSequence;
+        } else {
+            ctx.write(msg, promise);
+            return;
+        }
+        if (sequence == writingSequence) {
+            ctx.write(msg, promise);
+            if (isLast(msg)) {
+                responseCompleted(ctx);
+            }
+        } else if (sequence > writingSequence) {
+            pendingResponses.computeIfAbsent(sequence, k -> new PendingResponse(ctx)).add(msg, promise);
+        } else {
+            ctx.write(msg, promise);
+        }
+    }
+
+    private void requestCompleted(ChannelHandlerContext ctx, long sequence) {
+        if (sequence == writingSequence) {
+            // completed without a last message
+            responseCompleted(ctx);
+        } else if (sequence > writingSequence) {
+            pendingResponses.computeIfAbsent(sequence, k -> new PendingResponse(ctx)).completed = true;
+        }
+    }
+
+    private void responseCompleted(ChannelHandlerContext ctx) {
+        boolean released = false;
+        for (;;) {
+            inflight--;
+            PendingResponse pending = pendingResponses.remove(++writingSequence);
+            if (pending == null) {
+                break;
+            }
+            pending.queue.removeAndWriteAll();
+            released = true;
+            if (!pending.completed) {
+                break;
+            }
+        }
+        if (released) {
+            flush0(ctx);
+        }
+        while (inflight < maxPipelinedRequests && !waitingRequests.isEmpty()) {
+            dispatch(ctx, waitingRequests.poll());
+        }
+        readIfAvailable(ctx);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        flush0(ctx);
+    }
+
+    private void flush0(ChannelHandlerContext ctx) {
+        if (reading) {
+            flushPending = true;
+        } else {
+            ctx.flush();
+        }
+    }
+
+    private static final class SequencedMessage {
+
+        private final long sequence;
+        private final Object message;
+
+        private SequencedMessage(long sequence, Object message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+
+    }
+
+    private static final class PendingResponse {
+
+        private final PendingWriteQueue queue;
+        private boolean completed;
+
+        private PendingResponse(ChannelHandlerContext ctx) {
+            this.queue = new PendingWriteQueue(ctx);
+        }
+
+        private void add(Object msg, ChannelPromise promise) {
+            queue.add(msg, promise);
+            if (isLast(msg)) {
+                completed = true;
+            }
+        }
+
+    }
+
+}
@@ -11,12 +11,15 @@ import java.nio.charset.Charset;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
 import com.github.fmjsjx.libnetty.http.HttpCommonUtil;
@@ -104,6 +107,38 @@ public interface HttpRequestContext extends ReferenceCounted, HttpResponder {
      */
     Channel channel();
 
+    /**
+     * Writes the specified message of the response of this request via the
+     * {@link Channel}.
+     * <p>
+     * Unlike writing via the {@link #channel()} directly, the messages written by
+     * this method are always written in the order of the requests on a pipelined
+     * HTTP/1.1 connection, even if they are written asynchronously.
+     * 
+     * @param msg the message to be written
+     * @return the {@code ChannelFuture}
+     * 
+     * @since 2.3
+     */
+    default ChannelFuture write(Object msg) {
+        return channel().write(msg);
+    }
+
+    /**
+     * Writes the specified message of the response of this request via the
+     * {@link Channel} and flushes.
+     * 
+     * @param msg the message to be written
+     * @return the {@code ChannelFuture}
+     * 
+     * @see #write(Object)
+     * 
+     * @since 2.3
+     */
+    default ChannelFuture writeAndFlush(Object msg) {
+        return channel().writeAndFlush(msg);
+    }
+
     /**
      * Return the {@link EventLoop} this {@link Channel} was registered to.
      * 
@@ -178,6 +213,27 @@ public interface HttpRequestContext extends ReferenceCounted, HttpResponder {
         return request().content();
     }
 
+    /**
+     * Returns the streaming content body of the HTTP request.
+     * <p>
+     * The {@link Flow.Publisher} is present only when the request is selected as
+     * a streaming request by the server. In that case, the {@link #request()}
+     * only contains the headers with an empty content, and the body chunks are
+     * read from the connection on demand of the subscriber. Each {@link ByteBuf}
+     * published must be released by the subscriber.
+     * <p>
+     * Only one subscriber is allowed. The remaining body will be discarded
+     * automatically if this context is released before it is completely
+     * consumed.
+     * 
+     * @return an {@code Optional<Flow.Publisher<ByteBuf>>}
+     * 
+     * @since 2.3
+     */
+    default Optional<Flow.Publisher<ByteBuf>> streamingBody() {
+        return Optional.empty();
+    }
+
     /**
      * Returns the length of the HTTP request body content.
      * 
@@ -551,6 +607,17 @@ public interface HttpRequestContext extends ReferenceCounted, HttpResponder {
         return sendResponse(response, response.content().readableBytes());
     }
 
+    @Override
+    default CompletableFuture<HttpResult> sendStreamingResponse(HttpResponse response,
+            Flow.Publisher<ByteBuf> publisher) {
+        return StreamingResponses.send(this, response, publisher, UnaryOperator.identity());
+    }
+
+    @Override
+    default CompletableFuture<HttpResult> sendStreamingResponse(HttpResponse response, Iterator<ByteBuf> iterator) {
+        return StreamingResponses.send(this, response, iterator, UnaryOperator.identity());
+    }
+
     @Override
     default CompletableFuture<HttpResult> sendRedirect(CharSequence location) {
         return sendRedirect(location, null);
@@ -1,6 +1,8 @@
 package com.github.fmjsjx.libnetty.http.server;
 
+import java.util.Iterator;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 import java.util.function.Consumer;
 
 import com.github.fmjsjx.libnetty.http.server.exception.HttpFailureException;
@@ -116,6 +118,43 @@ public interface HttpResponder {
      */
     CompletableFuture<HttpResult> sendResponse(FullHttpResponse response);
 
+    /**
+     * Send streaming HTTP response to client and returns the {@link HttpResult}
+     * asynchronously.
+     * <p>
+     * The headers are sent first, and then the content chunks published by the
+     * specified {@link Flow.Publisher} are sent, with respect to the writability
+     * of the channel. The {@code Transfer-Encoding: chunked} header will be set
+     * automatically if the {@code Content-Length} header is absent.
+     * 
+     * @param response  the HttpResponse
+     * @param publisher the {@code Publisher} of the content chunks
+     * @return a {@code CompletableFuture<HttpResult>}
+     * 
+     * @since 2.3
+     */
+    CompletableFuture<HttpResult> sendStreamingResponse(HttpResponse response, Flow.Publisher<ByteBuf> publisher);
+
+    /**
+     * Send streaming HTTP response to client and returns the {@link HttpResult}
+     * asynchronously.
+     * <p>
+     * The headers are sent first, and then the content chunks returned by the
+     * specified {@link Iterator} are sent, with respect to the writability of the
+     * channel. The {@code Transfer-Encoding: chunked} header will be set
+     * automatically if the {@code Content-Length} header is absent.
+     * <p>
+     * The {@code Iterator} is consumed in the event loop, so it must not block.
+     * It will be closed at the end if it is also an {@link AutoCloseable}.
+     * 
+     * @param response the HttpResponse
+     * @param iterator the {@code Iterator} of the content chunks
+     * @return a {@code CompletableFuture<HttpResult>}
+     * 
+     * @since 2.3
+     */
+    CompletableFuture<HttpResult> sendStreamingResponse(HttpResponse response, Iterator<ByteBuf> iterator);
+
     /**
      * Send HTTP response with {@code "302 Found"} to client and returns the
      * {@link HttpResult} asynchronously.
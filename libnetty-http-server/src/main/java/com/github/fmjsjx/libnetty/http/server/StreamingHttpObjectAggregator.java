@@ -0,0 +1,42 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import java.util.function.Predicate;
+
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
+
+/**
+ * A special {@link HttpObjectAggregator} which skips the aggregation of the
+ * streaming requests.
+ * 
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+class StreamingHttpObjectAggregator extends HttpObjectAggregator {
+
+    private final Predicate<? super HttpRequest> streamingPredicate;
+
+    private boolean streaming;
+
+    StreamingHttpObjectAggregator(int maxContentLength, Predicate<? super HttpRequest> streamingPredicate) {
+        super(maxContentLength);
+        this.streamingPredicate = streamingPredicate;
+    }
+
+    @Override
+    public boolean acceptInboundMessage(Object msg) throws Exception {
+        if (msg instanceof HttpRequest) {
+            streaming = streamingPredicate.test((HttpRequest) msg);
+        }
+        if (streaming) {
+            if (msg instanceof LastHttpContent) {
+                streaming = false;
+            }
+            return false;
+        }
+        return super.acceptInboundMessage(msg);
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Flow;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * The {@link Flow.Publisher} of the streaming HTTP request body.
+ * <p>
+ * All states are only accessed in the event loop, and the connection is only
+ * read when the subscriber has outstanding demand.
+ * 
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+class StreamingRequestBody implements Flow.Publisher<ByteBuf> {
+
+    private final ChannelHandlerContext ctx;
+    private final HttpVersion version;
+    private boolean continueExpected;
+
+    private final ArrayDeque<ByteBuf> buffered = new ArrayDeque<>();
+    private Flow.Subscriber<? super ByteBuf> subscriber;
+    private long demand;
+    private boolean completed;
+    private Throwable cause;
+    private boolean terminated;
+    private boolean discarding;
+    private boolean draining;
+
+    StreamingRequestBody(ChannelHandlerContext ctx, HttpVersion version, boolean continueExpected) {
+        this.ctx = ctx;
+        this.version = version;
+        this.continueExpected = continueExpected;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuf> subscriber) {
+        if (ctx.executor().inEventLoop()) {
+            subscribe0(subscriber);
+        } else {
+            ctx.executor().execute(() -> subscribe0(subscriber));
+        }
+    }
+
+    private void subscribe0(Flow.Subscriber<? super ByteBuf> subscriber) {
+        if (this.subscriber != null || discarding) {
+            subscriber.onSubscribe(NoopSubscription.INSTANCE);
+            subscriber.onError(new IllegalStateException("streaming request body can only be subscribed once"));
+            return;
+        }
+        this.subscriber = subscriber;
+        subscriber.onSubscribe(new SubscriptionImpl());
+        drain();
+    }
+
+    private void request0(long n) {
+        if (terminated) {
+            return;
+        }
+        if (n <= 0) {
+            cancel0();
+            subscriber.onError(new IllegalArgumentException("n must be positive"));
+            return;
+        }
+        long demand = this.demand + n;
+        this.demand = demand < 0 ? Long.MAX_VALUE : demand;
+        drain();
+    }
+
+    private void cancel0() {
+        terminated = true;
+        discard();
+    }
+
+    /**
+     * Called when an {@link HttpContent} of this body is received.
+     * 
+     * @param content the {@code HttpContent}
+     */
+    void onContent(HttpContent content) {
+        if (content instanceof LastHttpContent) {
+            completed = true;
+        }
+        ByteBuf buf = content.content();
+        if (discarding || !buf.isReadable()) {
+            content.release();
+        } else {
+            buffered.add(buf);
+        }
+        if (discarding) {
+            if (!completed) {
+                ctx.read();
+            }
+        } else {
+            drain();
+        }
+    }
+
+    /**
+     * Called when the connection is closed before this body is completed.
+     * 
+     * @param cause the cause
+     */
+    void onError(Throwable cause) {
+        completed = true;
+        this.cause = cause;
+        drain();
+    }
+
+    /**
+     * Discards the remaining body.
+     */
+    void discard() {
+        if (discarding) {
+            return;
+        }
+        discarding = true;
+        for (ByteBuf buf; (buf = buffered.poll()) != null;) {
+            ReferenceCountUtil.safeRelease(buf);
+        }
+        if (!completed) {
+            // drain the body from the connection so that it can be kept alive
+            ctx.read();
+        }
+    }
+
+    private void drain() {
+        if (draining || terminated || subscriber == null) {
+            return;
+        }
+        draining = true;
+        try {
+            Flow.Subscriber<? super ByteBuf> subscriber = this.subscriber;
+            ArrayDeque<ByteBuf> buffered = this.buffered;
+            while (demand > 0 && !buffered.isEmpty()) {
+                demand--;
+                subscriber.onNext(buffered.poll());
+                if (terminated) {
+                    return;
+                }
+            }
+            if (buffered.isEmpty()) {
+                if (cause != null) {
+                    terminated = true;
+                    subscriber.onError(cause);
+                } else if (completed) {
+                    terminated = true;
+                    subscriber.onComplete();
+                } else if (demand > 0) {
+                    if (continueExpected) {
+                        continueExpected = false;
+                        ctx.writeAndFlush(new DefaultFullHttpResponse(version, CONTINUE, Unpooled.EMPTY_BUFFER));
+                    }
+                    ctx.read();
+                }
+            }
+        } finally {
+            draining = false;
+        }
+    }
+
+    private final class SubscriptionImpl implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            if (ctx.executor().inEventLoop()) {
+                request0(n);
+            } else {
+                ctx.executor().execute(() -> request0(n));
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (ctx.executor().inEventLoop()) {
+                cancel0();
+            } else {
+                ctx.executor().execute(StreamingRequestBody.this::cancel0);
+            }
+        }
+
+    }
+
+    private static final class NoopSubscription implements Flow.Subscription {
+
+        private static final NoopSubscription INSTANCE = new NoopSubscription();
+
+        @Override
+        public void request(long n) {
+            // do nothing
+        }
+
+        @Override
+        public void cancel() {
+            // do nothing
+        }
+
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+
+/**
+ * A special {@link ChannelDuplexHandler} which decodes the streaming requests,
+ * that were not aggregated by {@link StreamingHttpObjectAggregator}, to
+ * {@link HttpRequestContext}s.
+ * <p>
+ * While a streaming request body is in progress, the connection is only read
+ * on demand of the subscriber of the body. Auto read, which is always enabled
+ * on HTTP/2 stream channels, is suspended until the body is completed, so that
+ * the flow-control window is only refilled on demand.
+ * 
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+class StreamingRequestDecoder extends ChannelDuplexHandler {
+
+    private final Map<Class<?>, Object> components;
+    private final Consumer<HttpHeaders> addHeaders;
+
+    private StreamingRequestBody current;
+    private FullHttpRequest currentRequest;
+    private boolean readPending;
+    private boolean autoReadSuspended;
+
+    StreamingRequestDecoder(Map<Class<?>, Object> components, Consumer<HttpHeaders> addHeaders) {
+        this.components = components;
+        this.addHeaders = addHeaders;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpRequest && !(msg instanceof FullHttpRequest)) {
+            HttpRequest head = (HttpRequest) msg;
+            FullHttpRequest request = new DefaultFullHttpRequest(head.protocolVersion(), head.method(), head.uri(),
+                    Unpooled.buffer(0), head.headers(), new DefaultHttpHeaders());
+            request.setDecoderResult(head.decoderResult());
+            if (head.decoderResult().isFailure()) {
+                // let HttpRequestContextDecoder respond 400 Bad Request
+                ctx.fireChannelRead(request);
+                return;
+            }
+            StreamingRequestBody body = new StreamingRequestBody(ctx, head.protocolVersion(),
+                    HttpUtil.is100ContinueExpected(head));
+            current = body;
+            currentRequest = request;
+            ChannelConfig config = ctx.channel().config();
+            if (config.isAutoRead()) {
+                config.setAutoRead(false);
+                autoReadSuspended = true;
+            }
+            ctx.fireChannelRead(new DefaultHttpRequestContext(ctx.channel(), request, components, addHeaders, body));
+        } else if (msg instanceof HttpContent && current != null) {
+            StreamingRequestBody body = current;
+            if (msg instanceof LastHttpContent) {
+                currentRequest.trailingHeaders().set(((LastHttpContent) msg).trailingHeaders());
+                current = null;
+                currentRequest = null;
+            }
+            body.onContent((HttpContent) msg);
+            if (current == null) {
+                if (autoReadSuspended) {
+                    autoReadSuspended = false;
+                    readPending = false;
+                    // resume auto read, the next read is triggered by the config
+                    ctx.channel().config().setAutoRead(true);
+                } else if (readPending) {
+                    readPending = false;
+                    ctx.read();
+                }
+            }
+        } else {
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        StreamingRequestBody body = current;
+        if (body != null) {
+            current = null;
+            currentRequest = null;
+            body.onError(new ClosedChannelException());
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void read(ChannelHandlerContext ctx) throws Exception {
+        if (current != null) {
+            // reading is driven by the subscriber of the streaming body
+            readPending = true;
+        } else {
+            ctx.read();
+        }
+    }
+
+}
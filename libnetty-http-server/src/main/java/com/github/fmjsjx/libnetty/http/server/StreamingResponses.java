@@ -0,0 +1,269 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static io.netty.channel.ChannelFutureListener.CLOSE;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.function.UnaryOperator;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Utility class for sending streaming HTTP responses.
+ * <p>
+ * The content chunks are written by the {@link ChunkedWriteHandler} in the
+ * pipeline, so that the writability of the channel is always respected.
+ * 
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+final class StreamingResponses {
+
+    /**
+     * Sends the streaming HTTP response with the content from the specified
+     * {@link Flow.Publisher}.
+     * 
+     * @param ctx       the {@link HttpRequestContext}
+     * @param response  the {@link HttpResponse}
+     * @param publisher the {@code Publisher} of the content
+     * @param wrapper   the function wraps the outbound messages
+     * @return a {@code CompletableFuture<HttpResult>}
+     */
+    static final CompletableFuture<HttpResult> send(HttpRequestContext ctx, HttpResponse response,
+            Flow.Publisher<ByteBuf> publisher, UnaryOperator<Object> wrapper) {
+        Channel channel = ctx.channel();
+        PublisherChunkedInput input = new PublisherChunkedInput(channel);
+        publisher.subscribe(input);
+        return send(ctx, response, input, wrapper);
+    }
+
+    /**
+     * Sends the streaming HTTP response with the content from the specified
+     * {@link Iterator}.
+     * 
+     * @param ctx      the {@link HttpRequestContext}
+     * @param response the {@link HttpResponse}
+     * @param iterator the {@code Iterator} of the content
+     * @param wrapper  the function wraps the outbound messages
+     * @return a {@code CompletableFuture<HttpResult>}
+     */
+    static final CompletableFuture<HttpResult> send(HttpRequestContext ctx, HttpResponse response,
+            Iterator<ByteBuf> iterator, UnaryOperator<Object> wrapper) {
+        return send(ctx, response, new IteratorChunkedInput(iterator), wrapper);
+    }
+
+    private static final CompletableFuture<HttpResult> send(HttpRequestContext ctx, HttpResponse response,
+            ChunkedInput<ByteBuf> input, UnaryOperator<Object> wrapper) {
+        if (!HttpUtil.isContentLengthSet(response) && !HttpUtil.isTransferEncodingChunked(response)) {
+            if (response.protocolVersion() == HttpVersion.HTTP_1_0) {
+                // HTTP/1.0 doesn't support chunked transfer, the end of content is the end
+                // of the connection
+                HttpUtil.setKeepAlive(response, false);
+            } else {
+                HttpUtil.setTransferEncodingChunked(response, true);
+            }
+        }
+        boolean keepAlive = HttpUtil.isKeepAlive(response);
+        CompletableFuture<HttpResult> future = new CompletableFuture<>();
+        Channel channel = ctx.channel();
+        channel.write(wrapper.apply(response));
+        // HttpChunkedInput will write the end marker (LastHttpContent) for us.
+        ChannelFuture sendFuture = channel.writeAndFlush(wrapper.apply(new HttpChunkedInput(input)));
+        sendFuture.addListener((ChannelFuture cf) -> {
+            if (cf.isSuccess()) {
+                future.complete(new DefaultHttpResult(ctx, input.progress(), response.status()));
+            } else if (cf.cause() != null) {
+                future.completeExceptionally(cf.cause());
+            }
+        });
+        sendFuture.addListener(keepAlive ? HttpServerHandler.READ_NEXT : CLOSE);
+        return future;
+    }
+
+    private static final class IteratorChunkedInput implements ChunkedInput<ByteBuf> {
+
+        private final Iterator<ByteBuf> iterator;
+        private long progress;
+
+        private IteratorChunkedInput(Iterator<ByteBuf> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean isEndOfInput() throws Exception {
+            return !iterator.hasNext();
+        }
+
+        @Override
+        public void close() throws Exception {
+            if (iterator instanceof AutoCloseable) {
+                ((AutoCloseable) iterator).close();
+            }
+        }
+
+        @Deprecated
+        @Override
+        public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+            return readChunk(ctx.alloc());
+        }
+
+        @Override
+        public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            ByteBuf chunk = iterator.next();
+            progress += chunk.readableBytes();
+            return chunk;
+        }
+
+        @Override
+        public long length() {
+            return -1;
+        }
+
+        @Override
+        public long progress() {
+            return progress;
+        }
+
+    }
+
+    private static final class PublisherChunkedInput implements ChunkedInput<ByteBuf>, Flow.Subscriber<ByteBuf> {
+
+        private final Channel channel;
+        private final Queue<ByteBuf> queue = new ConcurrentLinkedQueue<>();
+        private volatile Flow.Subscription subscription;
+        private volatile boolean completed;
+        private volatile Throwable cause;
+        private volatile boolean closed;
+        private long progress;
+
+        private PublisherChunkedInput(Channel channel) {
+            this.channel = channel;
+        }
+
+        private void resumeTransfer() {
+            ChunkedWriteHandler chunkedWriteHandler = channel.pipeline().get(ChunkedWriteHandler.class);
+            if (chunkedWriteHandler != null) {
+                chunkedWriteHandler.resumeTransfer();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (closed) {
+                subscription.cancel();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(ByteBuf item) {
+            if (closed) {
+                ReferenceCountUtil.safeRelease(item);
+                return;
+            }
+            queue.add(item);
+            resumeTransfer();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            cause = throwable;
+            resumeTransfer();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            resumeTransfer();
+        }
+
+        @Override
+        public boolean isEndOfInput() throws Exception {
+            return cause == null && completed && queue.isEmpty();
+        }
+
+        @Override
+        public void close() throws Exception {
+            closed = true;
+            if (!completed && cause == null) {
+                Flow.Subscription subscription = this.subscription;
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+            }
+            for (ByteBuf chunk; (chunk = queue.poll()) != null;) {
+                ReferenceCountUtil.safeRelease(chunk);
+            }
+        }
+
+        @Deprecated
+        @Override
+        public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+            return readChunk(ctx.alloc());
+        }
+
+        @Override
+        public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
+            ByteBuf chunk = queue.poll();
+            if (chunk != null) {
+                progress += chunk.readableBytes();
+                // ChunkedWriteHandler only reads chunks when the channel is writable.
+                // Request the next chunk after this one is handed off, a synchronous
+                // publisher would otherwise re-enter the ChunkedWriteHandler and write
+                // the next chunk before this one.
+                channel.eventLoop().execute(this::requestNext);
+                return chunk;
+            }
+            Throwable cause = this.cause;
+            if (cause != null) {
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw new Exception(cause);
+            }
+            // wait for the next chunk, ChunkedWriteHandler will be resumed by onNext
+            return null;
+        }
+
+        private void requestNext() {
+            if (!closed) {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public long length() {
+            return -1;
+        }
+
+        @Override
+        public long progress() {
+            return progress;
+        }
+
+    }
+
+    private StreamingResponses() {
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.github.fmjsjx.libnetty.http.server.annotation;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import com.github.fmjsjx.libnetty.http.server.middleware.Bulkhead;
+
+/**
+ * Annotation to isolate HTTP services into a {@link Bulkhead}.
+ * <p>
+ * When present on a controller class, all routes of the controller share one
+ * bulkhead. When present on a routing method, the route has its own bulkhead,
+ * which overrides the one of the controller.
+ * 
+ * @since 2.3
+ *
+ * @author MJ Fang
+ * 
+ * @see Bulkhead
+ */
+@Target({ TYPE, METHOD })
+@Retention(RUNTIME)
+public @interface HttpBulkhead {
+
+    /**
+     * Returns the maximum number of the requests being processed at the same
+     * time.
+     * 
+     * @return the maximum number of the concurrent requests
+     */
+    int maxConcurrency();
+
+    /**
+     * Returns the maximum number of the requests waiting for processing.
+     * 
+     * @return the maximum size of the waiting queue
+     */
+    int maxQueueSize() default 0;
+
+    /**
+     * Returns the value of the {@code Retry-After} header, in seconds, responded
+     * with {@code 503 Service Unavailable} when the bulkhead is full.
+     * 
+     * @return the value of the {@code Retry-After} header
+     */
+    int retryAfter() default 1;
+
+}
@@ -0,0 +1,427 @@
+package com.github.fmjsjx.libnetty.http.server.component;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The implementation of {@link WorkerPool} which runs each task on a new
+ * virtual thread.
+ * <p>
+ * Virtual threads are only available on JDK 21 or later, use
+ * {@link #isAvailable()} to check that before constructing.
+ * <p>
+ * An optional concurrency cap can be applied. Tasks exceeding the cap are not
+ * rejected, they wait for a permit on their own virtual threads, so no
+ * platform thread is blocked.
+ * <p>
+ * When the JFR streaming API is available, the pool subscribes to the
+ * {@code jdk.VirtualThreadPinned} event and counts the pinning of its own
+ * virtual threads, see {@link #pinnedCount()}.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ *
+ * @see WorkerPool
+ */
+public class VirtualThreadWorkerPool implements WorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadWorkerPool.class);
+
+    private static final MethodHandle ofVirtual;
+    private static final MethodHandle name;
+    private static final MethodHandle factory;
+    private static final MethodHandle newThreadPerTaskExecutor;
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private static final MethodHandle newRecordingStream;
+    private static final MethodHandle enable;
+    private static final MethodHandle onEvent;
+    private static final MethodHandle startAsync;
+    private static final MethodHandle eventThread;
+    private static final MethodHandle eventDuration;
+    private static final MethodHandle threadJavaName;
+
+    static {
+        MethodHandle ofVirtualHandle = null;
+        MethodHandle nameHandle = null;
+        MethodHandle factoryHandle = null;
+        MethodHandle newThreadPerTaskExecutorHandle = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            ofVirtualHandle = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualClass));
+            nameHandle = lookup.findVirtual(ofVirtualClass, "name",
+                    MethodType.methodType(ofVirtualClass, String.class, long.class));
+            factoryHandle = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+            newThreadPerTaskExecutorHandle = lookup.findStatic(Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+        } catch (ReflectiveOperationException e) {
+            logger.debug("Virtual threads are not available on current JVM", e);
+        }
+        ofVirtual = ofVirtualHandle;
+        name = nameHandle;
+        factory = factoryHandle;
+        newThreadPerTaskExecutor = newThreadPerTaskExecutorHandle;
+
+        MethodHandle newRecordingStreamHandle = null;
+        MethodHandle enableHandle = null;
+        MethodHandle onEventHandle = null;
+        MethodHandle startAsyncHandle = null;
+        MethodHandle eventThreadHandle = null;
+        MethodHandle eventDurationHandle = null;
+        MethodHandle threadJavaNameHandle = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> recordingStreamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Class<?> eventSettingsClass = Class.forName("jdk.jfr.EventSettings");
+            Class<?> recordedEventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+            Class<?> recordedThreadClass = Class.forName("jdk.jfr.consumer.RecordedThread");
+            newRecordingStreamHandle = lookup.findConstructor(recordingStreamClass, MethodType.methodType(void.class));
+            enableHandle = lookup.findVirtual(recordingStreamClass, "enable",
+                    MethodType.methodType(eventSettingsClass, String.class));
+            onEventHandle = lookup.findVirtual(recordingStreamClass, "onEvent",
+                    MethodType.methodType(void.class, String.class, Consumer.class));
+            startAsyncHandle = lookup.findVirtual(recordingStreamClass, "startAsync", MethodType.methodType(void.class));
+            eventThreadHandle = lookup.findVirtual(recordedEventClass, "getThread",
+                    MethodType.methodType(recordedThreadClass));
+            eventDurationHandle = lookup.findVirtual(recordedEventClass, "getDuration",
+                    MethodType.methodType(Duration.class));
+            threadJavaNameHandle = lookup.findVirtual(recordedThreadClass, "getJavaName",
+                    MethodType.methodType(String.class));
+        } catch (ReflectiveOperationException e) {
+            logger.debug("JFR event streaming is not available on current JVM", e);
+        }
+        newRecordingStream = newRecordingStreamHandle;
+        enable = enableHandle;
+        onEvent = onEventHandle;
+        startAsync = startAsyncHandle;
+        eventThread = eventThreadHandle;
+        eventDuration = eventDurationHandle;
+        threadJavaName = threadJavaNameHandle;
+    }
+
+    /**
+     * Returns {@code true} if the virtual threads are available on current JVM.
+     *
+     * @return {@code true} if the virtual threads are available on current JVM
+     */
+    public static final boolean isAvailable() {
+        return newThreadPerTaskExecutor != null;
+    }
+
+    private static final ExecutorService newExecutor(String threadNamePrefix) {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("virtual threads require JDK 21 or later");
+        }
+        try {
+            // Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory())
+            Object builder = name.invoke(ofVirtual.invoke(), threadNamePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) factory.invoke(builder);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(threadFactory);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("create virtual thread executor failed", e);
+        }
+    }
+
+    private final ExecutorService pool;
+    private final String threadNamePrefix;
+    private final AutoCloseable pinnedMonitor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final Executor executor;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger peakRunning = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder pinned = new LongAdder();
+    private final LongAdder pinnedNanos = new LongAdder();
+
+    /**
+     * Constructs a new {@link VirtualThreadWorkerPool} without any concurrency
+     * cap.
+     *
+     * @throws UnsupportedOperationException if the virtual threads are not
+     *                                       available
+     */
+    public VirtualThreadWorkerPool() {
+        this(0);
+    }
+
+    /**
+     * Constructs a new {@link VirtualThreadWorkerPool} with the specified
+     * concurrency cap.
+     *
+     * @param maxConcurrency the maximum number of the tasks running at the same
+     *                       time, {@code 0} means unlimited
+     * @throws UnsupportedOperationException if the virtual threads are not
+     *                                       available
+     */
+    public VirtualThreadWorkerPool(int maxConcurrency) {
+        this("virtual-worker-", maxConcurrency);
+    }
+
+    /**
+     * Constructs a new {@link VirtualThreadWorkerPool} with the specified thread
+     * name prefix and concurrency cap.
+     *
+     * @param threadNamePrefix the prefix of the names of the virtual threads
+     * @param maxConcurrency   the maximum number of the tasks running at the same
+     *                         time, {@code 0} means unlimited
+     * @throws UnsupportedOperationException if the virtual threads are not
+     *                                       available
+     */
+    public VirtualThreadWorkerPool(String threadNamePrefix, int maxConcurrency) {
+        if (maxConcurrency < 0) {
+            throw new IllegalArgumentException("maxConcurrency must not be negative");
+        }
+        this.pool = newExecutor(threadNamePrefix);
+        this.threadNamePrefix = threadNamePrefix;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+        this.executor = this::execute;
+        this.pinnedMonitor = startPinnedMonitor();
+    }
+
+    private AutoCloseable startPinnedMonitor() {
+        if (newRecordingStream == null) {
+            return null;
+        }
+        AutoCloseable stream = null;
+        try {
+            // RecordingStream stream = new RecordingStream();
+            // stream.enable("jdk.VirtualThreadPinned");
+            // stream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+            // stream.startAsync();
+            stream = (AutoCloseable) newRecordingStream.invoke();
+            enable.invoke(stream, PINNED_EVENT);
+            Consumer<Object> action = this::onPinned;
+            onEvent.invoke(stream, PINNED_EVENT, action);
+            startAsync.invoke(stream);
+            return stream;
+        } catch (Throwable e) {
+            logger.debug("Subscribe {} event failed, pinned virtual threads will not be counted", PINNED_EVENT, e);
+            if (stream != null) {
+                closePinnedMonitor(stream);
+            }
+            return null;
+        }
+    }
+
+    private void onPinned(Object event) {
+        try {
+            Object thread = eventThread.invoke(event);
+            if (thread == null) {
+                return;
+            }
+            String threadName = (String) threadJavaName.invoke(thread);
+            if (threadName == null || !threadName.startsWith(threadNamePrefix)) {
+                return;
+            }
+            pinned.increment();
+            pinnedNanos.add(((Duration) eventDuration.invoke(event)).toNanos());
+        } catch (Throwable e) {
+            logger.debug("Read {} event failed", PINNED_EVENT, e);
+        }
+    }
+
+    private static final void closePinnedMonitor(AutoCloseable stream) {
+        try {
+            stream.close();
+        } catch (Exception e) {
+            logger.debug("Close JFR recording stream failed", e);
+        }
+    }
+
+    private void execute(Runnable command) {
+        submitted.increment();
+        pool.execute(() -> {
+            Semaphore permits = this.permits;
+            if (permits != null && !permits.tryAcquire()) {
+                throttled.increment();
+                waiting.incrementAndGet();
+                try {
+                    permits.acquireUninterruptibly();
+                } finally {
+                    waiting.decrementAndGet();
+                }
+            }
+            int current = running.incrementAndGet();
+            peakRunning.accumulateAndGet(current, Math::max);
+            try {
+                command.run();
+            } finally {
+                running.decrementAndGet();
+                completed.increment();
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        });
+    }
+
+    @Override
+    public Executor executor() {
+        return executor;
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+        if (pinnedMonitor != null) {
+            closePinnedMonitor(pinnedMonitor);
+        }
+    }
+
+    /**
+     * Returns the concurrency cap of this pool.
+     *
+     * @return the concurrency cap, {@code 0} means unlimited
+     */
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Returns the number of the tasks running currently.
+     *
+     * @return the number of the tasks running currently
+     */
+    public int runningCount() {
+        return running.get();
+    }
+
+    /**
+     * Returns the maximum number of the tasks ever running at the same time.
+     *
+     * @return the peak number of the running tasks
+     */
+    public int peakRunningCount() {
+        return peakRunning.get();
+    }
+
+    /**
+     * Returns the number of the tasks waiting for the concurrency cap currently.
+     *
+     * @return the number of the waiting tasks
+     */
+    public int waitingCount() {
+        return waiting.get();
+    }
+
+    /**
+     * Returns the total number of the submitted tasks.
+     *
+     * @return the total number of the submitted tasks
+     */
+    public long submittedCount() {
+        return submitted.sum();
+    }
+
+    /**
+     * Returns the total number of the completed tasks.
+     *
+     * @return the total number of the completed tasks
+     */
+    public long completedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * Returns the total number of the tasks which had to wait for the
+     * concurrency cap.
+     *
+     * @return the total number of the throttled tasks
+     */
+    public long throttledCount() {
+        return throttled.sum();
+    }
+
+    /**
+     * Returns {@code true} if this pool is counting the
+     * {@code jdk.VirtualThreadPinned} JFR events of its virtual threads.
+     *
+     * @return {@code true} if the pinned virtual threads are counted
+     */
+    public boolean isPinnedMonitored() {
+        return pinnedMonitor != null;
+    }
+
+    /**
+     * Returns the total number of the {@code jdk.VirtualThreadPinned} JFR events
+     * recorded on the virtual threads of this pool.
+     * <p>
+     * The event is only recorded when a virtual thread blocks while pinned for
+     * longer than its threshold ({@code 20 ms} by default), and JFR delivers the
+     * events asynchronously about once a second. Always returns {@code 0} if
+     * {@link #isPinnedMonitored()} is {@code false}.
+     *
+     * @return the total number of the pinned events
+     */
+    public long pinnedCount() {
+        return pinned.sum();
+    }
+
+    /**
+     * Returns the total duration, in nanoseconds, of the
+     * {@code jdk.VirtualThreadPinned} JFR events recorded on the virtual threads
+     * of this pool.
+     *
+     * @return the total pinned duration in nanoseconds
+     * @see #pinnedCount()
+     */
+    public long pinnedNanos() {
+        return pinnedNanos.sum();
+    }
+
+    /**
+     * Returns the parallelism of the carrier threads scheduling the virtual
+     * threads.
+     * <p>
+     * Virtual threads pinned to their carriers (e.g. blocking inside a
+     * {@code synchronized} block) occupy one of these threads. Use
+     * {@link #pinnedCount()} to see how often it happens, and run the JVM with
+     * {@code -Djdk.tracePinnedThreads=short} to find out the pinning sites.
+     *
+     * @return the parallelism of the carrier threads
+     */
+    public int carrierParallelism() {
+        String value = System.getProperty("jdk.virtualThreadScheduler.parallelism");
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                // ignore and use default
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadWorkerPool(maxConcurrency=" + maxConcurrency + ", running=" + running.get()
+                + ", waiting=" + waiting.get() + ", submitted=" + submitted.sum() + ", completed="
+                + completed.sum() + ", pinned=" + pinned.sum() + ")";
+    }
+
+}
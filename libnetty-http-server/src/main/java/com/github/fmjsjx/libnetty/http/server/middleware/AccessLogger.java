@@ -1,13 +1,27 @@
 package com.github.fmjsjx.libnetty.http.server.middleware;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -23,6 +37,7 @@ import com.github.fmjsjx.libnetty.http.server.HttpResult;
 
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 /**
  * A {@link Middleware} logging HTTP access logs.
@@ -162,6 +177,301 @@ public class AccessLogger implements Middleware {
 
     }
 
+    /**
+     * Writes access logs to a file asynchronously.
+     * <p>
+     * The values of each log are extracted on the I/O threads and appended to a
+     * bounded lock-free ring buffer as a record. A background thread formats
+     * the records into a reused {@link StringBuilder} and byte buffer and
+     * writes them to the file channel in batches. The records can't be appended
+     * because the buffer is full are dropped and counted by
+     * {@link #droppedCount()}, so that the I/O threads are never blocked.
+     * <p>
+     * While writing keeps failing, only the first failure and then at most one
+     * failure every {@code 10} seconds are logged, with the number of the
+     * failures suppressed since the last one.
+     * 
+     * @since 2.3
+     *
+     * @author MJ Fang
+     * 
+     * @see AccessLogger#AccessLogger(AsyncFileWriter, LogFormat)
+     * @see AccessLogger#AccessLogger(AsyncFileWriter, String)
+     */
+    public static final class AsyncFileWriter implements AutoCloseable {
+
+        private static final Logger logger = LoggerFactory.getLogger(AsyncFileWriter.class);
+
+        private static final int DEFAULT_BUFFER_SIZE = 8192;
+        private static final int DEFAULT_BATCH_SIZE = 256;
+        private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+        private static final long ERROR_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+        private final Path file;
+        private final int batchSize;
+        private final FileChannel channel;
+        private final MpscRingBuffer<Record> records;
+        private final Thread thread;
+        private volatile boolean closed;
+
+        private final LongAdder droppedCount = new LongAdder();
+        private final LongAdder writtenCount = new LongAdder();
+
+        // only accessed by the writer thread
+        private boolean failing;
+        private long lastErrorLogNanos;
+        private int suppressedFailures;
+
+        private final StringBuilder builder = new StringBuilder(4096);
+        private final CharsetEncoder encoder = CharsetUtil.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+        /**
+         * Constructs a new {@link AsyncFileWriter} appending logs to the specified
+         * file, with the default buffer size {@code 8192} and batch size
+         * {@code 256}.
+         * 
+         * @param file the log file
+         * @throws IOException if an I/O error occurs when opening the file
+         */
+        public AsyncFileWriter(Path file) throws IOException {
+            this(file, DEFAULT_BUFFER_SIZE, DEFAULT_BATCH_SIZE);
+        }
+
+        /**
+         * Constructs a new {@link AsyncFileWriter} appending logs to the specified
+         * file.
+         * 
+         * @param file       the log file
+         * @param bufferSize the maximum number of the records waiting for writing,
+         *                   will be rounded up to a power of two
+         * @param batchSize  the maximum number of the records written by one
+         *                   write operation
+         * @throws IOException if an I/O error occurs when opening the file
+         */
+        public AsyncFileWriter(Path file, int bufferSize, int batchSize) throws IOException {
+            this(file, bufferSize, batchSize, new DefaultThreadFactory("access-log-writer", true));
+        }
+
+        AsyncFileWriter(Path file, int bufferSize, int batchSize, ThreadFactory threadFactory) throws IOException {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("batchSize must be positive");
+            }
+            this.file = Objects.requireNonNull(file, "file must not be null");
+            this.batchSize = batchSize;
+            this.records = new MpscRingBuffer<>(bufferSize);
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            this.thread = threadFactory.newThread(this::run);
+            this.thread.start();
+        }
+
+        boolean offer(Record record) {
+            if (closed || !records.offer(record)) {
+                droppedCount.increment();
+                return false;
+            }
+            return true;
+        }
+
+        private void run() {
+            while (!closed) {
+                try {
+                    if (writeBatch() == 0) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    } else {
+                        recovered();
+                    }
+                } catch (Exception e) {
+                    failed(e);
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+            // drain the remaining records
+            try {
+                while (writeBatch() > 0) {
+                    // continue
+                }
+            } catch (Exception e) {
+                failed(e);
+            }
+        }
+
+        private void failed(Exception e) {
+            long now = System.nanoTime();
+            if (failing && now - lastErrorLogNanos < ERROR_LOG_INTERVAL_NANOS) {
+                suppressedFailures++;
+                return;
+            }
+            if (failing) {
+                logger.error("Write access logs to {} failed, {} failures suppressed", file, suppressedFailures, e);
+            } else {
+                logger.error("Write access logs to {} failed", file, e);
+            }
+            failing = true;
+            lastErrorLogNanos = now;
+            suppressedFailures = 0;
+        }
+
+        private void recovered() {
+            if (failing) {
+                logger.info("Write access logs to {} recovered, {} failures suppressed", file, suppressedFailures);
+                failing = false;
+                suppressedFailures = 0;
+            }
+        }
+
+        private int writeBatch() throws IOException {
+            StringBuilder builder = this.builder;
+            builder.setLength(0);
+            int count = 0;
+            for (Record record; count < batchSize && (record = records.poll()) != null; count++) {
+                record.pattern.format(record.values, builder);
+                builder.append(System.lineSeparator());
+            }
+            if (count > 0) {
+                write(builder);
+                writtenCount.add(count);
+            }
+            return count;
+        }
+
+        private void write(CharSequence content) throws IOException {
+            CharBuffer in = CharBuffer.wrap(content);
+            ByteBuffer out = byteBuffer;
+            out.clear();
+            encoder.reset();
+            while (encoder.encode(in, out, true).isOverflow()) {
+                writeFully(out);
+            }
+            while (encoder.flush(out).isOverflow()) {
+                writeFully(out);
+            }
+            writeFully(out);
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Returns the number of the records waiting for writing.
+         * 
+         * @return the number of the pending records
+         */
+        public int pendingCount() {
+            return records.size();
+        }
+
+        /**
+         * Returns the total number of the records dropped because the buffer is
+         * full.
+         * 
+         * @return the total number of the dropped records
+         */
+        public long droppedCount() {
+            return droppedCount.sum();
+        }
+
+        /**
+         * Returns the total number of the records written.
+         * 
+         * @return the total number of the written records
+         */
+        public long writtenCount() {
+            return writtenCount.sum();
+        }
+
+        /**
+         * Writes the remaining records and closes the file.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+
+        @Override
+        public String toString() {
+            return "AsyncFileWriter(file=" + file + ", bufferSize=" + records.capacity() + ", batchSize="
+                    + batchSize + ", pending=" + pendingCount() + ", dropped=" + droppedCount() + ", written="
+                    + writtenCount() + ")";
+        }
+
+    }
+
+    /**
+     * A log pattern compiled into extractors running on the I/O threads and
+     * formatters running on the writer thread.
+     */
+    static final class CompiledPattern {
+
+        private final String[] texts;
+        private final String lastText;
+        private final Function<HttpResult, Object>[] extractors;
+        private final BiConsumer<StringBuilder, Object>[] formatters;
+
+        @SuppressWarnings("unchecked")
+        CompiledPattern(String pattern) {
+            Matcher m = SYMBOL_PATTERN.matcher(pattern);
+            List<String> txts = new ArrayList<String>();
+            List<String> symbols = new ArrayList<String>();
+            int start = 0;
+            for (; m.find(start); start = m.end()) {
+                symbols.add(m.group());
+                txts.add(pattern.substring(start, m.start()));
+            }
+            this.texts = txts.toArray(new String[txts.size()]);
+            this.lastText = pattern.substring(start);
+            this.extractors = symbols.stream().map(AccessLogger::symbolExtractor).toArray(Function[]::new);
+            this.formatters = symbols.stream().map(AccessLogger::symbolFormatter).toArray(BiConsumer[]::new);
+        }
+
+        Object[] extract(HttpResult result) {
+            Function<HttpResult, Object>[] extractors = this.extractors;
+            Object[] values = new Object[extractors.length];
+            for (int i = 0; i < extractors.length; i++) {
+                values[i] = extractors[i].apply(result);
+            }
+            return values;
+        }
+
+        void format(Object[] values, StringBuilder builder) {
+            for (int i = 0; i < values.length; i++) {
+                builder.append(texts[i]);
+                formatters[i].accept(builder, values[i]);
+            }
+            builder.append(lastText);
+        }
+
+    }
+
+    static final class Record {
+
+        private final CompiledPattern pattern;
+        private final Object[] values;
+
+        Record(CompiledPattern pattern, Object[] values) {
+            this.pattern = pattern;
+            this.values = values;
+        }
+
+    }
+
     /**
      * Some pre-defined log formats.
      * 
@@ -372,6 +682,44 @@ public class AccessLogger implements Middleware {
         }
     }
 
+    private static final Function<HttpResult, Object> symbolExtractor(String symbol) {
+        switch (symbol) {
+        case ":result-length-humanreadable":
+            return HttpResult::resultLength;
+        case ":iso-local-datetime":
+        case ":datetime":
+        case ":iso-local-date":
+        case ":basic-iso-date":
+        case ":iso-local-time":
+            return HttpResult::respondedTime;
+        case ":response-time":
+            return HttpResult::nanoUsed;
+        default:
+            return symbolMapper(symbol);
+        }
+    }
+
+    private static final BiConsumer<StringBuilder, Object> symbolFormatter(String symbol) {
+        switch (symbol) {
+        case ":result-length-humanreadable":
+            return (b, v) -> b.append(toHumanReadableSize((Long) v));
+        case ":iso-local-datetime":
+            return (b, v) -> DateTimeFormatter.ISO_LOCAL_DATE_TIME.formatTo((ZonedDateTime) v, b);
+        case ":datetime":
+            return (b, v) -> DEFAULT_DATE_TIME.formatTo((ZonedDateTime) v, b);
+        case ":iso-local-date":
+            return (b, v) -> DateTimeFormatter.ISO_LOCAL_DATE.formatTo(((ZonedDateTime) v).toLocalDate(), b);
+        case ":basic-iso-date":
+            return (b, v) -> DateTimeFormatter.BASIC_ISO_DATE.formatTo(((ZonedDateTime) v).toLocalDate(), b);
+        case ":iso-local-time":
+            return (b, v) -> DateTimeFormatter.ISO_LOCAL_TIME.formatTo(((ZonedDateTime) v).toLocalTime(), b);
+        case ":response-time":
+            return (b, v) -> b.append(BigDecimal.valueOf((Long) v).divide(T6, 3, RoundingMode.HALF_EVEN));
+        default:
+            return StringBuilder::append;
+        }
+    }
+
     private static final String toHumanReadableSize(long length) {
         if (length < 1024) {
             return Long.toString(length);
@@ -398,6 +746,8 @@ public class AccessLogger implements Middleware {
 
     private final LoggerWrapper loggerWrapper;
     private final Function<HttpResult, String> logMapper;
+    private final AsyncFileWriter asyncWriter;
+    private final CompiledPattern compiledPattern;
 
     public AccessLogger() {
         this(LogFormat.BASIC);
@@ -422,14 +772,61 @@ public class AccessLogger implements Middleware {
     private AccessLogger(LoggerWrapper loggerWrapper, Function<HttpResult, String> logMapper) {
         this.loggerWrapper = loggerWrapper;
         this.logMapper = logMapper;
+        this.asyncWriter = null;
+        this.compiledPattern = null;
+    }
+
+    /**
+     * Constructs a new {@link AccessLogger} writes logs asynchronously by the
+     * specified {@link AsyncFileWriter}.
+     * 
+     * @param asyncWriter the {@code AsyncFileWriter}
+     * @param format      the log format
+     * 
+     * @since 2.3
+     */
+    public AccessLogger(AsyncFileWriter asyncWriter, LogFormat format) {
+        this(asyncWriter, Objects.requireNonNull(format, "format must not be null").pattern);
+    }
+
+    /**
+     * Constructs a new {@link AccessLogger} writes logs asynchronously by the
+     * specified {@link AsyncFileWriter}.
+     * <p>
+     * The {@code AsyncFileWriter} will be closed when this logger is closed.
+     * 
+     * @param asyncWriter the {@code AsyncFileWriter}
+     * @param pattern     the log pattern
+     * 
+     * @since 2.3
+     */
+    public AccessLogger(AsyncFileWriter asyncWriter, String pattern) {
+        this.asyncWriter = Objects.requireNonNull(asyncWriter, "asyncWriter must not be null");
+        this.compiledPattern = new CompiledPattern(Objects.requireNonNull(pattern, "pattern must not be null"));
+        this.loggerWrapper = null;
+        this.logMapper = null;
     }
 
     String mapLog(HttpResult result) {
+        if (compiledPattern != null) {
+            StringBuilder builder = new StringBuilder();
+            compiledPattern.format(compiledPattern.extract(result), builder);
+            return builder.toString();
+        }
         return logMapper.apply(result);
     }
 
     @Override
     public CompletionStage<HttpResult> apply(HttpRequestContext ctx, MiddlewareChain next) {
+        AsyncFileWriter asyncWriter = this.asyncWriter;
+        if (asyncWriter != null) {
+            CompiledPattern compiledPattern = this.compiledPattern;
+            return next.doNext(ctx).whenComplete((r, e) -> {
+                if (e == null) {
+                    asyncWriter.offer(new Record(compiledPattern, compiledPattern.extract(r)));
+                }
+            });
+        }
         return next.doNext(ctx).whenComplete((r, e) -> {
             if (e == null && loggerWrapper.isEnabled()) {
                 loggerWrapper.log(mapLog(r));
@@ -437,4 +834,11 @@ public class AccessLogger implements Middleware {
         });
     }
 
+    @Override
+    public void close() throws Exception {
+        if (asyncWriter != null) {
+            asyncWriter.close();
+        }
+    }
+
 }
@@ -0,0 +1,471 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+
+/**
+ * A {@link Middleware} limits the number of the requests being processed at
+ * the same time, and finds the limit automatically.
+ * <p>
+ * The limit is adjusted by a gradient algorithm: a long-term exponential
+ * moving average of the latencies is compared with each new sample, the limit
+ * shrinks when the latency rises above the long-term average multiplied by the
+ * tolerance, and grows by about the square root of itself when it doesn't.
+ * <p>
+ * Requests exceeded the limit wait in a bounded priority queue for a short
+ * time, the one with higher priority and then the earlier one is processed
+ * first. Requests can't enter the queue or waited too long are rejected with
+ * {@code 503 Service Unavailable} and a {@code Retry-After} header, so that
+ * the latency of the accepted requests stays bounded under overload.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ *
+ * @see Middleware
+ * @see Bulkhead
+ */
+public class AdaptiveConcurrencyLimiter implements Middleware {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final int longWindow;
+    private final int maxQueueSize;
+    private final long maxQueueTimeNanos;
+    private final ToIntFunction<? super HttpRequestContext> priorityFunction;
+    private final String retryAfter;
+
+    private final PriorityQueue<Waiting> waitingQueue = new PriorityQueue<>(
+            Comparator.comparingInt((Waiting w) -> w.priority).reversed().thenComparingLong(w -> w.sequence));
+    private long sequence;
+    private int inFlight;
+    private double limit;
+    private double longRttNanos;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * Constructs a new {@link AdaptiveConcurrencyLimiter} with the default
+     * {@link Options}.
+     */
+    public AdaptiveConcurrencyLimiter() {
+        this(new Options());
+    }
+
+    /**
+     * Constructs a new {@link AdaptiveConcurrencyLimiter} with the specified
+     * {@link Options}.
+     *
+     * @param options the options
+     */
+    public AdaptiveConcurrencyLimiter(Options options) {
+        if (options.minLimit > options.maxLimit) {
+            throw new IllegalArgumentException("minLimit must not be greater than maxLimit");
+        }
+        this.minLimit = options.minLimit;
+        this.maxLimit = options.maxLimit;
+        this.tolerance = options.tolerance;
+        this.smoothing = options.smoothing;
+        this.longWindow = options.longWindow;
+        this.maxQueueSize = options.maxQueueSize;
+        this.maxQueueTimeNanos = options.maxQueueTime.toNanos();
+        this.priorityFunction = options.priorityFunction;
+        this.retryAfter = Integer.toString(options.retryAfter);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, options.initialLimit));
+        logger.debug("AdaptiveConcurrencyLimiter: options={}", options);
+    }
+
+    @Override
+    public CompletionStage<HttpResult> apply(HttpRequestContext ctx, MiddlewareChain next) {
+        Waiting waiting = null;
+        boolean full = false;
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+            } else if (waitingQueue.size() < maxQueueSize) {
+                waiting = new Waiting(ctx, next, priorityFunction.applyAsInt(ctx), sequence++);
+                waitingQueue.add(waiting);
+            } else {
+                full = true;
+            }
+        }
+        if (full) {
+            return reject(ctx);
+        }
+        if (waiting != null) {
+            waiting.scheduleTimeout();
+            return waiting.future;
+        }
+        return run(ctx, next);
+    }
+
+    private CompletionStage<HttpResult> reject(HttpRequestContext ctx) {
+        rejected.increment();
+        logger.debug("Concurrency limit {} exceeded, reject request {}", this, ctx);
+        return ctx.simpleRespond(SERVICE_UNAVAILABLE, headers -> headers.set(HttpHeaderNames.RETRY_AFTER, retryAfter));
+    }
+
+    private CompletionStage<HttpResult> run(HttpRequestContext ctx, MiddlewareChain next) {
+        long startNanos = System.nanoTime();
+        CompletionStage<HttpResult> stage;
+        try {
+            stage = next.doNext(ctx);
+        } catch (Throwable e) {
+            release(-1);
+            throw e;
+        }
+        return stage.whenComplete((r, e) -> release(e == null ? System.nanoTime() - startNanos : -1));
+    }
+
+    private void release(long rttNanos) {
+        Waiting next;
+        synchronized (this) {
+            if (rttNanos >= 0) {
+                update(rttNanos);
+            }
+            next = inFlight <= (int) limit ? waitingQueue.poll() : null;
+            if (next == null) {
+                inFlight--;
+            }
+        }
+        if (next != null) {
+            // hand over the permit to the next waiting request
+            next.ctx.eventLoop().execute(next::run);
+        }
+    }
+
+    /**
+     * Updates the limit by the specified latency sample. Must be called in
+     * synchronized block.
+     */
+    void update(long rttNanos) {
+        if (rttNanos <= 0) {
+            rttNanos = 1;
+        }
+        double longRtt = longRttNanos;
+        if (longRtt == 0) {
+            longRttNanos = rttNanos;
+            return;
+        }
+        longRtt = longRtt + (rttNanos - longRtt) / longWindow;
+        if (longRtt / rttNanos > 2) {
+            // recover faster from a sudden drop of the latency
+            longRtt *= 0.95;
+        }
+        longRttNanos = longRtt;
+        double limit = this.limit;
+        if (inFlight < limit / 2) {
+            // the limit is not the bottleneck, don't change it
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / rttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private void timeout(Waiting waiting) {
+        boolean removed;
+        synchronized (this) {
+            removed = waitingQueue.remove(waiting);
+        }
+        if (removed) {
+            timedOut.increment();
+            reject(waiting.ctx).whenComplete((r, e) -> waiting.complete(r, e));
+        }
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     *
+     * @return the current limit
+     */
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of the requests being processed currently.
+     *
+     * @return the number of the in-flight requests
+     */
+    public synchronized int inFlightCount() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the number of the requests waiting currently.
+     *
+     * @return the number of the waiting requests
+     */
+    public synchronized int waitingCount() {
+        return waitingQueue.size();
+    }
+
+    /**
+     * Returns the total number of the rejected requests, including the timed
+     * out ones.
+     *
+     * @return the total number of the rejected requests
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the total number of the requests rejected after waiting too long.
+     *
+     * @return the total number of the timed out requests
+     */
+    public long timedOutCount() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveConcurrencyLimiter(limit=" + limit() + ", inFlight=" + inFlightCount() + ", waiting="
+                + waitingCount() + ")";
+    }
+
+    private final class Waiting {
+
+        private final HttpRequestContext ctx;
+        private final MiddlewareChain next;
+        private final int priority;
+        private final long sequence;
+        private final CompletableFuture<HttpResult> future = new CompletableFuture<>();
+        private ScheduledFuture<?> timeoutFuture;
+
+        private Waiting(HttpRequestContext ctx, MiddlewareChain next, int priority, long sequence) {
+            this.ctx = ctx;
+            this.next = next;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        private void scheduleTimeout() {
+            timeoutFuture = ctx.eventLoop().schedule(() -> timeout(this), maxQueueTimeNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void run() {
+            ScheduledFuture<?> timeoutFuture = this.timeoutFuture;
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel(false);
+            }
+            try {
+                AdaptiveConcurrencyLimiter.this.run(ctx, next).whenComplete(this::complete);
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void complete(HttpResult r, Throwable e) {
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else {
+                future.complete(r);
+            }
+        }
+
+    }
+
+    /**
+     * The options of {@link AdaptiveConcurrencyLimiter}.
+     *
+     * @since 2.3
+     *
+     * @author MJ Fang
+     */
+    public static class Options {
+
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 1000;
+        private double tolerance = 1.5;
+        private double smoothing = 0.2;
+        private int longWindow = 600;
+        private int maxQueueSize = 0;
+        private Duration maxQueueTime = Duration.ofMillis(50);
+        private ToIntFunction<? super HttpRequestContext> priorityFunction = ctx -> 0;
+        private int retryAfter = 1;
+
+        /**
+         * Set the initial concurrency limit.
+         * <p>
+         * The default is {@code 20}.
+         *
+         * @param initialLimit the initial limit
+         * @return this {@code Options}
+         */
+        public Options initialLimit(int initialLimit) {
+            if (initialLimit <= 0) {
+                throw new IllegalArgumentException("initialLimit must be positive");
+            }
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * Set the minimum and maximum concurrency limit.
+         * <p>
+         * The defaults are {@code 1} and {@code 1000}.
+         *
+         * @param minLimit the minimum limit
+         * @param maxLimit the maximum limit
+         * @return this {@code Options}
+         */
+        public Options limits(int minLimit, int maxLimit) {
+            if (minLimit <= 0 || maxLimit < minLimit) {
+                throw new IllegalArgumentException("require 0 < minLimit <= maxLimit");
+            }
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Set the tolerance of the latency. The limit shrinks only when the
+         * latency is greater than the long-term average multiplied by the
+         * tolerance.
+         * <p>
+         * The default is {@code 1.5}.
+         *
+         * @param tolerance the tolerance, must not be less than {@code 1.0}
+         * @return this {@code Options}
+         */
+        public Options tolerance(double tolerance) {
+            if (tolerance < 1.0) {
+                throw new IllegalArgumentException("tolerance must not be less than 1.0");
+            }
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * Set the smoothing factor of the limit changes.
+         * <p>
+         * The default is {@code 0.2}.
+         *
+         * @param smoothing the smoothing factor, between {@code 0.0} (exclusive)
+         *                  and {@code 1.0}
+         * @return this {@code Options}
+         */
+        public Options smoothing(double smoothing) {
+            if (smoothing <= 0 || smoothing > 1.0) {
+                throw new IllegalArgumentException("smoothing must be between 0.0 (exclusive) and 1.0");
+            }
+            this.smoothing = smoothing;
+            return this;
+        }
+
+        /**
+         * Set the number of the samples of the long-term latency average.
+         * <p>
+         * The default is {@code 600}.
+         *
+         * @param longWindow the number of the samples
+         * @return this {@code Options}
+         */
+        public Options longWindow(int longWindow) {
+            if (longWindow <= 0) {
+                throw new IllegalArgumentException("longWindow must be positive");
+            }
+            this.longWindow = longWindow;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of the requests waiting when the limit is
+         * reached.
+         * <p>
+         * The default is {@code 0}, means reject immediately.
+         *
+         * @param maxQueueSize the maximum number of the waiting requests
+         * @return this {@code Options}
+         */
+        public Options maxQueueSize(int maxQueueSize) {
+            if (maxQueueSize < 0) {
+                throw new IllegalArgumentException("maxQueueSize must not be negative");
+            }
+            this.maxQueueSize = maxQueueSize;
+            return this;
+        }
+
+        /**
+         * Set the maximum time a request waits before rejected.
+         * <p>
+         * The default is {@code 50 milliseconds}.
+         *
+         * @param maxQueueTime the maximum waiting time
+         * @return this {@code Options}
+         */
+        public Options maxQueueTime(Duration maxQueueTime) {
+            this.maxQueueTime = Objects.requireNonNull(maxQueueTime, "maxQueueTime must not be null");
+            return this;
+        }
+
+        /**
+         * Set the function returns the priority of the request. The waiting
+         * requests with higher priority are processed first.
+         * <p>
+         * The default function always returns {@code 0}.
+         *
+         * @param priorityFunction the priority function
+         * @return this {@code Options}
+         */
+        public Options priority(ToIntFunction<? super HttpRequestContext> priorityFunction) {
+            this.priorityFunction = Objects.requireNonNull(priorityFunction, "priorityFunction must not be null");
+            return this;
+        }
+
+        /**
+         * Set the value of the {@code Retry-After} header of the rejected
+         * responses, in seconds.
+         * <p>
+         * The default is {@code 1}.
+         *
+         * @param retryAfter the value of the {@code Retry-After} header
+         * @return this {@code Options}
+         */
+        public Options retryAfter(int retryAfter) {
+            if (retryAfter < 0) {
+                throw new IllegalArgumentException("retryAfter must not be negative");
+            }
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "AdaptiveConcurrencyLimiter.Options[initialLimit=" + initialLimit + ", minLimit=" + minLimit
+                    + ", maxLimit=" + maxLimit + ", tolerance=" + tolerance + ", smoothing=" + smoothing
+                    + ", longWindow=" + longWindow + ", maxQueueSize=" + maxQueueSize + ", maxQueueTime="
+                    + maxQueueTime + ", retryAfter=" + retryAfter + "]";
+        }
+
+    }
+
+}
@@ -0,0 +1,240 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+import com.github.fmjsjx.libnetty.http.server.HttpServiceInvoker;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+
+/**
+ * A bulkhead isolates HTTP services from each other.
+ * <p>
+ * Each bulkhead has its own concurrency limit and bounded waiting queue. The
+ * requests exceeded both of them will be rejected immediately with
+ * {@code 503 Service Unavailable} and a {@code Retry-After} header, so that one
+ * overloaded service can't exhaust the shared {@code WorkerPool}.
+ * <p>
+ * A request holds its permit until the {@link CompletionStage} returned by the
+ * service completed, so both blocking and non-blocking services are
+ * supported.
+ * 
+ * @since 2.3
+ *
+ * @author MJ Fang
+ * 
+ * @see Router#add(HttpServiceInvoker, Bulkhead, String, io.netty.handler.codec.http.HttpMethod...)
+ * @see com.github.fmjsjx.libnetty.http.server.annotation.HttpBulkhead
+ */
+public class Bulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(Bulkhead.class);
+
+    private final int maxConcurrency;
+    private final int maxQueueSize;
+    private final String retryAfter;
+
+    private final Queue<Waiting> waitingQueue = new ArrayDeque<>();
+    private int running;
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Constructs a new {@link Bulkhead} with the specified concurrency limit and
+     * without waiting queue.
+     * 
+     * @param maxConcurrency the maximum number of the requests being processed at
+     *                       the same time
+     */
+    public Bulkhead(int maxConcurrency) {
+        this(maxConcurrency, 0);
+    }
+
+    /**
+     * Constructs a new {@link Bulkhead} with the specified concurrency limit and
+     * waiting queue size.
+     * 
+     * @param maxConcurrency the maximum number of the requests being processed at
+     *                       the same time
+     * @param maxQueueSize   the maximum number of the requests waiting for
+     *                       processing
+     */
+    public Bulkhead(int maxConcurrency, int maxQueueSize) {
+        this(maxConcurrency, maxQueueSize, 1);
+    }
+
+    /**
+     * Constructs a new {@link Bulkhead} with the specified concurrency limit,
+     * waiting queue size and {@code Retry-After} seconds.
+     * 
+     * @param maxConcurrency the maximum number of the requests being processed at
+     *                       the same time
+     * @param maxQueueSize   the maximum number of the requests waiting for
+     *                       processing
+     * @param retryAfter     the value of the {@code Retry-After} header, in
+     *                       seconds
+     */
+    public Bulkhead(int maxConcurrency, int maxQueueSize, int retryAfter) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive");
+        }
+        if (maxQueueSize < 0) {
+            throw new IllegalArgumentException("maxQueueSize must not be negative");
+        }
+        if (retryAfter < 0) {
+            throw new IllegalArgumentException("retryAfter must not be negative");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueueSize = maxQueueSize;
+        this.retryAfter = Integer.toString(retryAfter);
+    }
+
+    /**
+     * Returns the maximum number of the requests being processed at the same
+     * time.
+     * 
+     * @return the maximum number of the concurrent requests
+     */
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Returns the maximum number of the requests waiting for processing.
+     * 
+     * @return the maximum size of the waiting queue
+     */
+    public int maxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * Returns the number of the requests being processed currently.
+     * 
+     * @return the number of the running requests
+     */
+    public synchronized int runningCount() {
+        return running;
+    }
+
+    /**
+     * Returns the number of the requests waiting for processing currently.
+     * 
+     * @return the number of the waiting requests
+     */
+    public synchronized int waitingCount() {
+        return waitingQueue.size();
+    }
+
+    /**
+     * Returns the total number of the rejected requests.
+     * 
+     * @return the total number of the rejected requests
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns a new {@link HttpServiceInvoker} invokes the specified service
+     * inside this bulkhead.
+     * 
+     * @param service the HTTP service
+     * @return a new {@code HttpServiceInvoker}
+     */
+    public HttpServiceInvoker wrap(HttpServiceInvoker service) {
+        return ctx -> invoke(service, ctx);
+    }
+
+    private CompletionStage<HttpResult> invoke(HttpServiceInvoker service, HttpRequestContext ctx) {
+        Waiting waiting = null;
+        boolean full = false;
+        synchronized (this) {
+            if (running < maxConcurrency) {
+                running++;
+            } else if (waitingQueue.size() < maxQueueSize) {
+                waiting = new Waiting(service, ctx);
+                waitingQueue.add(waiting);
+            } else {
+                full = true;
+            }
+        }
+        if (full) {
+            rejected.increment();
+            logger.debug("Bulkhead {} is full, reject request {}", this, ctx);
+            return ctx.simpleRespond(SERVICE_UNAVAILABLE,
+                    headers -> headers.set(HttpHeaderNames.RETRY_AFTER, retryAfter));
+        }
+        if (waiting != null) {
+            return waiting.future;
+        }
+        return run(service, ctx);
+    }
+
+    private CompletionStage<HttpResult> run(HttpServiceInvoker service, HttpRequestContext ctx) {
+        CompletionStage<HttpResult> stage;
+        try {
+            stage = service.invoke(ctx);
+        } catch (Throwable e) {
+            release();
+            throw e;
+        }
+        return stage.whenComplete((r, e) -> release());
+    }
+
+    private void release() {
+        Waiting next;
+        synchronized (this) {
+            next = waitingQueue.poll();
+            if (next == null) {
+                running--;
+                return;
+            }
+        }
+        // hand over the permit to the next waiting request
+        next.ctx.eventLoop().execute(next::run);
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead(maxConcurrency=" + maxConcurrency + ", maxQueueSize=" + maxQueueSize + ")";
+    }
+
+    private final class Waiting {
+
+        private final HttpServiceInvoker service;
+        private final HttpRequestContext ctx;
+        private final CompletableFuture<HttpResult> future = new CompletableFuture<>();
+
+        private Waiting(HttpServiceInvoker service, HttpRequestContext ctx) {
+            this.service = service;
+            this.ctx = ctx;
+        }
+
+        private void run() {
+            try {
+                Bulkhead.this.run(service, ctx).whenComplete((r, e) -> {
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(r);
+                    }
+                });
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+    }
+
+}
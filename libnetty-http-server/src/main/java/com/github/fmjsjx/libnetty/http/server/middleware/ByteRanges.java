@@ -0,0 +1,129 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import java.util.Arrays;
+
+/**
+ * Utility class to parse the {@code Range} header with {@code bytes} unit.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+final class ByteRanges {
+
+    /**
+     * The maximum number of ranges accepted in one request, requests with more
+     * ranges will be served with the full content.
+     */
+    static final int MAX_RANGES = 16;
+
+    /**
+     * Indicates that none of the ranges is satisfiable.
+     */
+    static final long[] UNSATISFIABLE = new long[0];
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * Parses the value of the {@code Range} header.
+     * <p>
+     * Returns the array contains the pairs of the first and the last byte
+     * positions (both inclusive) of the satisfiable ranges,
+     * {@link #UNSATISFIABLE} if none of the ranges is satisfiable, or
+     * {@code null} if the header should be ignored (invalid syntax, unknown unit
+     * or too many ranges).
+     * <p>
+     * The ranges are sorted, and the overlapping or adjacent ranges are
+     * coalesced, so the same bytes are never sent more than once.
+     *
+     * @param value  the value of the {@code Range} header
+     * @param length the length of the full content
+     * @return the pairs of the byte positions, {@link #UNSATISFIABLE} or
+     *         {@code null}
+     */
+    static long[] parse(String value, long length) {
+        if (value == null || !value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return null;
+        }
+        String[] specs = value.substring(BYTES_UNIT.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        long[] ranges = new long[specs.length * 2];
+        int count = 0;
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long first;
+            long last;
+            try {
+                if (dash == 0) {
+                    // suffix-byte-range-spec: -n
+                    long suffixLength = Long.parseLong(spec.substring(1));
+                    if (suffixLength < 0) {
+                        return null;
+                    }
+                    if (suffixLength == 0 || length == 0) {
+                        continue;
+                    }
+                    first = Math.max(0, length - suffixLength);
+                    last = length - 1;
+                } else {
+                    first = Long.parseLong(spec.substring(0, dash));
+                    last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                    if (first < 0 || last < first) {
+                        return null;
+                    }
+                    if (first >= length) {
+                        continue;
+                    }
+                    last = Math.min(last, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            ranges[count++] = first;
+            ranges[count++] = last;
+        }
+        if (count == 0) {
+            return UNSATISFIABLE;
+        }
+        if (count > 2) {
+            count = coalesce(ranges, count);
+        }
+        return count == ranges.length ? ranges : Arrays.copyOf(ranges, count);
+    }
+
+    private static final int coalesce(long[] ranges, int count) {
+        // insertion sort the pairs by the first byte position, there are at most
+        // MAX_RANGES pairs
+        for (int i = 2; i < count; i += 2) {
+            long first = ranges[i];
+            long last = ranges[i + 1];
+            int j = i - 2;
+            for (; j >= 0 && ranges[j] > first; j -= 2) {
+                ranges[j + 2] = ranges[j];
+                ranges[j + 3] = ranges[j + 1];
+            }
+            ranges[j + 2] = first;
+            ranges[j + 3] = last;
+        }
+        int merged = 2;
+        for (int i = 2; i < count; i += 2) {
+            if (ranges[i] <= ranges[merged - 1] + 1) {
+                ranges[merged - 1] = Math.max(ranges[merged - 1], ranges[i + 1]);
+            } else {
+                ranges[merged++] = ranges[i];
+                ranges[merged++] = ranges[i + 1];
+            }
+        }
+        return merged;
+    }
+
+    private ByteRanges() {
+    }
+
+}
@@ -0,0 +1,389 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.fmjsjx.libnetty.http.server.DelegatingHttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+import com.github.fmjsjx.libnetty.http.server.HttpServiceInvoker;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.AsciiString;
+
+/**
+ * A {@link Middleware} records per-route metrics of HTTP requests.
+ * <p>
+ * Requests are grouped by the method and the path pattern matched by the
+ * {@link Router} (see {@link Router.MatchedRouteAware}), not the raw path, so
+ * that the number of the groups is bounded. Non-standard methods are grouped
+ * as {@link #OTHER_METHOD}, and requests not matched by any route are grouped
+ * into {@link #UNMATCHED}. For each route:
+ * <ul>
+ * <li>latency histogram ({@link LatencyHistogram})</li>
+ * <li>counters of each response status code</li>
+ * <li>in-flight gauge</li>
+ * <li>bytes in and bytes out</li>
+ * </ul>
+ * This middleware must be added before the {@link Router}. The metrics can be
+ * exported by {@link #exportTo(Exporter)}, or in the text exposition format by
+ * the service returned from {@link #textService()}.
+ * <p>
+ * All the metrics are cumulative since the middleware was created. So the
+ * latencies are exported in the text format as a Prometheus {@code histogram}
+ * with fixed buckets, from {@code 1ms} to {@code 10s}, instead of quantiles.
+ * The quantiles over any time window can then be computed by the server, such
+ * as {@code histogram_quantile(0.99, rate(..._bucket[5m]))}.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ *
+ * @see Router
+ * @see LatencyHistogram
+ */
+public class HttpMetrics implements Middleware {
+
+    /**
+     * The name of the route group for requests not matched by any route.
+     */
+    public static final String UNMATCHED = "UNMATCHED";
+
+    /**
+     * The method name of the route groups for requests with a non-standard
+     * method.
+     */
+    public static final String OTHER_METHOD = "OTHER";
+
+    private static final Set<String> STANDARD_METHODS = Set.of("GET", "HEAD", "POST", "PUT", "DELETE", "CONNECT",
+            "OPTIONS", "TRACE", "PATCH");
+
+    private static final AsciiString TEXT_PLAIN_VERSION_004 = AsciiString
+            .cached("text/plain; version=0.0.4; charset=utf-8");
+
+    // upper bounds of the histogram buckets in microseconds, the last is +Inf
+    private static final long[] DURATION_BOUNDS = { 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000,
+            500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000 };
+
+    private static final int durationBucket(long micros) {
+        for (int i = 0; i < DURATION_BOUNDS.length; i++) {
+            if (micros <= DURATION_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return DURATION_BOUNDS.length;
+    }
+
+    /**
+     * An exporter of {@link HttpMetrics}.
+     *
+     * @since 2.3
+     *
+     * @author MJ Fang
+     */
+    @FunctionalInterface
+    public interface Exporter {
+
+        /**
+         * Exports the metrics of the routes.
+         *
+         * @param routes the metrics of the routes
+         */
+        void export(List<RouteMetrics> routes);
+
+    }
+
+    /**
+     * The metrics of one route.
+     *
+     * @since 2.3
+     *
+     * @author MJ Fang
+     */
+    public static final class RouteMetrics {
+
+        private final String route;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLongArray durationCounts = new AtomicLongArray(DURATION_BOUNDS.length + 1);
+        private final AtomicLongArray statusCounts = new AtomicLongArray(600);
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+
+        private RouteMetrics(String route) {
+            this.route = route;
+        }
+
+        private void record(HttpResult result, long bytesIn) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(result.nanoUsed());
+            latency.recordMicros(micros);
+            durationCounts.incrementAndGet(durationBucket(micros));
+            int code = result.responseStatus().code();
+            if (code >= 0 && code < 600) {
+                statusCounts.incrementAndGet(code);
+            }
+            if (bytesIn > 0) {
+                this.bytesIn.add(bytesIn);
+            }
+            this.bytesOut.add(result.resultLength());
+        }
+
+        /**
+         * Returns the route, the method and the path pattern, such as
+         * {@code "GET /users/{id}"}.
+         *
+         * @return the route
+         */
+        public String route() {
+            return route;
+        }
+
+        /**
+         * Returns the latency histogram.
+         *
+         * @return the latency histogram
+         */
+        public LatencyHistogram latency() {
+            return latency;
+        }
+
+        /**
+         * Returns the number of the responses with the specified status code.
+         *
+         * @param code the status code
+         * @return the number of the responses
+         */
+        public long statusCount(int code) {
+            return code >= 0 && code < 600 ? statusCounts.get(code) : 0;
+        }
+
+        /**
+         * Returns the number of the requests being processed currently.
+         *
+         * @return the number of the in-flight requests
+         */
+        public long inFlight() {
+            return inFlight.sum();
+        }
+
+        /**
+         * Returns the total bytes of the request bodies.
+         *
+         * @return the total bytes in
+         */
+        public long bytesIn() {
+            return bytesIn.sum();
+        }
+
+        /**
+         * Returns the total bytes of the response bodies.
+         *
+         * @return the total bytes out
+         */
+        public long bytesOut() {
+            return bytesOut.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "RouteMetrics(route=" + route + ", latency=" + latency + ", inFlight=" + inFlight()
+                    + ", bytesIn=" + bytesIn() + ", bytesOut=" + bytesOut() + ")";
+        }
+
+    }
+
+    private final ConcurrentMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final RouteMetrics unmatched = route(UNMATCHED);
+
+    @Override
+    public CompletionStage<HttpResult> apply(HttpRequestContext ctx, MiddlewareChain next) {
+        MetricsContext metricsContext = new MetricsContext(ctx);
+        long bytesIn = ctx.contentLength();
+        return next.doNext(metricsContext).whenComplete((r, e) -> {
+            RouteMetrics route = metricsContext.route;
+            if (route == null) {
+                route = unmatched;
+            } else {
+                route.inFlight.decrement();
+            }
+            if (r != null) {
+                route.record(r, bytesIn);
+            }
+        });
+    }
+
+    private RouteMetrics route(String route) {
+        RouteMetrics metrics = routes.get(route);
+        if (metrics == null) {
+            metrics = routes.computeIfAbsent(route, RouteMetrics::new);
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of all the routes, sorted by route.
+     *
+     * @return the metrics of all the routes
+     */
+    public List<RouteMetrics> routes() {
+        List<RouteMetrics> list = new ArrayList<>(routes.values());
+        list.sort((a, b) -> a.route.compareTo(b.route));
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Exports the metrics of all the routes by the specified exporter.
+     *
+     * @param exporter the exporter
+     */
+    public void exportTo(Exporter exporter) {
+        Objects.requireNonNull(exporter, "exporter must not be null").export(routes());
+    }
+
+    /**
+     * Returns the metrics in the Prometheus text exposition format.
+     *
+     * @return the metrics in text format
+     */
+    public String toText() {
+        StringBuilder b = new StringBuilder(1024);
+        List<RouteMetrics> routes = routes();
+        b.append("# TYPE http_server_requests_in_flight gauge\n");
+        for (RouteMetrics route : routes) {
+            appendSample(b, "http_server_requests_in_flight", route, null, null).append(route.inFlight()).append('\n');
+        }
+        b.append("# TYPE http_server_requests_total counter\n");
+        for (RouteMetrics route : routes) {
+            for (int code = 100; code < 600; code++) {
+                long count = route.statusCounts.get(code);
+                if (count > 0) {
+                    appendSample(b, "http_server_requests_total", route, "status", Integer.toString(code))
+                            .append(count).append('\n');
+                }
+            }
+        }
+        b.append("# TYPE http_server_request_duration_seconds histogram\n");
+        for (RouteMetrics route : routes) {
+            long cumulative = 0;
+            for (int i = 0; i <= DURATION_BOUNDS.length; i++) {
+                cumulative += route.durationCounts.get(i);
+                String le = i < DURATION_BOUNDS.length ? Double.toString(DURATION_BOUNDS[i] / 1_000_000.0) : "+Inf";
+                appendSample(b, "http_server_request_duration_seconds_bucket", route, "le", le).append(cumulative)
+                        .append('\n');
+            }
+            appendSample(b, "http_server_request_duration_seconds_sum", route, null, null)
+                    .append(route.latency.sumMicros() / 1_000_000.0).append('\n');
+            // the same as the +Inf bucket, so that they are always consistent
+            appendSample(b, "http_server_request_duration_seconds_count", route, null, null).append(cumulative)
+                    .append('\n');
+        }
+        b.append("# TYPE http_server_request_duration_seconds_max gauge\n");
+        for (RouteMetrics route : routes) {
+            appendSample(b, "http_server_request_duration_seconds_max", route, null, null)
+                    .append(route.latency.maxMicros() / 1_000_000.0).append('\n');
+        }
+        b.append("# TYPE http_server_request_bytes_total counter\n");
+        for (RouteMetrics route : routes) {
+            appendSample(b, "http_server_request_bytes_total", route, null, null).append(route.bytesIn()).append('\n');
+        }
+        b.append("# TYPE http_server_response_bytes_total counter\n");
+        for (RouteMetrics route : routes) {
+            appendSample(b, "http_server_response_bytes_total", route, null, null).append(route.bytesOut())
+                    .append('\n');
+        }
+        return b.toString();
+    }
+
+    private static final StringBuilder appendSample(StringBuilder b, String name, RouteMetrics route,
+            String labelName, String labelValue) {
+        b.append(name).append("{route=\"");
+        appendEscaped(b, route.route).append('"');
+        if (labelName != null) {
+            b.append(',').append(labelName).append("=\"");
+            appendEscaped(b, labelValue).append('"');
+        }
+        return b.append("} ");
+    }
+
+    private static final StringBuilder appendEscaped(StringBuilder b, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                b.append("\\\\");
+                break;
+            case '"':
+                b.append("\\\"");
+                break;
+            case '\n':
+                b.append("\\n");
+                break;
+            default:
+                b.append(c);
+                break;
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Returns a {@link HttpServiceInvoker} responds the metrics in the
+     * Prometheus text exposition format.
+     * <p>
+     * For example:
+     *
+     * <pre>
+     * router.get("/metrics", httpMetrics.textService());
+     * </pre>
+     *
+     * @return a {@code HttpServiceInvoker}
+     */
+    public HttpServiceInvoker textService() {
+        return ctx -> {
+            ByteBuf content = ctx.alloc().buffer();
+            ByteBufUtil.writeUtf8(content, toText());
+            return ctx.simpleRespond(OK, content, TEXT_PLAIN_VERSION_004);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "HttpMetrics(routes=" + routes.size() + ")";
+    }
+
+    private final class MetricsContext extends DelegatingHttpRequestContext implements Router.MatchedRouteAware {
+
+        private RouteMetrics route;
+
+        private MetricsContext(HttpRequestContext delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void routeMatched(String path) {
+            if (route == null) {
+                route = route(methodName() + " " + path);
+                route.inFlight.increment();
+            }
+        }
+
+        private String methodName() {
+            String name = method().name();
+            return STANDARD_METHODS.contains(name) ? name : OTHER_METHOD;
+        }
+
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets, in the spirit of
+ * HdrHistogram.
+ * <p>
+ * Latencies are recorded in microseconds. Each power of two is split into
+ * {@code 16} linear sub-buckets, so the relative error of the percentiles is
+ * less than {@code 6.25%}, and the memory is fixed whatever the number of the
+ * recorded values. Recording is wait-free, reading is weakly consistent.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ *
+ * @see HttpMetrics
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // about 12 days in microseconds
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    static final int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) Math.max(0, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static final long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param duration the latency
+     * @param unit     the time unit of the latency
+     */
+    public void record(long duration, TimeUnit unit) {
+        recordMicros(unit.toMicros(duration));
+    }
+
+    /**
+     * Records a latency in microseconds.
+     *
+     * @param micros the latency in microseconds
+     */
+    public void recordMicros(long micros) {
+        buckets.incrementAndGet(bucketIndex(micros));
+        count.increment();
+        sum.add(micros);
+        if (micros > max.get()) {
+            max.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    /**
+     * Returns the total number of the recorded latencies.
+     *
+     * @return the total count
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of the recorded latencies in microseconds.
+     *
+     * @return the sum in microseconds
+     */
+    public long sumMicros() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the maximum recorded latency in microseconds.
+     *
+     * @return the maximum latency in microseconds
+     */
+    public long maxMicros() {
+        return max.get();
+    }
+
+    /**
+     * Returns the latency at the specified percentile in microseconds.
+     * <p>
+     * The returned value is the upper bound of the bucket containing the
+     * percentile, but never greater than {@link #maxMicros()}.
+     *
+     * @param percentile the percentile, between {@code 0.0} and {@code 100.0}
+     * @return the latency in microseconds, or {@code 0} if nothing recorded
+     */
+    public long percentileMicros(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0.0 and 100.0");
+        }
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts[i] = buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += counts[i];
+            if (accumulated >= rank) {
+                return Math.min(bucketUpperBound(i), maxMicros());
+            }
+        }
+        return maxMicros();
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram(count=" + count() + ", p50=" + percentileMicros(50) + ", p99="
+                + percentileMicros(99) + ", max=" + maxMicros() + ")";
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.exception.BadRequestException;
+
+/**
+ * Invokes a routing method of an HTTP controller with the arguments mapped
+ * from the {@link HttpRequestContext}.
+ * 
+ * @since 2.3
+ *
+ * @author MJ Fang
+ * 
+ * @see RouteSupport
+ */
+@FunctionalInterface
+public interface MethodInvoker {
+
+    /**
+     * Invokes the routing method.
+     * 
+     * @param ctx the {@link HttpRequestContext}
+     * @return the result returned by the method, {@code null} for void methods
+     * @throws Throwable any exception thrown by the method, or a
+     *                   {@link BadRequestException} if any argument can't be
+     *                   mapped
+     */
+    Object invoke(HttpRequestContext ctx) throws Throwable;
+
+}
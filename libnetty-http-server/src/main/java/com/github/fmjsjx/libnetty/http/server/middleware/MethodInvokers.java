@@ -0,0 +1,270 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.exception.BadRequestException;
+
+/**
+ * Utility class to generate {@link MethodInvoker}s for the routing methods of
+ * HTTP controllers.
+ * <p>
+ * The invokers are generated by {@link LambdaMetafactory} at registration
+ * time, so the routing methods are called directly without reflection, and
+ * can be inlined by the JIT. Methods with no more than
+ * {@value #MAX_SPECIALIZED_ARITY} parameters are called without any argument
+ * array.
+ * <p>
+ * If the lambda can't be generated (e.g. the class of the controller is not
+ * accessible), the invoker falls back to a {@link MethodHandle}.
+ * 
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+final class MethodInvokers {
+
+    private static final Logger logger = LoggerFactory.getLogger(MethodInvokers.class);
+
+    static final int MAX_SPECIALIZED_ARITY = 4;
+
+    private static final Class<?>[] INVOKER_TYPES = { Invoker0.class, Invoker1.class, Invoker2.class,
+            Invoker3.class, Invoker4.class };
+
+    private static final Class<?>[] VOID_INVOKER_TYPES = { VoidInvoker0.class, VoidInvoker1.class,
+            VoidInvoker2.class, VoidInvoker3.class, VoidInvoker4.class };
+
+    // The types below must be public, because the generated lambdas are defined
+    // in the packages of the controllers.
+
+    public interface Invoker0 {
+        Object invoke() throws Throwable;
+    }
+
+    public interface Invoker1 {
+        Object invoke(Object a1) throws Throwable;
+    }
+
+    public interface Invoker2 {
+        Object invoke(Object a1, Object a2) throws Throwable;
+    }
+
+    public interface Invoker3 {
+        Object invoke(Object a1, Object a2, Object a3) throws Throwable;
+    }
+
+    public interface Invoker4 {
+        Object invoke(Object a1, Object a2, Object a3, Object a4) throws Throwable;
+    }
+
+    public interface VoidInvoker0 {
+        void invoke() throws Throwable;
+    }
+
+    public interface VoidInvoker1 {
+        void invoke(Object a1) throws Throwable;
+    }
+
+    public interface VoidInvoker2 {
+        void invoke(Object a1, Object a2) throws Throwable;
+    }
+
+    public interface VoidInvoker3 {
+        void invoke(Object a1, Object a2, Object a3) throws Throwable;
+    }
+
+    public interface VoidInvoker4 {
+        void invoke(Object a1, Object a2, Object a3, Object a4) throws Throwable;
+    }
+
+    /**
+     * Creates and returns a new {@link MethodInvoker} for the specified routing
+     * method.
+     * 
+     * @param controller       the controller object, ignored for static methods
+     * @param method           the routing method
+     * @param parameterMappers the functions map the arguments from the
+     *                         {@link HttpRequestContext}
+     * @return a {@code MethodInvoker}
+     */
+    static final MethodInvoker create(Object controller, Method method,
+            Function<HttpRequestContext, Object>[] parameterMappers) {
+        int arity = parameterMappers.length;
+        if (arity > MAX_SPECIALIZED_ARITY) {
+            MethodHandle handle = toGenericHandle(controller, method).asSpreader(Object[].class, arity);
+            return ctx -> (Object) handle.invokeExact(mapArguments(parameterMappers, ctx));
+        }
+        Object invoker = toInvoker(controller, method, arity);
+        switch (arity) {
+        case 0: {
+            Invoker0 i = (Invoker0) invoker;
+            return ctx -> i.invoke();
+        }
+        case 1: {
+            Invoker1 i = (Invoker1) invoker;
+            Function<HttpRequestContext, Object> m1 = parameterMappers[0];
+            return ctx -> i.invoke(map(m1, ctx));
+        }
+        case 2: {
+            Invoker2 i = (Invoker2) invoker;
+            Function<HttpRequestContext, Object> m1 = parameterMappers[0];
+            Function<HttpRequestContext, Object> m2 = parameterMappers[1];
+            return ctx -> i.invoke(map(m1, ctx), map(m2, ctx));
+        }
+        case 3: {
+            Invoker3 i = (Invoker3) invoker;
+            Function<HttpRequestContext, Object> m1 = parameterMappers[0];
+            Function<HttpRequestContext, Object> m2 = parameterMappers[1];
+            Function<HttpRequestContext, Object> m3 = parameterMappers[2];
+            return ctx -> i.invoke(map(m1, ctx), map(m2, ctx), map(m3, ctx));
+        }
+        default: {
+            Invoker4 i = (Invoker4) invoker;
+            Function<HttpRequestContext, Object> m1 = parameterMappers[0];
+            Function<HttpRequestContext, Object> m2 = parameterMappers[1];
+            Function<HttpRequestContext, Object> m3 = parameterMappers[2];
+            Function<HttpRequestContext, Object> m4 = parameterMappers[3];
+            return ctx -> i.invoke(map(m1, ctx), map(m2, ctx), map(m3, ctx), map(m4, ctx));
+        }
+        }
+    }
+
+    private static final Object map(Function<HttpRequestContext, Object> mapper, HttpRequestContext ctx) {
+        try {
+            return mapper.apply(ctx);
+        } catch (Exception e) {
+            throw new BadRequestException(e);
+        }
+    }
+
+    private static final Object[] mapArguments(Function<HttpRequestContext, Object>[] parameterMappers,
+            HttpRequestContext ctx) {
+        Object[] args = new Object[parameterMappers.length];
+        for (int i = 0; i < parameterMappers.length; i++) {
+            args[i] = map(parameterMappers[i], ctx);
+        }
+        return args;
+    }
+
+    private static final Object toInvoker(Object controller, Method method, int arity) {
+        try {
+            return spinInvoker(controller, method, arity);
+        } catch (Throwable e) {
+            logger.debug("Generate lambda invoker failed, fall back to method handle -- {}", method, e);
+            return toHandleInvoker(toGenericHandle(controller, method), arity);
+        }
+    }
+
+    private static final Object spinInvoker(Object controller, Method method, int arity) throws Throwable {
+        Class<?> declaringClass = method.getDeclaringClass();
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+        MethodHandle implMethod = lookup.unreflect(method);
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        boolean isVoid = method.getReturnType() == void.class;
+        Class<?> invokerType = isVoid ? VOID_INVOKER_TYPES[arity] : INVOKER_TYPES[arity];
+        MethodType invokedType = isStatic ? MethodType.methodType(invokerType)
+                : MethodType.methodType(invokerType, declaringClass);
+        MethodType samMethodType = MethodType.genericMethodType(arity);
+        MethodType instantiatedMethodType = MethodType.methodType(method.getReturnType(), method.getParameterTypes())
+                .wrap();
+        if (isVoid) {
+            samMethodType = samMethodType.changeReturnType(void.class);
+            instantiatedMethodType = instantiatedMethodType.changeReturnType(void.class);
+        }
+        CallSite callSite = LambdaMetafactory.metafactory(lookup, "invoke", invokedType, samMethodType, implMethod,
+                instantiatedMethodType);
+        Object invoker;
+        if (isStatic) {
+            invoker = callSite.getTarget().invoke();
+        } else {
+            invoker = callSite.getTarget().invoke(controller);
+        }
+        return isVoid ? fromVoidInvoker(invoker, arity) : invoker;
+    }
+
+    private static final Object fromVoidInvoker(Object invoker, int arity) {
+        switch (arity) {
+        case 0: {
+            VoidInvoker0 i = (VoidInvoker0) invoker;
+            return (Invoker0) () -> {
+                i.invoke();
+                return null;
+            };
+        }
+        case 1: {
+            VoidInvoker1 i = (VoidInvoker1) invoker;
+            return (Invoker1) a1 -> {
+                i.invoke(a1);
+                return null;
+            };
+        }
+        case 2: {
+            VoidInvoker2 i = (VoidInvoker2) invoker;
+            return (Invoker2) (a1, a2) -> {
+                i.invoke(a1, a2);
+                return null;
+            };
+        }
+        case 3: {
+            VoidInvoker3 i = (VoidInvoker3) invoker;
+            return (Invoker3) (a1, a2, a3) -> {
+                i.invoke(a1, a2, a3);
+                return null;
+            };
+        }
+        default: {
+            VoidInvoker4 i = (VoidInvoker4) invoker;
+            return (Invoker4) (a1, a2, a3, a4) -> {
+                i.invoke(a1, a2, a3, a4);
+                return null;
+            };
+        }
+        }
+    }
+
+    private static final Object toHandleInvoker(MethodHandle handle, int arity) {
+        switch (arity) {
+        case 0:
+            return (Invoker0) () -> (Object) handle.invokeExact();
+        case 1:
+            return (Invoker1) a1 -> (Object) handle.invokeExact(a1);
+        case 2:
+            return (Invoker2) (a1, a2) -> (Object) handle.invokeExact(a1, a2);
+        case 3:
+            return (Invoker3) (a1, a2, a3) -> (Object) handle.invokeExact(a1, a2, a3);
+        default:
+            return (Invoker4) (a1, a2, a3, a4) -> (Object) handle.invokeExact(a1, a2, a3, a4);
+        }
+    }
+
+    /**
+     * Returns a {@link MethodHandle} of the specified method with the type
+     * {@code (Object, ...)Object}, void methods return {@code null}.
+     */
+    private static final MethodHandle toGenericHandle(Object controller, Method method) {
+        try {
+            method.trySetAccessible();
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            if (!Modifier.isStatic(method.getModifiers())) {
+                handle = handle.bindTo(controller);
+            }
+            return handle.asType(MethodType.genericMethodType(method.getParameterCount()));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("register controller failed", e);
+        }
+    }
+
+    private MethodInvokers() {
+    }
+
+}
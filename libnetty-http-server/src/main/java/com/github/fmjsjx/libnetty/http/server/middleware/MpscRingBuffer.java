@@ -0,0 +1,92 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free ring buffer with multiple producers and single consumer.
+ * <p>
+ * Each slot has a sequence number telling producers and the consumer whether
+ * it is free or filled, so that producers only compete on the tail index and
+ * never block.
+ *
+ * @param <E> the type of the elements
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+final class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    MpscRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Inserts the specified element if the buffer is not full. Can be called by
+     * any thread.
+     *
+     * @param e the element
+     * @return {@code false} if the buffer is full
+     */
+    boolean offer(E e) {
+        for (;;) {
+            long t = tail.get();
+            int index = (int) t & mask;
+            long diff = sequences.get(index) - t;
+            if (diff == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    elements.lazySet(index, e);
+                    sequences.set(index, t + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Retrieves and removes the head element. Must be called by the single
+     * consumer thread.
+     *
+     * @return the head element, or {@code null} if the buffer is empty
+     */
+    E poll() {
+        long h = head;
+        int index = (int) h & mask;
+        if (sequences.get(index) != h + 1) {
+            return null;
+        }
+        E e = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.set(index, h + mask + 1);
+        head = h + 1;
+        return e;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+}
@@ -0,0 +1,467 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.TOO_MANY_REQUESTS;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.fmjsjx.libnetty.http.HttpCommonUtil;
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+import com.github.fmjsjx.libnetty.http.server.HttpServer.User;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * A {@link Middleware} limits the request rate of each key, such as the
+ * client address, an API key header or the authenticated user.
+ * <p>
+ * Each key has a token bucket with the configured rate and burst. A bucket is
+ * represented by one {@code long}, the theoretical arrival time of the next
+ * request (GCRA), and updated by a single CAS, so there is no lock and no
+ * background refilling. A bucket whose theoretical arrival time has passed is
+ * equivalent to a full bucket, so it can be removed at any time: the buckets
+ * are removed when the number of the keys exceeds the limit, and the memory is
+ * bounded. If there are still too many active keys after removing, the
+ * requests of the new keys all share one overflow bucket with the same rate
+ * and burst, so rotating keys can not bypass the limit once the map is full.
+ * When the limit is reached, the buckets are swept at most once every
+ * {@code 100} milliseconds, so a flood of new keys does not scan all the
+ * buckets for each request.
+ * <p>
+ * The requests exceeded the rate are rejected with
+ * {@code 429 Too Many Requests}, a {@code Retry-After} header and the
+ * {@code RateLimit-Limit}, {@code RateLimit-Remaining} and
+ * {@code RateLimit-Reset} headers.
+ * <p>
+ * In the event-loop-local mode, each event loop has its own buckets in a plain
+ * map, so there is no cross-thread coordination at all, but the rate is
+ * applied per event loop.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ *
+ * @see Middleware
+ */
+public class RateLimiter implements Middleware {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+    private static final AsciiString RATELIMIT_LIMIT = AsciiString.cached("ratelimit-limit");
+    private static final AsciiString RATELIMIT_REMAINING = AsciiString.cached("ratelimit-remaining");
+    private static final AsciiString RATELIMIT_RESET = AsciiString.cached("ratelimit-reset");
+
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private static final long FULL_SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Returns the key function uses the remote address of the client, which
+     * respects the {@code X-Forwarded-For} header.
+     * <p>
+     * The {@code X-Forwarded-For} header is trusted as is, so a client can
+     * choose its own key by sending the header. Use this only if the server is
+     * behind a trusted proxy which always overwrites the header, otherwise
+     * please use {@link #byChannelAddress()}.
+     *
+     * @return the key function
+     *
+     * @see #byChannelAddress()
+     */
+    public static final Function<HttpRequestContext, Object> byRemoteAddress() {
+        return ctx -> HttpCommonUtil.remoteAddress(ctx.channel(), ctx.headers());
+    }
+
+    /**
+     * Returns the key function uses the address of the connection, which
+     * ignores the {@code X-Forwarded-For} header.
+     *
+     * @return the key function
+     *
+     * @see #byRemoteAddress()
+     */
+    public static final Function<HttpRequestContext, Object> byChannelAddress() {
+        return ctx -> {
+            SocketAddress address = ctx.channel().remoteAddress();
+            return address instanceof InetSocketAddress ? ((InetSocketAddress) address).getAddress() : address;
+        };
+    }
+
+    /**
+     * Returns the key function uses the value of the specified request header.
+     * The requests without the header are not limited.
+     *
+     * @param name the name of the header
+     * @return the key function
+     */
+    public static final Function<HttpRequestContext, Object> byHeader(CharSequence name) {
+        Objects.requireNonNull(name, "name must not be null");
+        return ctx -> ctx.headers().get(name);
+    }
+
+    /**
+     * Returns the key function uses the name of the authenticated {@link User}.
+     * The requests without user are not limited.
+     *
+     * @return the key function
+     */
+    public static final Function<HttpRequestContext, Object> byUser() {
+        return ctx -> ctx.user().map(User::username).orElse(null);
+    }
+
+    private final Function<? super HttpRequestContext, ?> keyFunction;
+    private final long emissionIntervalNanos;
+    private final long burstNanos;
+    private final int burst;
+    private final int maxKeys;
+    private final boolean eventLoopLocal;
+
+    private final ConcurrentMap<Object, AtomicLong> buckets;
+    private final FastThreadLocal<LocalBuckets> localBuckets;
+    private final AtomicInteger putCount = new AtomicInteger();
+    private final AtomicLong nextFullSweepNanos;
+    private final AtomicLong overflowBucket;
+    private final LongSupplier nanoClock;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder untracked = new LongAdder();
+
+    /**
+     * Constructs a new {@link RateLimiter} with the specified key function and
+     * {@link Options}.
+     *
+     * @param keyFunction the function returns the key of the request, or
+     *                    {@code null} if the request should not be limited
+     * @param options     the options
+     */
+    public RateLimiter(Function<? super HttpRequestContext, ?> keyFunction, Options options) {
+        this(keyFunction, options, System::nanoTime);
+    }
+
+    RateLimiter(Function<? super HttpRequestContext, ?> keyFunction, Options options, LongSupplier nanoClock) {
+        this.keyFunction = Objects.requireNonNull(keyFunction, "keyFunction must not be null");
+        this.nanoClock = nanoClock;
+        long now = nanoClock.getAsLong();
+        this.nextFullSweepNanos = new AtomicLong(now);
+        this.overflowBucket = new AtomicLong(now);
+        this.emissionIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / options.permitsPerSecond));
+        this.burst = options.burst;
+        this.burstNanos = emissionIntervalNanos * options.burst;
+        this.maxKeys = options.maxKeys;
+        this.eventLoopLocal = options.eventLoopLocal;
+        if (eventLoopLocal) {
+            this.buckets = null;
+            this.localBuckets = new FastThreadLocal<>() {
+                @Override
+                protected LocalBuckets initialValue() throws Exception {
+                    return new LocalBuckets(nanoClock.getAsLong());
+                }
+            };
+        } else {
+            this.buckets = new ConcurrentHashMap<>();
+            this.localBuckets = null;
+        }
+        logger.debug("RateLimiter: options={}", options);
+    }
+
+    @Override
+    public CompletionStage<HttpResult> apply(HttpRequestContext ctx, MiddlewareChain next) {
+        Object key = keyFunction.apply(ctx);
+        if (key == null) {
+            return next.doNext(ctx);
+        }
+        long now = nanoClock.getAsLong();
+        long result = eventLoopLocal ? acquireLocal(key, now) : acquire(key, now);
+        if (result >= 0) {
+            return next.doNext(ctx);
+        }
+        rejected.increment();
+        long waitNanos = -result;
+        logger.debug("Rate limit exceeded for key {}, wait {} ns", key, waitNanos);
+        String retryAfter = Long.toString(toSeconds(waitNanos));
+        // the bucket will be full after the burst elapsed
+        String reset = Long.toString(toSeconds(waitNanos + burstNanos - emissionIntervalNanos));
+        return ctx.simpleRespond(TOO_MANY_REQUESTS, headers -> headers.set(HttpHeaderNames.RETRY_AFTER, retryAfter)
+                .set(RATELIMIT_LIMIT, burst).set(RATELIMIT_REMAINING, 0).set(RATELIMIT_RESET, reset));
+    }
+
+    private static final long toSeconds(long nanos) {
+        return Math.max(1, (nanos + 999_999_999L) / 1_000_000_000L);
+    }
+
+    /**
+     * Returns the new theoretical arrival time if allowed, or the negative
+     * nanoseconds to wait if not allowed.
+     */
+    private long check(long tat, long now) {
+        long base = Math.max(tat, now);
+        long newTat = base + emissionIntervalNanos;
+        long allowAt = newTat - burstNanos;
+        if (allowAt > now) {
+            return -(allowAt - now);
+        }
+        return newTat;
+    }
+
+    private long acquire(Object key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys && (!sweepFull(now) || buckets.size() >= maxKeys)) {
+                untracked.increment();
+                return tryAcquire(overflowBucket, now);
+            }
+            AtomicLong newBucket = new AtomicLong(now + emissionIntervalNanos);
+            bucket = buckets.putIfAbsent(key, newBucket);
+            if (bucket == null) {
+                if ((putCount.incrementAndGet() & (SWEEP_INTERVAL - 1)) == 0) {
+                    sweep(now);
+                }
+                return 0;
+            }
+        }
+        return tryAcquire(bucket, now);
+    }
+
+    private long tryAcquire(AtomicLong bucket, long now) {
+        for (;;) {
+            long tat = bucket.get();
+            long result = check(tat, now);
+            if (result < 0) {
+                return result;
+            }
+            if (bucket.compareAndSet(tat, result)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Removes the full buckets when the number of the keys reached the limit,
+     * at most once every {@link #FULL_SWEEP_INTERVAL_NANOS}. Returns
+     * {@code true} if any bucket removed.
+     */
+    private boolean sweepFull(long now) {
+        long next = nextFullSweepNanos.get();
+        if (now - next < 0 || !nextFullSweepNanos.compareAndSet(next, now + FULL_SWEEP_INTERVAL_NANOS)) {
+            return false;
+        }
+        return sweep(now) > 0;
+    }
+
+    /**
+     * Removes the full buckets. Returns the number of the removed buckets.
+     */
+    private int sweep(long now) {
+        int removed = 0;
+        for (Iterator<Map.Entry<Object, AtomicLong>> iter = buckets.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<Object, AtomicLong> entry = iter.next();
+            AtomicLong bucket = entry.getValue();
+            if (bucket.get() - now <= 0 && buckets.remove(entry.getKey(), bucket)) {
+                removed++;
+            }
+        }
+        logger.trace("Swept {} full buckets", removed);
+        return removed;
+    }
+
+    private long acquireLocal(Object key, long now) {
+        LocalBuckets localBuckets = this.localBuckets.get();
+        Map<Object, long[]> buckets = localBuckets.buckets;
+        long[] bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys) {
+                if (now - localBuckets.nextFullSweepNanos >= 0) {
+                    localBuckets.nextFullSweepNanos = now + FULL_SWEEP_INTERVAL_NANOS;
+                    buckets.values().removeIf(b -> b[0] - now <= 0);
+                }
+                if (buckets.size() >= maxKeys) {
+                    untracked.increment();
+                    return tryAcquire(localBuckets.overflow, now);
+                }
+            }
+            buckets.put(key, new long[] { now + emissionIntervalNanos });
+            return 0;
+        }
+        return tryAcquire(bucket, now);
+    }
+
+    private long tryAcquire(long[] bucket, long now) {
+        long result = check(bucket[0], now);
+        if (result < 0) {
+            return result;
+        }
+        bucket[0] = result;
+        return 0;
+    }
+
+    private static final class LocalBuckets {
+
+        private final Map<Object, long[]> buckets = new HashMap<>();
+        private final long[] overflow;
+        private long nextFullSweepNanos;
+
+        private LocalBuckets(long now) {
+            this.overflow = new long[] { now };
+            this.nextFullSweepNanos = now;
+        }
+
+    }
+
+    /**
+     * Returns the number of the tracked keys, or {@code -1} in the
+     * event-loop-local mode.
+     *
+     * @return the number of the tracked keys
+     */
+    public int keyCount() {
+        return eventLoopLocal ? -1 : buckets.size();
+    }
+
+    /**
+     * Returns the total number of the rejected requests.
+     *
+     * @return the total number of the rejected requests
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the total number of the requests of the keys not tracked because
+     * there are too many keys, which are limited by the shared overflow bucket.
+     *
+     * @return the total number of the untracked requests
+     */
+    public long untrackedCount() {
+        return untracked.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter(emissionInterval=" + Duration.ofNanos(emissionIntervalNanos) + ", burst=" + burst
+                + ", maxKeys=" + maxKeys + ", eventLoopLocal=" + eventLoopLocal + ")";
+    }
+
+    /**
+     * The options of {@link RateLimiter}.
+     *
+     * @since 2.3
+     *
+     * @author MJ Fang
+     */
+    public static class Options {
+
+        private double permitsPerSecond = 10;
+        private int burst = 10;
+        private int maxKeys = 100_000;
+        private boolean eventLoopLocal;
+
+        /**
+         * Set the rate of each key.
+         * <p>
+         * The default is {@code 10} permits per second.
+         *
+         * @param permitsPerSecond the number of the permits per second
+         * @return this {@code Options}
+         */
+        public Options rate(double permitsPerSecond) {
+            if (!(permitsPerSecond > 0)) {
+                throw new IllegalArgumentException("permitsPerSecond must be positive");
+            }
+            this.permitsPerSecond = permitsPerSecond;
+            return this;
+        }
+
+        /**
+         * Set the rate of each key.
+         *
+         * @param permits the number of the permits
+         * @param period  the period
+         * @return this {@code Options}
+         */
+        public Options rate(int permits, Duration period) {
+            if (permits <= 0) {
+                throw new IllegalArgumentException("permits must be positive");
+            }
+            return rate(permits * 1_000_000_000.0 / period.toNanos());
+        }
+
+        /**
+         * Set the maximum number of the requests of each key can be processed at
+         * once, the capacity of the token bucket.
+         * <p>
+         * The default is {@code 10}.
+         *
+         * @param burst the capacity of the token bucket
+         * @return this {@code Options}
+         */
+        public Options burst(int burst) {
+            if (burst <= 0) {
+                throw new IllegalArgumentException("burst must be positive");
+            }
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of the tracked keys (of each event loop in the
+         * event-loop-local mode).
+         * <p>
+         * The default is {@code 100000}.
+         *
+         * @param maxKeys the maximum number of the keys
+         * @return this {@code Options}
+         */
+        public Options maxKeys(int maxKeys) {
+            if (maxKeys <= 0) {
+                throw new IllegalArgumentException("maxKeys must be positive");
+            }
+            this.maxKeys = maxKeys;
+            return this;
+        }
+
+        /**
+         * Set if use the event-loop-local mode or not.
+         * <p>
+         * In the event-loop-local mode, the rate is applied to each event loop
+         * separately.
+         * <p>
+         * The default is {@code false}.
+         *
+         * @param eventLoopLocal {@code true} to use the event-loop-local mode
+         * @return this {@code Options}
+         */
+        public Options eventLoopLocal(boolean eventLoopLocal) {
+            this.eventLoopLocal = eventLoopLocal;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "RateLimiter.Options[permitsPerSecond=" + permitsPerSecond + ", burst=" + burst + ", maxKeys="
+                    + maxKeys + ", eventLoopLocal=" + eventLoopLocal + "]";
+        }
+
+    }
+
+}
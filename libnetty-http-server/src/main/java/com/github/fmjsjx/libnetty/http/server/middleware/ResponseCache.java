@@ -0,0 +1,616 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.*;
+import static io.netty.handler.codec.http.HttpHeaderValues.GZIP;
+import static io.netty.handler.codec.http.HttpHeaderValues.NO_CACHE;
+import static io.netty.handler.codec.http.HttpHeaderValues.NO_STORE;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.fmjsjx.libnetty.http.server.DelegatingHttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+
+/**
+ * A {@link Middleware} caches the full responses of {@code GET} requests in
+ * memory.
+ * <p>
+ * Responses are keyed by the path, the query string (or only the selected
+ * query parameters) and the selected request headers. Only {@code 200 OK}
+ * full responses are cached, and the {@code Cache-Control} header set by the
+ * handlers is honored: {@code no-store}, {@code no-cache} and {@code private}
+ * responses are never cached, {@code s-maxage} or {@code max-age} overrides
+ * the default TTL.
+ * <p>
+ * As a shared cache, the requests with {@code Authorization} or
+ * {@code Cookie} headers are only answered by, and only stored, the responses
+ * explicitly marked as shared by {@code public} or {@code s-maxage}. The
+ * responses which {@code Vary} by {@code *} or by any request header not in
+ * the {@link Options#keyHeaders(String...) key headers} (except
+ * {@code Accept-Encoding}) are never cached.
+ * <p>
+ * A cache hit is answered directly without touching the rest of the
+ * middleware chain: {@code 304 Not Modified} if {@code If-None-Match} matches
+ * the cached {@code ETag}, otherwise the cached bytes.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ *
+ * @see Middleware
+ * @see PathFilterMiddleware
+ */
+public class ResponseCache implements Middleware {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    private static final int PRECOMPRESS_MIN_SIZE = 1024;
+
+    private final long maxSize;
+    private final int maxEntrySize;
+    private final long defaultTtlNanos;
+    private final List<String> keyHeaders;
+    private final List<String> keyQueryParameters;
+    private final boolean precompress;
+
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Constructs a new {@link ResponseCache} with the default {@link Options}.
+     */
+    public ResponseCache() {
+        this(new Options());
+    }
+
+    /**
+     * Constructs a new {@link ResponseCache} with the specified {@link Options}.
+     *
+     * @param options the options
+     */
+    public ResponseCache(Options options) {
+        this.maxSize = options.maxSize;
+        this.maxEntrySize = options.maxEntrySize;
+        this.defaultTtlNanos = options.defaultTtl.toNanos();
+        this.keyHeaders = options.keyHeaders;
+        this.keyQueryParameters = options.keyQueryParameters;
+        this.precompress = options.precompress;
+        logger.debug("ResponseCache: options={}", options);
+    }
+
+    @Override
+    public CompletionStage<HttpResult> apply(HttpRequestContext ctx, MiddlewareChain next) {
+        if (!HttpMethod.GET.equals(ctx.method())) {
+            return next.doNext(ctx);
+        }
+        HttpHeaders headers = ctx.headers();
+        String key = toKey(ctx);
+        String cacheControl = headers.get(CACHE_CONTROL);
+        boolean bypass = cacheControl != null
+                && (cacheControl.contains(NO_CACHE) || cacheControl.contains(NO_STORE));
+        boolean credentialed = headers.contains(AUTHORIZATION) || headers.contains(COOKIE);
+        if (!bypass) {
+            CachedResponse cached = get(key, credentialed);
+            if (cached != null) {
+                hitCount.increment();
+                return respondCached(ctx, cached);
+            }
+        }
+        missCount.increment();
+        return next.doNext(new CachingContext(ctx, key, credentialed));
+    }
+
+    private String toKey(HttpRequestContext ctx) {
+        StringBuilder b = new StringBuilder(64).append(ctx.path());
+        List<String> keyQueryParameters = this.keyQueryParameters;
+        if (keyQueryParameters == null) {
+            b.append('?').append(ctx.rawQuery());
+        } else {
+            for (String name : keyQueryParameters) {
+                b.append('\n').append(name).append('=');
+                ctx.queryParameter(name).ifPresent(values -> b.append(values));
+            }
+        }
+        HttpHeaders headers = ctx.headers();
+        for (String name : keyHeaders) {
+            b.append('\n').append(name).append(':').append(headers.getAll(name));
+        }
+        return b.toString();
+    }
+
+    private CachedResponse get(String key, boolean credentialed) {
+        synchronized (this) {
+            CachedResponse cached = entries.get(key);
+            if (cached == null || (credentialed && !cached.shared)) {
+                return null;
+            }
+            if (System.nanoTime() - cached.expiresNanoTime >= 0) {
+                entries.remove(key);
+                size -= cached.size;
+                release(cached);
+                return null;
+            }
+            return cached.retain();
+        }
+    }
+
+    private CompletionStage<HttpResult> respondCached(HttpRequestContext ctx, CachedResponse cached) {
+        List<String> ifNoneMatches = ctx.headers().getAll(IF_NONE_MATCH);
+        long age = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - cached.storedNanoTime);
+        if (!ifNoneMatches.isEmpty() && ifNoneMatches.stream().anyMatch(cached::matches)) {
+            cached.release();
+            FullHttpResponse response = ctx.responseFactory().createFull(NOT_MODIFIED);
+            response.headers().set(ETAG, cached.etag).set(AGE, age);
+            copyHeader(cached.headers, response.headers(), CACHE_CONTROL);
+            copyHeader(cached.headers, response.headers(), VARY);
+            return ctx.sendResponse(response, 0);
+        }
+        ByteBuf content = cached.content;
+        ByteBuf gzipContent = cached.gzipContent;
+        boolean useGzip = gzipContent != null && acceptsGzip(ctx.headers());
+        FullHttpResponse response = new DefaultFullHttpResponse(ctx.version(), cached.status,
+                useGzip ? gzipContent.retainedDuplicate() : content.retainedDuplicate());
+        cached.release();
+        HttpHeaders headers = response.headers().set(cached.headers);
+        HttpUtil.setKeepAlive(response, ctx.isKeepAlive());
+        if (useGzip) {
+            headers.set(CONTENT_ENCODING, GZIP);
+        }
+        if (gzipContent != null) {
+            headers.add(VARY, ACCEPT_ENCODING);
+        }
+        int contentLength = response.content().readableBytes();
+        HttpUtil.setContentLength(response, contentLength);
+        headers.set(AGE, age);
+        return ctx.sendResponse(response, contentLength);
+    }
+
+    private static final void copyHeader(HttpHeaders from, HttpHeaders to, CharSequence name) {
+        List<String> values = from.getAll(name);
+        if (!values.isEmpty()) {
+            to.set(name, values);
+        }
+    }
+
+    private static final boolean acceptsGzip(HttpHeaders headers) {
+        for (String value : headers.getAll(ACCEPT_ENCODING)) {
+            for (String token : value.split(",")) {
+                int semicolon = token.indexOf(';');
+                String name = (semicolon < 0 ? token : token.substring(0, semicolon)).trim();
+                if (GZIP.contentEqualsIgnoreCase(name) || "*".equals(name)) {
+                    return semicolon < 0 || !token.substring(semicolon + 1).trim().matches("[qQ]=0(\\.0*)?");
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the TTL in nanoseconds of the response, or {@code -1} if the
+     * response should not be cached.
+     */
+    private long ttlNanos(FullHttpResponse response, boolean credentialed) {
+        if (response.status().code() != OK.code() || response.headers().contains(SET_COOKIE)
+                || response.headers().contains(CONTENT_ENCODING) || !isVaryCovered(response.headers())) {
+            return -1;
+        }
+        String cacheControl = response.headers().get(CACHE_CONTROL);
+        if (cacheControl == null) {
+            return !credentialed && defaultTtlNanos > 0 ? defaultTtlNanos : -1;
+        }
+        long maxAge = -1;
+        boolean shared = false;
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim().toLowerCase();
+            if (directive.equals("no-store") || directive.equals("no-cache") || directive.equals("private")) {
+                return -1;
+            }
+            try {
+                if (directive.startsWith("s-maxage=")) {
+                    maxAge = Long.parseLong(directive.substring(9));
+                    shared = true;
+                } else if (directive.startsWith("max-age=") && maxAge < 0) {
+                    maxAge = Long.parseLong(directive.substring(8));
+                } else if (directive.equals("public")) {
+                    shared = true;
+                }
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        if (credentialed && !shared) {
+            return -1;
+        }
+        if (maxAge >= 0) {
+            return maxAge > 0 ? TimeUnit.SECONDS.toNanos(maxAge) : -1;
+        }
+        return defaultTtlNanos > 0 ? defaultTtlNanos : -1;
+    }
+
+    /**
+     * Returns {@code true} if all the request headers the response varies by
+     * are part of the cache key.
+     */
+    private boolean isVaryCovered(HttpHeaders responseHeaders) {
+        for (String value : responseHeaders.getAll(VARY)) {
+            for (String token : value.split(",")) {
+                String name = token.trim();
+                if (name.isEmpty() || ACCEPT_ENCODING.contentEqualsIgnoreCase(name)) {
+                    // the encodings are negotiated by this cache itself
+                    continue;
+                }
+                if ("*".equals(name) || keyHeaders.stream().noneMatch(name::equalsIgnoreCase)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static final boolean isShared(HttpHeaders responseHeaders) {
+        String cacheControl = responseHeaders.get(CACHE_CONTROL);
+        if (cacheControl == null) {
+            return false;
+        }
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim().toLowerCase();
+            if (directive.equals("public") || directive.startsWith("s-maxage=")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void store(String key, FullHttpResponse response, long ttlNanos) {
+        ByteBuf content = response.content();
+        int length = content.readableBytes();
+        String etag = response.headers().get(ETAG);
+        if (etag == null) {
+            // generate a strong ETag from the content
+            CRC32 crc = new CRC32();
+            crc.update(content.nioBuffer());
+            etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(length) + "\"";
+            response.headers().set(ETAG, etag);
+        }
+        HttpHeaders headers = new DefaultHttpHeaders().set(response.headers());
+        headers.remove(CONNECTION).remove(KEEP_ALIVE).remove(DATE).remove(CONTENT_LENGTH)
+                .remove(TRANSFER_ENCODING);
+        ByteBuf copied = PooledByteBufAllocator.DEFAULT.directBuffer(length, length);
+        copied.writeBytes(content, content.readerIndex(), length);
+        ByteBuf gzipContent = precompress && length >= PRECOMPRESS_MIN_SIZE ? gzip(copied) : null;
+        CachedResponse cached = new CachedResponse(response.status(), headers, copied, gzipContent, etag, ttlNanos,
+                isShared(headers));
+        synchronized (this) {
+            CachedResponse old = entries.put(key, cached);
+            if (old != null) {
+                size -= old.size;
+                release(old);
+            }
+            size += cached.size;
+            for (Iterator<CachedResponse> iter = entries.values().iterator(); size > maxSize && iter.hasNext();) {
+                CachedResponse eldest = iter.next();
+                iter.remove();
+                size -= eldest.size;
+                release(eldest);
+            }
+        }
+        logger.debug("Cached response {} => {}", key, cached);
+    }
+
+    private static final ByteBuf gzip(ByteBuf content) {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(content.readableBytes() / 2);
+        try (GZIPOutputStream out = new GZIPOutputStream(new ByteBufOutputStream(buf)) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            content.getBytes(content.readerIndex(), out, content.readableBytes());
+        } catch (IOException e) {
+            buf.release();
+            return null;
+        }
+        if (buf.readableBytes() >= content.readableBytes()) {
+            // not worth
+            buf.release();
+            return null;
+        }
+        return buf;
+    }
+
+    private static final void release(CachedResponse cached) {
+        cached.content.release();
+        if (cached.gzipContent != null) {
+            cached.gzipContent.release();
+        }
+    }
+
+    /**
+     * Removes all the cached responses.
+     */
+    public synchronized void invalidateAll() {
+        entries.values().forEach(ResponseCache::release);
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of the cached responses.
+     *
+     * @return the number of the cached responses
+     */
+    public synchronized int cachedCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total size, in bytes, of the cached responses.
+     *
+     * @return the total size of the cached responses
+     */
+    public synchronized long cachedSize() {
+        return size;
+    }
+
+    /**
+     * Returns the total number of the cache hits.
+     *
+     * @return the total number of the cache hits
+     */
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the total number of the cache misses.
+     *
+     * @return the total number of the cache misses
+     */
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public void close() throws Exception {
+        invalidateAll();
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCache(maxSize=" + maxSize + ", maxEntrySize=" + maxEntrySize + ", cachedSize="
+                + cachedSize() + ", cachedCount=" + cachedCount() + ")";
+    }
+
+    private final class CachingContext extends DelegatingHttpRequestContext {
+
+        private final String key;
+        private final boolean credentialed;
+
+        private CachingContext(HttpRequestContext delegate, String key, boolean credentialed) {
+            super(delegate);
+            this.key = key;
+            this.credentialed = credentialed;
+        }
+
+        @Override
+        public CompletableFuture<HttpResult> sendResponse(FullHttpResponse response, int contentLength) {
+            if (response.content().readableBytes() <= maxEntrySize) {
+                long ttlNanos = ttlNanos(response, credentialed);
+                if (ttlNanos > 0) {
+                    store(key, response, ttlNanos);
+                }
+            }
+            return super.sendResponse(response, contentLength);
+        }
+
+    }
+
+    private static final class CachedResponse {
+
+        private final HttpResponseStatus status;
+        private final HttpHeaders headers;
+        private final ByteBuf content;
+        private final ByteBuf gzipContent;
+        private final String etag;
+        private final long size;
+        private final long storedNanoTime = System.nanoTime();
+        private final long expiresNanoTime;
+        private final boolean shared;
+
+        private CachedResponse(HttpResponseStatus status, HttpHeaders headers, ByteBuf content, ByteBuf gzipContent,
+                String etag, long ttlNanos, boolean shared) {
+            this.status = status;
+            this.headers = headers;
+            this.content = content;
+            this.gzipContent = gzipContent;
+            this.etag = etag;
+            this.size = content.readableBytes() + (gzipContent == null ? 0 : gzipContent.readableBytes());
+            this.expiresNanoTime = storedNanoTime + ttlNanos;
+            this.shared = shared;
+        }
+
+        private CachedResponse retain() {
+            content.retain();
+            if (gzipContent != null) {
+                gzipContent.retain();
+            }
+            return this;
+        }
+
+        private void release() {
+            ResponseCache.release(this);
+        }
+
+        private boolean matches(String ifNoneMatch) {
+            if ("*".equals(ifNoneMatch.trim())) {
+                return true;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                // weak comparison
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                String etag = this.etag.startsWith("W/") ? this.etag.substring(2) : this.etag;
+                if (tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "CachedResponse(status=" + status + ", etag=" + etag + ", size=" + size + ")";
+        }
+
+    }
+
+    /**
+     * The options of {@link ResponseCache}.
+     *
+     * @since 2.3
+     *
+     * @author MJ Fang
+     */
+    public static class Options {
+
+        private long maxSize = 16 * 1024 * 1024;
+        private int maxEntrySize = 1024 * 1024;
+        private Duration defaultTtl = Duration.ZERO;
+        private List<String> keyHeaders = List.of();
+        private List<String> keyQueryParameters;
+        private boolean precompress;
+
+        /**
+         * Set the maximum total size, in bytes, of the cached responses.
+         * <p>
+         * The default is {@code 16 MB}.
+         *
+         * @param maxSize the maximum total size
+         * @return this {@code Options}
+         */
+        public Options maxSize(long maxSize) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize must be positive");
+            }
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Set the maximum size, in bytes, of each cached response body.
+         * <p>
+         * The default is {@code 1 MB}.
+         *
+         * @param maxEntrySize the maximum size of each response body
+         * @return this {@code Options}
+         */
+        public Options maxEntrySize(int maxEntrySize) {
+            if (maxEntrySize <= 0) {
+                throw new IllegalArgumentException("maxEntrySize must be positive");
+            }
+            this.maxEntrySize = maxEntrySize;
+            return this;
+        }
+
+        /**
+         * Set the TTL of the responses without {@code max-age} or
+         * {@code s-maxage} in the {@code Cache-Control} header.
+         * <p>
+         * The default is {@link Duration#ZERO}, means only the responses with
+         * {@code max-age} or {@code s-maxage} are cached.
+         *
+         * @param defaultTtl the default TTL
+         * @return this {@code Options}
+         */
+        public Options defaultTtl(Duration defaultTtl) {
+            this.defaultTtl = Objects.requireNonNull(defaultTtl, "defaultTtl must not be null");
+            return this;
+        }
+
+        /**
+         * Set the names of the request headers used as part of the cache key.
+         * <p>
+         * The default is none.
+         *
+         * @param names the names of the headers
+         * @return this {@code Options}
+         */
+        public Options keyHeaders(String... names) {
+            this.keyHeaders = List.of(names);
+            return this;
+        }
+
+        /**
+         * Set the names of the query parameters used as part of the cache key,
+         * other parameters are ignored.
+         * <p>
+         * The default is {@code null}, means the whole query string is used.
+         *
+         * @param names the names of the query parameters
+         * @return this {@code Options}
+         */
+        public Options keyQueryParameters(String... names) {
+            this.keyQueryParameters = List.of(names);
+            return this;
+        }
+
+        /**
+         * Set if store a {@code gzip} compressed copy of each response body or
+         * not.
+         * <p>
+         * The compressed copy is sent to the clients accept {@code gzip}, and the
+         * {@code content-encoding} header makes it bypass the dynamic
+         * compression of the server.
+         * <p>
+         * The default is {@code false}.
+         *
+         * @param precompress {@code true} to store compressed copies
+         * @return this {@code Options}
+         */
+        public Options precompress(boolean precompress) {
+            this.precompress = precompress;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "ResponseCache.Options[maxSize=" + maxSize + ", maxEntrySize=" + maxEntrySize + ", defaultTtl="
+                    + defaultTtl + ", keyHeaders=" + keyHeaders + ", keyQueryParameters=" + keyQueryParameters
+                    + ", precompress=" + precompress + "]";
+        }
+
+    }
+
+}
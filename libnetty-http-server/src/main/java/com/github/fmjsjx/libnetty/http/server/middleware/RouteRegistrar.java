@@ -0,0 +1,40 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import java.util.ServiceLoader;
+
+/**
+ * Registers the routes of an HTTP controller to a {@link Router} without
+ * reflection.
+ * <p>
+ * Implementations are generated at compile time by the annotation processor
+ * in {@code libnetty-http-server-processor}, and are discovered by
+ * {@link ServiceLoader} when the controller is registered by
+ * {@link Router#register(Object)}.
+ * 
+ * @param <T> the type of the controller
+ * 
+ * @since 2.3
+ *
+ * @author MJ Fang
+ * 
+ * @see RouterUtil#register(Router, Object)
+ */
+public interface RouteRegistrar<T> {
+
+    /**
+     * Returns the type of the controller.
+     * 
+     * @return the type of the controller
+     */
+    Class<T> controllerType();
+
+    /**
+     * Register the routes of the given controller to the specified router.
+     * 
+     * @param router     the router
+     * @param controller the controller object
+     * @return the count of the services just been registered
+     */
+    int register(Router router, T controller);
+
+}
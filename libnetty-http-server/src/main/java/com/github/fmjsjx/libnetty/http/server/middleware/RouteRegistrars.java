@@ -0,0 +1,89 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Utility class to find the generated {@link RouteRegistrar}s.
+ * 
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+final class RouteRegistrars {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouteRegistrars.class);
+
+    /**
+     * The suffix of the names of the generated {@link RouteRegistrar}s.
+     */
+    static final String SUFFIX = "_RouteRegistrar";
+
+    private static final ClassValue<Optional<RouteRegistrar<?>>> registrars = new ClassValue<>() {
+        @Override
+        protected Optional<RouteRegistrar<?>> computeValue(Class<?> type) {
+            return load(type);
+        }
+    };
+
+    /**
+     * Returns the generated {@link RouteRegistrar} for the specified controller
+     * type.
+     * 
+     * @param <T>  the type of the controller
+     * @param type the class of the controller
+     * @return an {@code Optional<RouteRegistrar<T>>}
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static final <T> Optional<RouteRegistrar<T>> find(Class<T> type) {
+        return (Optional) registrars.get(type);
+    }
+
+    /**
+     * Returns the name of the generated {@link RouteRegistrar} for the specified
+     * controller type.
+     * <p>
+     * The registrar is placed in the same package with the controller, for
+     * example, the registrar of {@code com.example.Outer.Inner} is
+     * {@code com.example.Outer_Inner_RouteRegistrar}.
+     * 
+     * @param type the class of the controller
+     * @return the name of the registrar
+     */
+    static final String registrarName(Class<?> type) {
+        String packageName = type.getPackageName();
+        if (packageName.isEmpty()) {
+            return type.getName().replace('$', '_') + SUFFIX;
+        }
+        return packageName + "." + type.getName().substring(packageName.length() + 1).replace('$', '_') + SUFFIX;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final Optional<RouteRegistrar<?>> load(Class<?> type) {
+        ClassLoader classLoader = type.getClassLoader();
+        if (classLoader == null) {
+            return Optional.empty();
+        }
+        String name = registrarName(type);
+        try {
+            Optional<RouteRegistrar> registrar = ServiceLoader.load(RouteRegistrar.class, classLoader).stream()
+                    .filter(provider -> provider.type().getName().equals(name)).findFirst()
+                    .map(ServiceLoader.Provider::get);
+            if (registrar.isPresent() && registrar.get().controllerType() == type) {
+                logger.debug("Found generated route registrar {} for {}", name, type);
+                return Optional.of(registrar.get());
+            }
+        } catch (ServiceConfigurationError e) {
+            logger.warn("Load route registrar {} failed, fall back to reflection", name, e);
+        }
+        return Optional.empty();
+    }
+
+    private RouteRegistrars() {
+    }
+
+}
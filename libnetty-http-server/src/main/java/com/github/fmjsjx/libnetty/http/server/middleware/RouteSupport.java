@@ -0,0 +1,238 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpServiceInvoker;
+import com.github.fmjsjx.libnetty.http.server.component.HttpServerComponent;
+import com.github.fmjsjx.libnetty.http.server.exception.BadRequestException;
+
+/**
+ * Support methods for the {@link RouteRegistrar}s generated by the annotation
+ * processor in {@code libnetty-http-server-processor}.
+ * <p>
+ * The binders and the invokers returned by this class behave exactly the same
+ * as the ones built by {@link RouterUtil} reflectively. This class is not
+ * intended to be used directly.
+ * 
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+public final class RouteSupport {
+
+    /**
+     * Returns an {@link HttpServiceInvoker} responds {@code 204 No Content} after
+     * the routing method completed.
+     * 
+     * @param invoker  the invoker of the routing method
+     * @param blocking whether the routing method is blocking
+     * @return an {@code HttpServiceInvoker}
+     */
+    public static final HttpServiceInvoker voidResponse(MethodInvoker invoker, boolean blocking) {
+        return RouterUtil.toVoidResponseInvoker(invoker, blocking);
+    }
+
+    /**
+     * Returns an {@link HttpServiceInvoker} responds the result of the routing
+     * method as JSON.
+     * 
+     * @param invoker  the invoker of the routing method
+     * @param blocking whether the routing method is blocking
+     * @return an {@code HttpServiceInvoker}
+     */
+    public static final HttpServiceInvoker jsonResponse(MethodInvoker invoker, boolean blocking) {
+        return RouterUtil.toJsonResponseInvoker(invoker, blocking);
+    }
+
+    /**
+     * Returns an {@link HttpServiceInvoker} responds the result of the routing
+     * method as plain text.
+     * 
+     * @param invoker  the invoker of the routing method
+     * @param blocking whether the routing method is blocking
+     * @return an {@code HttpServiceInvoker}
+     */
+    public static final HttpServiceInvoker stringResponse(MethodInvoker invoker, boolean blocking) {
+        return RouterUtil.toStringResponseInvoker(invoker, blocking);
+    }
+
+    /**
+     * Returns an {@link HttpServiceInvoker} for the routing method returns
+     * {@code CompletionStage<HttpResult>}.
+     * 
+     * @param invoker the invoker of the routing method
+     * @return an {@code HttpServiceInvoker}
+     */
+    public static final HttpServiceInvoker resultResponse(MethodInvoker invoker) {
+        return RouterUtil.toResultInvoker(invoker);
+    }
+
+    /**
+     * Returns the binder of the parameter annotated by {@code @PathVar}.
+     * 
+     * @param <T>  the type of the parameter
+     * @param name the name of the path variable
+     * @param type the type of the parameter
+     * @return the binder
+     */
+    public static final <T> Function<HttpRequestContext, T> pathVar(String name, Class<?> type) {
+        return binder(RouterUtil.toPathVarMapper(type, name));
+    }
+
+    /**
+     * Returns the binder of the parameter annotated by {@code @QueryVar}.
+     * 
+     * @param <T>      the type of the parameter
+     * @param name     the name of the query variable
+     * @param required whether the query variable is required
+     * @param type     the type of the parameter
+     * @return the binder
+     */
+    public static final <T> Function<HttpRequestContext, T> queryVar(String name, boolean required, Type type) {
+        return binder(RouterUtil.toQueryVarMapper(type, name, required));
+    }
+
+    /**
+     * Returns the binder of the parameter annotated by {@code @HeaderValue}.
+     * 
+     * @param <T>      the type of the parameter
+     * @param name     the name of the header
+     * @param required whether the header is required
+     * @param type     the type of the parameter
+     * @return the binder
+     */
+    public static final <T> Function<HttpRequestContext, T> headerValue(String name, boolean required, Type type) {
+        return binder(RouterUtil.toHeaderValueMapper(type, name, required));
+    }
+
+    /**
+     * Returns the binder of the parameter annotated by {@code @JsonBody}.
+     * 
+     * @param <T>  the type of the parameter
+     * @param type the type of the parameter
+     * @return the binder
+     */
+    public static final <T> Function<HttpRequestContext, T> jsonBody(Type type) {
+        return binder(RouterUtil.toJsonBodyMapper(type));
+    }
+
+    /**
+     * Returns the binder of the parameter annotated by {@code @StringBody}.
+     * 
+     * @param <T> the type of the parameter
+     * @return the binder
+     */
+    public static final <T> Function<HttpRequestContext, T> stringBody() {
+        return binder(RouterUtil.toStringBodyMapper());
+    }
+
+    /**
+     * Returns the binder of the parameter annotated by {@code @ComponentValue}.
+     * 
+     * @param <T>      the type of the parameter
+     * @param value    the value of the {@code @ComponentValue}
+     * @param required whether the component is required
+     * @param type     the type of the parameter
+     * @return the binder
+     */
+    public static final <T> Function<HttpRequestContext, T> componentValue(
+            Class<? extends HttpServerComponent> value, boolean required, Type type) {
+        return binder(RouterUtil.toComponentValueMapper(type, value, required));
+    }
+
+    /**
+     * Returns the binder of the parameter annotated by {@code @PropertyValue}.
+     * 
+     * @param <T>      the type of the parameter
+     * @param value    the value of the {@code @PropertyValue}
+     * @param required whether the property is required
+     * @param type     the type of the parameter
+     * @return the binder
+     */
+    public static final <T> Function<HttpRequestContext, T> propertyValue(String value, boolean required,
+            Type type) {
+        return binder(RouterUtil.toPropertyValueMapper(type, value, required));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final <T> Function<HttpRequestContext, T> binder(Function<HttpRequestContext, Object> mapper) {
+        return ctx -> {
+            try {
+                return (T) mapper.apply(ctx);
+            } catch (Exception e) {
+                throw new BadRequestException(e);
+            }
+        };
+    }
+
+    /**
+     * Returns a {@link ParameterizedType} with the specified raw type and type
+     * arguments.
+     * 
+     * @param rawType       the raw type
+     * @param typeArguments the type arguments
+     * @return a {@code ParameterizedType}
+     */
+    public static final ParameterizedType parameterized(Class<?> rawType, Type... typeArguments) {
+        return new ParameterizedTypeImpl(rawType, typeArguments);
+    }
+
+    private static final class ParameterizedTypeImpl implements ParameterizedType {
+
+        private final Class<?> rawType;
+        private final Type[] typeArguments;
+
+        private ParameterizedTypeImpl(Class<?> rawType, Type[] typeArguments) {
+            this.rawType = rawType;
+            this.typeArguments = typeArguments;
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return typeArguments.clone();
+        }
+
+        @Override
+        public Type getRawType() {
+            return rawType;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return rawType.getDeclaringClass();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof ParameterizedType) {
+                ParameterizedType o = (ParameterizedType) obj;
+                return rawType.equals(o.getRawType()) && Objects.equals(getOwnerType(), o.getOwnerType())
+                        && Arrays.equals(typeArguments, o.getActualTypeArguments());
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            // the same as sun.reflect.generics.reflectiveObjects.ParameterizedTypeImpl
+            return Arrays.hashCode(typeArguments) ^ Objects.hashCode(getOwnerType()) ^ rawType.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.stream(typeArguments).map(Type::getTypeName)
+                    .collect(Collectors.joining(", ", rawType.getName() + "<", ">"));
+        }
+
+    }
+
+    private RouteSupport() {
+    }
+
+}
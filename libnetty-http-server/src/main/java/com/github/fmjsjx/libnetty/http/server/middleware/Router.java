@@ -9,22 +9,37 @@ import static io.netty.handler.codec.http.HttpResponseStatus.METHOD_NOT_ALLOWED;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletionStage;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.fmjsjx.libnetty.http.server.DefaultPathVariables;
+import com.github.fmjsjx.libnetty.http.server.DelegatingHttpRequestContext;
 import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
 import com.github.fmjsjx.libnetty.http.server.HttpResult;
 import com.github.fmjsjx.libnetty.http.server.HttpServiceInvoker;
+import com.github.fmjsjx.libnetty.http.server.PathPattern;
+import com.github.fmjsjx.libnetty.http.server.PathPatternUtil;
+import com.github.fmjsjx.libnetty.http.server.PathVariables;
+import com.github.fmjsjx.libnetty.http.server.ThreadLocalMatcher;
 
 import io.netty.handler.codec.http.HttpMethod;
 
 /**
  * A {@link Middleware} routing requests.
+ * <p>
+ * Since 2.3, all routes are compiled into a tree when this router is
+ * initialized. Static path segments have higher priority than path variables,
+ * so that {@code "/users/me"} always wins {@code "/users/{id}"} whatever
+ * the order they were added.
  * 
  * @since 1.1
  *
@@ -37,11 +52,32 @@ public class Router implements Middleware {
 
     private static final Logger logger = LoggerFactory.getLogger(Router.class);
 
+    /**
+     * A {@link HttpRequestContext} wants to know the path pattern of the
+     * matched route, such as {@code "/users/{id}"}.
+     * <p>
+     * The {@link Router} looks for it through the chain of the
+     * {@link DelegatingHttpRequestContext}s, so nothing is done for the
+     * requests no one is interested in.
+     * 
+     * @since 2.3
+     */
+    public interface MatchedRouteAware {
+
+        /**
+         * Invoked when a route is matched.
+         * 
+         * @param path the path pattern of the matched route
+         */
+        void routeMatched(String path);
+
+    }
+
     private static final int RUNNING = 1;
 
     private List<RouteDefinition> routeDefinitions = new ArrayList<>();
 
-    private volatile PathRoute[] pathRoutes;
+    private volatile RouteTable routeTable;
 
     private volatile int state;
 
@@ -73,10 +109,11 @@ public class Router implements Middleware {
                 .collect(Collectors.groupingBy(RouteDefinition::path, LinkedHashMap::new, Collectors.toList()))
                 .entrySet().stream().map(e -> {
                     String path = e.getKey();
-                    PathMatcher pathMatcher = PathMatcher.fromPattern(path);
+                    // build path pattern for validation and path variable names
+                    PathPattern pathPattern = PathPatternUtil.build(path, false);
                     MethodRoute[] methodRoutes = e.getValue().stream().sorted().map(RouteDefinition::toMethodRoute)
                             .toArray(MethodRoute[]::new);
-                    return new PathRoute(path, pathMatcher, methodRoutes);
+                    return new PathRoute(path, pathPattern.pathVariableNames(), methodRoutes);
                 }).toArray(PathRoute[]::new);
         if (logger.isDebugEnabled()) {
             StringBuilder builder = new StringBuilder();
@@ -85,28 +122,23 @@ public class Router implements Middleware {
             }
             logger.debug("Effective routes: {}{}", pathRoutes.length, builder);
         }
-        this.pathRoutes = pathRoutes;
+        this.routeTable = RouteTable.build(pathRoutes);
     }
 
     private CompletionStage<HttpResult> routing(HttpRequestContext ctx, MiddlewareChain next) {
         HttpMethod method = ctx.method();
         String path = ctx.path();
         logger.trace("Routing: {} {}", method, path);
-        boolean pathMatched = false;
-        for (PathRoute pathRoute : pathRoutes) {
-            logger.trace("Try {}", pathRoute);
-            if (pathRoute.matches(ctx)) {
-                pathMatched = true;
-                for (MethodRoute methodRoute : pathRoute.methodRoutes) {
-                    logger.trace("Try {}", method);
-                    if (methodRoute.matches(method)) {
-                        logger.debug("Matched Route ({} {}): {}", method, path, methodRoute);
-                        return methodRoute.service.invoke(ctx);
-                    }
-                }
-            }
+        RouteTable routeTable = this.routeTable;
+        RouteLookup lookup = new RouteLookup(method, path, routeTable.maxCaptures);
+        if (routeTable.lookup(lookup)) {
+            MethodRoute methodRoute = lookup.methodRoute;
+            logger.debug("Matched Route ({} {}): {}", method, path, methodRoute);
+            ctx.pathVariables(lookup.pathRoute.toPathVariables(path, lookup.captures));
+            notifyMatched(ctx, lookup.pathRoute.path);
+            return methodRoute.service.invoke(ctx);
         }
-        if (pathMatched) {
+        if (lookup.pathMatched) {
             // throw 405 Method Not Allowed
             return ctx.simpleRespond(METHOD_NOT_ALLOWED);
         }
@@ -114,6 +146,17 @@ public class Router implements Middleware {
         return next.doNext(ctx);
     }
 
+    private static final void notifyMatched(HttpRequestContext ctx, String path) {
+        HttpRequestContext c = ctx;
+        while (c instanceof DelegatingHttpRequestContext) {
+            if (c instanceof MatchedRouteAware) {
+                ((MatchedRouteAware) c).routeMatched(path);
+                return;
+            }
+            c = ((DelegatingHttpRequestContext) c).delegate();
+        }
+    }
+
     /**
      * Add a new HTTP route with given parameters.
      * 
@@ -130,6 +173,21 @@ public class Router implements Middleware {
         return this;
     }
 
+    /**
+     * Add a new HTTP route isolated by the specified {@link Bulkhead}.
+     * 
+     * @param service  an HTTP service
+     * @param bulkhead the bulkhead
+     * @param path     the path pattern of the service
+     * @param methods  the array of the allowed HTTP methods
+     * @return this {@code Router}
+     * 
+     * @since 2.3
+     */
+    public Router add(HttpServiceInvoker service, Bulkhead bulkhead, String path, HttpMethod... methods) {
+        return add(bulkhead.wrap(service), path, methods);
+    }
+
     /**
      * Add a new HTTP route with given parameters.
      * 
@@ -288,17 +346,25 @@ public class Router implements Middleware {
     private static final class PathRoute {
 
         private final String path;
-        private final PathMatcher pathMatcher;
+        private final String[] pathVariableNames;
         private final MethodRoute[] methodRoutes;
 
-        private PathRoute(String path, PathMatcher pathMatcher, MethodRoute[] methodRoutes) {
+        private PathRoute(String path, List<String> pathVariableNames, MethodRoute[] methodRoutes) {
             this.path = path;
-            this.pathMatcher = pathMatcher;
+            this.pathVariableNames = pathVariableNames.toArray(new String[pathVariableNames.size()]);
             this.methodRoutes = methodRoutes;
         }
 
-        private boolean matches(HttpRequestContext ctx) {
-            return pathMatcher.matches(ctx);
+        private PathVariables toPathVariables(String path, int[] captures) {
+            String[] names = pathVariableNames;
+            if (names.length == 0) {
+                return PathVariables.empty();
+            }
+            DefaultPathVariables pathVariables = new DefaultPathVariables();
+            for (int i = 0; i < names.length; i++) {
+                pathVariables.put(names[i], path.substring(captures[i * 2], captures[i * 2 + 1]));
+            }
+            return pathVariables;
         }
 
         @Override
@@ -348,4 +414,237 @@ public class Router implements Middleware {
         }
     }
 
+    /**
+     * The compiled route table.
+     * <p>
+     * Path patterns are split into segments and arranged as a tree. When routing,
+     * the path is walked segment by segment, static segments are tried first, then
+     * the segments mixed with path variables, then the pure path variable
+     * segments. Path variables are captured as offsets of the path during the
+     * walk.
+     */
+    private static final class RouteTable {
+
+        private static final Pattern PATH_VARIABLE_PATTERN = Pattern.compile("\\{[A-Za-z]\\w*\\}");
+        private static final Pattern SLASHES_PATTERN = Pattern.compile("/+");
+
+        private static RouteTable build(PathRoute[] pathRoutes) {
+            RouteNode root = new RouteNode();
+            int maxPathVariables = 0;
+            for (PathRoute pathRoute : pathRoutes) {
+                RouteNode node = root;
+                for (String segment : SLASHES_PATTERN.split(pathRoute.path)) {
+                    if (segment.isEmpty()) {
+                        continue;
+                    }
+                    node = node.child(segment);
+                }
+                node.routes.add(pathRoute);
+                maxPathVariables = Math.max(maxPathVariables, pathRoute.pathVariableNames.length);
+            }
+            root.compile();
+            return new RouteTable(root, maxPathVariables * 2);
+        }
+
+        private static boolean isVariableSegment(String segment) {
+            return PATH_VARIABLE_PATTERN.matcher(segment).matches();
+        }
+
+        private static boolean isStaticSegment(String segment) {
+            for (int i = 0; i < segment.length(); i++) {
+                switch (segment.charAt(i)) {
+                case '\\':
+                case '^':
+                case '$':
+                case '|':
+                case '?':
+                case '*':
+                case '+':
+                case '(':
+                case ')':
+                case '[':
+                case ']':
+                case '{':
+                case '}':
+                    return false;
+                default:
+                    break;
+                }
+            }
+            return true;
+        }
+
+        private static Pattern toSegmentPattern(String segment) {
+            String base = segment.replace("-", "\\-").replace(".", "\\.");
+            return Pattern.compile(PATH_VARIABLE_PATTERN.matcher(base).replaceAll("([^/]+)"));
+        }
+
+        private static int skipSlashes(String path, int index) {
+            int length = path.length();
+            while (index < length && path.charAt(index) == '/') {
+                index++;
+            }
+            return index;
+        }
+
+        private final RouteNode root;
+        private final int maxCaptures;
+
+        private RouteTable(RouteNode root, int maxCaptures) {
+            this.root = root;
+            this.maxCaptures = maxCaptures;
+        }
+
+        private boolean lookup(RouteLookup lookup) {
+            String path = lookup.path;
+            if (path.isEmpty() || path.charAt(0) != '/') {
+                return false;
+            }
+            return lookup(root, lookup, 0, 0);
+        }
+
+        private boolean lookup(RouteNode node, RouteLookup lookup, int index, int captureCount) {
+            String path = lookup.path;
+            int length = path.length();
+            int start = skipSlashes(path, index);
+            if (start == length) {
+                return lookup.tryRoutes(node.pathRoutes);
+            }
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = length;
+            }
+            if (node.staticChildren != null) {
+                RouteNode child = node.staticChildren.get(path.substring(start, end));
+                if (child != null && lookup(child, lookup, end, captureCount)) {
+                    return true;
+                }
+            }
+            int[] captures = lookup.captures;
+            for (PatternSegment patternChild : node.patternChildren) {
+                Matcher matcher = patternChild.matcher.reset(path).region(start, end);
+                if (matcher.matches()) {
+                    int count = captureCount;
+                    for (int group = 1; group <= patternChild.groupCount; group++) {
+                        captures[count++] = matcher.start(group);
+                        captures[count++] = matcher.end(group);
+                    }
+                    if (lookup(patternChild.node, lookup, end, count)) {
+                        return true;
+                    }
+                }
+            }
+            RouteNode variableChild = node.variableChild;
+            if (variableChild != null) {
+                captures[captureCount] = start;
+                captures[captureCount + 1] = end;
+                return lookup(variableChild, lookup, end, captureCount + 2);
+            }
+            return false;
+        }
+
+    }
+
+    private static final class RouteNode {
+
+        private static final PatternSegment[] NO_PATTERN_CHILDREN = new PatternSegment[0];
+        private static final PathRoute[] NO_PATH_ROUTES = new PathRoute[0];
+
+        private Map<String, RouteNode> staticChildren;
+        private Map<String, PatternSegment> patternChildMap;
+        private RouteNode variableChild;
+        private List<PathRoute> routes = new ArrayList<>();
+
+        private PatternSegment[] patternChildren = NO_PATTERN_CHILDREN;
+        private PathRoute[] pathRoutes = NO_PATH_ROUTES;
+
+        private RouteNode child(String segment) {
+            if (RouteTable.isVariableSegment(segment)) {
+                RouteNode child = variableChild;
+                if (child == null) {
+                    variableChild = child = new RouteNode();
+                }
+                return child;
+            }
+            if (RouteTable.isStaticSegment(segment)) {
+                if (staticChildren == null) {
+                    staticChildren = new HashMap<>();
+                }
+                return staticChildren.computeIfAbsent(segment, k -> new RouteNode());
+            }
+            if (patternChildMap == null) {
+                patternChildMap = new LinkedHashMap<>();
+            }
+            return patternChildMap.computeIfAbsent(segment, PatternSegment::new).node;
+        }
+
+        private void compile() {
+            pathRoutes = routes.toArray(new PathRoute[routes.size()]);
+            routes = null;
+            if (staticChildren != null) {
+                staticChildren.values().forEach(RouteNode::compile);
+            }
+            if (patternChildMap != null) {
+                patternChildren = patternChildMap.values().toArray(new PatternSegment[patternChildMap.size()]);
+                patternChildMap = null;
+                for (PatternSegment patternChild : patternChildren) {
+                    patternChild.node.compile();
+                }
+            }
+            if (variableChild != null) {
+                variableChild.compile();
+            }
+        }
+
+    }
+
+    private static final class PatternSegment {
+
+        private final ThreadLocalMatcher matcher;
+        private final int groupCount;
+        private final RouteNode node = new RouteNode();
+
+        private PatternSegment(String segment) {
+            Pattern pattern = RouteTable.toSegmentPattern(segment);
+            this.matcher = new ThreadLocalMatcher(pattern);
+            this.groupCount = pattern.matcher("").groupCount();
+        }
+
+    }
+
+    private static final class RouteLookup {
+
+        private final HttpMethod method;
+        private final String path;
+        private final int[] captures;
+
+        private boolean pathMatched;
+        private PathRoute pathRoute;
+        private MethodRoute methodRoute;
+
+        private RouteLookup(HttpMethod method, String path, int maxCaptures) {
+            this.method = method;
+            this.path = path;
+            this.captures = new int[maxCaptures];
+        }
+
+        private boolean tryRoutes(PathRoute[] pathRoutes) {
+            HttpMethod method = this.method;
+            for (PathRoute pathRoute : pathRoutes) {
+                logger.trace("Try {}", pathRoute);
+                pathMatched = true;
+                for (MethodRoute methodRoute : pathRoute.methodRoutes) {
+                    logger.trace("Try {}", method);
+                    if (methodRoute.matches(method)) {
+                        this.pathRoute = pathRoute;
+                        this.methodRoute = methodRoute;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+    }
+
 }
@@ -8,7 +8,6 @@ import static io.netty.handler.codec.http.HttpResponseStatus.OK;
 import static io.netty.util.CharsetUtil.UTF_8;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
@@ -56,6 +55,7 @@ import com.github.fmjsjx.libnetty.http.server.HttpResult;
 import com.github.fmjsjx.libnetty.http.server.HttpServiceInvoker;
 import com.github.fmjsjx.libnetty.http.server.annotation.ComponentValue;
 import com.github.fmjsjx.libnetty.http.server.annotation.HeaderValue;
+import com.github.fmjsjx.libnetty.http.server.annotation.HttpBulkhead;
 import com.github.fmjsjx.libnetty.http.server.annotation.HttpPath;
 import com.github.fmjsjx.libnetty.http.server.annotation.HttpRoute;
 import com.github.fmjsjx.libnetty.http.server.annotation.JsonBody;
@@ -68,7 +68,6 @@ import com.github.fmjsjx.libnetty.http.server.component.ExceptionHandler;
 import com.github.fmjsjx.libnetty.http.server.component.HttpServerComponent;
 import com.github.fmjsjx.libnetty.http.server.component.JsonLibrary;
 import com.github.fmjsjx.libnetty.http.server.component.WorkerPool;
-import com.github.fmjsjx.libnetty.http.server.exception.BadRequestException;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
@@ -94,6 +93,9 @@ public class RouterUtil {
 
     /**
      * Register the given controller to the specified router.
+     * <p>
+     * If a {@link RouteRegistrar} has been generated for the class of the
+     * controller at compile time, it will be used instead of reflection.
      * 
      * @param router     the router
      * @param controller the controller object
@@ -104,8 +106,15 @@ public class RouterUtil {
         return register0(router, controller, controller.getClass());
     }
 
+    @SuppressWarnings("unchecked")
     private static int register0(Router router, Object controller, Class<?> clazz) {
+        var registrar = RouteRegistrars.find(clazz);
+        if (registrar.isPresent()) {
+            logger.debug("Register controller by generated registrar: {}, {}", router, controller);
+            return ((RouteRegistrar<Object>) (RouteRegistrar<?>) registrar.get()).register(router, controller);
+        }
         String pathPrefix = getPathPrefix(clazz);
+        Bulkhead controllerBulkhead = toBulkhead(clazz.getAnnotation(HttpBulkhead.class));
         Method[] methods = clazz.getDeclaredMethods();
         int num = 0;
         METHODS_LOOP: for (Method method : methods) {
@@ -114,7 +123,7 @@ public class RouterUtil {
                 String path = httpPathJoin(pathPrefix, route.value());
                 HttpMethod[] httpMethods = Arrays.stream(route.method()).map(HttpMethodWrapper::wrapped)
                         .toArray(HttpMethod[]::new);
-                registerMethod(router, controller, method, path, httpMethods);
+                registerMethod(router, controller, method, path, httpMethods, controllerBulkhead);
                 num++;
                 continue METHODS_LOOP;
             }
@@ -125,7 +134,7 @@ public class RouterUtil {
                     HttpMethod[] httpMethods = Arrays.stream(methodRoute.method()).map(HttpMethodWrapper::wrapped)
                             .toArray(HttpMethod[]::new);
                     String path = httpPathJoin(pathPrefix, routeValue(ma));
-                    registerMethod(router, controller, method, path, httpMethods);
+                    registerMethod(router, controller, method, path, httpMethods, controllerBulkhead);
                     num++;
                     continue METHODS_LOOP;
                 }
@@ -139,45 +148,33 @@ public class RouterUtil {
     }
 
     private static final void registerMethod(Router router, Object controller, Method method, String path,
-            HttpMethod[] httpMethods) {
+            HttpMethod[] httpMethods, Bulkhead controllerBulkhead) {
         logger.debug("Register method: {}, {}, {}, {}, {}", router, controller, method, path, httpMethods);
+        Bulkhead methodBulkhead = toBulkhead(method.getAnnotation(HttpBulkhead.class));
+        Bulkhead bulkhead = methodBulkhead != null ? methodBulkhead : controllerBulkhead;
         boolean blocking = !CompletionStage.class.isAssignableFrom(method.getReturnType());
         method.setAccessible(true);
         Parameter[] params = method.getParameters();
         if ((blocking && isVoidType(method.getReturnType()))
                 || (!blocking && isVoidType(getActualTypeArguments(method.getGenericReturnType())[0]))) {
-            switch (params.length) {
-            case 0:
-                router.add(toVoidResponseInvoker(controller, method, blocking), path, httpMethods);
-                break;
-            default:
-                router.add(toVoidResponseInvoker(controller, method, blocking, params), path, httpMethods);
-                break;
-            }
+            warnStatic(method);
+            MethodInvoker invoker = toMethodInvoker(controller, method, params);
+            addRoute(router, toVoidResponseInvoker(invoker, blocking), bulkhead, path, httpMethods);
             return;
         }
         JsonBody jsonResposne = method.getAnnotation(JsonBody.class);
         if (jsonResposne != null) {
-            switch (params.length) {
-            case 0:
-                router.add(toJsonResponseInvoker(controller, method, blocking), path, httpMethods);
-                break;
-            default:
-                router.add(toJsonResponseInvoker(controller, method, blocking, params), path, httpMethods);
-                break;
-            }
+            warnStatic(method);
+            MethodInvoker invoker = toMethodInvoker(controller, method, params);
+            addRoute(router, toJsonResponseInvoker(invoker, blocking), bulkhead, path, httpMethods);
             return;
         }
         StringBody stringBody = method.getAnnotation(StringBody.class);
         if (stringBody != null) {
-            switch (params.length) {
-            case 0:
-                router.add(toStringResponseInvoker(controller, method, blocking), path, httpMethods);
-                break;
-            default:
-                router.add(toStringResponseInvoker(controller, method, blocking, params), path, httpMethods);
-                break;
-            }
+            warnStatic(method);
+            checkStringReturnType(method, blocking);
+            MethodInvoker invoker = toMethodInvoker(controller, method, params);
+            addRoute(router, toStringResponseInvoker(invoker, blocking), bulkhead, path, httpMethods);
             return;
         }
         if (blocking) {
@@ -185,15 +182,24 @@ public class RouterUtil {
         }
         checkReturnType(method);
         requireContext(params);
-        switch (params.length) {
-        case 1:
-            router.add(toSimpleInvoker(controller, method), path, httpMethods);
-            break;
-        default:
-            router.add(toParamsInvoker(controller, method, params), path, httpMethods);
-            break;
+        addRoute(router, toResultInvoker(toMethodInvoker(controller, method, params)), bulkhead, path,
+                httpMethods);
+    }
+
+    private static final Bulkhead toBulkhead(HttpBulkhead bulkhead) {
+        if (bulkhead == null) {
+            return null;
         }
+        return new Bulkhead(bulkhead.maxConcurrency(), bulkhead.maxQueueSize(), bulkhead.retryAfter());
+    }
 
+    private static final void addRoute(Router router, HttpServiceInvoker service, Bulkhead bulkhead, String path,
+            HttpMethod[] httpMethods) {
+        if (bulkhead == null) {
+            router.add(service, path, httpMethods);
+        } else {
+            router.add(service, bulkhead, path, httpMethods);
+        }
     }
 
     private static final BiFunction<Void, Throwable, CompletionStage<HttpResult>> voidResponseHandler(
@@ -283,10 +289,6 @@ public class RouterUtil {
     private static final Function<CompletionStage<HttpResult>, CompletionStage<HttpResult>> resultIdentity = Function
             .identity();
 
-    private static final CompletionException fromTarget(InvocationTargetException e) {
-        return valueOf(e.getTargetException());
-    }
-
     private static final CompletionException valueOf(Throwable e) {
         if (e instanceof CompletionException) {
             return (CompletionException) e;
@@ -299,6 +301,13 @@ public class RouterUtil {
         return ((ParameterizedType) type).getActualTypeArguments();
     }
 
+    private static final Class<?> rawType(Type type) {
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        return (Class<?>) type;
+    }
+
     private static final boolean isVoidType(Type type) {
         return type == void.class || type == Void.class;
     }
@@ -314,49 +323,22 @@ public class RouterUtil {
         return ctx.respondError(cause);
     }
 
-    @SuppressWarnings("unchecked")
-    private static HttpServiceInvoker toVoidResponseInvoker(Object controller, Method method, boolean blocking) {
+    private static final void warnStatic(Method method) {
         if (Modifier.isStatic(method.getModifiers())) {
             logger.warn("It is not recommended to declare a routing method as a static method! -- {}", method);
         }
-        if (blocking) {
-            return ctx -> {
-                try {
-                    WorkerPool workerPool = ctx.component(WorkerPool.class)
-                            .orElseThrow(WorkerPoolConstants.MISSING_WORKER_POOL);
-                    return CompletableFuture.runAsync(() -> {
-                        try {
-                            method.invoke(controller);
-                        } catch (InvocationTargetException e) {
-                            throw fromTarget(e);
-                        } catch (IllegalAccessException | IllegalArgumentException e) {
-                            throw valueOf(e);
-                        }
-                    }, workerPool.executor()).handle(voidResponseHandler(ctx)).thenCompose(resultIdentity);
-                } catch (Exception e) {
-                    return handleError(ctx, e);
-                }
-            };
+    }
+
+    private static final void checkStringReturnType(Method method, boolean blocking) {
+        Type resultType = blocking ? method.getReturnType() : getActualTypeArguments(method.getGenericReturnType())[0];
+        if (!(resultType instanceof Class<?>) || !CharSequence.class.isAssignableFrom((Class<?>) resultType)) {
+            throw new IllegalArgumentException(
+                    "The return type must be or extend CharSequence when @StringBody is present! -- " + method);
         }
-        return ctx -> {
-            try {
-                return ((CompletionStage<Void>) method.invoke(controller)).handle(voidResponseHandler(ctx))
-                        .thenCompose(resultIdentity);
-            } catch (InvocationTargetException e) {
-                return handleError(ctx, e.getTargetException());
-            } catch (Exception e) {
-                return handleError(ctx, e);
-            }
-        };
     }
 
     @SuppressWarnings("unchecked")
-    private static HttpServiceInvoker toVoidResponseInvoker(Object controller, Method method, boolean blocking,
-            Parameter[] params) {
-        Function<HttpRequestContext, Object[]> parametesMapper = toParametersMapper(params);
-        if (Modifier.isStatic(method.getModifiers())) {
-            logger.warn("It is not recommended to declare a routing method as a static method! -- {}", method);
-        }
+    static final HttpServiceInvoker toVoidResponseInvoker(MethodInvoker invoker, boolean blocking) {
         if (blocking) {
             return ctx -> {
                 try {
@@ -364,10 +346,8 @@ public class RouterUtil {
                             .orElseThrow(WorkerPoolConstants.MISSING_WORKER_POOL);
                     return CompletableFuture.runAsync(() -> {
                         try {
-                            method.invoke(controller, parametesMapper.apply(ctx));
-                        } catch (InvocationTargetException e) {
-                            throw fromTarget(e);
-                        } catch (Exception e) {
+                            invoker.invoke(ctx);
+                        } catch (Throwable e) {
                             throw valueOf(e);
                         }
                     }, workerPool.executor()).handle(voidResponseHandler(ctx)).thenCompose(resultIdentity);
@@ -378,21 +358,16 @@ public class RouterUtil {
         }
         return ctx -> {
             try {
-                return ((CompletionStage<Void>) method.invoke(controller, parametesMapper.apply(ctx)))
-                        .handle(voidResponseHandler(ctx)).thenCompose(resultIdentity);
-            } catch (InvocationTargetException e) {
-                return handleError(ctx, e.getTargetException());
-            } catch (Exception e) {
+                return ((CompletionStage<Void>) invoker.invoke(ctx)).handle(voidResponseHandler(ctx))
+                        .thenCompose(resultIdentity);
+            } catch (Throwable e) {
                 return handleError(ctx, e);
             }
         };
     }
 
     @SuppressWarnings("unchecked")
-    private static HttpServiceInvoker toJsonResponseInvoker(Object controller, Method method, boolean blocking) {
-        if (Modifier.isStatic(method.getModifiers())) {
-            logger.warn("It is not recommended to declare a routing method as a static method! -- {}", method);
-        }
+    static final HttpServiceInvoker toJsonResponseInvoker(MethodInvoker invoker, boolean blocking) {
         if (blocking) {
             return ctx -> {
                 try {
@@ -400,10 +375,8 @@ public class RouterUtil {
                             .orElseThrow(WorkerPoolConstants.MISSING_WORKER_POOL);
                     return CompletableFuture.supplyAsync(() -> {
                         try {
-                            return method.invoke(controller);
-                        } catch (InvocationTargetException e) {
-                            throw fromTarget(e);
-                        } catch (IllegalAccessException | IllegalArgumentException e) {
+                            return invoker.invoke(ctx);
+                        } catch (Throwable e) {
                             throw valueOf(e);
                         }
                     }, workerPool.executor()).handle(jsonResponseHandler(ctx)).thenCompose(resultIdentity);
@@ -414,112 +387,25 @@ public class RouterUtil {
         }
         return ctx -> {
             try {
-                return ((CompletionStage<Object>) method.invoke(controller)).handle(jsonResponseHandler(ctx))
+                return ((CompletionStage<Object>) invoker.invoke(ctx)).handle(jsonResponseHandler(ctx))
                         .thenCompose(resultIdentity);
-            } catch (InvocationTargetException e) {
-                return handleError(ctx, e.getTargetException());
-            } catch (Exception e) {
+            } catch (Throwable e) {
                 return handleError(ctx, e);
             }
         };
     }
 
     @SuppressWarnings("unchecked")
-    private static HttpServiceInvoker toJsonResponseInvoker(Object controller, Method method, boolean blocking,
-            Parameter[] params) {
-        Function<HttpRequestContext, Object[]> parametesMapper = toParametersMapper(params);
-        if (Modifier.isStatic(method.getModifiers())) {
-            logger.warn("It is not recommended to declare a routing method as a static method! -- {}", method);
-        }
+    static final HttpServiceInvoker toStringResponseInvoker(MethodInvoker invoker, boolean blocking) {
         if (blocking) {
-            if (isVoidType(method.getReturnType())) {
-                return ctx -> {
-                    try {
-                        WorkerPool workerPool = ctx.component(WorkerPool.class)
-                                .orElseThrow(WorkerPoolConstants.MISSING_WORKER_POOL);
-                        return CompletableFuture.runAsync(() -> {
-                            try {
-                                method.invoke(controller, parametesMapper.apply(ctx));
-                            } catch (InvocationTargetException e) {
-                                throw fromTarget(e);
-                            } catch (Exception e) {
-                                throw valueOf(e);
-                            }
-                        }, workerPool.executor()).handle(voidResponseHandler(ctx)).thenCompose(resultIdentity);
-                    } catch (Exception e) {
-                        return handleError(ctx, e);
-                    }
-                };
-            }
             return ctx -> {
                 try {
                     WorkerPool workerPool = ctx.component(WorkerPool.class)
                             .orElseThrow(WorkerPoolConstants.MISSING_WORKER_POOL);
                     return CompletableFuture.supplyAsync(() -> {
                         try {
-                            return method.invoke(controller, parametesMapper.apply(ctx));
-                        } catch (InvocationTargetException e) {
-                            throw fromTarget(e);
-                        } catch (Exception e) {
-                            throw valueOf(e);
-                        }
-                    }, workerPool.executor()).handle(jsonResponseHandler(ctx)).thenCompose(resultIdentity);
-                } catch (Exception e) {
-                    return handleError(ctx, e);
-                }
-            };
-        }
-        if (isVoidType(getActualTypeArguments(method.getGenericReturnType())[0])) {
-            return ctx -> {
-                try {
-                    return ((CompletionStage<Void>) method.invoke(controller, parametesMapper.apply(ctx)))
-                            .handle(voidResponseHandler(ctx)).thenCompose(resultIdentity);
-                } catch (InvocationTargetException e) {
-                    return handleError(ctx, e.getTargetException());
-                } catch (Exception e) {
-                    return handleError(ctx, e);
-                }
-            };
-        }
-        return ctx -> {
-            try {
-                return ((CompletionStage<Object>) method.invoke(controller, parametesMapper.apply(ctx)))
-                        .handle(jsonResponseHandler(ctx)).thenCompose(resultIdentity);
-            } catch (InvocationTargetException e) {
-                return handleError(ctx, e.getTargetException());
-            } catch (Exception e) {
-                return handleError(ctx, e);
-            }
-        };
-    }
-
-    @SuppressWarnings("unchecked")
-    private static final Function<HttpRequestContext, Object[]> toParametersMapper(Parameter[] params) {
-        Function<HttpRequestContext, Object>[] parameterMappers = Arrays.stream(params)
-                .map(RouterUtil::toParameterMapper).toArray(Function[]::new);
-        return toParametersMapper(parameterMappers);
-    }
-
-    @SuppressWarnings("unchecked")
-    private static HttpServiceInvoker toStringResponseInvoker(Object controller, Method method, boolean blocking) {
-        if (Modifier.isStatic(method.getModifiers())) {
-            logger.warn("It is not recommended to declare a routing method as a static method! -- {}", method);
-        }
-        if (blocking) {
-            if (!CharSequence.class.isAssignableFrom(method.getReturnType())) {
-                throw new IllegalArgumentException(
-                        "The return type must be or extend CharSequence when @StringBody is present! -- " + method);
-            }
-            return ctx -> {
-                try {
-                    WorkerPool workerPool = ctx.component(WorkerPool.class)
-                            .orElseThrow(WorkerPoolConstants.MISSING_WORKER_POOL);
-                    return CompletableFuture.supplyAsync(() -> {
-                        try {
-                            return method.invoke(controller);
-                        } catch (InvocationTargetException e) {
-                            throw fromTarget(e);
-                        } catch (IllegalAccessException | IllegalArgumentException e) {
+                            return invoker.invoke(ctx);
+                        } catch (Throwable e) {
                             throw valueOf(e);
                         }
                     }, workerPool.executor()).handle(stringResponseHandler(ctx)).thenCompose(resultIdentity);
@@ -528,66 +414,21 @@ public class RouterUtil {
                 }
             };
         }
-        if (!CharSequence.class.isAssignableFrom((Class<?>) getActualTypeArguments(method.getGenericReturnType())[0])) {
-            throw new IllegalArgumentException(
-                    "The return type must be or extend CharSequence when @StringBody is present! -- " + method);
-        }
         return ctx -> {
             try {
-                return ((CompletionStage<Object>) method.invoke(controller)).handle(stringResponseHandler(ctx))
+                return ((CompletionStage<Object>) invoker.invoke(ctx)).handle(stringResponseHandler(ctx))
                         .thenCompose(resultIdentity);
-            } catch (InvocationTargetException e) {
-                return handleError(ctx, e.getTargetException());
-            } catch (Exception e) {
+            } catch (Throwable e) {
                 return handleError(ctx, e);
             }
         };
     }
 
     @SuppressWarnings("unchecked")
-    private static HttpServiceInvoker toStringResponseInvoker(Object controller, Method method, boolean blocking,
-            Parameter[] params) {
-        Function<HttpRequestContext, Object[]> parametesMapper = toParametersMapper(params);
-        if (Modifier.isStatic(method.getModifiers())) {
-            logger.warn("It is not recommended to declare a routing method as a static method! -- {}", method);
-        }
-        if (blocking) {
-            if (!CharSequence.class.isAssignableFrom(method.getReturnType())) {
-                throw new IllegalArgumentException(
-                        "The return type must be or extend CharSequence when @StringBody is present! -- " + method);
-            }
-            return ctx -> {
-                try {
-                    WorkerPool workerPool = ctx.component(WorkerPool.class)
-                            .orElseThrow(WorkerPoolConstants.MISSING_WORKER_POOL);
-                    return CompletableFuture.supplyAsync(() -> {
-                        try {
-                            return method.invoke(controller, parametesMapper.apply(ctx));
-                        } catch (InvocationTargetException e) {
-                            throw fromTarget(e);
-                        } catch (Exception e) {
-                            throw valueOf(e);
-                        }
-                    }, workerPool.executor()).handle(stringResponseHandler(ctx)).thenCompose(resultIdentity);
-                } catch (Exception e) {
-                    return handleError(ctx, e);
-                }
-            };
-        }
-        if (!CharSequence.class.isAssignableFrom((Class<?>) getActualTypeArguments(method.getGenericReturnType())[0])) {
-            throw new IllegalArgumentException(
-                    "The return type must be or extend CharSequence when @StringBody is present! -- " + method);
-        }
-        return ctx -> {
-            try {
-                return ((CompletionStage<Object>) method.invoke(controller, parametesMapper.apply(ctx)))
-                        .handle(stringResponseHandler(ctx)).thenCompose(resultIdentity);
-            } catch (InvocationTargetException e) {
-                return handleError(ctx, e.getTargetException());
-            } catch (Exception e) {
-                return handleError(ctx, e);
-            }
-        };
+    private static final MethodInvoker toMethodInvoker(Object controller, Method method, Parameter[] params) {
+        Function<HttpRequestContext, Object>[] parameterMappers = Arrays.stream(params)
+                .map(RouterUtil::toParameterMapper).toArray(Function[]::new);
+        return MethodInvokers.create(controller, method, parameterMappers);
     }
 
     private static final void requireContext(Parameter[] params) {
@@ -597,49 +438,11 @@ public class RouterUtil {
     }
 
     @SuppressWarnings("unchecked")
-    private static final HttpServiceInvoker toSimpleInvoker(Object controller, Method method) {
-        if (Modifier.isStatic(method.getModifiers())) {
-            return ctx -> {
-                try {
-                    return (CompletionStage<HttpResult>) method.invoke(null, ctx);
-                } catch (InvocationTargetException e) {
-                    return handleError(ctx, e.getTargetException());
-                } catch (Exception e) {
-                    return handleError(ctx, e);
-                }
-            };
-        }
-        return ctx -> {
-            try {
-                return (CompletionStage<HttpResult>) method.invoke(controller, ctx);
-            } catch (InvocationTargetException e) {
-                return handleError(ctx, e.getTargetException());
-            } catch (Exception e) {
-                return handleError(ctx, e);
-            }
-        };
-    }
-
-    @SuppressWarnings("unchecked")
-    private static final HttpServiceInvoker toParamsInvoker(Object controller, Method method, Parameter[] params) {
-        Function<HttpRequestContext, Object[]> parametesMapper = toParametersMapper(params);
-        if (Modifier.isStatic(method.getModifiers())) {
-            return ctx -> {
-                try {
-                    return (CompletionStage<HttpResult>) method.invoke(null, parametesMapper.apply(ctx));
-                } catch (InvocationTargetException e) {
-                    return handleError(ctx, e.getTargetException());
-                } catch (Exception e) {
-                    return handleError(ctx, e);
-                }
-            };
-        }
+    static final HttpServiceInvoker toResultInvoker(MethodInvoker invoker) {
         return ctx -> {
             try {
-                return (CompletionStage<HttpResult>) method.invoke(controller, parametesMapper.apply(ctx));
-            } catch (InvocationTargetException e) {
-                return handleError(ctx, e.getTargetException());
-            } catch (Exception e) {
+                return (CompletionStage<HttpResult>) invoker.invoke(ctx);
+            } catch (Throwable e) {
                 return handleError(ctx, e);
             }
         };
@@ -707,8 +510,11 @@ public class RouterUtil {
     }
 
     private static Function<HttpRequestContext, Object> toPathVarMapper(Parameter param, PathVar pathVar) {
-        Class<?> type = param.getType();
         String name = StringUtil.isNullOrEmpty(pathVar.value()) ? param.getName() : pathVar.value();
+        return toPathVarMapper(param.getType(), name);
+    }
+
+    static final Function<HttpRequestContext, Object> toPathVarMapper(Class<?> type, String name) {
         Supplier<IllegalArgumentException> noSuchPathVariable = noSuchPathVariable(name);
         if (type == String.class) {
             return ctx -> ctx.pathVariables().getString(name).orElseThrow(noSuchPathVariable);
@@ -747,23 +553,27 @@ public class RouterUtil {
     }
 
     private static final Function<HttpRequestContext, Object> toQueryVarMapper(Parameter param, QueryVar queryVar) {
-        Type type = param.getParameterizedType();
         String name = StringUtil.isNullOrEmpty(queryVar.value()) ? param.getName() : queryVar.value();
+        return toQueryVarMapper(param.getParameterizedType(), name, queryVar.required());
+    }
+
+    static final Function<HttpRequestContext, Object> toQueryVarMapper(Type type, String name, boolean required) {
         if (type instanceof Class<?>) {
             if (((Class<?>) type).isArray()) {
-                return toArrayMapper(queryVar, type, name);
+                return toArrayMapper(required, type, name);
             } else {
-                return toSimpleMapper(queryVar, type, name);
+                return toSimpleMapper(required, type, name);
             }
         }
-        if (List.class == param.getType()) {
-            return toListMapper(queryVar, (ParameterizedType) type, name);
+        Class<?> rawType = rawType(type);
+        if (List.class == rawType) {
+            return toListMapper(required, (ParameterizedType) type, name);
         }
-        if (Set.class == param.getType()) {
-            return toSetMapper(queryVar, (ParameterizedType) type, name);
+        if (Set.class == rawType) {
+            return toSetMapper(required, (ParameterizedType) type, name);
         }
-        if (Optional.class == param.getType()) {
-            return toOptionalMapper(queryVar, (ParameterizedType) type, name);
+        if (Optional.class == rawType) {
+            return toOptionalMapper((ParameterizedType) type, name);
         }
         throw new IllegalArgumentException("unsupported type " + type + " for @QueryVar");
     }
@@ -796,12 +606,12 @@ public class RouterUtil {
         queryValueMappers = map;
     }
 
-    private static final Function<HttpRequestContext, Object> toArrayMapper(QueryVar queryVar, Type type, String name) {
+    private static final Function<HttpRequestContext, Object> toArrayMapper(boolean required, Type type, String name) {
         Function<List<String>, Object> mapper = queryValueMappers.get(type == Object[].class ? String[].class : type);
         if (mapper == null) {
             throw new IllegalArgumentException("unsupported type " + type + " for @QueryVar");
         }
-        if (queryVar.required()) {
+        if (required) {
             Supplier<IllegalArgumentException> noSuchQueryVariable = noSuchQueryVariable(name);
             return ctx -> ctx.queryParameter(name).map(mapper).orElseThrow(noSuchQueryVariable);
         } else {
@@ -809,7 +619,7 @@ public class RouterUtil {
         }
     }
 
-    private static Function<HttpRequestContext, Object> toSimpleMapper(QueryVar queryVar, Type type, String name) {
+    private static Function<HttpRequestContext, Object> toSimpleMapper(boolean required, Type type, String name) {
         Function<List<String>, Object> mapper;
         if (type == String.class || type == Object.class) {
             mapper = queryValueMappers.get(String.class);
@@ -843,7 +653,7 @@ public class RouterUtil {
         } else {
             throw new IllegalArgumentException("unsupported type " + type + " for @QueryVar");
         }
-        if (queryVar.required()) {
+        if (required) {
             Supplier<IllegalArgumentException> noSuchQueryVariable = noSuchQueryVariable(name);
             return ctx -> ctx.queryParameter(name).map(mapper).orElseThrow(noSuchQueryVariable);
         } else {
@@ -876,14 +686,14 @@ public class RouterUtil {
         queryListValueMappers = map;
     }
 
-    private static final Function<HttpRequestContext, Object> toListMapper(QueryVar queryVar, ParameterizedType type,
+    private static final Function<HttpRequestContext, Object> toListMapper(boolean required, ParameterizedType type,
             String name) {
         Type atype = type.getActualTypeArguments()[0];
         Function<List<String>, Object> mapper = queryListValueMappers.get(atype == Object.class ? String.class : atype);
         if (mapper == null) {
             throw new IllegalArgumentException("unsupported type " + type + " for @QueryVar");
         }
-        if (queryVar.required()) {
+        if (required) {
             Supplier<IllegalArgumentException> noSuchQueryVariable = noSuchQueryVariable(name);
             return ctx -> ctx.queryParameter(name).map(mapper).orElseThrow(noSuchQueryVariable);
         } else {
@@ -909,14 +719,14 @@ public class RouterUtil {
         querySetValueMappers = map;
     }
 
-    private static final Function<HttpRequestContext, Object> toSetMapper(QueryVar queryVar, ParameterizedType type,
+    private static final Function<HttpRequestContext, Object> toSetMapper(boolean required, ParameterizedType type,
             String name) {
         Type atype = type.getActualTypeArguments()[0];
         Function<List<String>, Object> mapper = querySetValueMappers.get(atype == Object.class ? String.class : atype);
         if (mapper == null) {
             throw new IllegalArgumentException("unsupported type " + type + " for @QueryVar");
         }
-        if (queryVar.required()) {
+        if (required) {
             Supplier<IllegalArgumentException> noSuchQueryVariable = noSuchQueryVariable(name);
             return ctx -> ctx.queryParameter(name).map(mapper).orElseThrow(noSuchQueryVariable);
         } else {
@@ -924,8 +734,8 @@ public class RouterUtil {
         }
     }
 
-    private static final Function<HttpRequestContext, Object> toOptionalMapper(QueryVar queryVar,
-            ParameterizedType type, String name) {
+    private static final Function<HttpRequestContext, Object> toOptionalMapper(ParameterizedType type,
+            String name) {
         Type atype = type.getActualTypeArguments()[0];
         Function<List<String>, Object> mapper = queryValueMappers.get(atype == Object.class ? String.class : atype);
         if (mapper == null) {
@@ -940,7 +750,10 @@ public class RouterUtil {
             .getBytes(ctx.request().content());
 
     private static final Function<HttpRequestContext, Object> toJsonBodyMapper(Parameter param, JsonBody jsonBody) {
-        Type type = param.getParameterizedType();
+        return toJsonBodyMapper(param.getParameterizedType());
+    }
+
+    static final Function<HttpRequestContext, Object> toJsonBodyMapper(Type type) {
         if (type == String.class) {
             return contentToStringMapper;
         } else if (type == byte[].class) {
@@ -955,7 +768,7 @@ public class RouterUtil {
             StringBody strongBody) {
         Type type = param.getParameterizedType();
         if (type == String.class || type == CharSequence.class) {
-            return contentToStringMapper;
+            return toStringBodyMapper();
         } else {
             throw new IllegalArgumentException(
                     "The type of the parameter must be String or CharSequence when @StringBody is present! -- "
@@ -963,6 +776,10 @@ public class RouterUtil {
         }
     }
 
+    static final Function<HttpRequestContext, Object> toStringBodyMapper() {
+        return contentToStringMapper;
+    }
+
     private static final Supplier<IllegalArgumentException> noSuchHeader(String name) {
         String message = "missing header " + name;
         IllegalArgumentException error = illegalArgumentExceptions.computeIfAbsent(message,
@@ -972,32 +789,38 @@ public class RouterUtil {
 
     private static final Function<HttpRequestContext, Object> toHeaderValueMapper(Parameter param,
             HeaderValue headerValue) {
-        Type type = param.getParameterizedType();
-        String name = headerValue.value();
+        return toHeaderValueMapper(param.getParameterizedType(), headerValue.value(), headerValue.required());
+    }
+
+    static final Function<HttpRequestContext, Object> toHeaderValueMapper(Type type, String name, boolean required) {
         if (type instanceof Class<?>) {
-            return toSimpleMapper(headerValue, type, name);
+            return toHeaderSimpleMapper(required, type, name);
         }
-        if (Optional.class == param.getType()) {
-            return toOptionalMapper(headerValue, (ParameterizedType) type, name);
+        if (Optional.class == rawType(type)) {
+            return toHeaderOptionalMapper((ParameterizedType) type, name);
         }
         throw new IllegalArgumentException("unsupported type " + type + " for @HeaderValue");
     }
 
-    @SuppressWarnings("unchecked")
     private static final Function<HttpRequestContext, Object> toComponentValueMapper(Parameter param,
             ComponentValue componentValue) {
-        Type type = param.getParameterizedType();
-        if (componentValue.value() == HttpServerComponent.class) {
+        return toComponentValueMapper(param.getParameterizedType(), componentValue.value(), componentValue.required());
+    }
+
+    @SuppressWarnings("unchecked")
+    static final Function<HttpRequestContext, Object> toComponentValueMapper(Type type,
+            Class<? extends HttpServerComponent> value, boolean required) {
+        if (value == HttpServerComponent.class) {
             if (type instanceof Class<?>) {
-                Class<? extends HttpServerComponent> key = (Class<? extends HttpServerComponent>) param.getType();
-                if (componentValue.required()) {
+                Class<? extends HttpServerComponent> key = (Class<? extends HttpServerComponent>) type;
+                if (required) {
                     Supplier<IllegalArgumentException> noSuchComponentValue = noSuchComponentValue(key.toString());
                     return ctx -> ctx.component(key).orElseThrow(noSuchComponentValue);
                 } else {
                     return ctx -> ctx.component(key).orElse(null);
                 }
             }
-            if (Optional.class == param.getType()) {
+            if (Optional.class == rawType(type)) {
                 Type atype = ((ParameterizedType) type).getActualTypeArguments()[0];
                 if (atype instanceof Class<?>) {
                     Class<? extends HttpServerComponent> key = (Class<? extends HttpServerComponent>) atype;
@@ -1006,16 +829,16 @@ public class RouterUtil {
                 }
             }
         } else {
-            Class<? extends HttpServerComponent> key = componentValue.value();
+            Class<? extends HttpServerComponent> key = value;
             if (type instanceof Class<?>) {
-                if (componentValue.required()) {
+                if (required) {
                     Supplier<IllegalArgumentException> noSuchComponentValue = noSuchComponentValue(key.toString());
                     return ctx -> ctx.component(key).orElseThrow(noSuchComponentValue);
                 } else {
                     return ctx -> ctx.component(key).orElse(null);
                 }
             }
-            if (Optional.class == param.getType()) {
+            if (Optional.class == rawType(type)) {
                 // skip required check
                 return ctx -> ctx.property(key);
             }
@@ -1025,18 +848,22 @@ public class RouterUtil {
 
     private static final Function<HttpRequestContext, Object> toPropertyValueMapper(Parameter param,
             PropertyValue propertyValue) {
-        Type type = param.getParameterizedType();
-        if (StringUtil.isNullOrEmpty(propertyValue.value())) {
+        return toPropertyValueMapper(param.getParameterizedType(), propertyValue.value(), propertyValue.required());
+    }
+
+    static final Function<HttpRequestContext, Object> toPropertyValueMapper(Type type, String value,
+            boolean required) {
+        if (StringUtil.isNullOrEmpty(value)) {
             if (type instanceof Class<?>) {
-                Class<?> key = param.getType();
-                if (propertyValue.required()) {
+                Class<?> key = (Class<?>) type;
+                if (required) {
                     Supplier<IllegalArgumentException> noSuchPropertyValue = noSuchPropertyValue(key.toString());
                     return ctx -> ctx.property(key).orElseThrow(noSuchPropertyValue);
                 } else {
                     return ctx -> ctx.property(key).orElse(null);
                 }
             }
-            if (Optional.class == param.getType()) {
+            if (Optional.class == rawType(type)) {
                 Type atype = ((ParameterizedType) type).getActualTypeArguments()[0];
                 if (atype instanceof Class<?>) {
                     Class<?> key = (Class<?>) atype;
@@ -1045,17 +872,17 @@ public class RouterUtil {
                 }
             }
         } else {
-            String key = propertyValue.value();
+            String key = value;
             if (type instanceof Class<?>) {
-                Class<?> valueType = param.getType();
-                if (propertyValue.required()) {
+                Class<?> valueType = (Class<?>) type;
+                if (required) {
                     Supplier<IllegalArgumentException> noSuchPropertyValue = noSuchPropertyValue(key.toString());
                     return ctx -> ctx.property(key, valueType).orElseThrow(noSuchPropertyValue);
                 } else {
                     return ctx -> ctx.property(key, valueType).orElse(null);
                 }
             }
-            if (Optional.class == param.getType()) {
+            if (Optional.class == rawType(type)) {
                 // skip required check
                 return ctx -> ctx.property(key);
             }
@@ -1077,45 +904,45 @@ public class RouterUtil {
         return illegalArguemntSuppliers.computeIfAbsent(message, k -> () -> error);
     }
 
-    private static Function<HttpRequestContext, Object> toSimpleMapper(HeaderValue headerValue, Type type,
+    private static Function<HttpRequestContext, Object> toHeaderSimpleMapper(boolean required, Type type,
             String name) {
         if (type == String.class || type == Object.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).orElseThrow(noSuchHeader);
             } else {
                 return ctx -> ctx.headers().get(name);
             }
         } else if (type == int.class || type == Integer.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().getInt(name)).orElseThrow(noSuchHeader);
             } else {
                 return ctx -> ctx.headers().getInt(name);
             }
         } else if (type == short.class || type == Short.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().getShort(name)).orElseThrow(noSuchHeader);
             } else {
                 return ctx -> ctx.headers().getShort(name);
             }
         } else if (type == long.class || type == Long.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(Long::valueOf).orElseThrow(noSuchHeader);
             } else {
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(Long::valueOf).orElse(null);
             }
         } else if (type == byte.class || type == Byte.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(Byte::valueOf).orElseThrow(noSuchHeader);
             } else {
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(Byte::valueOf).orElse(null);
             }
         } else if (type == float.class || type == Float.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(Float::valueOf)
                         .orElseThrow(noSuchHeader);
@@ -1123,7 +950,7 @@ public class RouterUtil {
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(Float::valueOf).orElse(null);
             }
         } else if (type == double.class || type == Double.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(Double::valueOf)
                         .orElseThrow(noSuchHeader);
@@ -1131,7 +958,7 @@ public class RouterUtil {
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(Double::valueOf).orElse(null);
             }
         } else if (type == BigInteger.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(BigInteger::new)
                         .orElseThrow(noSuchHeader);
@@ -1139,7 +966,7 @@ public class RouterUtil {
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(BigInteger::new).orElse(null);
             }
         } else if (type == BigDecimal.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(BigDecimal::new)
                         .orElseThrow(noSuchHeader);
@@ -1147,7 +974,7 @@ public class RouterUtil {
                 return ctx -> Optional.ofNullable(ctx.headers().get(name)).map(BigDecimal::new).orElse(null);
             }
         } else if (type == Date.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().getTimeMillis(name)).map(Date::new)
                         .orElseThrow(noSuchHeader);
@@ -1155,7 +982,7 @@ public class RouterUtil {
                 return ctx -> Optional.ofNullable(ctx.headers().getTimeMillis(name)).map(Date::new).orElse(null);
             }
         } else if (type == Instant.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().getTimeMillis(name)).map(Instant::ofEpochMilli)
                         .orElseThrow(noSuchHeader);
@@ -1164,7 +991,7 @@ public class RouterUtil {
                         .orElse(null);
             }
         } else if (type == ZonedDateTime.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().getTimeMillis(name)).map(Instant::ofEpochMilli)
                         .map(i -> i.atZone(ZoneId.systemDefault())).orElseThrow(noSuchHeader);
@@ -1173,7 +1000,7 @@ public class RouterUtil {
                         .map(i -> i.atZone(ZoneId.systemDefault())).orElse(null);
             }
         } else if (type == OffsetDateTime.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().getTimeMillis(name)).map(Instant::ofEpochMilli)
                         .map(i -> i.atZone(ZoneId.systemDefault()).toOffsetDateTime()).orElseThrow(noSuchHeader);
@@ -1182,7 +1009,7 @@ public class RouterUtil {
                         .map(i -> i.atZone(ZoneId.systemDefault()).toOffsetDateTime()).orElse(null);
             }
         } else if (type == LocalDateTime.class) {
-            if (headerValue.required()) {
+            if (required) {
                 Supplier<IllegalArgumentException> noSuchHeader = noSuchHeader(name);
                 return ctx -> Optional.ofNullable(ctx.headers().getTimeMillis(name)).map(Instant::ofEpochMilli)
                         .map(i -> LocalDateTime.ofInstant(i, ZoneId.systemDefault())).orElseThrow(noSuchHeader);
@@ -1207,8 +1034,8 @@ public class RouterUtil {
         throw new IllegalArgumentException("unsupported type " + type + " for @HeaderValue");
     }
 
-    private static final Function<HttpRequestContext, Object> toOptionalMapper(HeaderValue headerValue,
-            ParameterizedType type, String name) {
+    private static final Function<HttpRequestContext, Object> toHeaderOptionalMapper(ParameterizedType type,
+            String name) {
         Type atype = type.getActualTypeArguments()[0];
         if (atype == String.class || atype == Object.class) {
             return ctx -> Optional.ofNullable(ctx.headers().get(name));
@@ -1268,7 +1095,10 @@ public class RouterUtil {
     }
 
     private static final Function<HttpRequestContext, Object> toZeroValueMapper(Parameter param) {
-        Class<?> type = param.getType();
+        return toZeroValueMapper(param.getType());
+    }
+
+    static final Function<HttpRequestContext, Object> toZeroValueMapper(Class<?> type) {
         if (type.isPrimitive()) {
             return zeroValueMappers.get(type);
         } else {
@@ -1276,20 +1106,6 @@ public class RouterUtil {
         }
     }
 
-    private static final Function<HttpRequestContext, Object[]> toParametersMapper(
-            Function<HttpRequestContext, Object>[] parameterMappers) {
-        return ctx -> {
-            try {
-                Object[] args = new Object[parameterMappers.length];
-                for (int i = 0; i < parameterMappers.length; i++) {
-                    args[i] = parameterMappers[i].apply(ctx);
-                }
-                return args;
-            } catch (Exception e) {
-                throw new BadRequestException(e);
-            }
-        };
-    }
 
     private static final void checkReturnType(Method method) {
         ParameterizedType returnType = (ParameterizedType) method.getGenericReturnType();
@@ -1316,6 +1132,9 @@ public class RouterUtil {
 
     /**
      * Register the given controller to the specified router.
+     * <p>
+     * If a {@link RouteRegistrar} has been generated for the class of the
+     * controller at compile time, it will be used instead of reflection.
      * 
      * @param <T>        the type of the controller
      * @param router     the router
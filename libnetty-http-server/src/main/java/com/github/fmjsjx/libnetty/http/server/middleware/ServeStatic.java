@@ -2,30 +2,44 @@ package com.github.fmjsjx.libnetty.http.server.middleware;
 
 import static io.netty.channel.ChannelFutureListener.*;
 import static io.netty.handler.codec.http.HttpHeaderNames.*;
+import static io.netty.handler.codec.http.HttpHeaderValues.BYTES;
 import static io.netty.handler.codec.http.HttpResponseStatus.*;
 import static java.nio.file.StandardOpenOption.*;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,23 +49,36 @@ import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
 import com.github.fmjsjx.libnetty.http.server.HttpResult;
 import com.github.fmjsjx.libnetty.http.server.HttpServerHandler;
 import com.github.fmjsjx.libnetty.http.server.MimeTypeUtil;
+import com.github.fmjsjx.libnetty.http.server.middleware.StaticContentCache.CachedContent;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
 import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http2.Http2StreamChannel;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedInput;
 import io.netty.handler.stream.ChunkedNioFile;
 import io.netty.util.AsciiString;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.internal.StringUtil;
 import io.netty.util.internal.SystemPropertyUtil;
 
@@ -71,6 +98,8 @@ public class ServeStatic implements Middleware {
 
     private static final int chunkSize;
 
+    private static final long PRECOMPRESS_MIN_SIZE = 1024;
+
     static {
         chunkSize = SystemPropertyUtil.getInt("libnetty.http.server.middleware.static.chunkSize", 8192);
         logger.debug("-Dlibnetty.http.server.middleware.static.chunkSize: {}", chunkSize);
@@ -98,6 +127,12 @@ public class ServeStatic implements Middleware {
     private final long maxAge;
     private final EtagGenerator etagGenerator;
     private final Consumer<HttpHeaders> addHeaders;
+    private final StaticContentCache contentCache;
+    private final PrecompressedEncoding[] precompressed;
+    private final ExecutorService precompressExecutor;
+    private final Set<Path> precompressing;
+    private final Executor metadataExecutor;
+    private final MetadataCache metadataCache;
 
     /**
      * Constructs a new {@link ServeStatic} with the specified {@code path} and
@@ -176,21 +211,70 @@ public class ServeStatic implements Middleware {
                         .mapToInt(s -> s.parseInt(8, s.length())).findFirst().orElse(0));
         this.etagGenerator = opt.etagGenerator;
         this.addHeaders = opt.addHeaders;
+        this.contentCache = opt.contentCacheSize > 0
+                ? new StaticContentCache(opt.contentCacheSize, opt.contentCacheMaxFileSize,
+                        opt.contentCacheRevalidateInterval.toNanos(), opt.contentCacheWatch)
+                : null;
+        this.precompressed = opt.precompressed;
+        if (opt.autoPrecompress) {
+            this.precompressExecutor = Executors
+                    .newSingleThreadExecutor(new DefaultThreadFactory("serve-static-precompress", true));
+            this.precompressing = ConcurrentHashMap.newKeySet();
+        } else {
+            this.precompressExecutor = null;
+            this.precompressing = null;
+        }
+        this.metadataExecutor = opt.metadataExecutor;
+        this.metadataCache = opt.metadataCacheSize > 0
+                ? new MetadataCache(opt.metadataCacheSize, opt.metadataCacheRevalidateInterval.toNanos())
+                : null;
     }
 
     @Override
     public CompletionStage<HttpResult> apply(HttpRequestContext ctx, MiddlewareChain next) {
         String path = ctx.path();
-        boolean isGet = HttpMethod.GET.equals(ctx.method());
-        List<StaticLocationMapping> mappings = this.mappings;
+        if (!HttpMethod.GET.equals(ctx.method())) {
+            for (StaticLocationMapping mapping : mappings) {
+                if (path.startsWith(mapping.uri)) {
+                    return ctx.simpleRespond(METHOD_NOT_ALLOWED);
+                }
+            }
+            return next.doNext(ctx);
+        }
+        int acceptedEncodings = precompressed.length > 0 ? acceptedEncodings(ctx.headers()) : 0;
+        String cacheKey = acceptedEncodings == 0 ? path : path + "\n" + acceptedEncodings;
+        StaticContentCache contentCache = this.contentCache;
+        // range requests are always served from the file
+        if (contentCache != null && !ctx.headers().contains(RANGE)) {
+            CachedContent cached = contentCache.get(cacheKey);
+            if (cached != null) {
+                logger.debug("Hit cached static content {} => {}", path, cached.file);
+                return respondCached(ctx, cached);
+            }
+        }
+        MetadataCache metadataCache = this.metadataCache;
+        if (metadataCache != null) {
+            StaticFile file = metadataCache.get(cacheKey);
+            if (file != null) {
+                logger.debug("Hit cached static file metadata {} => {}", path, file.path);
+                return respond(ctx, next, cacheKey, file);
+            }
+        }
+        Executor metadataExecutor = this.metadataExecutor;
+        if (metadataExecutor == null) {
+            return respond(ctx, next, cacheKey, resolve(path, cacheKey, acceptedEncodings));
+        }
+        // resolve the file metadata on the executor, and then resume on the event loop
+        return CompletableFuture.supplyAsync(() -> resolve(path, cacheKey, acceptedEncodings), metadataExecutor)
+                .thenComposeAsync(file -> respond(ctx, next, cacheKey, file), ctx.eventLoop());
+    }
+
+    private StaticFile resolve(String path, String cacheKey, int acceptedEncodings) {
         L1: for (StaticLocationMapping mapping : mappings) {
             String uri = mapping.uri;
             if (!path.startsWith(uri)) {
                 continue L1;
             }
-            if (!isGet) {
-                return ctx.simpleRespond(METHOD_NOT_ALLOWED);
-            }
             Path p = Paths.get(mapping.location, path.substring(uri.length()));
             if (!Files.exists(p)) {
                 continue L1;
@@ -199,7 +283,7 @@ public class ServeStatic implements Middleware {
             if (Files.isDirectory(p)) {
                 boolean hitRedirect = !path.endsWith("/");
                 if (hitRedirect && redirectDirectory) {
-                    return ctx.sendRedirect(path + "/", addHeaders);
+                    return StaticFile.REDIRECT;
                 } else {
                     boolean exists = false;
                     for (String index : indexes) {
@@ -217,74 +301,409 @@ public class ServeStatic implements Middleware {
             } else if (!Files.isRegularFile(p)) {
                 continue L1;
             }
-            FullHttpRequest request = ctx.request();
-            HttpVersion version = request.protocolVersion();
-            HttpHeaders headers = request.headers();
             try {
                 if (Files.isHidden(p) && !showHidden) {
-                    return next.doNext(ctx);
+                    return StaticFile.NOT_FOUND;
                 }
                 BasicFileAttributes fileAttrs = Files.readAttributes(p, BasicFileAttributes.class);
-                Instant now = Instant.now();
                 String etag = etagEnabled ? etagGenerator.generate(p, fileAttrs) : null;
-                Instant lastModified = lastModifiedEnabled ? fileAttrs.lastModifiedTime().toInstant() : null;
-                long maxAge = this.maxAge;
-                Instant expires = maxAge > 0 ? now.plusSeconds(maxAge) : now;
-                boolean keepAlive = HttpUtil.isKeepAlive(request);
-                if (etagEnabled) {
-                    List<String> ifNoneMatches = headers.getAll(IF_NONE_MATCH);
-                    if (!ifNoneMatches.isEmpty()) {
-                        headers.remove(IF_MODIFIED_SINCE); // skip header if-modified-since
-                        if (ifNoneMatches.stream().anyMatch(etag::equals)) { // not modified
-                            FullHttpResponse response = ctx.responseFactory().createFull(NOT_MODIFIED);
-                            setDateAndCacheHeaders(now, etag, lastModified, expires, response.headers());
-                            return ctx.sendResponse(response, 0);
+                CharSequence contentType = MimeTypeUtil.probeContentType(p);
+                // try to use the precompressed file
+                PrecompressedEncoding encoding = null;
+                for (PrecompressedEncoding e : precompressed) {
+                    if ((acceptedEncodings & e.mask) != 0) {
+                        Path sp = p.resolveSibling(p.getFileName() + e.suffix);
+                        BasicFileAttributes sidecarAttrs = readSidecarAttributes(sp, fileAttrs);
+                        if (sidecarAttrs != null) {
+                            logger.debug("Use precompressed file {} => {}", path, sp);
+                            encoding = e;
+                            p = sp;
+                            fileAttrs = sidecarAttrs;
+                            if (etagEnabled) {
+                                etag = e.etag(etag);
+                            }
+                            break;
                         }
                     }
                 }
-                if (lastModifiedEnabled) {
-                    Long ims = headers.getTimeMillis(IF_MODIFIED_SINCE);
-                    if (ims != null && ims.longValue() >= lastModified.toEpochMilli()) { // not modified
-                        FullHttpResponse response = ctx.responseFactory().createFull(NOT_MODIFIED);
-                        setDateAndCacheHeaders(now, etag, lastModified, expires, response.headers());
-                        return ctx.sendResponse(response, 0);
-                    }
+                if (encoding == null && precompressExecutor != null) {
+                    tryPrecompress(p, fileAttrs, contentType);
                 }
-                long contentLength = fileAttrs.size();
-                HttpResponse response = new DefaultHttpResponse(version, OK);
-                HttpUtil.setKeepAlive(response, keepAlive);
-                HttpUtil.setContentLength(response, contentLength);
-                response.headers().set(CONTENT_TYPE, MimeTypeUtil.probeContentType(p));
-                setDateAndCacheHeaders(now, etag, lastModified, expires, response.headers());
-                CompletableFuture<HttpResult> future = new CompletableFuture<>();
-                ChannelFutureListener[] cbs = new ChannelFutureListener[] { cf -> {
-                    if (cf.isSuccess()) {
-                        future.complete(new DefaultHttpResult(ctx, contentLength, OK));
-                    } else if (cf.cause() != null) {
-                        future.completeExceptionally(cf.cause());
-                    }
-                }, keepAlive ? HttpServerHandler.READ_NEXT : CLOSE };
-                Channel channel = ctx.channel();
-                channel.write(response);
-                FileChannel file = FileChannel.open(p, READ);
-                if (channel.pipeline().get(SslHandler.class) == null) {
-                    // Use zero-copy file transfer
-                    channel.write(new DefaultFileRegion(file, 0, contentLength));
-                    // Write the end marker.
-                    channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT).addListeners(cbs);
-                } else {
-                    ChunkedNioFile chunkedFile = new ChunkedNioFile(file, 0, contentLength, chunkSize);
-                    // HttpChunkedInput will write the end marker (LastHttpContent) for us.
-                    channel.writeAndFlush(new HttpChunkedInput(chunkedFile)).addListeners(cbs);
+                StaticFile file = new StaticFile(p, fileAttrs, etag, contentType,
+                        encoding == null ? null : encoding.contentEncoding);
+                MetadataCache metadataCache = this.metadataCache;
+                if (metadataCache != null) {
+                    metadataCache.put(cacheKey, file);
                 }
-                return future;
+                return file;
             } catch (IOException e) {
                 // skip any IO exception
-                return next.doNext(ctx);
+                return StaticFile.NOT_FOUND;
             }
         }
         // End of loop
-        return next.doNext(ctx);
+        return StaticFile.NOT_FOUND;
+    }
+
+    private CompletionStage<HttpResult> respond(HttpRequestContext ctx, MiddlewareChain next, String cacheKey,
+            StaticFile file) {
+        if (file == StaticFile.NOT_FOUND) {
+            return next.doNext(ctx);
+        }
+        if (file == StaticFile.REDIRECT) {
+            return ctx.sendRedirect(ctx.path() + "/", addHeaders);
+        }
+        FullHttpRequest request = ctx.request();
+        HttpVersion version = request.protocolVersion();
+        HttpHeaders headers = request.headers();
+        try {
+            Path p = file.path;
+            BasicFileAttributes fileAttrs = file.attributes;
+            Instant now = Instant.now();
+            String etag = file.etag;
+            CharSequence contentType = file.contentType;
+            CharSequence contentEncoding = file.contentEncoding;
+            Instant lastModified = lastModifiedEnabled ? fileAttrs.lastModifiedTime().toInstant() : null;
+            Instant expires = expires(now);
+            boolean keepAlive = HttpUtil.isKeepAlive(request);
+            CompletionStage<HttpResult> notModified = respondNotModified(ctx, headers, now, etag, lastModified,
+                    expires);
+            if (notModified != null) {
+                return notModified;
+            }
+            long contentLength = fileAttrs.size();
+            long[] ranges = isRangeSatisfied(headers, etag, fileAttrs)
+                    ? ByteRanges.parse(headers.get(RANGE), contentLength)
+                    : null;
+            if (ranges == ByteRanges.UNSATISFIABLE) {
+                FullHttpResponse response = ctx.responseFactory().createFull(REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.headers().set(CONTENT_RANGE, "bytes */" + contentLength);
+                return ctx.sendResponse(response, 0);
+            }
+            if (ranges != null) {
+                return sendRanges(ctx, p, ranges, contentLength, contentType, contentEncoding, now, etag,
+                        lastModified, expires);
+            }
+            StaticContentCache contentCache = this.contentCache;
+            if (contentCache != null && contentCache.accepts(contentLength)) {
+                CachedContent cached = contentCache.put(cacheKey, p, fileAttrs, etag, contentType, contentEncoding);
+                if (cached != null) {
+                    return respondCached(ctx, cached, now, etag, lastModified, expires);
+                }
+            }
+            HttpResponse response = new DefaultHttpResponse(version, OK);
+            HttpUtil.setKeepAlive(response, keepAlive);
+            HttpUtil.setContentLength(response, contentLength);
+            response.headers().set(CONTENT_TYPE, contentType);
+            if (contentEncoding != null) {
+                response.headers().set(CONTENT_ENCODING, contentEncoding);
+            }
+            setDateAndCacheHeaders(now, etag, lastModified, expires, response.headers());
+            return sendFile(ctx, response, p, 0, contentLength);
+        } catch (IOException e) {
+            // skip any IO exception
+            MetadataCache metadataCache = this.metadataCache;
+            if (metadataCache != null) {
+                metadataCache.remove(cacheKey, file);
+            }
+            return next.doNext(ctx);
+        }
+    }
+
+    private CompletionStage<HttpResult> sendFile(HttpRequestContext ctx, HttpResponse response, Path p,
+            long position, long length) throws IOException {
+        boolean keepAlive = HttpUtil.isKeepAlive(response);
+        CompletableFuture<HttpResult> future = new CompletableFuture<>();
+        ChannelFutureListener[] cbs = resultListeners(ctx, future, length, response.status(), keepAlive);
+        Channel channel = ctx.channel();
+        // open the file first, so nothing is written if it has been deleted
+        FileChannel file = FileChannel.open(p, READ);
+        ctx.write(response);
+        if (isZeroCopySupported(channel)) {
+            // Use zero-copy file transfer
+            ctx.write(new DefaultFileRegion(file, position, length));
+            // Write the end marker.
+            ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT).addListeners(cbs);
+        } else {
+            ChunkedNioFile chunkedFile = new ChunkedNioFile(file, position, length, chunkSize);
+            // HttpChunkedInput will write the end marker (LastHttpContent) for us.
+            ctx.writeAndFlush(new HttpChunkedInput(chunkedFile)).addListeners(cbs);
+        }
+        return future;
+    }
+
+    private static final boolean isZeroCopySupported(Channel channel) {
+        return !(channel instanceof Http2StreamChannel) && channel.pipeline().get(SslHandler.class) == null;
+    }
+
+    private static final ChannelFutureListener[] resultListeners(HttpRequestContext ctx,
+            CompletableFuture<HttpResult> future, long length, HttpResponseStatus status, boolean keepAlive) {
+        return new ChannelFutureListener[] { cf -> {
+            if (cf.isSuccess()) {
+                future.complete(new DefaultHttpResult(ctx, length, status));
+            } else if (cf.cause() != null) {
+                future.completeExceptionally(cf.cause());
+            }
+        }, keepAlive ? HttpServerHandler.READ_NEXT : CLOSE };
+    }
+
+    private boolean isRangeSatisfied(HttpHeaders headers, String etag, BasicFileAttributes fileAttrs) {
+        if (!headers.contains(RANGE)) {
+            return false;
+        }
+        String ifRange = headers.get(IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // only strong validator can be used
+            return etagEnabled && !etagGenerator.week() && ifRange.equals(etag);
+        }
+        Long date = headers.getTimeMillis(IF_RANGE);
+        // HTTP date has only second precision
+        return date != null && date.longValue() / 1000 == fileAttrs.lastModifiedTime().to(TimeUnit.SECONDS);
+    }
+
+    private CompletionStage<HttpResult> sendRanges(HttpRequestContext ctx, Path p, long[] ranges, long contentLength,
+            CharSequence contentType, CharSequence contentEncoding, Instant now, String etag, Instant lastModified,
+            Instant expires) throws IOException {
+        HttpResponse response = new DefaultHttpResponse(ctx.version(), PARTIAL_CONTENT);
+        HttpHeaders headers = response.headers();
+        HttpUtil.setKeepAlive(response, ctx.isKeepAlive());
+        if (contentEncoding != null) {
+            headers.set(CONTENT_ENCODING, contentEncoding);
+        }
+        setDateAndCacheHeaders(now, etag, lastModified, expires, headers);
+        if (ranges.length == 2) {
+            long first = ranges[0];
+            long length = ranges[1] - first + 1;
+            headers.set(CONTENT_TYPE, contentType);
+            headers.set(CONTENT_RANGE, "bytes " + first + "-" + ranges[1] + "/" + contentLength);
+            HttpUtil.setContentLength(response, length);
+            return sendFile(ctx, response, p, first, length);
+        }
+        // multipart/byteranges
+        String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+        headers.set(CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+        int partCount = ranges.length / 2;
+        ByteBuf[] partHeaders = new ByteBuf[partCount];
+        long bodyLength = 0;
+        ByteBufAllocator alloc = ctx.alloc();
+        for (int i = 0; i < partCount; i++) {
+            long first = ranges[i * 2];
+            long last = ranges[i * 2 + 1];
+            String partHeader = "\r\n--" + boundary + "\r\ncontent-type: " + contentType + "\r\ncontent-range: bytes "
+                    + first + "-" + last + "/" + contentLength + "\r\n\r\n";
+            partHeaders[i] = ByteBufUtil.writeAscii(alloc, partHeader);
+            bodyLength += partHeaders[i].readableBytes() + last - first + 1;
+        }
+        ByteBuf end = ByteBufUtil.writeAscii(alloc, "\r\n--" + boundary + "--\r\n");
+        bodyLength += end.readableBytes();
+        HttpUtil.setContentLength(response, bodyLength);
+        CompletableFuture<HttpResult> future = new CompletableFuture<>();
+        ChannelFutureListener[] cbs = resultListeners(ctx, future, bodyLength, PARTIAL_CONTENT, ctx.isKeepAlive());
+        Channel channel = ctx.channel();
+        ctx.write(response);
+        boolean zeroCopy = isZeroCopySupported(channel);
+        for (int i = 0; i < partCount; i++) {
+            long first = ranges[i * 2];
+            long length = ranges[i * 2 + 1] - first + 1;
+            ctx.write(new DefaultHttpContent(partHeaders[i]));
+            if (zeroCopy) {
+                // each region opens the file lazily and closes it after transferred
+                ctx.write(new DefaultFileRegion(p.toFile(), first, length));
+            } else {
+                ctx.write(new HttpContentChunkedInput(
+                        new ChunkedNioFile(FileChannel.open(p, READ), first, length, chunkSize)));
+            }
+        }
+        ctx.writeAndFlush(new DefaultLastHttpContent(end)).addListeners(cbs);
+        return future;
+    }
+
+    private Instant expires(Instant now) {
+        long maxAge = this.maxAge;
+        return maxAge > 0 ? now.plusSeconds(maxAge) : now;
+    }
+
+    private CompletionStage<HttpResult> respondNotModified(HttpRequestContext ctx, HttpHeaders headers, Instant now,
+            String etag, Instant lastModified, Instant expires) {
+        if (etagEnabled) {
+            List<String> ifNoneMatches = headers.getAll(IF_NONE_MATCH);
+            if (!ifNoneMatches.isEmpty()) {
+                headers.remove(IF_MODIFIED_SINCE); // skip header if-modified-since
+                if (ifNoneMatches.stream().anyMatch(etag::equals)) { // not modified
+                    FullHttpResponse response = ctx.responseFactory().createFull(NOT_MODIFIED);
+                    setDateAndCacheHeaders(now, etag, lastModified, expires, response.headers());
+                    return ctx.sendResponse(response, 0);
+                }
+            }
+        }
+        if (lastModifiedEnabled) {
+            Long ims = headers.getTimeMillis(IF_MODIFIED_SINCE);
+            if (ims != null && ims.longValue() >= lastModified.toEpochMilli()) { // not modified
+                FullHttpResponse response = ctx.responseFactory().createFull(NOT_MODIFIED);
+                setDateAndCacheHeaders(now, etag, lastModified, expires, response.headers());
+                return ctx.sendResponse(response, 0);
+            }
+        }
+        return null;
+    }
+
+    private CompletionStage<HttpResult> respondCached(HttpRequestContext ctx, CachedContent cached) {
+        Instant now = Instant.now();
+        String etag = etagEnabled ? cached.etag : null;
+        Instant lastModified = lastModifiedEnabled ? cached.lastModified : null;
+        Instant expires = expires(now);
+        CompletionStage<HttpResult> notModified = respondNotModified(ctx, ctx.headers(), now, etag, lastModified,
+                expires);
+        if (notModified != null) {
+            cached.content.release();
+            return notModified;
+        }
+        return respondCached(ctx, cached, now, etag, lastModified, expires);
+    }
+
+    private CompletionStage<HttpResult> respondCached(HttpRequestContext ctx, CachedContent cached, Instant now,
+            String etag, Instant lastModified, Instant expires) {
+        // the content is a retained duplicate, just write it in one full response
+        FullHttpResponse response = new DefaultFullHttpResponse(ctx.version(), OK, cached.content);
+        HttpUtil.setKeepAlive(response, ctx.isKeepAlive());
+        HttpUtil.setContentLength(response, cached.contentLength);
+        response.headers().set(CONTENT_TYPE, cached.contentType);
+        if (cached.contentEncoding != null) {
+            response.headers().set(CONTENT_ENCODING, cached.contentEncoding);
+        }
+        setDateAndCacheHeaders(now, etag, lastModified, expires, response.headers());
+        return ctx.sendResponse(response, cached.contentLength);
+    }
+
+    private int acceptedEncodings(HttpHeaders headers) {
+        List<String> values = headers.getAll(ACCEPT_ENCODING);
+        if (values.isEmpty()) {
+            return 0;
+        }
+        int accepted = 0;
+        int rejected = 0;
+        boolean wildcard = false;
+        for (String value : values) {
+            for (String token : value.split(",")) {
+                int semicolon = token.indexOf(';');
+                String name = (semicolon < 0 ? token : token.substring(0, semicolon)).trim();
+                boolean acceptable = semicolon < 0 || !isZeroQuality(token.substring(semicolon + 1));
+                if ("*".equals(name)) {
+                    wildcard = acceptable;
+                    continue;
+                }
+                for (PrecompressedEncoding e : precompressed) {
+                    if (e.contentEncoding.contentEqualsIgnoreCase(name)) {
+                        if (acceptable) {
+                            accepted |= e.mask;
+                        } else {
+                            rejected |= e.mask;
+                        }
+                    }
+                }
+            }
+        }
+        if (wildcard) {
+            for (PrecompressedEncoding e : precompressed) {
+                accepted |= e.mask;
+            }
+        }
+        return accepted & ~rejected;
+    }
+
+    private static final boolean isZeroQuality(String params) {
+        for (String param : params.split(";")) {
+            param = param.trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim()) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final BasicFileAttributes readSidecarAttributes(Path sidecar, BasicFileAttributes fileAttrs) {
+        try {
+            BasicFileAttributes sidecarAttrs = Files.readAttributes(sidecar, BasicFileAttributes.class);
+            // skip stale precompressed files
+            if (sidecarAttrs.isRegularFile()
+                    && sidecarAttrs.lastModifiedTime().compareTo(fileAttrs.lastModifiedTime()) >= 0) {
+                return sidecarAttrs;
+            }
+        } catch (IOException e) {
+            // not exists
+        }
+        return null;
+    }
+
+    private void tryPrecompress(Path file, BasicFileAttributes fileAttrs, CharSequence contentType) {
+        if (fileAttrs.size() < PRECOMPRESS_MIN_SIZE || !isCompressible(contentType)) {
+            return;
+        }
+        Path gz = file.resolveSibling(file.getFileName() + PrecompressedEncoding.GZIP.suffix);
+        if (readSidecarAttributes(gz, fileAttrs) != null || !precompressing.add(file)) {
+            return;
+        }
+        try {
+            precompressExecutor.execute(() -> {
+                try {
+                    precompress(file, gz, fileAttrs);
+                    precompressing.remove(file);
+                } catch (Exception e) {
+                    // keep it in the set to avoid retrying on every request
+                    logger.warn("Precompress static file {} failed", file, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            precompressing.remove(file);
+        }
+    }
+
+    private static final boolean isCompressible(CharSequence contentType) {
+        String type = contentType.toString();
+        return type.startsWith("text/") || type.startsWith("application/javascript")
+                || type.startsWith("application/json") || type.startsWith("application/xml")
+                || type.startsWith("image/svg+xml");
+    }
+
+    private static final void precompress(Path file, Path gz, BasicFileAttributes fileAttrs) throws IOException {
+        Path tmp = Files.createTempFile(file.getParent(), "." + file.getFileName(), ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), chunkSize) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            }) {
+                Files.copy(file, out);
+            }
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            if (attrs.size() != fileAttrs.size() || !attrs.lastModifiedTime().equals(fileAttrs.lastModifiedTime())) {
+                // file changed during compressing
+                return;
+            }
+            Files.move(tmp, gz, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            logger.debug("Precompressed static file {} => {}", file, gz);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        StaticContentCache contentCache = this.contentCache;
+        if (contentCache != null) {
+            contentCache.close();
+        }
+        ExecutorService precompressExecutor = this.precompressExecutor;
+        if (precompressExecutor != null) {
+            precompressExecutor.shutdown();
+        }
     }
 
     private void setDateAndCacheHeaders(Instant date, String etag, Instant lastModified, Instant expires,
@@ -294,6 +713,10 @@ public class ServeStatic implements Middleware {
             headers.add(CACHE_CONTROL, cacheControl);
         }
         headers.set(DATE, Date.from(date));
+        headers.set(ACCEPT_RANGES, BYTES);
+        if (precompressed.length > 0) {
+            headers.set(VARY, ACCEPT_ENCODING);
+        }
         if (etagEnabled) {
             headers.set(ETAG, etag);
         }
@@ -310,6 +733,156 @@ public class ServeStatic implements Middleware {
         }
     }
 
+    /**
+     * The resolved metadata of a static file.
+     */
+    private static final class StaticFile {
+
+        private static final StaticFile NOT_FOUND = new StaticFile(null, null, null, null, null);
+        private static final StaticFile REDIRECT = new StaticFile(null, null, null, null, null);
+
+        private final Path path;
+        private final BasicFileAttributes attributes;
+        private final String etag;
+        private final CharSequence contentType;
+        private final CharSequence contentEncoding;
+        private final long resolvedNanoTime = System.nanoTime();
+
+        private StaticFile(Path path, BasicFileAttributes attributes, String etag, CharSequence contentType,
+                CharSequence contentEncoding) {
+            this.path = path;
+            this.attributes = attributes;
+            this.etag = etag;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+        }
+
+    }
+
+    /**
+     * A size-bounded LRU cache holds the resolved metadata of the static files.
+     * <p>
+     * The entries expire after the revalidate interval, and then the files will
+     * be resolved again, so the hits within the interval need no system call at
+     * all. The modified time is deliberately not checked on each hit, that would
+     * be a blocking {@code stat} on the event loop again, so a change of the file
+     * is not seen until the entry expires.
+     */
+    private static final class MetadataCache {
+
+        private final int maxEntries;
+        private final long revalidateIntervalNanos;
+        private final LinkedHashMap<String, StaticFile> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        private MetadataCache(int maxEntries, long revalidateIntervalNanos) {
+            this.maxEntries = maxEntries;
+            this.revalidateIntervalNanos = revalidateIntervalNanos;
+        }
+
+        private synchronized StaticFile get(String key) {
+            StaticFile file = entries.get(key);
+            if (file != null && System.nanoTime() - file.resolvedNanoTime >= revalidateIntervalNanos) {
+                entries.remove(key);
+                return null;
+            }
+            return file;
+        }
+
+        private synchronized void put(String key, StaticFile file) {
+            entries.put(key, file);
+            if (entries.size() > maxEntries) {
+                Iterator<StaticFile> iter = entries.values().iterator();
+                iter.next();
+                iter.remove();
+            }
+        }
+
+        private synchronized void remove(String key, StaticFile file) {
+            entries.remove(key, file);
+        }
+
+    }
+
+    /**
+     * Wraps a {@code ChunkedInput<ByteBuf>} as {@link HttpContent}s without the
+     * end marker, so that multiple inputs can be written in one response.
+     */
+    private static final class HttpContentChunkedInput implements ChunkedInput<HttpContent> {
+
+        private final ChunkedInput<ByteBuf> input;
+
+        private HttpContentChunkedInput(ChunkedInput<ByteBuf> input) {
+            this.input = input;
+        }
+
+        @Override
+        public boolean isEndOfInput() throws Exception {
+            return input.isEndOfInput();
+        }
+
+        @Override
+        public void close() throws Exception {
+            input.close();
+        }
+
+        @Deprecated
+        @Override
+        public HttpContent readChunk(ChannelHandlerContext ctx) throws Exception {
+            return readChunk(ctx.alloc());
+        }
+
+        @Override
+        public HttpContent readChunk(ByteBufAllocator allocator) throws Exception {
+            ByteBuf buf = input.readChunk(allocator);
+            return buf == null ? null : new DefaultHttpContent(buf);
+        }
+
+        @Override
+        public long length() {
+            return input.length();
+        }
+
+        @Override
+        public long progress() {
+            return input.progress();
+        }
+
+    }
+
+    private enum PrecompressedEncoding {
+
+        BROTLI("br", ".br"), ZSTD("zstd", ".zst"), GZIP("gzip", ".gz");
+
+        private final AsciiString contentEncoding;
+        private final String suffix;
+        private final int mask;
+
+        private PrecompressedEncoding(String name, String suffix) {
+            this.contentEncoding = AsciiString.cached(name);
+            this.suffix = suffix;
+            this.mask = 1 << ordinal();
+        }
+
+        private String etag(String etag) {
+            // "xxx" => "xxx-br"
+            int end = etag.length() - 1;
+            if (end > 0 && etag.charAt(end) == '"') {
+                return etag.substring(0, end) + "-" + contentEncoding + "\"";
+            }
+            return etag + "-" + contentEncoding;
+        }
+
+        private static final PrecompressedEncoding of(String name) {
+            for (PrecompressedEncoding e : values()) {
+                if (e.contentEncoding.contentEqualsIgnoreCase(name)) {
+                    return e;
+                }
+            }
+            throw new IllegalArgumentException("unsupported precompressed encoding " + name);
+        }
+
+    }
+
     private static final class StaticLocationMapping {
 
         private final String uri;
@@ -408,6 +981,15 @@ public class ServeStatic implements Middleware {
         private EtagGenerator etagGenerator = EtagGenerator.BASIC;
         private boolean lastModified = true;
         private Consumer<HttpHeaders> addHeaders;
+        private long contentCacheSize;
+        private int contentCacheMaxFileSize = 256 * 1024;
+        private Duration contentCacheRevalidateInterval = Duration.ofSeconds(1);
+        private boolean contentCacheWatch;
+        private PrecompressedEncoding[] precompressed = new PrecompressedEncoding[0];
+        private boolean autoPrecompress;
+        private Executor metadataExecutor;
+        private int metadataCacheSize;
+        private Duration metadataCacheRevalidateInterval = Duration.ofSeconds(1);
 
         /**
          * Set index.
@@ -543,11 +1125,221 @@ public class ServeStatic implements Middleware {
             return this;
         }
 
+        /**
+         * Enable the in-memory content cache with the specified maximum total size.
+         * <p>
+         * Only files not larger than {@code 256 KB} will be cached.
+         * 
+         * @param maxSize the maximum total size, in bytes, of the cached contents
+         * @return this {@code Options}
+         * 
+         * @since 2.3
+         */
+        public Options contentCache(long maxSize) {
+            return contentCache(maxSize, contentCacheMaxFileSize);
+        }
+
+        /**
+         * Enable the in-memory content cache with the specified maximum total size
+         * and maximum file size.
+         * <p>
+         * The cached contents are held in pooled direct buffers, together with the
+         * pre-computed {@code E-TAG}, {@code last-modified} and
+         * {@code content-type}, so cache hits don't need any file system access
+         * except the modified time check.
+         * 
+         * @param maxSize     the maximum total size, in bytes, of the cached
+         *                    contents, {@code 0} to disable the cache
+         * @param maxFileSize the maximum size, in bytes, of each cached file
+         * @return this {@code Options}
+         * 
+         * @since 2.3
+         */
+        public Options contentCache(long maxSize, int maxFileSize) {
+            if (maxSize < 0) {
+                throw new IllegalArgumentException("maxSize must not be negative");
+            }
+            if (maxFileSize <= 0) {
+                throw new IllegalArgumentException("maxFileSize must be positive");
+            }
+            this.contentCacheSize = maxSize;
+            this.contentCacheMaxFileSize = maxFileSize;
+            return this;
+        }
+
+        /**
+         * Set the interval to check the modified time of the cached files.
+         * <p>
+         * The default is {@code 1 second}.
+         * 
+         * @param interval the revalidate interval, {@link Duration#ZERO} to check on
+         *                 every hit
+         * @return this {@code Options}
+         * 
+         * @since 2.3
+         */
+        public Options contentCacheRevalidateInterval(Duration interval) {
+            this.contentCacheRevalidateInterval = Objects.requireNonNull(interval, "interval must not be null");
+            return this;
+        }
+
+        /**
+         * Set if invalidate the cached contents by a {@code WatchService} or not.
+         * <p>
+         * The default is {@code false}.
+         * 
+         * @param watch {@code true} to invalidate the cached contents immediately
+         *              when the files changed
+         * @return this {@code Options}
+         * 
+         * @since 2.3
+         */
+        public Options contentCacheWatch(boolean watch) {
+            this.contentCacheWatch = watch;
+            return this;
+        }
+
+        /**
+         * Set the encodings of the precompressed files, in the order of preference.
+         * <p>
+         * Supported encodings are {@code "br"}, {@code "zstd"} and {@code "gzip"},
+         * which are mapped to the files with suffix {@code ".br"}, {@code ".zst"}
+         * and {@code ".gz"}. For example, if the client accepts {@code gzip}, the
+         * request of {@code app.js} will be served by {@code app.js.gz} if it exists
+         * and not older than {@code app.js}, with the header
+         * {@code content-encoding: gzip}.
+         * <p>
+         * The {@code content-encoding} header makes the precompressed files bypass
+         * the dynamic compression of the server, and they are still sent by
+         * zero-copy file transfer.
+         * <p>
+         * The default is none.
+         * 
+         * @param encodings the encodings of the precompressed files
+         * @return this {@code Options}
+         * 
+         * @since 2.3
+         */
+        public Options precompressed(String... encodings) {
+            this.precompressed = Arrays.stream(encodings).map(PrecompressedEncoding::of).distinct()
+                    .toArray(PrecompressedEncoding[]::new);
+            return this;
+        }
+
+        /**
+         * Set if generate the missing {@code ".gz"} precompressed files in
+         * background or not.
+         * <p>
+         * When enabled, the first hit of a compressible file (text, javascript,
+         * json, xml or svg) without any {@code ".gz"} file will start a background
+         * task to create it beside the original file, so the directory must be
+         * writable. Only {@code gzip} is supported, because there is no built-in
+         * {@code br} or {@code zstd} encoder in the JDK.
+         * <p>
+         * This also enables {@code gzip} in {@link #precompressed(String...)} if
+         * it is not set.
+         * <p>
+         * The default is {@code false}.
+         * 
+         * @param autoPrecompress {@code true} to generate the missing
+         *                        precompressed files
+         * @return this {@code Options}
+         * 
+         * @since 2.3
+         */
+        public Options autoPrecompress(boolean autoPrecompress) {
+            this.autoPrecompress = autoPrecompress;
+            if (autoPrecompress && !Arrays.asList(precompressed).contains(PrecompressedEncoding.GZIP)) {
+                precompressed = Arrays.copyOf(precompressed, precompressed.length + 1);
+                precompressed[precompressed.length - 1] = PrecompressedEncoding.GZIP;
+            }
+            return this;
+        }
+
+        /**
+         * Set the executor to resolve the metadata of the static files.
+         * <p>
+         * By default, the file system operations (checking directories, probing
+         * indexes, reading file attributes and generating {@code E-TAG}s) are
+         * executed on the event loop. That is fine for the local disks with warm
+         * page cache, but a slow {@code stat} on a network file system will stall
+         * all connections on the same event loop. With an executor set, these
+         * operations are executed on it, and the response is sent on the event
+         * loop after that. The executor of a
+         * {@link com.github.fmjsjx.libnetty.http.server.component.VirtualThreadWorkerPool
+         * VirtualThreadWorkerPool} is a good choice on JDK 21 or later.
+         * <p>
+         * The default is {@code null}.
+         * 
+         * @param metadataExecutor the executor
+         * @return this {@code Options}
+         * 
+         * @since 2.3
+         */
+        public Options metadataExecutor(Executor metadataExecutor) {
+            this.metadataExecutor = metadataExecutor;
+            return this;
+        }
+
+        /**
+         * Enable the metadata cache with the specified maximum number of entries.
+         * <p>
+         * The metadata cache holds the resolved file, attributes, {@code E-TAG}
+         * and {@code content-type} of each request path, so the repeated hits
+         * within the revalidate interval need no system call at all.
+         * <p>
+         * The cached metadata is trusted until the revalidate interval elapses,
+         * so a file replaced within that window is still served with its previous
+         * {@code E-TAG}, {@code last-modified} and {@code content-length}. Only
+         * enable it for files which are replaced atomically (e.g. by renaming a
+         * new file to the path) or rarely, and see
+         * {@link #metadataCacheRevalidateInterval(Duration)} to bound the window.
+         * A file deleted within the window is detected when it is opened, and the
+         * request is passed to the next middleware.
+         * 
+         * @param maxEntries the maximum number of entries, {@code 0} to disable
+         *                   the cache
+         * @return this {@code Options}
+         * 
+         * @since 2.3
+         */
+        public Options metadataCache(int maxEntries) {
+            if (maxEntries < 0) {
+                throw new IllegalArgumentException("maxEntries must not be negative");
+            }
+            this.metadataCacheSize = maxEntries;
+            return this;
+        }
+
+        /**
+         * Set the interval to resolve the cached metadata again.
+         * <p>
+         * This is the maximum time a change of a file can be unnoticed when the
+         * metadata cache is enabled, see {@link #metadataCache(int)}.
+         * <p>
+         * The default is {@code 1 second}.
+         * 
+         * @param interval the revalidate interval
+         * @return this {@code Options}
+         * 
+         * @since 2.3
+         */
+        public Options metadataCacheRevalidateInterval(Duration interval) {
+            this.metadataCacheRevalidateInterval = Objects.requireNonNull(interval, "interval must not be null");
+            return this;
+        }
+
         @Override
         public String toString() {
             return "ServeStatic.Options[indexes=" + indexes + ", showHidden=" + showHidden + ", redirectDirectory="
                     + redirectDirectory + ", cacheControl=" + cacheControl + ", etag=" + etag + ", etagGenerator="
-                    + etagGenerator + ", lastModified=" + lastModified + ", addHeaders=" + addHeaders + "]";
+                    + etagGenerator + ", lastModified=" + lastModified + ", addHeaders=" + addHeaders
+                    + ", contentCacheSize=" + contentCacheSize + ", contentCacheMaxFileSize=" + contentCacheMaxFileSize
+                    + ", contentCacheRevalidateInterval=" + contentCacheRevalidateInterval + ", contentCacheWatch="
+                    + contentCacheWatch + ", precompressed=" + Arrays.toString(precompressed) + ", autoPrecompress="
+                    + autoPrecompress + ", metadataExecutor=" + metadataExecutor + ", metadataCacheSize="
+                    + metadataCacheSize + ", metadataCacheRevalidateInterval=" + metadataCacheRevalidateInterval
+                    + "]";
         }
     }
 
@@ -0,0 +1,376 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.*;
+import static io.netty.handler.codec.http.HttpResponseStatus.GATEWAY_TIMEOUT;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.fmjsjx.libnetty.http.server.DelegatingHttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+
+/**
+ * A {@link Middleware} collapses concurrent identical requests into one
+ * downstream invocation.
+ * <p>
+ * The first request of a key (the leader) is passed to the rest of the
+ * middleware chain, the identical requests arrived before the leader responded
+ * (the followers) just wait. The full response of the leader is then shared to
+ * all the followers via retained duplicates of its content, each follower sends
+ * it on its own channel.
+ * <p>
+ * The followers fall back to invoking the rest of the middleware chain
+ * themselves if the leader failed, sent a streaming response or a response
+ * with {@code Set-Cookie} header. The followers waited longer than the timeout
+ * of the key are responded with {@code 504 Gateway Timeout}, and the key is
+ * released so that the next request starts a new flight.
+ * <p>
+ * The default key is the URI of the {@code GET} requests. The key function
+ * should include all the request headers affect the response, such as
+ * {@code Authorization}, and returns {@code null} for the requests should not
+ * be collapsed.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ *
+ * @see Middleware
+ * @see ResponseCache
+ */
+public class SingleFlight implements Middleware {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+    private static final Object defaultKey(HttpRequestContext ctx) {
+        return HttpMethod.GET.equals(ctx.method()) ? ctx.uri() : null;
+    }
+
+    private final Function<? super HttpRequestContext, ?> keyFunction;
+    private final Function<Object, Duration> timeoutFunction;
+
+    private final ConcurrentMap<Object, Flight> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder leaderCount = new LongAdder();
+    private final LongAdder collapsedCount = new LongAdder();
+    private final LongAdder fallbackCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+
+    /**
+     * Constructs a new {@link SingleFlight} collapses the {@code GET} requests
+     * with the same URI, with the default timeout {@code 5 seconds}.
+     */
+    public SingleFlight() {
+        this(SingleFlight::defaultKey, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Constructs a new {@link SingleFlight} with the specified key function and
+     * timeout.
+     *
+     * @param keyFunction the function returns the key of the request, or
+     *                    {@code null} if the request should not be collapsed
+     * @param timeout     the maximum time the followers wait for
+     */
+    public SingleFlight(Function<? super HttpRequestContext, ?> keyFunction, Duration timeout) {
+        this(keyFunction, key -> timeout);
+        Objects.requireNonNull(timeout, "timeout must not be null");
+    }
+
+    /**
+     * Constructs a new {@link SingleFlight} with the specified key function and
+     * per-key timeout function.
+     *
+     * @param keyFunction     the function returns the key of the request, or
+     *                        {@code null} if the request should not be
+     *                        collapsed
+     * @param timeoutFunction the function returns the maximum time the
+     *                        followers of the key wait for
+     */
+    public SingleFlight(Function<? super HttpRequestContext, ?> keyFunction,
+            Function<Object, Duration> timeoutFunction) {
+        this.keyFunction = Objects.requireNonNull(keyFunction, "keyFunction must not be null");
+        this.timeoutFunction = Objects.requireNonNull(timeoutFunction, "timeoutFunction must not be null");
+    }
+
+    @Override
+    public CompletionStage<HttpResult> apply(HttpRequestContext ctx, MiddlewareChain next) {
+        Object key = keyFunction.apply(ctx);
+        if (key == null) {
+            return next.doNext(ctx);
+        }
+        for (;;) {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                Flight newFlight = new Flight(key);
+                flight = flights.putIfAbsent(key, newFlight);
+                if (flight == null) {
+                    leaderCount.increment();
+                    return newFlight.lead(ctx, next);
+                }
+            }
+            Follower follower = flight.join(ctx, next);
+            if (follower != null) {
+                collapsedCount.increment();
+                return follower.future;
+            }
+            // the flight was just landed, retry
+        }
+    }
+
+    /**
+     * Returns the number of the keys being processed currently.
+     *
+     * @return the number of the in-flight keys
+     */
+    public int inFlightCount() {
+        return flights.size();
+    }
+
+    /**
+     * Returns the total number of the requests passed to the downstream as
+     * leaders.
+     *
+     * @return the total number of the leaders
+     */
+    public long leaderCount() {
+        return leaderCount.sum();
+    }
+
+    /**
+     * Returns the total number of the requests collapsed into the leaders.
+     *
+     * @return the total number of the collapsed requests
+     */
+    public long collapsedCount() {
+        return collapsedCount.sum();
+    }
+
+    /**
+     * Returns the total number of the collapsed requests fell back to invoking
+     * the downstream themselves.
+     *
+     * @return the total number of the fallbacks
+     */
+    public long fallbackCount() {
+        return fallbackCount.sum();
+    }
+
+    /**
+     * Returns the total number of the collapsed requests timed out.
+     *
+     * @return the total number of the timeouts
+     */
+    public long timeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /**
+     * Returns the ratio of the collapsed requests to all the requests with keys.
+     *
+     * @return the collapse ratio, between {@code 0.0} and {@code 1.0}
+     */
+    public double collapseRatio() {
+        long collapsed = collapsedCount.sum();
+        long total = collapsed + leaderCount.sum();
+        return total == 0 ? 0.0 : (double) collapsed / total;
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlight(inFlight=" + inFlightCount() + ", leaders=" + leaderCount() + ", collapsed="
+                + collapsedCount() + ", fallbacks=" + fallbackCount() + ", timeouts=" + timeoutCount() + ")";
+    }
+
+    private final class Flight {
+
+        private final Object key;
+        private final List<Follower> followers = new ArrayList<>();
+        private boolean landed;
+
+        private Flight(Object key) {
+            this.key = key;
+        }
+
+        private CompletionStage<HttpResult> lead(HttpRequestContext ctx, MiddlewareChain next) {
+            Duration timeout = timeoutFunction.apply(key);
+            ScheduledFuture<?> timeoutFuture = ctx.eventLoop().schedule(() -> {
+                // release the key so that the next request starts a new flight
+                if (flights.remove(key, this)) {
+                    logger.debug("Flight {} timed out", key);
+                }
+            }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+            LeaderContext leaderContext = new LeaderContext(ctx, this);
+            CompletionStage<HttpResult> stage;
+            try {
+                stage = next.doNext(leaderContext);
+            } catch (Throwable e) {
+                land(null);
+                throw e;
+            }
+            return stage.whenComplete((r, e) -> {
+                if (timeoutFuture != null) {
+                    timeoutFuture.cancel(false);
+                }
+                // no full response was sent, let followers invoke downstream
+                land(null);
+            });
+        }
+
+        private Follower join(HttpRequestContext ctx, MiddlewareChain next) {
+            Follower follower = new Follower(ctx, next);
+            synchronized (this) {
+                if (landed) {
+                    return null;
+                }
+                followers.add(follower);
+            }
+            follower.scheduleTimeout(timeoutFunction.apply(key));
+            return follower;
+        }
+
+        private void land(FullHttpResponse response) {
+            List<Follower> followers;
+            synchronized (this) {
+                if (landed) {
+                    return;
+                }
+                landed = true;
+                followers = this.followers;
+            }
+            flights.remove(key, this);
+            if (followers.isEmpty()) {
+                return;
+            }
+            if (response == null) {
+                followers.forEach(Follower::fallback);
+                return;
+            }
+            ByteBuf content = response.content();
+            for (Follower follower : followers) {
+                follower.respond(response.status(), response.headers(), content.retainedDuplicate());
+            }
+        }
+
+    }
+
+    private final class LeaderContext extends DelegatingHttpRequestContext {
+
+        private final Flight flight;
+
+        private LeaderContext(HttpRequestContext delegate, Flight flight) {
+            super(delegate);
+            this.flight = flight;
+        }
+
+        @Override
+        public CompletableFuture<HttpResult> sendResponse(FullHttpResponse response, int contentLength) {
+            if (!response.headers().contains(SET_COOKIE)) {
+                flight.land(response);
+            }
+            return super.sendResponse(response, contentLength);
+        }
+
+    }
+
+    private final class Follower {
+
+        private final HttpRequestContext ctx;
+        private final MiddlewareChain next;
+        private final CompletableFuture<HttpResult> future = new CompletableFuture<>();
+        // only accessed in the event loop of the follower
+        private boolean settled;
+        private ScheduledFuture<?> timeoutFuture;
+
+        private Follower(HttpRequestContext ctx, MiddlewareChain next) {
+            this.ctx = ctx;
+            this.next = next;
+        }
+
+        private void scheduleTimeout(Duration timeout) {
+            ctx.eventLoop().execute(() -> {
+                if (!settled) {
+                    timeoutFuture = ctx.eventLoop().schedule(this::timeout, timeout.toNanos(), TimeUnit.NANOSECONDS);
+                }
+            });
+        }
+
+        private boolean settle() {
+            if (settled) {
+                return false;
+            }
+            settled = true;
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel(false);
+            }
+            return true;
+        }
+
+        private void timeout() {
+            if (settle()) {
+                timeoutCount.increment();
+                complete(ctx.simpleRespond(GATEWAY_TIMEOUT));
+            }
+        }
+
+        private void fallback() {
+            ctx.eventLoop().execute(() -> {
+                if (settle()) {
+                    fallbackCount.increment();
+                    complete(next.doNext(ctx));
+                }
+            });
+        }
+
+        private void respond(HttpResponseStatus status, HttpHeaders headers, ByteBuf content) {
+            // copy the headers in the caller thread, the leader's response may be released later
+            HttpHeaders copiedHeaders = new DefaultHttpHeaders().set(headers);
+            ctx.eventLoop().execute(() -> {
+                if (!settle()) {
+                    content.release();
+                    return;
+                }
+                FullHttpResponse response = new DefaultFullHttpResponse(ctx.version(), status, content,
+                        copiedHeaders, new DefaultHttpHeaders(false));
+                HttpUtil.setKeepAlive(response, ctx.isKeepAlive());
+                complete(ctx.sendResponse(response, content.readableBytes()));
+            });
+        }
+
+        private void complete(CompletionStage<HttpResult> stage) {
+            stage.whenComplete((r, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(r);
+                }
+            });
+        }
+
+    }
+
+}
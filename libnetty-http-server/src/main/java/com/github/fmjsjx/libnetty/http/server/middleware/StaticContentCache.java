@@ -0,0 +1,299 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * A size-bounded LRU cache holds the contents of small static files in pooled
+ * direct buffers for {@link ServeStatic}.
+ * <p>
+ * Entries are invalidated when the modified time or the size of the file
+ * changed, which is checked at most once per revalidate interval. If
+ * {@code watch} is enabled, entries are also invalidated immediately by a
+ * {@link WatchService} registered on the directories of the cached files.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+final class StaticContentCache implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StaticContentCache.class);
+
+    private final long maxSize;
+    private final int maxFileSize;
+    private final long revalidateIntervalNanos;
+
+    private final LinkedHashMap<String, CachedContent> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private final WatchService watchService;
+    private final Map<Path, WatchKey> watchKeys;
+
+    StaticContentCache(long maxSize, int maxFileSize, long revalidateIntervalNanos, boolean watch) {
+        this.maxSize = maxSize;
+        this.maxFileSize = maxFileSize;
+        this.revalidateIntervalNanos = revalidateIntervalNanos;
+        WatchService watchService = null;
+        if (watch) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException e) {
+                logger.warn("Create WatchService failed, fall back to modified time check only", e);
+            }
+        }
+        this.watchService = watchService;
+        this.watchKeys = watchService == null ? null : new HashMap<>();
+        if (watchService != null) {
+            new DefaultThreadFactory("serve-static-watcher", true).newThread(this::watchLoop).start();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the file with the specified size can be cached.
+     *
+     * @param fileSize the size of the file
+     * @return {@code true} if the file with the specified size can be cached
+     */
+    boolean accepts(long fileSize) {
+        return fileSize <= maxFileSize && fileSize <= maxSize;
+    }
+
+    /**
+     * Returns the cached content of the specified key, with a retained duplicate
+     * of the content buffer, or {@code null} if not cached.
+     * <p>
+     * The caller must release the returned content.
+     *
+     * @param key the key
+     * @return the cached content or {@code null}
+     */
+    CachedContent get(String key) {
+        CachedContent cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+        if (cached == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (now - cached.checkedNanoTime >= revalidateIntervalNanos) {
+            if (!isUnchanged(cached)) {
+                logger.debug("Cached static content {} changed", cached.file);
+                remove(key, cached);
+                return null;
+            }
+            cached.checkedNanoTime = now;
+        }
+        synchronized (this) {
+            if (entries.get(key) != cached) {
+                return null;
+            }
+            return cached.retainedDuplicate();
+        }
+    }
+
+    private static final boolean isUnchanged(CachedContent cached) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(cached.file, BasicFileAttributes.class);
+            return attrs.isRegularFile() && attrs.size() == cached.contentLength
+                    && attrs.lastModifiedTime().toMillis() == cached.lastModifiedMillis;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the file and puts its content into this cache.
+     *
+     * @param key         the key
+     * @param file        the file
+     * @param fileAttrs   the attributes of the file
+     * @param etag        the {@code E-TAG}
+     * @param contentType the content type
+     * @param contentEncoding the content encoding of a precompressed file, may be
+     *                        {@code null}
+     * @return the cached content with a retained duplicate of the content buffer
+     * @throws IOException if any IO error occurs
+     */
+    CachedContent put(String key, Path file, BasicFileAttributes fileAttrs, String etag, CharSequence contentType,
+            CharSequence contentEncoding) throws IOException {
+        int length = (int) fileAttrs.size();
+        ByteBuf content = PooledByteBufAllocator.DEFAULT.directBuffer(length, length);
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long position = 0;
+            while (content.isWritable()) {
+                int n = content.writeBytes(channel, position, content.writableBytes());
+                if (n < 0) {
+                    // file was truncated
+                    throw new IOException("unexpected end of file " + file);
+                }
+                position += n;
+            }
+        } catch (IOException | RuntimeException e) {
+            content.release();
+            throw e;
+        }
+        CachedContent cached = new CachedContent(file, content, fileAttrs.lastModifiedTime().toMillis(), etag,
+                contentType, contentEncoding);
+        synchronized (this) {
+            CachedContent old = entries.put(key, cached);
+            if (old != null) {
+                size -= old.contentLength;
+                old.content.release();
+            }
+            size += cached.contentLength;
+            for (Iterator<CachedContent> iter = entries.values().iterator(); size > maxSize && iter.hasNext();) {
+                CachedContent eldest = iter.next();
+                iter.remove();
+                size -= eldest.contentLength;
+                eldest.content.release();
+            }
+            if (entries.get(key) != cached) {
+                // evicted immediately, should never happen
+                return null;
+            }
+            watch(file.getParent());
+            return cached.retainedDuplicate();
+        }
+    }
+
+    private synchronized void remove(String key, CachedContent cached) {
+        if (entries.remove(key, cached)) {
+            size -= cached.contentLength;
+            cached.content.release();
+        }
+    }
+
+    private void watch(Path dir) {
+        WatchService watchService = this.watchService;
+        if (watchService == null || dir == null || watchKeys.containsKey(dir)) {
+            return;
+        }
+        try {
+            watchKeys.put(dir, dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY));
+        } catch (IOException | ClosedWatchServiceException e) {
+            logger.warn("Watch directory {} failed", dir, e);
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            for (;;) {
+                WatchKey key = watchService.take();
+                key.pollEvents();
+                Path dir = (Path) key.watchable();
+                invalidate(dir);
+                if (!key.reset()) {
+                    synchronized (this) {
+                        watchKeys.remove(dir);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private synchronized void invalidate(Path dir) {
+        for (Iterator<CachedContent> iter = entries.values().iterator(); iter.hasNext();) {
+            CachedContent cached = iter.next();
+            if (dir.equals(cached.file.getParent())) {
+                logger.debug("Invalidate cached static content {}", cached.file);
+                iter.remove();
+                size -= cached.contentLength;
+                cached.content.release();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        entries.values().forEach(cached -> cached.content.release());
+        entries.clear();
+        size = 0;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StaticContentCache(maxSize=" + maxSize + ", maxFileSize=" + maxFileSize + ", size=" + size
+                + ", entries=" + entries.size() + ")";
+    }
+
+    /**
+     * The cached content of a static file.
+     */
+    static final class CachedContent {
+
+        final Path file;
+        final ByteBuf content;
+        final int contentLength;
+        final long lastModifiedMillis;
+        final Instant lastModified;
+        final String etag;
+        final CharSequence contentType;
+        final CharSequence contentEncoding;
+
+        private volatile long checkedNanoTime = System.nanoTime();
+
+        private CachedContent(Path file, ByteBuf content, long lastModifiedMillis, String etag,
+                CharSequence contentType, CharSequence contentEncoding) {
+            this.file = file;
+            this.content = content;
+            this.contentLength = content.readableBytes();
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.lastModified = Instant.ofEpochMilli(lastModifiedMillis);
+            this.etag = etag;
+            this.contentType = contentType;
+            this.contentEncoding = contentEncoding;
+        }
+
+        private CachedContent(CachedContent source, ByteBuf content) {
+            this.file = source.file;
+            this.content = content;
+            this.contentLength = source.contentLength;
+            this.lastModifiedMillis = source.lastModifiedMillis;
+            this.lastModified = source.lastModified;
+            this.etag = source.etag;
+            this.contentType = source.contentType;
+            this.contentEncoding = source.contentEncoding;
+        }
+
+        private CachedContent retainedDuplicate() {
+            return new CachedContent(this, content.retainedDuplicate());
+        }
+
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2FrameTypes;
+
+public class ConnectionDrainerTest {
+
+    private static EmbeddedChannel connection(ConnectionDrainer drainer) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        drainer.register(channel);
+        channel.pipeline().addLast(drainer.handler(false));
+        return channel;
+    }
+
+    private static void request(EmbeddedChannel channel) {
+        channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/"));
+        channel.readInbound();
+    }
+
+    private static FullHttpResponse respond(EmbeddedChannel channel, HttpResponseStatus status) {
+        channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status));
+        return channel.readOutbound();
+    }
+
+    @Test
+    public void testDrain() throws Exception {
+        ConnectionDrainer drainer = new ConnectionDrainer();
+        drainer.start();
+        EmbeddedChannel idle = connection(drainer);
+        EmbeddedChannel busy = connection(drainer);
+        EmbeddedChannel stuck = connection(drainer);
+        request(idle);
+        respond(idle, HttpResponseStatus.OK);
+        request(busy);
+        request(stuck);
+        assertEquals(3, drainer.connectionCount());
+        assertEquals(2, drainer.inFlightCount());
+
+        CompletableFuture<Void> drained = drainer.startDraining();
+        assertTrue(drainer.isDraining());
+        assertFalse(idle.isOpen());
+        assertTrue(busy.isOpen());
+
+        // 100 Continue does not complete the request
+        respond(busy, HttpResponseStatus.CONTINUE);
+        assertTrue(busy.isOpen());
+        FullHttpResponse response = respond(busy, HttpResponseStatus.OK);
+        assertTrue(response.headers().contains(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE, true));
+        assertFalse(busy.isOpen());
+        assertFalse(drained.isDone());
+        assertEquals(2, drainer.drainedCount());
+
+        assertFalse(drainer.drain(Duration.ofMillis(10)));
+        assertFalse(stuck.isOpen());
+        assertTrue(drained.isDone());
+        assertEquals(2, drainer.drainedCount());
+        assertEquals(1, drainer.abortedCount());
+        assertEquals(0, drainer.connectionCount());
+    }
+
+    @Test
+    public void testDrainIdle() throws Exception {
+        ConnectionDrainer drainer = new ConnectionDrainer();
+        drainer.start();
+        EmbeddedChannel channel = connection(drainer);
+        assertTrue(drainer.drain(Duration.ofSeconds(1)));
+        assertFalse(channel.isOpen());
+        assertEquals(1, drainer.drainedCount());
+        assertEquals(0, drainer.abortedCount());
+    }
+
+    @Test
+    public void testAbortOnEventLoop() throws Exception {
+        DefaultEventLoopGroup group = new DefaultEventLoopGroup(1);
+        try {
+            ConnectionDrainer drainer = new ConnectionDrainer();
+            drainer.start();
+            Channel stuck = new LocalChannel();
+            drainer.register(stuck);
+            stuck.pipeline().addLast(drainer.handler(false));
+            group.register(stuck).sync();
+            stuck.eventLoop().submit(() -> {
+                stuck.pipeline().fireChannelRead(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/"));
+            }).sync();
+            assertEquals(1, drainer.inFlightCount());
+
+            assertFalse(drainer.drain(Duration.ofMillis(10)));
+            // the aborted connections are counted before drain returns
+            assertFalse(stuck.isOpen());
+            assertEquals(1, drainer.abortedCount());
+            assertEquals(0, drainer.connectionCount());
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    @Test
+    public void testHttp2StreamReset() throws Exception {
+        ConnectionDrainer drainer = new ConnectionDrainer();
+        drainer.start();
+        EmbeddedChannel parent = new EmbeddedChannel();
+        drainer.register(parent);
+        EmbeddedChannel stream = new EmbeddedChannel(parent, DefaultChannelId.newInstance(), true, false,
+                drainer.handler(true));
+        stream.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/"));
+        stream.readInbound();
+        assertEquals(1, drainer.inFlightCount());
+
+        // the stream is reset before the response
+        stream.close();
+        assertEquals(0, drainer.inFlightCount());
+        assertTrue(drainer.drain(Duration.ofSeconds(1)));
+        assertFalse(parent.isOpen());
+        assertEquals(1, drainer.drainedCount());
+    }
+
+    @Test
+    public void testHttp2GoAway() throws Exception {
+        ConnectionDrainer drainer = new ConnectionDrainer();
+        drainer.start();
+        EmbeddedChannel parent = new EmbeddedChannel();
+        drainer.register(parent);
+        parent.pipeline().addLast(Http2FrameCodecBuilder.forServer().build());
+        EmbeddedChannel stream = new EmbeddedChannel(parent, DefaultChannelId.newInstance(), true, false,
+                drainer.handler(true));
+        stream.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/"));
+        stream.readInbound();
+        parent.releaseOutbound();
+
+        drainer.startDraining();
+        parent.runPendingTasks();
+        // the busy connection is kept open, but a GOAWAY frame is sent
+        assertTrue(parent.isOpen());
+        boolean goAway = false;
+        for (ByteBuf buf; (buf = parent.readOutbound()) != null;) {
+            for (int i = buf.readerIndex(); i + 9 <= buf.writerIndex(); i += 9 + buf.getUnsignedMedium(i)) {
+                goAway |= buf.getByte(i + 3) == Http2FrameTypes.GO_AWAY;
+            }
+            buf.release();
+        }
+        assertTrue(goAway);
+
+        stream.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+        assertFalse(parent.isOpen());
+        stream.finishAndReleaseAll();
+        parent.finishAndReleaseAll();
+    }
+
+}
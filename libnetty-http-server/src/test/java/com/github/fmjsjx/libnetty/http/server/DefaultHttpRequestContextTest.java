@@ -0,0 +1,70 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.management.ThreadMXBean;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+public class DefaultHttpRequestContextTest {
+
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURE_ITERATIONS = 100_000;
+
+    private static volatile Object blackhole;
+
+    private static double allocatedBytesPerOp(ThreadMXBean threadMXBean, Runnable action) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            action.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            action.run();
+        }
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+        return (after - before) / (double) MEASURE_ITERATIONS;
+    }
+
+    @Test
+    public void testAllocation() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof ThreadMXBean, "thread allocated bytes are not supported");
+        ThreadMXBean threadMXBean = (ThreadMXBean) bean;
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled(),
+                "thread allocated bytes are not supported");
+
+        EmbeddedChannel channel = new EmbeddedChannel();
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/api/users/1",
+                Unpooled.EMPTY_BUFFER);
+        Map<Class<?>, Object> components = Map.of();
+        PathVariables pathVariables = new DefaultPathVariables(Map.of("id", "1"));
+
+        // the context itself, the properties, the received time and the response
+        // factory are created on demand
+        double created = allocatedBytesPerOp(threadMXBean,
+                () -> blackhole = new DefaultHttpRequestContext(channel, request, components));
+        assertTrue(created <= 128, "create context: " + created + " bytes/op");
+
+        // typical usage on the event loop
+        double typical = allocatedBytesPerOp(threadMXBean, () -> {
+            DefaultHttpRequestContext ctx = new DefaultHttpRequestContext(channel, request, components);
+            ctx.pathVariables(pathVariables);
+            blackhole = ctx.responseFactory();
+        });
+        assertTrue(typical <= 192, "typical request: " + typical + " bytes/op");
+        channel.finishAndReleaseAll();
+    }
+
+}
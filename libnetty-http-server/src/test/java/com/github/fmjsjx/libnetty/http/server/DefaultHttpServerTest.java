@@ -0,0 +1,123 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+import static org.mockito.AdditionalAnswers.*;
+import static org.mockito.Mockito.*;
+
+import java.net.BindException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.libnetty.http.exception.HttpRuntimeException;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+public class DefaultHttpServerTest {
+
+    private final HttpServerHandlerProvider handlerProvider = () -> new HttpRequestContextHandler() {
+        @Override
+        protected void messageReceived(ChannelHandlerContext ctx, HttpRequestContext msg) {
+            msg.simpleRespond(HttpResponseStatus.OK);
+        }
+    };
+
+    private DefaultHttpServer newServer(int listeners) {
+        return new DefaultHttpServer("test", 0).host("127.0.0.1").reusePort(listeners)
+                .handlerProvider(handlerProvider);
+    }
+
+    @Test
+    public void testReusePortFallback() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        try {
+            DefaultHttpServer server = newServer(4).transport(group, NioServerSocketChannel.class);
+            assertEquals(4, server.listeners());
+            server.startup();
+            try {
+                // SO_REUSEPORT is not supported, only one listener is bound
+                assertEquals(1, server.channels().size());
+                assertSame(server.channel(), server.channels().get(0));
+                assertTrue(server.channel().isActive());
+            } finally {
+                server.shutdown();
+            }
+            assertFalse(server.isRunning());
+            assertFalse(server.channel().isOpen());
+        } finally {
+            group.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    @Test
+    public void testReusePort() throws Exception {
+        assumeTrue(Epoll.isAvailable(), "epoll is not available");
+        EventLoopGroup parentGroup = new EpollEventLoopGroup(3);
+        EventLoopGroup childGroup = new EpollEventLoopGroup(1);
+        try {
+            DefaultHttpServer server = newServer(3).transport(parentGroup, childGroup,
+                    EpollServerSocketChannel.class);
+            server.startup();
+            try {
+                assertEquals(3, server.channels().size());
+                assertSame(server.channel(), server.channels().get(0));
+                for (ServerChannel channel : server.channels()) {
+                    // all listeners are bound on the same address
+                    assertTrue(channel.isActive());
+                    assertEquals(server.channel().localAddress(), channel.localAddress());
+                }
+            } finally {
+                server.shutdown();
+            }
+            for (ServerChannel channel : server.channels()) {
+                assertFalse(channel.isOpen());
+            }
+        } finally {
+            parentGroup.shutdownGracefully().syncUninterruptibly();
+            childGroup.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+    @Test
+    public void testStartupFailure() throws Exception {
+        assumeTrue(Epoll.isAvailable(), "epoll is not available");
+        EventLoopGroup realGroup = new EpollEventLoopGroup(3);
+        // the registration of the third listener fails
+        EventLoopGroup parentGroup = mock(EventLoopGroup.class, delegatesTo(realGroup));
+        AtomicInteger registered = new AtomicInteger();
+        doAnswer(invocation -> {
+            Channel channel = invocation.getArgument(0);
+            if (registered.incrementAndGet() > 2) {
+                return channel.newFailedFuture(new BindException("test"));
+            }
+            return realGroup.register(channel);
+        }).when(parentGroup).register(any(Channel.class));
+        EventLoopGroup childGroup = new EpollEventLoopGroup(1);
+        try {
+            DefaultHttpServer server = newServer(3).transport(parentGroup, childGroup,
+                    EpollServerSocketChannel.class);
+            HttpRuntimeException e = assertThrows(HttpRuntimeException.class, server::startup);
+            assertTrue(e.getCause() instanceof BindException, String.valueOf(e.getCause()));
+            assertFalse(server.isRunning());
+            // the bound listeners are all closed
+            assertEquals(2, server.channels().size());
+            for (ServerChannel channel : server.channels()) {
+                assertFalse(channel.isOpen());
+            }
+        } finally {
+            realGroup.shutdownGracefully().syncUninterruptibly();
+            childGroup.shutdownGracefully().syncUninterruptibly();
+        }
+    }
+
+}
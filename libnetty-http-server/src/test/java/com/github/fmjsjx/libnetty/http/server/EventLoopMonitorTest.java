@@ -0,0 +1,90 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.libnetty.http.server.EventLoopMonitor.LoopStats;
+
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalChannel;
+
+public class EventLoopMonitorTest {
+
+    @Test
+    public void testBlocked() throws Exception {
+        DefaultEventLoopGroup group = new DefaultEventLoopGroup(2);
+        EventLoopMonitor monitor = new EventLoopMonitor(Duration.ofMillis(10), Duration.ofMillis(100));
+        try {
+            monitor.start(group, group);
+            List<LoopStats> loops = monitor.loops();
+            assertEquals(2, loops.size());
+            Thread.sleep(100);
+            assertNotNull(loops.get(0).threadName());
+
+            group.next().execute(() -> {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Thread.sleep(800);
+            assertEquals(1, monitor.blockedCount());
+            LoopStats blocked = loops.stream().filter(s -> s.blockedCount() > 0).findFirst().get();
+            assertNotNull(blocked.lastBlockedStackTrace());
+            assertTrue(blocked.maxSchedulingLag().toMillis() >= 100);
+        } finally {
+            monitor.close();
+            group.shutdownGracefully();
+        }
+    }
+
+    private static void awaitEvents(Channel channel) throws Exception {
+        // the pipeline events are fired after the futures completed
+        channel.eventLoop().submit(() -> {
+        }).sync();
+    }
+
+    @Test
+    public void testConnections() throws Exception {
+        DefaultEventLoopGroup group = new DefaultEventLoopGroup(1);
+        EventLoopMonitor monitor = new EventLoopMonitor();
+        EmbeddedChannel server = new EmbeddedChannel(monitor.connectionCounter());
+        try {
+            // a connection accepted before the monitor started is not counted
+            Channel before = new LocalChannel();
+            server.writeInbound(before);
+            group.register(before).sync();
+            awaitEvents(before);
+
+            monitor.start(group, group);
+            LoopStats stats = monitor.loops().get(0);
+            assertEquals(0, stats.connections());
+
+            Channel after = new LocalChannel();
+            server.writeInbound(after);
+            group.register(after).sync();
+            awaitEvents(after);
+            assertEquals(1, stats.connections());
+
+            before.close().sync();
+            awaitEvents(before);
+            assertEquals(1, stats.connections());
+
+            after.close().sync();
+            awaitEvents(after);
+            assertEquals(0, stats.connections());
+        } finally {
+            server.finishAndReleaseAll();
+            monitor.close();
+            group.shutdownGracefully();
+        }
+    }
+
+}
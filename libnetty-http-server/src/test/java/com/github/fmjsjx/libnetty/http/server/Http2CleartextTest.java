@@ -0,0 +1,114 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http2.DefaultHttp2FrameWriter;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.util.CharsetUtil;
+
+public class Http2CleartextTest {
+
+    private final List<String> received = new ArrayList<>();
+
+    private final HttpServerHandlerProvider handlerProvider = () -> new HttpRequestContextHandler() {
+        @Override
+        protected void messageReceived(ChannelHandlerContext ctx, HttpRequestContext msg) throws Exception {
+            assertTrue(msg.channel() instanceof Http2StreamChannel);
+            received.add(msg.method() + " " + msg.path() + " " + msg.headers().get("x-test"));
+            msg.simpleRespond(HttpResponseStatus.OK);
+        }
+    };
+
+    private static EmbeddedChannel newServer(HttpServerHandlerProvider handlerProvider) {
+        return new EmbeddedChannel(new DefaultHttpServerChannelInitializer(0, 1024 * 1024, 1, null, null, null,
+                handlerProvider, Collections.emptyMap(), null, true, null, null));
+    }
+
+    private static void writeHttp2Request(EmbeddedChannel server, int streamId, String test) {
+        // encode the client frames
+        EmbeddedChannel client = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ChannelHandlerContext clientCtx = client.pipeline().firstContext();
+        DefaultHttp2FrameWriter frameWriter = new DefaultHttp2FrameWriter();
+        client.write(Http2CodecUtil.connectionPrefaceBuf());
+        frameWriter.writeSettings(clientCtx, new Http2Settings(), clientCtx.newPromise());
+        Http2Headers headers = new DefaultHttp2Headers().method("GET").path("/hello?name=h2").scheme("http")
+                .authority("localhost");
+        headers.set("x-test", test);
+        frameWriter.writeHeaders(clientCtx, streamId, headers, 0, true, clientCtx.newPromise());
+        client.flush();
+        for (ByteBuf buf; (buf = client.readOutbound()) != null;) {
+            server.writeInbound(buf);
+        }
+        server.runPendingTasks();
+        client.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testPriorKnowledge() {
+        EmbeddedChannel server = newServer(handlerProvider);
+        server.config().setAutoRead(false);
+
+        writeHttp2Request(server, 3, "prior-knowledge");
+
+        assertEquals(List.of(HttpMethod.GET + " /hello prior-knowledge"), received);
+        assertTrue(server.config().isAutoRead());
+        assertNull(server.pipeline().get(HttpServerCodec.class));
+        // server SETTINGS, SETTINGS ACK and the response of the stream are written
+        assertFalse(server.outboundMessages().isEmpty());
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testUpgrade() {
+        EmbeddedChannel server = newServer(handlerProvider);
+        server.config().setAutoRead(false);
+
+        server.writeInbound(Unpooled.copiedBuffer("GET /hello HTTP/1.1\r\n" //
+                + "Host: localhost\r\n" //
+                + "Connection: Upgrade, HTTP2-Settings\r\n" //
+                + "Upgrade: h2c\r\n" //
+                + "HTTP2-Settings: AAMAAABkAAQAAP__\r\n" //
+                + "x-test: upgrade\r\n" //
+                + "\r\n", CharsetUtil.US_ASCII));
+        server.runPendingTasks();
+
+        // the upgrade request is served on the stream 1
+        assertEquals(List.of(HttpMethod.GET + " /hello upgrade"), received);
+        ByteBuf switching = server.readOutbound();
+        assertTrue(switching.toString(CharsetUtil.US_ASCII).startsWith("HTTP/1.1 101 Switching Protocols"));
+        switching.release();
+        // the HTTP/1.1 handlers are removed
+        assertNull(server.pipeline().get(HttpServerCodec.class));
+        assertNull(server.pipeline().get(HttpObjectAggregator.class));
+        assertNull(server.pipeline().get(HttpRequestContextDecoder.class));
+        assertNotNull(server.pipeline().get(Http2MultiplexHandler.class));
+        assertTrue(server.config().isAutoRead());
+
+        // then a new stream is read after the connection preface
+        writeHttp2Request(server, 3, "after-upgrade");
+        assertEquals(List.of(HttpMethod.GET + " /hello upgrade", HttpMethod.GET + " /hello after-upgrade"),
+                received);
+        server.finishAndReleaseAll();
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+public class HttpPipeliningHandlerTest {
+
+    private final List<DefaultHttpRequestContext> dispatched = new ArrayList<>();
+
+    private Consumer<DefaultHttpRequestContext> onDispatch = c -> {
+    };
+
+    private final EmbeddedChannel channel = new EmbeddedChannel(new HttpPipeliningHandler(4),
+            new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                    DefaultHttpRequestContext requestContext = (DefaultHttpRequestContext) msg;
+                    dispatched.add(requestContext);
+                    onDispatch.accept(requestContext);
+                }
+            });
+
+    private DefaultHttpRequestContext newRequest(String uri) {
+        return new DefaultHttpRequestContext(channel,
+                new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri), Collections.emptyMap());
+    }
+
+    private static FullHttpResponse response(String uri) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                Unpooled.EMPTY_BUFFER);
+        response.headers().set("x-uri", uri);
+        return response;
+    }
+
+    private String readUri() {
+        FullHttpResponse response = channel.readOutbound();
+        return response == null ? null : response.headers().get("x-uri");
+    }
+
+    @Test
+    public void testOutOfOrderCompletions() {
+        channel.writeInbound(newRequest("/1"), newRequest("/2"), newRequest("/3"));
+        assertEquals(3, dispatched.size());
+
+        dispatched.get(2).sendResponse(response("/3"), 0);
+        dispatched.get(1).sendResponse(response("/2"), 0);
+        assertNull(channel.readOutbound());
+
+        dispatched.get(0).sendResponse(response("/1"), 0);
+        assertEquals("/1", readUri());
+        assertEquals("/2", readUri());
+        assertEquals("/3", readUri());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testCompletedWithoutResponse() {
+        channel.writeInbound(newRequest("/1"), newRequest("/2"), newRequest("/3"));
+
+        dispatched.get(2).sendResponse(response("/3"), 0);
+        // the second request is completed without any response
+        HttpPipeliningHandler.requestCompleted(dispatched.get(1));
+        assertNull(channel.readOutbound());
+
+        dispatched.get(0).sendResponse(response("/1"), 0);
+        assertEquals("/1", readUri());
+        assertEquals("/3", readUri());
+
+        // the connection is not stalled
+        channel.writeInbound(newRequest("/4"));
+        dispatched.get(3).sendResponse(response("/4"), 0);
+        assertEquals("/4", readUri());
+    }
+
+    @Test
+    public void testFlushConsolidation() {
+        List<Integer> flushedWhileReading = new ArrayList<>();
+        onDispatch = requestContext -> {
+            requestContext.sendResponse(response(requestContext.uri()), 0);
+            flushedWhileReading.add(channel.outboundMessages().size());
+        };
+        channel.writeInbound(newRequest("/1"), newRequest("/2"));
+        // nothing is flushed until the read batch completes
+        assertEquals(List.of(0, 0), flushedWhileReading);
+        assertEquals("/1", readUri());
+        assertEquals("/2", readUri());
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.fmjsjx.libnetty.http.server.middleware.ServeStatic;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+public class PipelinedServeStaticTest {
+
+    private final List<Runnable> metadataTasks = new ArrayList<>();
+
+    private final List<CompletionStage<HttpResult>> results = new ArrayList<>();
+
+    private EmbeddedChannel newChannel(ServeStatic serveStatic) {
+        return new EmbeddedChannel(new HttpPipeliningHandler(4), new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                DefaultHttpRequestContext requestContext = (DefaultHttpRequestContext) msg;
+                if (requestContext.path().startsWith("/static/")) {
+                    results.add(serveStatic.apply(requestContext, c -> c.simpleRespond(HttpResponseStatus.NOT_FOUND)));
+                } else {
+                    FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                            HttpResponseStatus.OK, Unpooled.EMPTY_BUFFER);
+                    response.headers().set("x-uri", requestContext.uri());
+                    requestContext.sendResponse(response, 0);
+                    results.add(CompletableFuture.completedFuture(null));
+                }
+            }
+        });
+    }
+
+    private static DefaultHttpRequestContext newRequest(EmbeddedChannel channel, String uri) {
+        return new DefaultHttpRequestContext(channel,
+                new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri), Collections.emptyMap());
+    }
+
+    private static String readUri(EmbeddedChannel channel) {
+        FullHttpResponse response = channel.readOutbound();
+        return response == null ? null : response.headers().get("x-uri");
+    }
+
+    @Test
+    public void testAsyncStaticFile(@TempDir Path dir) throws Exception {
+        Files.write(dir.resolve("a.txt"), "static content".getBytes(CharsetUtil.UTF_8));
+        ServeStatic serveStatic = new ServeStatic("/static/", dir.toString(),
+                new ServeStatic.Options().metadataExecutor(metadataTasks::add));
+        EmbeddedChannel channel = newChannel(serveStatic);
+
+        channel.writeInbound(newRequest(channel, "/static/a.txt"), newRequest(channel, "/2"));
+        // the file metadata is still being resolved
+        assertEquals(1, metadataTasks.size());
+        assertNull(channel.readOutbound());
+
+        metadataTasks.remove(0).run();
+        channel.runPendingTasks();
+        assertTrue(results.get(0).toCompletableFuture().isDone());
+
+        // the static file must be written before the response of the second request
+        HttpResponse response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertFalse(response instanceof FullHttpResponse);
+        Object region = channel.readOutbound();
+        assertTrue(region instanceof FileRegion);
+        ReferenceCountUtil.release(region);
+        assertTrue(channel.readOutbound() instanceof LastHttpContent);
+        assertEquals("/2", readUri(channel));
+        assertNull(channel.readOutbound());
+
+        // the connection is not stalled
+        channel.writeInbound(newRequest(channel, "/3"));
+        assertEquals("/3", readUri(channel));
+        channel.finishAndReleaseAll();
+    }
+
+}
@@ -0,0 +1,322 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.fmjsjx.libnetty.http.server.middleware.ServeStatic;
+
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+public class ServeStaticTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @TempDir
+    Path dir;
+
+    private EmbeddedChannel channel;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        Files.write(dir.resolve("a.txt"), CONTENT.getBytes(CharsetUtil.UTF_8));
+        channel = new EmbeddedChannel();
+    }
+
+    private HttpResult serve(ServeStatic serveStatic, String uri, String... headers) {
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+        for (int i = 0; i < headers.length; i += 2) {
+            request.headers().set(headers[i], headers[i + 1]);
+        }
+        DefaultHttpRequestContext ctx = new DefaultHttpRequestContext(channel, request, Collections.emptyMap());
+        return serveStatic.apply(ctx, c -> c.simpleRespond(HttpResponseStatus.NOT_FOUND)).toCompletableFuture()
+                .join();
+    }
+
+    private String readBody() throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (;;) {
+            Object msg = channel.readOutbound();
+            assertNotNull(msg);
+            try {
+                if (msg instanceof FileRegion) {
+                    body.append(transfer((FileRegion) msg));
+                } else if (msg instanceof HttpContent) {
+                    body.append(((HttpContent) msg).content().toString(CharsetUtil.UTF_8));
+                    if (msg instanceof LastHttpContent) {
+                        return body.toString();
+                    }
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+    }
+
+    private static String transfer(FileRegion region) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        while (region.transferred() < region.count()) {
+            region.transferTo(target, region.transferred());
+        }
+        return new String(out.toByteArray(), CharsetUtil.UTF_8);
+    }
+
+    private void writeSidecars() throws IOException {
+        Path file = dir.resolve("a.txt");
+        FileTime lastModified = Files.getLastModifiedTime(file);
+        for (String suffix : new String[] { "br", "zst", "gz" }) {
+            Path sidecar = Files.write(dir.resolve("a.txt." + suffix), suffix.getBytes(CharsetUtil.UTF_8));
+            Files.setLastModifiedTime(sidecar, lastModified);
+        }
+    }
+
+    private String serveEncoded(ServeStatic serveStatic, String acceptEncoding, String expectedEncoding)
+            throws IOException {
+        if (acceptEncoding == null) {
+            serve(serveStatic, "/static/a.txt");
+        } else {
+            serve(serveStatic, "/static/a.txt", "accept-encoding", acceptEncoding);
+        }
+        HttpResponse response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertEquals(expectedEncoding, response.headers().get(CONTENT_ENCODING));
+        // the response always varies by the accept-encoding
+        assertEquals("accept-encoding", response.headers().get(VARY));
+        String etag = response.headers().get(ETAG);
+        if (expectedEncoding == null) {
+            assertFalse(etag.matches(".*-(br|zstd|gzip)\"$"), etag);
+        } else {
+            assertTrue(etag.endsWith("-" + expectedEncoding + "\""), etag);
+        }
+        String body = readBody();
+        assertEquals(Long.parseLong(response.headers().get(CONTENT_LENGTH)), body.length());
+        assertNull(channel.readOutbound());
+        return body;
+    }
+
+    @Test
+    public void testPrecompressed() throws Exception {
+        writeSidecars();
+        ServeStatic serveStatic = new ServeStatic("/static/", dir.toString(),
+                new ServeStatic.Options().precompressed("br", "zstd", "gzip"));
+        // the preferred encoding of the server wins among the acceptable ones
+        assertEquals("br", serveEncoded(serveStatic, "gzip, deflate, br, zstd", "br"));
+        assertEquals("gz", serveEncoded(serveStatic, "gzip", "gzip"));
+        assertEquals("zst", serveEncoded(serveStatic, "GZIP, ZSTD", "zstd"));
+        // q=0 means not acceptable
+        assertEquals("zst", serveEncoded(serveStatic, "br;q=0, zstd;q=0.5, gzip;q=1.0", "zstd"));
+        assertEquals("gz", serveEncoded(serveStatic, "br; q=0.0, zstd;Q=0, gzip", "gzip"));
+        assertEquals("zst", serveEncoded(serveStatic, "*;q=0.1, br;q=0", "zstd"));
+        assertEquals("br", serveEncoded(serveStatic, "*", "br"));
+        // nothing acceptable, send the original file
+        assertEquals(CONTENT, serveEncoded(serveStatic, "br;q=0, gzip;q=0, zstd;q=0", null));
+        assertEquals(CONTENT, serveEncoded(serveStatic, "*;q=0", null));
+        assertEquals(CONTENT, serveEncoded(serveStatic, "identity, deflate", null));
+        assertEquals(CONTENT, serveEncoded(serveStatic, null, null));
+    }
+
+    @Test
+    public void testPrecompressedFallback() throws Exception {
+        writeSidecars();
+        ServeStatic serveStatic = new ServeStatic("/static/", dir.toString(),
+                new ServeStatic.Options().precompressed("br", "gzip"));
+        // not in the configured encodings
+        assertEquals(CONTENT, serveEncoded(serveStatic, "zstd", null));
+
+        // the missing sidecar is skipped
+        Files.delete(dir.resolve("a.txt.br"));
+        assertEquals("gz", serveEncoded(serveStatic, "br, gzip", "gzip"));
+        assertEquals(CONTENT, serveEncoded(serveStatic, "br", null));
+
+        // the sidecar older than the original file is skipped
+        Path gz = dir.resolve("a.txt.gz");
+        Files.setLastModifiedTime(gz, FileTime.fromMillis(Files.getLastModifiedTime(gz).toMillis() - 10_000));
+        assertEquals(CONTENT, serveEncoded(serveStatic, "br, gzip", null));
+
+        Files.delete(gz);
+        assertEquals(CONTENT, serveEncoded(serveStatic, "br, gzip", null));
+    }
+
+    @Test
+    public void testMetadataCache() throws Exception {
+        Path file = dir.resolve("a.txt");
+        ServeStatic serveStatic = new ServeStatic("/static/", dir.toString(), new ServeStatic.Options()
+                .metadataCache(16).metadataCacheRevalidateInterval(Duration.ofHours(1)));
+        serve(serveStatic, "/static/a.txt");
+        HttpResponse response = channel.readOutbound();
+        String etag = response.headers().get(ETAG);
+        assertEquals(CONTENT, readBody());
+
+        // the cached metadata is trusted within the revalidate interval
+        Files.write(file, "ABCDEFGHIJKLMNOPQRST".getBytes(CharsetUtil.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        serve(serveStatic, "/static/a.txt");
+        response = channel.readOutbound();
+        assertEquals(etag, response.headers().get(ETAG));
+        assertEquals("ABCDEFGHIJKLMNOPQRST", readBody());
+
+        // a deleted file is detected when it is opened
+        Files.delete(file);
+        assertEquals(HttpResponseStatus.NOT_FOUND, serve(serveStatic, "/static/a.txt").responseStatus());
+        FullHttpResponse notFound = channel.readOutbound();
+        try {
+            assertEquals(HttpResponseStatus.NOT_FOUND, notFound.status());
+        } finally {
+            notFound.release();
+        }
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testMetadataCacheRevalidate() throws Exception {
+        Path file = dir.resolve("a.txt");
+        ServeStatic serveStatic = new ServeStatic("/static/", dir.toString(),
+                new ServeStatic.Options().metadataCache(16).metadataCacheRevalidateInterval(Duration.ZERO));
+        serve(serveStatic, "/static/a.txt");
+        HttpResponse response = channel.readOutbound();
+        String etag = response.headers().get(ETAG);
+        assertEquals(CONTENT, readBody());
+
+        Files.write(file, "changed".getBytes(CharsetUtil.UTF_8));
+        serve(serveStatic, "/static/a.txt");
+        response = channel.readOutbound();
+        assertNotEquals(etag, response.headers().get(ETAG));
+        assertEquals("7", response.headers().get(CONTENT_LENGTH));
+        assertEquals("changed", readBody());
+    }
+
+    @Test
+    public void testFull() throws Exception {
+        ServeStatic serveStatic = new ServeStatic("/static/", dir.toString());
+        assertEquals(HttpResponseStatus.OK, serve(serveStatic, "/static/a.txt").responseStatus());
+        HttpResponse response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertEquals("bytes", response.headers().get(ACCEPT_RANGES));
+        assertEquals(CONTENT, readBody());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        ServeStatic serveStatic = new ServeStatic("/static/", dir.toString());
+        HttpResult result = serve(serveStatic, "/static/a.txt", "range", "bytes=2-5");
+        assertEquals(HttpResponseStatus.PARTIAL_CONTENT, result.responseStatus());
+        assertEquals(4, result.resultLength());
+        HttpResponse response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.status());
+        assertEquals("bytes 2-5/20", response.headers().get(CONTENT_RANGE));
+        assertEquals("4", response.headers().get(CONTENT_LENGTH));
+        assertEquals("2345", readBody());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testMultipartRanges() throws Exception {
+        ServeStatic serveStatic = new ServeStatic("/static/", dir.toString());
+        HttpResult result = serve(serveStatic, "/static/a.txt", "range", "bytes=0-1, -2");
+        assertEquals(HttpResponseStatus.PARTIAL_CONTENT, result.responseStatus());
+        HttpResponse response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.status());
+        String contentType = response.headers().get(CONTENT_TYPE);
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="), contentType);
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        String body = readBody();
+        assertEquals(Long.parseLong(response.headers().get(CONTENT_LENGTH)), body.length());
+        assertEquals(body.length(), result.resultLength());
+        String[] parts = body.split("\r\n--" + boundary);
+        assertEquals(4, parts.length);
+        assertEquals("", parts[0]);
+        assertTrue(parts[1].endsWith("\r\ncontent-range: bytes 0-1/20\r\n\r\n01"), parts[1]);
+        assertTrue(parts[2].endsWith("\r\ncontent-range: bytes 18-19/20\r\n\r\nij"), parts[2]);
+        assertEquals("--\r\n", parts[3]);
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testOverlappingRanges() throws Exception {
+        ServeStatic serveStatic = new ServeStatic("/static/", dir.toString());
+        // coalesced into one range, so no byte is sent twice
+        serve(serveStatic, "/static/a.txt", "range", "bytes=4-7, 0-4, 8-9, 2-3");
+        HttpResponse response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.status());
+        assertEquals("bytes 0-9/20", response.headers().get(CONTENT_RANGE));
+        assertFalse(response.headers().get(CONTENT_TYPE).startsWith("multipart/"));
+        assertEquals("0123456789", readBody());
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws Exception {
+        ServeStatic serveStatic = new ServeStatic("/static/", dir.toString());
+        HttpResult result = serve(serveStatic, "/static/a.txt", "range", "bytes=20-");
+        assertEquals(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, result.responseStatus());
+        FullHttpResponse response = channel.readOutbound();
+        try {
+            assertEquals(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.status());
+            assertEquals("bytes */20", response.headers().get(CONTENT_RANGE));
+        } finally {
+            response.release();
+        }
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testIfRange() throws Exception {
+        ServeStatic serveStatic = new ServeStatic("/static/", dir.toString());
+        serve(serveStatic, "/static/a.txt");
+        HttpResponse response = channel.readOutbound();
+        String etag = response.headers().get(ETAG);
+        String lastModified = response.headers().get(LAST_MODIFIED);
+        assertNotNull(etag);
+        assertNotNull(lastModified);
+        readBody();
+
+        // the validators match, send the range
+        serve(serveStatic, "/static/a.txt", "range", "bytes=0-1", "if-range", etag);
+        response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.status());
+        assertEquals("01", readBody());
+        serve(serveStatic, "/static/a.txt", "range", "bytes=0-1", "if-range", lastModified);
+        response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.status());
+        assertEquals("01", readBody());
+
+        // the representation has changed, send the full content
+        serve(serveStatic, "/static/a.txt", "range", "bytes=0-1", "if-range", "\"other\"");
+        response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertNull(response.headers().get(CONTENT_RANGE));
+        assertEquals(CONTENT, readBody());
+        serve(serveStatic, "/static/a.txt", "range", "bytes=0-1", "if-range", "Thu, 01 Jan 1970 00:00:00 GMT");
+        response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.OK, response.status());
+        assertEquals(CONTENT, readBody());
+        assertNull(channel.readOutbound());
+    }
+
+}
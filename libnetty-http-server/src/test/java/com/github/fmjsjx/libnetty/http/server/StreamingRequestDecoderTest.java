@@ -0,0 +1,131 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+public class StreamingRequestDecoderTest {
+
+    private int reads;
+
+    private HttpRequestContext requestContext;
+
+    private final List<String> received = new ArrayList<>();
+
+    private boolean completed;
+
+    private Flow.Subscription subscription;
+
+    private EmbeddedChannel newChannel(boolean autoRead) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.config().setAutoRead(autoRead);
+        channel.pipeline().addLast(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void read(ChannelHandlerContext ctx) throws Exception {
+                reads++;
+                super.read(ctx);
+            }
+        }, new StreamingRequestDecoder(Collections.emptyMap(), null), new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                requestContext = (HttpRequestContext) msg;
+            }
+        });
+        return channel;
+    }
+
+    private void subscribe() {
+        requestContext.streamingBody().get().subscribe(new Flow.Subscriber<ByteBuf>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription = s;
+            }
+
+            @Override
+            public void onNext(ByteBuf item) {
+                received.add(item.toString(CharsetUtil.UTF_8));
+                item.release();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                fail(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed = true;
+            }
+        });
+    }
+
+    private static DefaultHttpContent content(String text) {
+        return new DefaultHttpContent(Unpooled.copiedBuffer(text, CharsetUtil.UTF_8));
+    }
+
+    private void testDemand(EmbeddedChannel channel) {
+        channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/upload"));
+        assertNotNull(requestContext);
+        // the body is only read on demand
+        assertFalse(channel.config().isAutoRead());
+        subscribe();
+        int readsBefore = reads;
+
+        subscription.request(1);
+        assertEquals(readsBefore + 1, reads);
+        channel.writeInbound(content("a"));
+        assertEquals(List.of("a"), received);
+
+        // no demand, nothing is read and the content already received is kept
+        channel.writeInbound(content("b"));
+        assertEquals(List.of("a"), received);
+        assertEquals(readsBefore + 1, reads);
+
+        subscription.request(1);
+        assertEquals(List.of("a", "b"), received);
+        assertEquals(readsBefore + 1, reads);
+
+        subscription.request(1);
+        assertEquals(readsBefore + 2, reads);
+        channel.writeInbound(new DefaultLastHttpContent(Unpooled.copiedBuffer("c", CharsetUtil.UTF_8)));
+        assertEquals(List.of("a", "b", "c"), received);
+        assertTrue(completed);
+    }
+
+    @Test
+    public void testHttp1Demand() {
+        EmbeddedChannel channel = newChannel(false);
+        testDemand(channel);
+        assertFalse(channel.config().isAutoRead());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testHttp2StreamDemand() {
+        // HTTP/2 stream channels are always auto read
+        EmbeddedChannel channel = newChannel(true);
+        testDemand(channel);
+        // auto read is resumed after the body is completed
+        assertTrue(channel.config().isAutoRead());
+        channel.finishAndReleaseAll();
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.github.fmjsjx.libnetty.http.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.CharsetUtil;
+
+public class StreamingResponsesTest {
+
+    /**
+     * A publisher emits the chunks synchronously in {@code request(n)}.
+     */
+    private static final class SynchronousPublisher implements Flow.Publisher<ByteBuf> {
+
+        private final int count;
+
+        private SynchronousPublisher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuf> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+
+                private int next;
+                private boolean completed;
+
+                @Override
+                public void request(long n) {
+                    for (long i = 0; i < n && next < count; i++) {
+                        subscriber.onNext(Unpooled.copiedBuffer(next++ + ",", CharsetUtil.UTF_8));
+                    }
+                    if (next == count && !completed) {
+                        completed = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    next = count;
+                    completed = true;
+                }
+            });
+        }
+
+    }
+
+    @Test
+    public void testSynchronousPublisher() {
+        int count = 10000;
+        EmbeddedChannel channel = new EmbeddedChannel(new ChunkedWriteHandler());
+        DefaultHttpRequestContext ctx = new DefaultHttpRequestContext(channel,
+                new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/stream"), Collections.emptyMap());
+        HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        CompletableFuture<HttpResult> future = ctx.sendStreamingResponse(response, new SynchronousPublisher(count));
+        for (int i = 0; i <= count && !future.isDone(); i++) {
+            channel.runPendingTasks();
+        }
+        assertTrue(future.isDone());
+
+        assertSame(response, channel.readOutbound());
+        StringBuilder body = new StringBuilder();
+        for (Object msg; (msg = channel.readOutbound()) != null;) {
+            HttpContent content = (HttpContent) msg;
+            body.append(content.content().toString(CharsetUtil.UTF_8));
+            content.release();
+            if (msg instanceof LastHttpContent) {
+                break;
+            }
+        }
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            expected.append(i).append(',');
+        }
+        assertEquals(expected.toString(), body.toString());
+        assertEquals(expected.length(), future.join().resultLength());
+        channel.finishAndReleaseAll();
+    }
+
+}
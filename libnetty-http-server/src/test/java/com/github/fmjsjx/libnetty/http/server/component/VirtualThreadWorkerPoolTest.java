@@ -0,0 +1,91 @@
+package com.github.fmjsjx.libnetty.http.server.component;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+public class VirtualThreadWorkerPoolTest {
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timeout");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testUnavailable() {
+        if (!VirtualThreadWorkerPool.isAvailable()) {
+            assertThrows(UnsupportedOperationException.class, () -> new VirtualThreadWorkerPool());
+        }
+    }
+
+    @Test
+    public void testMaxConcurrency() throws Exception {
+        assumeTrue(VirtualThreadWorkerPool.isAvailable(), "virtual threads are not available");
+        VirtualThreadWorkerPool pool = new VirtualThreadWorkerPool(2);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            Executor executor = pool.executor();
+            for (int i = 0; i < 6; i++) {
+                executor.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            await(() -> pool.runningCount() == 2 && pool.waitingCount() == 4);
+            assertEquals(6, pool.submittedCount());
+            assertEquals(4, pool.throttledCount());
+
+            release.countDown();
+            await(() -> pool.completedCount() == 6);
+            assertEquals(2, pool.peakRunningCount());
+            assertEquals(0, pool.runningCount());
+            assertEquals(0, pool.waitingCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPinned() throws Exception {
+        assumeTrue(VirtualThreadWorkerPool.isAvailable(), "virtual threads are not available");
+        // since JDK 24 blocking inside a synchronized block no longer pins the carrier
+        assumeTrue(Runtime.version().feature() < 24, "synchronized does not pin virtual threads");
+        VirtualThreadWorkerPool pool = new VirtualThreadWorkerPool(0);
+        try {
+            assumeTrue(pool.isPinnedMonitored(), "JFR event streaming is not available");
+            assertEquals(0, pool.pinnedCount());
+            Object lock = new Object();
+            pool.executor().execute(() -> {
+                synchronized (lock) {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            await(() -> pool.pinnedCount() > 0);
+            assertEquals(1, pool.pinnedCount());
+            assertTrue(pool.pinnedNanos() >= 100_000_000L);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testIllegalMaxConcurrency() {
+        assertThrows(IllegalArgumentException.class, () -> new VirtualThreadWorkerPool(-1));
+    }
+
+}
@@ -3,11 +3,15 @@ package com.github.fmjsjx.libnetty.http.server.middleware;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
@@ -20,6 +24,9 @@ import com.github.fmjsjx.libnetty.http.server.HttpResponder;
 import com.github.fmjsjx.libnetty.http.server.HttpResult;
 import com.github.fmjsjx.libnetty.http.server.PathVariables;
 import com.github.fmjsjx.libnetty.http.server.component.HttpServerComponent;
+import com.github.fmjsjx.libnetty.http.server.middleware.AccessLogger.AsyncFileWriter;
+import com.github.fmjsjx.libnetty.http.server.middleware.AccessLogger.CompiledPattern;
+import com.github.fmjsjx.libnetty.http.server.middleware.AccessLogger.Record;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -66,6 +73,47 @@ public class AccessLoggerTest {
         }
     }
 
+    @Test
+    public void testAsync() throws Exception {
+        String p = "Hello :datetime :iso-local-datetime :iso-local-date :basic-iso-date :iso-local-time :method :path :remote-addr :remote-user :status :response-time ms :result-length :result-length-humanreadable World!";
+        Path file = Files.createTempFile("access-", ".log");
+        try {
+            DefaultFullHttpRequest request = mockedRequest();
+            HttpResult result = mockedResult(mocketRequestContext(request));
+            String expected = new AccessLogger(line -> {
+            }, p).mapLog(result);
+            // the writer thread starts draining only after the buffer is filled
+            CountDownLatch started = new CountDownLatch(1);
+            AsyncFileWriter writer = new AsyncFileWriter(file, 4, 2, r -> new Thread(() -> {
+                try {
+                    started.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                r.run();
+            }));
+            AccessLogger accessLogger = new AccessLogger(writer, p);
+            assertEquals(expected, accessLogger.mapLog(result));
+            CompiledPattern compiledPattern = new CompiledPattern(p);
+            for (int i = 0; i < 6; i++) {
+                assertEquals(i < 4, writer.offer(new Record(compiledPattern, compiledPattern.extract(result))));
+            }
+            assertEquals(4, writer.pendingCount());
+            assertEquals(2, writer.droppedCount());
+            started.countDown();
+            accessLogger.close();
+            assertEquals(2, writer.droppedCount());
+            assertEquals(4, writer.writtenCount());
+            List<String> lines = Files.readAllLines(file);
+            assertEquals(4, lines.size());
+            for (String line : lines) {
+                assertEquals(expected, line);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
     private DefaultFullHttpRequest mockedRequest() {
         // {"action":"test","date":"2020-09-14","time":"16:51:23","timestamp":1600073543}
         ByteBuf content = Unpooled.copiedBuffer(
@@ -0,0 +1,183 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+
+import io.netty.channel.EventLoop;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private final List<CompletableFuture<HttpResult>> pending = new ArrayList<>();
+    private final List<String> processed = new ArrayList<>();
+    private final List<Runnable> timeouts = new ArrayList<>();
+
+    private final MiddlewareChain next = ctx -> {
+        CompletableFuture<HttpResult> future = new CompletableFuture<>();
+        pending.add(future);
+        processed.add(ctx.path());
+        return future;
+    };
+
+    private final CompletableFuture<HttpResult> rejected = new CompletableFuture<>();
+
+    private HttpRequestContext mockedContext() {
+        HttpRequestContext ctx = mock(HttpRequestContext.class);
+        EventLoop eventLoop = mock(EventLoop.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(eventLoop).execute(any());
+        when(eventLoop.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            timeouts.add(invocation.getArgument(0));
+            return null;
+        });
+        when(ctx.eventLoop()).thenReturn(eventLoop);
+        when(ctx.simpleRespond(eq(SERVICE_UNAVAILABLE), any())).thenReturn(rejected);
+        return ctx;
+    }
+
+    @Test
+    public void testApply() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+                new AdaptiveConcurrencyLimiter.Options().initialLimit(2).maxQueueSize(1));
+
+        CompletionStage<HttpResult> first = limiter.apply(mockedContext(), next);
+        limiter.apply(mockedContext(), next);
+        assertEquals(2, limiter.inFlightCount());
+
+        CompletionStage<HttpResult> waiting = limiter.apply(mockedContext(), next);
+        assertEquals(1, limiter.waitingCount());
+        assertEquals(2, pending.size());
+
+        assertSame(rejected, limiter.apply(mockedContext(), next));
+        assertEquals(1, limiter.rejectedCount());
+
+        HttpResult result = mock(HttpResult.class);
+        pending.get(0).complete(result);
+        assertSame(result, first.toCompletableFuture().join());
+        assertEquals(0, limiter.waitingCount());
+        assertEquals(3, pending.size());
+
+        pending.get(2).complete(result);
+        assertSame(result, waiting.toCompletableFuture().join());
+        pending.get(1).complete(result);
+        assertEquals(0, limiter.inFlightCount());
+    }
+
+    private HttpRequestContext mockedContext(String path) {
+        HttpRequestContext ctx = mockedContext();
+        when(ctx.path()).thenReturn(path);
+        return ctx;
+    }
+
+    @Test
+    public void testQueueTimeout() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(new AdaptiveConcurrencyLimiter.Options()
+                .initialLimit(1).limits(1, 1).maxQueueSize(2).maxQueueTime(Duration.ofMillis(10)));
+        limiter.apply(mockedContext("/0"), next);
+        HttpRequestContext waitingContext = mockedContext("/1");
+        CompletionStage<HttpResult> waiting = limiter.apply(waitingContext, next);
+        CompletionStage<HttpResult> other = limiter.apply(mockedContext("/2"), next);
+        assertEquals(2, limiter.waitingCount());
+        assertEquals(2, timeouts.size());
+        assertEquals(0, limiter.rejectedCount());
+
+        // waited too long, respond 503 with retry-after
+        timeouts.get(0).run();
+        assertEquals(1, limiter.waitingCount());
+        assertEquals(1, limiter.timedOutCount());
+        assertEquals(1, limiter.rejectedCount());
+        verify(waitingContext).simpleRespond(eq(SERVICE_UNAVAILABLE), any());
+        assertFalse(waiting.toCompletableFuture().isDone());
+        HttpResult serviceUnavailable = mock(HttpResult.class);
+        rejected.complete(serviceUnavailable);
+        assertSame(serviceUnavailable, waiting.toCompletableFuture().join());
+
+        // the timed out request is never processed
+        pending.get(0).complete(mock(HttpResult.class));
+        assertEquals(Arrays.asList("/0", "/2"), processed);
+        assertEquals(0, limiter.waitingCount());
+        assertEquals(1, limiter.inFlightCount());
+        assertFalse(other.toCompletableFuture().isDone());
+
+        // the timeout of the processed request does nothing
+        timeouts.get(1).run();
+        assertEquals(1, limiter.timedOutCount());
+        assertFalse(other.toCompletableFuture().isDone());
+        HttpResult result = mock(HttpResult.class);
+        pending.get(1).complete(result);
+        assertSame(result, other.toCompletableFuture().join());
+        assertEquals(0, limiter.inFlightCount());
+    }
+
+    @Test
+    public void testPriority() {
+        Map<String, Integer> priorities = new HashMap<>();
+        priorities.put("/0", 0);
+        priorities.put("/a", 0);
+        priorities.put("/b", 5);
+        priorities.put("/c", Integer.MIN_VALUE);
+        priorities.put("/d", 5);
+        priorities.put("/e", Integer.MAX_VALUE);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(new AdaptiveConcurrencyLimiter.Options()
+                .initialLimit(1).limits(1, 1).maxQueueSize(5).priority(ctx -> priorities.get(ctx.path())));
+        limiter.apply(mockedContext("/0"), next);
+        for (String path : new String[] { "/a", "/b", "/c", "/d", "/e" }) {
+            limiter.apply(mockedContext(path), next);
+        }
+        assertEquals(5, limiter.waitingCount());
+
+        // the higher priority first, and then the earlier one
+        for (int i = 0; i < 6; i++) {
+            pending.get(i).complete(mock(HttpResult.class));
+        }
+        assertEquals(Arrays.asList("/0", "/e", "/b", "/d", "/a", "/c"), processed);
+        assertEquals(0, limiter.waitingCount());
+        assertEquals(0, limiter.inFlightCount());
+        assertEquals(0, limiter.rejectedCount());
+    }
+
+    @Test
+    public void testUpdate() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+                new AdaptiveConcurrencyLimiter.Options().initialLimit(10).limits(1, 100));
+        for (int i = 0; i < 10; i++) {
+            limiter.apply(mockedContext(), next);
+        }
+        assertEquals(10, limiter.inFlightCount());
+
+        synchronized (limiter) {
+            // stable latency, the limit grows
+            for (int i = 0; i < 5; i++) {
+                limiter.update(1_000_000);
+            }
+        }
+        int grown = limiter.limit();
+        assertTrue(grown > 10, "limit = " + grown);
+
+        synchronized (limiter) {
+            // latency rises, the limit shrinks
+            for (int i = 0; i < 5; i++) {
+                limiter.update(10_000_000);
+            }
+        }
+        assertTrue(limiter.limit() < grown, "limit = " + limiter.limit());
+    }
+
+}
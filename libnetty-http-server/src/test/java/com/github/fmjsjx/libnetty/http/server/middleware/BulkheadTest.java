@@ -0,0 +1,73 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+import com.github.fmjsjx.libnetty.http.server.HttpServiceInvoker;
+
+import io.netty.channel.EventLoop;
+
+public class BulkheadTest {
+
+    private final List<CompletableFuture<HttpResult>> pending = new ArrayList<>();
+
+    private final HttpServiceInvoker service = ctx -> {
+        CompletableFuture<HttpResult> future = new CompletableFuture<>();
+        pending.add(future);
+        return future;
+    };
+
+    private final CompletableFuture<HttpResult> rejected = new CompletableFuture<>();
+
+    private HttpRequestContext mockedContext() {
+        HttpRequestContext ctx = mock(HttpRequestContext.class);
+        EventLoop eventLoop = mock(EventLoop.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(eventLoop).execute(any());
+        when(ctx.eventLoop()).thenReturn(eventLoop);
+        when(ctx.simpleRespond(eq(SERVICE_UNAVAILABLE), any())).thenReturn(rejected);
+        return ctx;
+    }
+
+    @Test
+    public void testBulkhead() {
+        Bulkhead bulkhead = new Bulkhead(1, 1);
+        HttpServiceInvoker invoker = bulkhead.wrap(service);
+
+        CompletionStage<HttpResult> first = invoker.invoke(mockedContext());
+        assertEquals(1, pending.size());
+        assertEquals(1, bulkhead.runningCount());
+
+        CompletionStage<HttpResult> second = invoker.invoke(mockedContext());
+        assertEquals(1, pending.size());
+        assertEquals(1, bulkhead.waitingCount());
+
+        CompletionStage<HttpResult> third = invoker.invoke(mockedContext());
+        assertSame(rejected, third);
+        assertEquals(1, bulkhead.rejectedCount());
+
+        HttpResult result = mock(HttpResult.class);
+        pending.get(0).complete(result);
+        assertTrue(first.toCompletableFuture().isDone());
+        assertEquals(2, pending.size());
+        assertEquals(1, bulkhead.runningCount());
+        assertEquals(0, bulkhead.waitingCount());
+
+        pending.get(1).complete(result);
+        assertSame(result, second.toCompletableFuture().join());
+        assertEquals(0, bulkhead.runningCount());
+    }
+
+}
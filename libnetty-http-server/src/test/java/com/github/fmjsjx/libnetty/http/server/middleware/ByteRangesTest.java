@@ -0,0 +1,37 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class ByteRangesTest {
+
+    @Test
+    public void testParse() {
+        assertArrayEquals(new long[] { 0, 499 }, ByteRanges.parse("bytes=0-499", 10000));
+        assertArrayEquals(new long[] { 500, 999 }, ByteRanges.parse("bytes=500-999", 10000));
+        assertArrayEquals(new long[] { 9500, 9999 }, ByteRanges.parse("bytes=-500", 10000));
+        assertArrayEquals(new long[] { 9500, 9999 }, ByteRanges.parse("bytes=9500-", 10000));
+        assertArrayEquals(new long[] { 0, 9999 }, ByteRanges.parse("bytes=-20000", 10000));
+        assertArrayEquals(new long[] { 9000, 9999 }, ByteRanges.parse("bytes=9000-20000", 10000));
+        assertArrayEquals(new long[] { 0, 0, 9999, 9999 }, ByteRanges.parse("bytes=0-0, -1", 10000));
+        // unsatisfiable ranges are skipped
+        assertArrayEquals(new long[] { 0, 99 }, ByteRanges.parse("bytes=0-99,20000-", 10000));
+        // overlapping and adjacent ranges are coalesced
+        assertArrayEquals(new long[] { 0, 149 }, ByteRanges.parse("bytes=0-99,50-149", 10000));
+        assertArrayEquals(new long[] { 0, 199 }, ByteRanges.parse("bytes=100-199,0-99", 10000));
+        assertArrayEquals(new long[] { 0, 99 }, ByteRanges.parse("bytes=0-99,0-99,10-20", 10000));
+        assertArrayEquals(new long[] { 0, 9, 100, 9999 }, ByteRanges.parse("bytes=-9900,0-9,5000-", 10000));
+        assertArrayEquals(new long[] { 0, 0, 2, 2 }, ByteRanges.parse("bytes=2-2,0-0", 10000));
+        assertSame(ByteRanges.UNSATISFIABLE, ByteRanges.parse("bytes=10000-", 10000));
+        assertSame(ByteRanges.UNSATISFIABLE, ByteRanges.parse("bytes=-0", 10000));
+        // ignored
+        assertNull(ByteRanges.parse(null, 10000));
+        assertNull(ByteRanges.parse("items=0-1", 10000));
+        assertNull(ByteRanges.parse("bytes=abc", 10000));
+        assertNull(ByteRanges.parse("bytes=500-100", 10000));
+        assertNull(ByteRanges.parse("bytes=0-1,2-3,4-5,6-7,8-9,10-11,12-13,14-15,16-17,18-19,20-21,22-23,24-25,"
+                + "26-27,28-29,30-31,32-33", 10000));
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.libnetty.http.server.DelegatingHttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+public class HttpMetricsTest {
+
+    private static HttpRequestContext mockedContext(HttpMethod method, String path) {
+        HttpRequestContext ctx = mock(HttpRequestContext.class);
+        when(ctx.method()).thenReturn(method);
+        when(ctx.path()).thenReturn(path);
+        when(ctx.contentLength()).thenReturn(3);
+        return ctx;
+    }
+
+    private static HttpResult mockedResult(HttpResponseStatus status, long millis) {
+        HttpResult result = mock(HttpResult.class);
+        when(result.responseStatus()).thenReturn(status);
+        when(result.resultLength()).thenReturn(10L);
+        when(result.nanoUsed()).thenReturn(TimeUnit.MILLISECONDS.toNanos(millis));
+        return result;
+    }
+
+    @Test
+    public void testApply() {
+        HttpMetrics metrics = new HttpMetrics();
+        Router router = new Router().get("/users/{id}", ctx -> {
+            assertEquals(1, metrics.routes().stream().filter(r -> r.route().equals("GET /users/{id}")).findFirst()
+                    .get().inFlight());
+            return CompletableFuture.completedFuture(mockedResult(HttpResponseStatus.OK, 2));
+        });
+        MiddlewareChain next = ctx -> router.apply(ctx,
+                c -> CompletableFuture.completedFuture(mockedResult(HttpResponseStatus.NOT_FOUND, 1)));
+
+        for (int i = 0; i < 10; i++) {
+            metrics.apply(mockedContext(HttpMethod.GET, "/users/" + i), next);
+        }
+        metrics.apply(mockedContext(HttpMethod.GET, "/none"), next);
+
+        List<HttpMetrics.RouteMetrics> routes = metrics.routes();
+        assertEquals(2, routes.size());
+        HttpMetrics.RouteMetrics route = routes.get(0);
+        assertEquals("GET /users/{id}", route.route());
+        assertEquals(10, route.statusCount(200));
+        assertEquals(0, route.inFlight());
+        assertEquals(30, route.bytesIn());
+        assertEquals(100, route.bytesOut());
+        assertEquals(10, route.latency().count());
+        assertEquals(2000, route.latency().maxMicros());
+        long p99 = route.latency().percentileMicros(99);
+        assertTrue(p99 <= 2000 && p99 > 2000 * 15 / 16, "p99 = " + p99);
+
+        HttpMetrics.RouteMetrics unmatched = routes.get(1);
+        assertEquals(HttpMetrics.UNMATCHED, unmatched.route());
+        assertEquals(1, unmatched.statusCount(404));
+
+        String text = metrics.toText();
+        assertTrue(text.contains("http_server_requests_total{route=\"GET /users/{id}\",status=\"200\"} 10\n"));
+        assertTrue(text.contains("# TYPE http_server_request_duration_seconds histogram\n"));
+        String bucket = "http_server_request_duration_seconds_bucket{route=\"GET /users/{id}\",";
+        assertTrue(text.contains(bucket + "le=\"0.001\"} 0\n"));
+        assertTrue(text.contains(bucket + "le=\"0.0025\"} 10\n"));
+        assertTrue(text.contains(bucket + "le=\"+Inf\"} 10\n"));
+        assertTrue(text.contains("http_server_request_duration_seconds_sum{route=\"GET /users/{id}\"} 0.02\n"));
+        assertTrue(text.contains("http_server_request_duration_seconds_bucket{route=\"UNMATCHED\",le=\"0.001\"} 1\n"));
+        assertTrue(text.contains("http_server_request_duration_seconds_count{route=\"UNMATCHED\"} 1\n"));
+        assertFalse(text.contains("quantile="));
+    }
+
+    @Test
+    public void testNonStandardMethod() {
+        HttpMetrics metrics = new HttpMetrics();
+        // a route allows all methods
+        Router router = new Router().add("/items/{id}",
+                ctx -> CompletableFuture.completedFuture(mockedResult(HttpResponseStatus.OK, 2)));
+        MiddlewareChain next = ctx -> router.apply(ctx,
+                c -> CompletableFuture.completedFuture(mockedResult(HttpResponseStatus.NOT_FOUND, 1)));
+
+        metrics.apply(mockedContext(HttpMethod.valueOf("PURGE"), "/items/1"), next);
+        metrics.apply(mockedContext(HttpMethod.valueOf("X-RANDOM-1"), "/items/2"), next);
+        metrics.apply(mockedContext(HttpMethod.DELETE, "/items/3"), next);
+
+        List<HttpMetrics.RouteMetrics> routes = metrics.routes();
+        assertEquals(3, routes.size());
+        assertEquals("DELETE /items/{id}", routes.get(0).route());
+        assertEquals(1, routes.get(0).statusCount(200));
+        assertEquals("OTHER /items/{id}", routes.get(1).route());
+        assertEquals(2, routes.get(1).statusCount(200));
+        assertEquals(HttpMetrics.UNMATCHED, routes.get(2).route());
+    }
+
+    @Test
+    public void testMatchedThroughWrappers() {
+        HttpMetrics metrics = new HttpMetrics();
+        Router router = new Router().get("/users/{id}",
+                ctx -> CompletableFuture.completedFuture(mockedResult(HttpResponseStatus.OK, 2)));
+        // another middleware wraps the context between the metrics and the router
+        MiddlewareChain next = ctx -> router.apply(new DelegatingHttpRequestContext(ctx),
+                c -> CompletableFuture.completedFuture(mockedResult(HttpResponseStatus.NOT_FOUND, 1)));
+
+        HttpRequestContext request = mockedContext(HttpMethod.GET, "/users/1");
+        metrics.apply(request, next);
+
+        List<HttpMetrics.RouteMetrics> routes = metrics.routes();
+        assertEquals(1, routes.size());
+        assertEquals("GET /users/{id}", routes.get(0).route());
+        assertEquals(1, routes.get(0).statusCount(200));
+        // the matched route is not stored as a property
+        verify(request, never()).property(any(Object.class), any(Object.class));
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        for (long v = 0; v < 1_000_000; v += 7) {
+            int index = LatencyHistogram.bucketIndex(v);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(upper >= v && upper - v <= Math.max(0, v / 16), "v = " + v + ", upper = " + upper);
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(100_000, histogram.maxMicros());
+        long p50 = histogram.percentileMicros(50);
+        assertTrue(p50 >= 50_000 && p50 <= 50_000 * 17 / 16, "p50 = " + p50);
+    }
+
+}
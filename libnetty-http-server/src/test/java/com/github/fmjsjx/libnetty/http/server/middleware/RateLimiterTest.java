@@ -0,0 +1,156 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.TOO_MANY_REQUESTS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+public class RateLimiterTest {
+
+    private final CompletableFuture<HttpResult> passed = new CompletableFuture<>();
+
+    private final MiddlewareChain next = ctx -> passed;
+
+    private final CompletableFuture<HttpResult> rejected = new CompletableFuture<>();
+
+    private final List<HttpHeaders> rejectedHeaders = new ArrayList<>();
+
+    private HttpRequestContext mockedContext(String apiKey) {
+        HttpRequestContext ctx = mock(HttpRequestContext.class);
+        HttpHeaders headers = new DefaultHttpHeaders();
+        if (apiKey != null) {
+            headers.set("x-api-key", apiKey);
+        }
+        when(ctx.headers()).thenReturn(headers);
+        when(ctx.simpleRespond(eq(TOO_MANY_REQUESTS), any())).thenAnswer(invocation -> {
+            HttpHeaders responseHeaders = new DefaultHttpHeaders();
+            invocation.<Consumer<HttpHeaders>>getArgument(1).accept(responseHeaders);
+            rejectedHeaders.add(responseHeaders);
+            return rejected;
+        });
+        return ctx;
+    }
+
+    private void testLimit(RateLimiter limiter) {
+        assertSame(passed, limiter.apply(mockedContext("a"), next));
+        assertSame(passed, limiter.apply(mockedContext("a"), next));
+        assertSame(rejected, limiter.apply(mockedContext("a"), next));
+        assertEquals(1, limiter.rejectedCount());
+        HttpHeaders headers = rejectedHeaders.get(0);
+        assertEquals("60", headers.get(HttpHeaderNames.RETRY_AFTER));
+        assertEquals("2", headers.get("ratelimit-limit"));
+        assertEquals("0", headers.get("ratelimit-remaining"));
+        assertEquals("120", headers.get("ratelimit-reset"));
+
+        // other keys are not affected
+        assertSame(passed, limiter.apply(mockedContext("b"), next));
+        // requests without key are not limited
+        for (int i = 0; i < 5; i++) {
+            assertSame(passed, limiter.apply(mockedContext(null), next));
+        }
+    }
+
+    @Test
+    public void testApply() {
+        RateLimiter.Options options = new RateLimiter.Options().rate(1, Duration.ofMinutes(1)).burst(2);
+        RateLimiter limiter = new RateLimiter(RateLimiter.byHeader("x-api-key"), options);
+        testLimit(limiter);
+        assertEquals(2, limiter.keyCount());
+    }
+
+    @Test
+    public void testEventLoopLocal() {
+        RateLimiter.Options options = new RateLimiter.Options().rate(1, Duration.ofMinutes(1)).burst(2)
+                .eventLoopLocal(true);
+        testLimit(new RateLimiter(RateLimiter.byHeader("x-api-key"), options));
+    }
+
+    @Test
+    public void testMaxKeys() {
+        RateLimiter.Options options = new RateLimiter.Options().rate(1, Duration.ofMinutes(1)).burst(1)
+                .maxKeys(2);
+        RateLimiter limiter = new RateLimiter(RateLimiter.byHeader("x-api-key"), options);
+        limiter.apply(mockedContext("a"), next);
+        limiter.apply(mockedContext("b"), next);
+        assertSame(passed, limiter.apply(mockedContext("c"), next));
+        assertEquals(1, limiter.untrackedCount());
+        assertEquals(2, limiter.keyCount());
+    }
+
+    @Test
+    public void testOverflow() {
+        testOverflow(false);
+        testOverflow(true);
+    }
+
+    private void testOverflow(boolean eventLoopLocal) {
+        RateLimiter.Options options = new RateLimiter.Options().rate(1, Duration.ofMinutes(1)).burst(2).maxKeys(1)
+                .eventLoopLocal(eventLoopLocal);
+        RateLimiter limiter = new RateLimiter(RateLimiter.byHeader("x-api-key"), options);
+        assertSame(passed, limiter.apply(mockedContext("a"), next));
+        // the rotating keys share the overflow bucket
+        assertSame(passed, limiter.apply(mockedContext("b"), next));
+        assertSame(passed, limiter.apply(mockedContext("c"), next));
+        assertSame(rejected, limiter.apply(mockedContext("d"), next));
+        assertEquals(3, limiter.untrackedCount());
+        assertEquals(1, limiter.rejectedCount());
+        // the tracked key is not affected
+        assertSame(passed, limiter.apply(mockedContext("a"), next));
+    }
+
+    @Test
+    public void testFullSweepInterval() {
+        AtomicLong nanoTime = new AtomicLong();
+        RateLimiter.Options options = new RateLimiter.Options().rate(1000, Duration.ofSeconds(1)).burst(10)
+                .maxKeys(2);
+        RateLimiter limiter = new RateLimiter(RateLimiter.byHeader("x-api-key"), options, nanoTime::get);
+        limiter.apply(mockedContext("a"), next);
+        limiter.apply(mockedContext("b"), next);
+        // swept, but the buckets are not full yet
+        assertSame(passed, limiter.apply(mockedContext("c"), next));
+        assertEquals(1, limiter.untrackedCount());
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+        // the buckets are full now, but not swept again so soon
+        assertSame(passed, limiter.apply(mockedContext("d"), next));
+        assertEquals(2, limiter.untrackedCount());
+        assertEquals(2, limiter.keyCount());
+
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertSame(passed, limiter.apply(mockedContext("e"), next));
+        assertEquals(2, limiter.untrackedCount());
+        assertEquals(1, limiter.keyCount());
+    }
+
+    @Test
+    public void testByChannelAddress() {
+        HttpRequestContext ctx = mockedContext(null);
+        Channel channel = mock(Channel.class);
+        when(channel.remoteAddress()).thenReturn(new InetSocketAddress("127.0.0.1", 12345));
+        when(ctx.channel()).thenReturn(channel);
+        ctx.headers().set("x-forwarded-for", "10.0.0.1");
+
+        assertEquals("10.0.0.1", RateLimiter.byRemoteAddress().apply(ctx));
+        Object key = RateLimiter.byChannelAddress().apply(ctx);
+        assertEquals(new InetSocketAddress("127.0.0.1", 0).getAddress(), key);
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.*;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext.HttpResponseFactory;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+public class ResponseCacheTest {
+
+    private final List<FullHttpResponse> sent = new ArrayList<>();
+
+    private final AtomicInteger invoked = new AtomicInteger();
+
+    private final MiddlewareChain next = ctx -> {
+        invoked.incrementAndGet();
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, OK,
+                Unpooled.copiedBuffer("hello", StandardCharsets.UTF_8));
+        switch (ctx.path()) {
+        case "/private":
+            response.headers().set(CACHE_CONTROL, "private");
+            break;
+        case "/public":
+            response.headers().set(CACHE_CONTROL, "public, max-age=60");
+            break;
+        case "/vary-any":
+            response.headers().set(CACHE_CONTROL, "max-age=60").set(VARY, "*");
+            break;
+        case "/vary-user":
+            response.headers().set(CACHE_CONTROL, "max-age=60").set(VARY, "Accept-Encoding, X-User");
+            break;
+        case "/vary-language":
+            response.headers().set(CACHE_CONTROL, "max-age=60").set(VARY, "Accept-Language");
+            break;
+        default:
+            response.headers().set(CACHE_CONTROL, "max-age=60");
+            break;
+        }
+        return ctx.sendResponse(response, 5);
+    };
+
+    private HttpRequestContext mockedContext(String path, HttpHeaders headers) {
+        HttpRequestContext ctx = mock(HttpRequestContext.class);
+        when(ctx.method()).thenReturn(HttpMethod.GET);
+        when(ctx.version()).thenReturn(HttpVersion.HTTP_1_1);
+        when(ctx.path()).thenReturn(path);
+        when(ctx.rawQuery()).thenReturn("");
+        when(ctx.headers()).thenReturn(headers);
+        when(ctx.isKeepAlive()).thenReturn(true);
+        HttpResponseFactory responseFactory = mock(HttpResponseFactory.class);
+        when(responseFactory.createFull(any())).thenAnswer(
+                invocation -> new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, invocation.getArgument(0)));
+        when(ctx.responseFactory()).thenReturn(responseFactory);
+        when(ctx.sendResponse(any(), anyInt())).thenAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            return CompletableFuture.completedFuture(mock(HttpResult.class));
+        });
+        return ctx;
+    }
+
+    @Test
+    public void testApply() throws Exception {
+        ResponseCache cache = new ResponseCache();
+
+        cache.apply(mockedContext("/test", new DefaultHttpHeaders()), next);
+        assertEquals(1, invoked.get());
+        assertEquals(1, cache.cachedCount());
+        assertEquals(1, cache.missCount());
+        String etag = sent.get(0).headers().get(ETAG);
+        assertNotNull(etag);
+
+        cache.apply(mockedContext("/test", new DefaultHttpHeaders()), next);
+        assertEquals(1, invoked.get());
+        assertEquals(1, cache.hitCount());
+        FullHttpResponse hit = sent.get(1);
+        assertEquals(OK, hit.status());
+        assertEquals("hello", hit.content().toString(StandardCharsets.UTF_8));
+        assertEquals(etag, hit.headers().get(ETAG));
+        assertEquals("max-age=60", hit.headers().get(CACHE_CONTROL));
+
+        cache.apply(mockedContext("/test", new DefaultHttpHeaders().set(IF_NONE_MATCH, etag)), next);
+        assertEquals(1, invoked.get());
+        assertEquals(NOT_MODIFIED, sent.get(2).status());
+        assertEquals(etag, sent.get(2).headers().get(ETAG));
+
+        cache.apply(mockedContext("/test", new DefaultHttpHeaders().set(CACHE_CONTROL, "no-cache")), next);
+        assertEquals(2, invoked.get());
+
+        cache.apply(mockedContext("/private", new DefaultHttpHeaders()), next);
+        cache.apply(mockedContext("/private", new DefaultHttpHeaders()), next);
+        assertEquals(4, invoked.get());
+        assertEquals(1, cache.cachedCount());
+
+        cache.close();
+        assertEquals(0, cache.cachedCount());
+        assertEquals(0, cache.cachedSize());
+    }
+
+    @Test
+    public void testCredentialed() throws Exception {
+        ResponseCache cache = new ResponseCache();
+
+        // private responses of the credentialed requests are never stored
+        cache.apply(mockedContext("/test", new DefaultHttpHeaders().set(AUTHORIZATION, "Basic dXNlcjpwYXNz")), next);
+        cache.apply(mockedContext("/test", new DefaultHttpHeaders().set(COOKIE, "session=1")), next);
+        assertEquals(2, invoked.get());
+        assertEquals(0, cache.cachedCount());
+
+        // and the cached responses are not shared with them
+        cache.apply(mockedContext("/test", new DefaultHttpHeaders()), next);
+        assertEquals(1, cache.cachedCount());
+        cache.apply(mockedContext("/test", new DefaultHttpHeaders().set(COOKIE, "session=2")), next);
+        assertEquals(4, invoked.get());
+        assertEquals(0, cache.hitCount());
+
+        // unless explicitly public
+        cache.apply(mockedContext("/public", new DefaultHttpHeaders().set(COOKIE, "session=1")), next);
+        assertEquals(5, invoked.get());
+        assertEquals(2, cache.cachedCount());
+        cache.apply(mockedContext("/public", new DefaultHttpHeaders().set(COOKIE, "session=2")), next);
+        assertEquals(5, invoked.get());
+        assertEquals(1, cache.hitCount());
+
+        cache.close();
+    }
+
+    @Test
+    public void testVary() throws Exception {
+        ResponseCache cache = new ResponseCache(new ResponseCache.Options().keyHeaders("accept-language"));
+
+        cache.apply(mockedContext("/vary-any", new DefaultHttpHeaders()), next);
+        cache.apply(mockedContext("/vary-user", new DefaultHttpHeaders().set("x-user", "a")), next);
+        assertEquals(0, cache.cachedCount());
+        cache.apply(mockedContext("/vary-user", new DefaultHttpHeaders().set("x-user", "b")), next);
+        assertEquals(3, invoked.get());
+        assertEquals(0, cache.hitCount());
+
+        // the header is part of the key
+        cache.apply(mockedContext("/vary-language", new DefaultHttpHeaders().set(ACCEPT_LANGUAGE, "en")), next);
+        assertEquals(1, cache.cachedCount());
+        cache.apply(mockedContext("/vary-language", new DefaultHttpHeaders().set(ACCEPT_LANGUAGE, "fr")), next);
+        assertEquals(5, invoked.get());
+        cache.apply(mockedContext("/vary-language", new DefaultHttpHeaders().set(ACCEPT_LANGUAGE, "en")), next);
+        assertEquals(5, invoked.get());
+        assertEquals(1, cache.hitCount());
+
+        cache.close();
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.METHOD_NOT_ALLOWED;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpServiceInvoker;
+import com.github.fmjsjx.libnetty.http.server.PathVariables;
+
+import io.netty.handler.codec.http.HttpMethod;
+
+public class RouterTest {
+
+    private final AtomicReference<String> matched = new AtomicReference<>();
+
+    private HttpServiceInvoker service(String name) {
+        return ctx -> {
+            matched.set(name);
+            return null;
+        };
+    }
+
+    private Router router() {
+        return new Router() // add routes
+                .get("/users/{id}", service("user")) // path variable
+                .get("/users/me", service("me")) // static segment after path variable
+                .post("/users/{id}", service("userPost")) // same path with another method
+                .get("/users/{userId}/items/{propId}-{propType}", service("items")) // mixed segment
+                .get("/images/{name}_{width}x{height}.{type}", service("image")) // mixed segment
+                .put("/files/{name}", service("file")) // only PUT allowed
+                .get("/", service("root")) // root
+                .init();
+    }
+
+    private HttpRequestContext mockedContext(HttpMethod method, String path,
+            AtomicReference<PathVariables> pathVariables) {
+        HttpRequestContext ctx = mock(HttpRequestContext.class);
+        when(ctx.method()).thenReturn(method);
+        when(ctx.path()).thenReturn(path);
+        when(ctx.pathVariables(any())).thenAnswer(invocation -> {
+            pathVariables.set(invocation.getArgument(0));
+            return ctx;
+        });
+        return ctx;
+    }
+
+    private PathVariables route(Router router, HttpMethod method, String path) {
+        matched.set(null);
+        AtomicReference<PathVariables> pathVariables = new AtomicReference<>();
+        router.apply(mockedContext(method, path, pathVariables), ctx -> {
+            matched.set("next");
+            return null;
+        });
+        return pathVariables.get();
+    }
+
+    @Test
+    public void testRouting() {
+        Router router = router();
+
+        PathVariables pathVariables = route(router, HttpMethod.GET, "/users/123");
+        assertEquals("user", matched.get());
+        assertEquals("123", pathVariables.getString("id").get());
+
+        pathVariables = route(router, HttpMethod.GET, "//users//123///");
+        assertEquals("user", matched.get());
+        assertEquals("123", pathVariables.getString("id").get());
+
+        pathVariables = route(router, HttpMethod.GET, "/users/me");
+        assertEquals("me", matched.get());
+        assertEquals(0, pathVariables.size());
+
+        pathVariables = route(router, HttpMethod.POST, "/users/me/");
+        assertEquals("userPost", matched.get());
+        assertEquals("me", pathVariables.getString("id").get());
+
+        pathVariables = route(router, HttpMethod.GET, "/users/123/items/101-303");
+        assertEquals("items", matched.get());
+        assertEquals(3, pathVariables.size());
+        assertEquals("123", pathVariables.getString("userId").get());
+        assertEquals("101", pathVariables.getString("propId").get());
+        assertEquals("303", pathVariables.getString("propType").get());
+
+        pathVariables = route(router, HttpMethod.GET, "/images/test_1920x1080.png");
+        assertEquals("image", matched.get());
+        assertEquals("test", pathVariables.getString("name").get());
+        assertEquals(1920, pathVariables.getInt("width").getAsInt());
+        assertEquals(1080, pathVariables.getInt("height").getAsInt());
+        assertEquals("png", pathVariables.getString("type").get());
+
+        route(router, HttpMethod.GET, "/images/error1920x1080.png");
+        assertEquals("next", matched.get());
+
+        route(router, HttpMethod.GET, "/");
+        assertEquals("root", matched.get());
+        route(router, HttpMethod.GET, "///");
+        assertEquals("root", matched.get());
+
+        route(router, HttpMethod.GET, "/nusers/123");
+        assertEquals("next", matched.get());
+        route(router, HttpMethod.GET, "/users/123/items");
+        assertEquals("next", matched.get());
+    }
+
+    @Test
+    public void testMethodNotAllowed() {
+        Router router = router();
+        AtomicReference<PathVariables> pathVariables = new AtomicReference<>();
+        HttpRequestContext ctx = mockedContext(HttpMethod.GET, "/files/test.txt", pathVariables);
+        router.apply(ctx, c -> {
+            matched.set("next");
+            return null;
+        });
+        verify(ctx).simpleRespond(METHOD_NOT_ALLOWED);
+        assertNull(matched.get());
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.libnetty.http.server.HttpRequestContext;
+import com.github.fmjsjx.libnetty.http.server.HttpResult;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+
+public class SingleFlightTest {
+
+    private final List<HttpRequestContext> invoked = new ArrayList<>();
+
+    private final CompletableFuture<HttpResult> leaderFuture = new CompletableFuture<>();
+
+    private final MiddlewareChain next = ctx -> {
+        invoked.add(ctx);
+        return leaderFuture;
+    };
+
+    private final List<FullHttpResponse> sent = new ArrayList<>();
+
+    private HttpRequestContext mockedContext(String uri) {
+        HttpRequestContext ctx = mock(HttpRequestContext.class);
+        EventLoop eventLoop = mock(EventLoop.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(eventLoop).execute(any());
+        when(ctx.eventLoop()).thenReturn(eventLoop);
+        when(ctx.method()).thenReturn(HttpMethod.GET);
+        when(ctx.uri()).thenReturn(uri);
+        when(ctx.version()).thenReturn(HttpVersion.HTTP_1_1);
+        when(ctx.isKeepAlive()).thenReturn(true);
+        when(ctx.sendResponse(any(), anyInt())).thenAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            return CompletableFuture.completedFuture(mock(HttpResult.class));
+        });
+        return ctx;
+    }
+
+    @Test
+    public void testApply() {
+        SingleFlight singleFlight = new SingleFlight();
+
+        CompletionStage<HttpResult> leader = singleFlight.apply(mockedContext("/test"), next);
+        CompletionStage<HttpResult> follower1 = singleFlight.apply(mockedContext("/test"), next);
+        CompletionStage<HttpResult> follower2 = singleFlight.apply(mockedContext("/test"), next);
+        assertEquals(1, invoked.size());
+        assertEquals(1, singleFlight.inFlightCount());
+        assertFalse(follower1.toCompletableFuture().isDone());
+
+        ByteBuf content = Unpooled.copiedBuffer("hello", StandardCharsets.UTF_8);
+        invoked.get(0).sendResponse(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, OK, content), 5);
+        assertEquals(0, singleFlight.inFlightCount());
+        assertEquals(3, sent.size());
+        for (FullHttpResponse response : sent) {
+            assertEquals("hello", response.content().toString(StandardCharsets.UTF_8));
+        }
+        assertTrue(follower1.toCompletableFuture().isDone());
+        assertTrue(follower2.toCompletableFuture().isDone());
+        assertEquals(3, content.refCnt());
+
+        leaderFuture.complete(mock(HttpResult.class));
+        assertTrue(leader.toCompletableFuture().isDone());
+        assertEquals(1, singleFlight.leaderCount());
+        assertEquals(2, singleFlight.collapsedCount());
+        assertEquals(2.0 / 3, singleFlight.collapseRatio(), 1e-9);
+
+        // a new flight after landed
+        singleFlight.apply(mockedContext("/test"), next);
+        assertEquals(2, invoked.size());
+    }
+
+}
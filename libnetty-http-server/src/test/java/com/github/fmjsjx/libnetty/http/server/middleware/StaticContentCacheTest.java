@@ -0,0 +1,148 @@
+package com.github.fmjsjx.libnetty.http.server.middleware;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.fmjsjx.libnetty.http.server.middleware.StaticContentCache.CachedContent;
+
+import io.netty.util.CharsetUtil;
+
+public class StaticContentCacheTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @TempDir
+    Path dir;
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(CharsetUtil.UTF_8));
+    }
+
+    private static String put(StaticContentCache cache, String key, Path file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        CachedContent cached = cache.put(key, file, attrs, "\"etag\"", "text/plain", null);
+        assertNotNull(cached);
+        try {
+            return cached.content.toString(CharsetUtil.UTF_8);
+        } finally {
+            cached.content.release();
+        }
+    }
+
+    private static String get(StaticContentCache cache, String key) {
+        CachedContent cached = cache.get(key);
+        if (cached == null) {
+            return null;
+        }
+        try {
+            return cached.content.toString(CharsetUtil.UTF_8);
+        } finally {
+            cached.content.release();
+        }
+    }
+
+    @Test
+    public void testAccepts() {
+        try (StaticContentCache cache = new StaticContentCache(100, 10, NEVER, false)) {
+            assertTrue(cache.accepts(0));
+            assertTrue(cache.accepts(10));
+            assertFalse(cache.accepts(11));
+        }
+        try (StaticContentCache cache = new StaticContentCache(5, 10, NEVER, false)) {
+            // never larger than the whole cache
+            assertTrue(cache.accepts(5));
+            assertFalse(cache.accepts(6));
+        }
+    }
+
+    @Test
+    public void testLruEviction() throws Exception {
+        try (StaticContentCache cache = new StaticContentCache(10, 10, NEVER, false)) {
+            assertEquals("aaaa", put(cache, "a", write("a.txt", "aaaa")));
+            assertEquals("bbbb", put(cache, "b", write("b.txt", "bbbb")));
+            assertTrue(cache.toString().contains("size=8, entries=2"), cache.toString());
+            // a is now the most recently used
+            assertEquals("aaaa", get(cache, "a"));
+
+            assertEquals("cccc", put(cache, "c", write("c.txt", "cccc")));
+            assertTrue(cache.toString().contains("size=8, entries=2"), cache.toString());
+            assertNull(get(cache, "b"));
+            assertEquals("aaaa", get(cache, "a"));
+            assertEquals("cccc", get(cache, "c"));
+
+            // replacing an entry does not count its old size
+            assertEquals("cc", put(cache, "c", write("c.txt", "cc")));
+            assertTrue(cache.toString().contains("size=6, entries=2"), cache.toString());
+
+            // the eldest entries are evicted until the size is within the bound
+            assertEquals("dddddddddd", put(cache, "d", write("d.txt", "dddddddddd")));
+            assertTrue(cache.toString().contains("size=10, entries=1"), cache.toString());
+            assertNull(get(cache, "a"));
+            assertNull(get(cache, "c"));
+            assertEquals("dddddddddd", get(cache, "d"));
+        }
+    }
+
+    @Test
+    public void testRevalidate() throws Exception {
+        try (StaticContentCache cache = new StaticContentCache(100, 100, 0, false)) {
+            Path file = write("a.txt", "aaaa");
+            put(cache, "a", file);
+            assertEquals("aaaa", get(cache, "a"));
+
+            // the same size but a different modified time
+            Files.write(file, "AAAA".getBytes(CharsetUtil.UTF_8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+            assertNull(get(cache, "a"));
+            assertTrue(cache.toString().contains("size=0, entries=0"), cache.toString());
+
+            assertEquals("AAAA", put(cache, "a", file));
+            // a different size
+            Files.write(file, "AAAAA".getBytes(CharsetUtil.UTF_8));
+            assertNull(get(cache, "a"));
+
+            put(cache, "a", file);
+            Files.delete(file);
+            assertNull(get(cache, "a"));
+        }
+    }
+
+    @Test
+    public void testRevalidateInterval() throws Exception {
+        try (StaticContentCache cache = new StaticContentCache(100, 100, NEVER, false)) {
+            Path file = write("a.txt", "aaaa");
+            put(cache, "a", file);
+            Files.write(file, "AAAAA".getBytes(CharsetUtil.UTF_8));
+            // not checked again within the revalidate interval
+            assertEquals("aaaa", get(cache, "a"));
+        }
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        try (StaticContentCache cache = new StaticContentCache(100, 100, NEVER, true)) {
+            Path file = write("a.txt", "aaaa");
+            put(cache, "a", file);
+            assertEquals("aaaa", get(cache, "a"));
+
+            Files.write(file, "AAAAA".getBytes(CharsetUtil.UTF_8));
+            // invalidated by the watcher without any revalidation
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (get(cache, "a") != null) {
+                assertTrue(System.nanoTime() < deadline, "timeout");
+                Thread.sleep(10);
+            }
+            assertTrue(cache.toString().contains("size=0, entries=0"), cache.toString());
+        }
+    }
+
+}
@@ -7,6 +7,7 @@ dependencies {
 
     implementation("org.slf4j:slf4j-api")
     api("io.netty:netty-codec-http")
+    compileOnly("com.aayushatharva.brotli4j:brotli4j")
 
     testImplementation("org.junit.jupiter:junit-jupiter-api")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine")
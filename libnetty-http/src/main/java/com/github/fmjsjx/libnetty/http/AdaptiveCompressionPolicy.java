@@ -0,0 +1,345 @@
+package com.github.fmjsjx.libnetty.http;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+/**
+ * A policy adjusts the compression levels of {@link HttpContentCompressorFactory}
+ * by the load of the event loops.
+ * <p>
+ * The load is measured by the number of pending tasks of the event loops
+ * encoding the responses. The maximum number observed in each sample interval
+ * is compared with the watermarks:
+ * <ul>
+ * <li>above the high watermark: lower the levels one step toward the minimum
+ * levels</li>
+ * <li>below the low watermark: raise the levels one step toward the levels
+ * configured in the factory</li>
+ * <li>above the overload watermark: also skip compressing the contents larger
+ * than the overload content size threshold, until the next sample below
+ * it</li>
+ * </ul>
+ * Level transitions are exposed by {@link #currentStep()},
+ * {@link #levelDownCount()}, {@link #levelUpCount()} and
+ * {@link #skippedCount()}.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ *
+ * @see HttpContentCompressorFactory.Builder#adaptive(AdaptiveCompressionPolicy)
+ */
+public class AdaptiveCompressionPolicy {
+
+    /**
+     * Creates a new {@link Builder}.
+     *
+     * @return a {@code AdaptiveCompressionPolicy.Builder}
+     */
+    public static final Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A builder to build {@link AdaptiveCompressionPolicy}s.
+     *
+     * @since 2.3
+     *
+     * @author MJ Fang
+     */
+    public static final class Builder {
+
+        private int steps = 4;
+        private int minCompressionLevel = 1;
+        private int minBrotliQuality = 1;
+        private int lowWatermark = 8;
+        private int highWatermark = 64;
+        private int overloadWatermark = 256;
+        private int overloadContentSizeThreshold = 64 * 1024;
+        private Duration sampleInterval = Duration.ofMillis(100);
+
+        /**
+         * Set the number of steps between the configured levels and the minimum
+         * levels. The default value is {@code 4}.
+         *
+         * @param steps the number of steps
+         * @return this builder
+         */
+        public Builder steps(int steps) {
+            if (steps < 1) {
+                throw new IllegalArgumentException("steps must be positive");
+            }
+            this.steps = steps;
+            return this;
+        }
+
+        /**
+         * Set the minimum compression level of {@code gzip} and {@code deflate}.
+         * The default value is {@code 1}.
+         *
+         * @param minCompressionLevel the minimum compression level
+         * @return this builder
+         */
+        public Builder minCompressionLevel(int minCompressionLevel) {
+            if (minCompressionLevel < 1 || minCompressionLevel > 9) {
+                throw new IllegalArgumentException("minCompressionLevel must be between 1 and 9");
+            }
+            this.minCompressionLevel = minCompressionLevel;
+            return this;
+        }
+
+        /**
+         * Set the minimum quality of {@code br(Brotli)}. The default value is
+         * {@code 1}.
+         *
+         * @param minBrotliQuality the minimum quality
+         * @return this builder
+         */
+        public Builder minBrotliQuality(int minBrotliQuality) {
+            if (minBrotliQuality < 0 || minBrotliQuality > 11) {
+                throw new IllegalArgumentException("minBrotliQuality must be between 0 and 11");
+            }
+            this.minBrotliQuality = minBrotliQuality;
+            return this;
+        }
+
+        /**
+         * Set the low and high watermarks of the pending tasks. The default values
+         * are {@code 8} and {@code 64}.
+         *
+         * @param lowWatermark  the low watermark
+         * @param highWatermark the high watermark
+         * @return this builder
+         */
+        public Builder watermarks(int lowWatermark, int highWatermark) {
+            if (lowWatermark < 0 || highWatermark <= lowWatermark) {
+                throw new IllegalArgumentException("require 0 <= lowWatermark < highWatermark");
+            }
+            this.lowWatermark = lowWatermark;
+            this.highWatermark = highWatermark;
+            return this;
+        }
+
+        /**
+         * Set the overload watermark of the pending tasks and the content size
+         * threshold above which the contents are not compressed when overloaded.
+         * The default values are {@code 256} and {@code 65536}.
+         *
+         * @param overloadWatermark            the overload watermark
+         * @param overloadContentSizeThreshold the content size threshold
+         * @return this builder
+         */
+        public Builder overload(int overloadWatermark, int overloadContentSizeThreshold) {
+            if (overloadContentSizeThreshold < 0) {
+                throw new IllegalArgumentException("overloadContentSizeThreshold must not be negative");
+            }
+            this.overloadWatermark = overloadWatermark;
+            this.overloadContentSizeThreshold = overloadContentSizeThreshold;
+            return this;
+        }
+
+        /**
+         * Set the sample interval. The levels change at most one step per
+         * interval. The default value is {@code 100 milliseconds}.
+         *
+         * @param sampleInterval the sample interval
+         * @return this builder
+         */
+        public Builder sampleInterval(Duration sampleInterval) {
+            this.sampleInterval = Objects.requireNonNull(sampleInterval, "sampleInterval must not be null");
+            return this;
+        }
+
+        /**
+         * Creates a new {@link AdaptiveCompressionPolicy} with the current
+         * settings.
+         *
+         * @return a {@code AdaptiveCompressionPolicy}
+         */
+        public AdaptiveCompressionPolicy build() {
+            if (overloadWatermark < highWatermark) {
+                throw new IllegalArgumentException("overloadWatermark must not be less than highWatermark");
+            }
+            return new AdaptiveCompressionPolicy(this);
+        }
+
+        private Builder() {
+        }
+
+    }
+
+    private final int steps;
+    private final int minCompressionLevel;
+    private final int minBrotliQuality;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final int overloadWatermark;
+    private final int overloadContentSizeThreshold;
+    private final long sampleIntervalNanos;
+
+    private final AtomicLong sampleStartNanos = new AtomicLong(System.nanoTime());
+    private final AtomicInteger maxPendingTasks = new AtomicInteger();
+    private volatile int step;
+    private volatile boolean overloaded;
+
+    private final LongAdder levelDownCount = new LongAdder();
+    private final LongAdder levelUpCount = new LongAdder();
+    private final LongAdder skippedCount = new LongAdder();
+
+    private AdaptiveCompressionPolicy(Builder builder) {
+        this.steps = builder.steps;
+        this.minCompressionLevel = builder.minCompressionLevel;
+        this.minBrotliQuality = builder.minBrotliQuality;
+        this.lowWatermark = builder.lowWatermark;
+        this.highWatermark = builder.highWatermark;
+        this.overloadWatermark = builder.overloadWatermark;
+        this.overloadContentSizeThreshold = builder.overloadContentSizeThreshold;
+        this.sampleIntervalNanos = builder.sampleInterval.toNanos();
+    }
+
+    /**
+     * Samples the load of the specified event loop and adjusts the levels if the
+     * sample interval is elapsed.
+     *
+     * @param executor the event loop
+     */
+    void sample(EventExecutor executor) {
+        if (executor instanceof SingleThreadEventExecutor) {
+            int pendingTasks = ((SingleThreadEventExecutor) executor).pendingTasks();
+            maxPendingTasks.accumulateAndGet(pendingTasks, Math::max);
+        }
+        long now = System.nanoTime();
+        long start = sampleStartNanos.get();
+        if (now - start >= sampleIntervalNanos && sampleStartNanos.compareAndSet(start, now)) {
+            adjust(maxPendingTasks.getAndSet(0));
+        }
+    }
+
+    void adjust(int pendingTasks) {
+        overloaded = pendingTasks > overloadWatermark;
+        int step = this.step;
+        if (pendingTasks > highWatermark) {
+            if (step < steps) {
+                this.step = step + 1;
+                levelDownCount.increment();
+            }
+        } else if (pendingTasks < lowWatermark) {
+            if (step > 0) {
+                this.step = step - 1;
+                levelUpCount.increment();
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if the content with the specified length should not be
+     * compressed currently.
+     *
+     * @param contentLength the length of the content, {@code -1} if unknown
+     * @return {@code true} if the content should not be compressed
+     */
+    boolean shouldSkip(int contentLength) {
+        if (overloaded && (contentLength < 0 || contentLength > overloadContentSizeThreshold)) {
+            skippedCount.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the current compression level of {@code gzip} and {@code deflate}.
+     *
+     * @param configuredLevel the level configured in the factory
+     * @return the current compression level
+     */
+    int compressionLevel(int configuredLevel) {
+        return scale(configuredLevel, Math.min(configuredLevel, minCompressionLevel));
+    }
+
+    /**
+     * Returns the current quality of {@code br(Brotli)}.
+     *
+     * @param configuredQuality the quality configured in the factory
+     * @return the current quality
+     */
+    int brotliQuality(int configuredQuality) {
+        return scale(configuredQuality, Math.min(configuredQuality, minBrotliQuality));
+    }
+
+    private int scale(int max, int min) {
+        return max - (max - min) * step / steps;
+    }
+
+    /**
+     * Returns the current step, {@code 0} means the configured levels are used,
+     * and {@link #steps()} means the minimum levels are used.
+     *
+     * @return the current step
+     */
+    public int currentStep() {
+        return step;
+    }
+
+    /**
+     * Returns the number of steps between the configured levels and the minimum
+     * levels.
+     *
+     * @return the number of steps
+     */
+    public int steps() {
+        return steps;
+    }
+
+    /**
+     * Returns {@code true} if the event loops are overloaded at the last sample.
+     *
+     * @return {@code true} if overloaded
+     */
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    /**
+     * Returns the total number of the transitions to lower levels.
+     *
+     * @return the total number of the transitions to lower levels
+     */
+    public long levelDownCount() {
+        return levelDownCount.sum();
+    }
+
+    /**
+     * Returns the total number of the transitions to higher levels.
+     *
+     * @return the total number of the transitions to higher levels
+     */
+    public long levelUpCount() {
+        return levelUpCount.sum();
+    }
+
+    /**
+     * Returns the total number of the responses not compressed because of
+     * overload.
+     *
+     * @return the total number of the skipped responses
+     */
+    public long skippedCount() {
+        return skippedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveCompressionPolicy(steps=" + steps + ", minCompressionLevel=" + minCompressionLevel
+                + ", minBrotliQuality=" + minBrotliQuality + ", lowWatermark=" + lowWatermark + ", highWatermark="
+                + highWatermark + ", overloadWatermark=" + overloadWatermark + ", overloadContentSizeThreshold="
+                + overloadContentSizeThreshold + ", sampleInterval=" + Duration.ofNanos(sampleIntervalNanos)
+                + ", currentStep=" + step + ", overloaded=" + overloaded + ")";
+    }
+
+}
@@ -1,8 +1,16 @@
 package com.github.fmjsjx.libnetty.http;
 
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.function.Consumer;
 
-import io.netty.handler.codec.compression.StandardCompressionOptions;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.compression.Brotli;
+import io.netty.handler.codec.compression.BrotliEncoder;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
 import io.netty.handler.codec.http.HttpContentCompressor;
 
 /**
@@ -20,6 +28,48 @@ public class HttpContentCompressorFactory {
     private static final int DEFAULT_WINDOW_BITS = 15;
     private static final int DEFAULT_MEM_LEVEL = 8;
     private static final int DEFAULT_CONTENT_SIZE_THRESHOLD = 1024;
+    private static final int DEFAULT_BROTLI_QUALITY = 4;
+
+    /**
+     * The default content types excluded from compression, which are already
+     * compressed.
+     * 
+     * @since 2.3
+     */
+    public static final String[] DEFAULT_EXCLUDED_CONTENT_TYPES = { "image/png", "image/jpeg", "image/gif",
+            "image/webp", "image/avif", "audio/", "video/", "font/woff", "font/woff2", "application/zip",
+            "application/gzip", "application/x-gzip", "application/x-bzip2", "application/x-7z-compressed",
+            "application/vnd.rar", "application/x-xz", "application/zstd" };
+
+    /**
+     * The supported content encodings.
+     * 
+     * @since 2.3
+     */
+    enum Encoding {
+
+        BR("br"), GZIP("gzip"), DEFLATE("deflate");
+
+        private final String contentEncoding;
+
+        private Encoding(String contentEncoding) {
+            this.contentEncoding = contentEncoding;
+        }
+
+        String contentEncoding() {
+            return contentEncoding;
+        }
+
+        private static final Encoding of(String contentEncoding) {
+            for (Encoding encoding : values()) {
+                if (encoding.contentEncoding.equalsIgnoreCase(contentEncoding)) {
+                    return encoding;
+                }
+            }
+            throw new IllegalArgumentException("unsupported content encoding " + contentEncoding);
+        }
+
+    }
 
     /**
      * Returns an apply action that just create builder with default settings but do
@@ -56,6 +106,11 @@ public class HttpContentCompressorFactory {
         private int windowBits = DEFAULT_WINDOW_BITS;
         private int memLevel = DEFAULT_MEM_LEVEL;
         private int contentSizeThreshold = DEFAULT_CONTENT_SIZE_THRESHOLD;
+        private int brotliQuality = -1;
+        private int brotliContentSizeThreshold = DEFAULT_CONTENT_SIZE_THRESHOLD;
+        private Encoding[] preferredEncodings = Encoding.values();
+        private String[] excludedContentTypes = DEFAULT_EXCLUDED_CONTENT_TYPES;
+        private AdaptiveCompressionPolicy adaptivePolicy;
 
         /**
          * Set the compression level. {@code 1} yields the fastest compression and
@@ -112,13 +167,111 @@ public class HttpContentCompressorFactory {
             return this;
         }
 
+        /**
+         * Enable {@code br(Brotli)} compression with the default quality
+         * ({@code 4}).
+         * <p>
+         * Brotli requires {@code brotli4j} and its native library, it is ignored
+         * silently if not available. Only full responses are compressed in
+         * {@code br}, streaming responses fall back to the other encodings.
+         * 
+         * @return this builder
+         * 
+         * @since 2.3
+         */
+        public Builder brotli() {
+            return brotli(DEFAULT_BROTLI_QUALITY);
+        }
+
+        /**
+         * Enable {@code br(Brotli)} compression with the specified quality.
+         * {@code 0} yields the fastest compression and {@code 11} yields the best
+         * compression. Levels {@code 4} to {@code 5} usually compress better than
+         * gzip level {@code 6} with similar CPU cost.
+         * 
+         * @param quality the quality, {@code -1} to disable {@code br}
+         * @return this builder
+         * 
+         * @since 2.3
+         */
+        public Builder brotli(int quality) {
+            if (quality < -1 || quality > 11) {
+                throw new IllegalArgumentException("quality must be between -1 and 11");
+            }
+            this.brotliQuality = quality;
+            return this;
+        }
+
+        /**
+         * Set the content size threshold of {@code br(Brotli)} compression. The
+         * default value is {@code 1024}.
+         * 
+         * @param brotliContentSizeThreshold the content size threshold
+         * @return this builder
+         * 
+         * @since 2.3
+         */
+        public Builder brotliContentSizeThreshold(int brotliContentSizeThreshold) {
+            this.brotliContentSizeThreshold = brotliContentSizeThreshold;
+            return this;
+        }
+
+        /**
+         * Set the preferred order of the content encodings, used to break ties of
+         * the quality values in {@code Accept-Encoding}. Encodings not listed are
+         * never used. The default order is {@code br, gzip, deflate}.
+         * 
+         * @param encodings the content encodings, supports {@code br},
+         *                  {@code gzip} and {@code deflate}
+         * @return this builder
+         * 
+         * @since 2.3
+         */
+        public Builder preferredEncodings(String... encodings) {
+            this.preferredEncodings = Arrays.stream(encodings).map(Encoding::of).distinct()
+                    .toArray(Encoding[]::new);
+            return this;
+        }
+
+        /**
+         * Set the content types never be compressed. Values ending with
+         * {@code '/'} match all sub types. The default is
+         * {@link HttpContentCompressorFactory#DEFAULT_EXCLUDED_CONTENT_TYPES}.
+         * 
+         * @param contentTypes the content types
+         * @return this builder
+         * 
+         * @since 2.3
+         */
+        public Builder excludedContentTypes(String... contentTypes) {
+            this.excludedContentTypes = Arrays.stream(contentTypes).map(t -> t.trim().toLowerCase(Locale.ROOT))
+                    .toArray(String[]::new);
+            return this;
+        }
+
+        /**
+         * Set the policy to adjust the compression levels by the load of the event
+         * loops. The levels configured in this builder are used as the maximum
+         * levels.
+         * 
+         * @param adaptivePolicy the {@link AdaptiveCompressionPolicy}, {@code null}
+         *                       to use the fixed levels
+         * @return this builder
+         * 
+         * @since 2.3
+         */
+        public Builder adaptive(AdaptiveCompressionPolicy adaptivePolicy) {
+            this.adaptivePolicy = adaptivePolicy;
+            return this;
+        }
+
         /**
          * Creates a new {@link HttpContentCompressorFactory} with the current settings.
          * 
          * @return a {@code HttpContentCompressorFactory}
          */
         public HttpContentCompressorFactory build() {
-            return new HttpContentCompressorFactory(compressionLevel, windowBits, memLevel, contentSizeThreshold);
+            return new HttpContentCompressorFactory(this);
         }
 
         private Builder() {
@@ -130,6 +283,11 @@ public class HttpContentCompressorFactory {
     private final int windowBits;
     private final int memLevel;
     private final int contentSizeThreshold;
+    private final int brotliQuality;
+    private final int brotliContentSizeThreshold;
+    private final Encoding[] preferredEncodings;
+    private final String[] excludedContentTypes;
+    private final AdaptiveCompressionPolicy adaptivePolicy;
 
     /**
      * Creates a new factory with the default compression level ({@code 6}), default
@@ -203,12 +361,44 @@ public class HttpContentCompressorFactory {
      *                             default value is {@code 1024}
      */
     public HttpContentCompressorFactory(int compressionLevel, int windowBits, int memLevel, int contentSizeThreshold) {
+        this(compressionLevel, windowBits, memLevel, contentSizeThreshold, -1, DEFAULT_CONTENT_SIZE_THRESHOLD,
+                Encoding.values(), DEFAULT_EXCLUDED_CONTENT_TYPES, null);
+    }
+
+    private HttpContentCompressorFactory(Builder builder) {
+        this(builder.compressionLevel, builder.windowBits, builder.memLevel, builder.contentSizeThreshold,
+                builder.brotliQuality, builder.brotliContentSizeThreshold, builder.preferredEncodings,
+                builder.excludedContentTypes, builder.adaptivePolicy);
+    }
+
+    private HttpContentCompressorFactory(int compressionLevel, int windowBits, int memLevel, int contentSizeThreshold,
+            int brotliQuality, int brotliContentSizeThreshold, Encoding[] preferredEncodings,
+            String[] excludedContentTypes, AdaptiveCompressionPolicy adaptivePolicy) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("compressionLevel: " + compressionLevel + " (expected: 0-9)");
+        }
+        if (windowBits < 9 || windowBits > 15) {
+            throw new IllegalArgumentException("windowBits: " + windowBits + " (expected: 9-15)");
+        }
+        if (memLevel < 1 || memLevel > 9) {
+            throw new IllegalArgumentException("memLevel: " + memLevel + " (expected: 1-9)");
+        }
+        if (contentSizeThreshold < 0) {
+            throw new IllegalArgumentException("contentSizeThreshold: " + contentSizeThreshold + " (expected: >= 0)");
+        }
+        if (brotliContentSizeThreshold < 0) {
+            throw new IllegalArgumentException(
+                    "brotliContentSizeThreshold: " + brotliContentSizeThreshold + " (expected: >= 0)");
+        }
         this.compressionLevel = compressionLevel;
         this.windowBits = windowBits;
         this.memLevel = memLevel;
         this.contentSizeThreshold = contentSizeThreshold;
-        // Try to create a new HttpContentCompressor for fields validation
-        create();
+        this.brotliQuality = brotliQuality >= 0 && Brotli.isAvailable() ? brotliQuality : -1;
+        this.brotliContentSizeThreshold = brotliContentSizeThreshold;
+        this.preferredEncodings = preferredEncodings;
+        this.excludedContentTypes = excludedContentTypes;
+        this.adaptivePolicy = adaptivePolicy;
     }
 
     /**
@@ -247,22 +437,167 @@ public class HttpContentCompressorFactory {
         return contentSizeThreshold;
     }
 
+    /**
+     * Returns the quality of {@code br(Brotli)} compression.
+     * 
+     * @return the quality, {@code -1} if {@code br} is disabled or not available
+     * 
+     * @since 2.3
+     */
+    public int brotliQuality() {
+        return brotliQuality;
+    }
+
+    /**
+     * Returns the content size threshold of {@code br(Brotli)} compression.
+     * 
+     * @return the content size threshold of {@code br(Brotli)} compression
+     * 
+     * @since 2.3
+     */
+    public int brotliContentSizeThreshold() {
+        return brotliContentSizeThreshold;
+    }
+
+    /**
+     * Returns the policy to adjust the compression levels.
+     * 
+     * @return the {@link AdaptiveCompressionPolicy}, may be {@code null}
+     * 
+     * @since 2.3
+     */
+    public AdaptiveCompressionPolicy adaptivePolicy() {
+        return adaptivePolicy;
+    }
+
     /**
      * Creates a new {@link HttpContentCompressor} with the current settings.
      * 
      * @return a {@code HttpContentCompressor}
      */
     public HttpContentCompressor create() {
-        // only support deflate & gzip in this version
-        return new HttpContentCompressor(contentSizeThreshold,
-                StandardCompressionOptions.deflate(compressionLevel, windowBits, memLevel),
-                StandardCompressionOptions.gzip(compressionLevel, windowBits, memLevel));
+        return new NegotiatingHttpContentCompressor(this);
+    }
+
+    boolean isExcludedContentType(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim()
+                .toLowerCase(Locale.ROOT);
+        for (String excluded : excludedContentTypes) {
+            if (excluded.endsWith("/") ? type.startsWith(excluded) : type.equals(excluded)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Selects the content encoding.
+     * 
+     * @param acceptEncoding the value of the {@code Accept-Encoding} header
+     * @param contentLength  the length of the content, {@code -1} if unknown
+     * @param full           if the response is a full response or not
+     * @return the selected encoding or {@code null}
+     */
+    Encoding negotiate(String acceptEncoding, int contentLength, boolean full) {
+        Encoding[] preferredEncodings = this.preferredEncodings;
+        float[] qualities = new float[Encoding.values().length];
+        Arrays.fill(qualities, -1); // -1 means not present
+        float wildcard = 0;
+        for (String token : acceptEncoding.split(",")) {
+            int semicolon = token.indexOf(';');
+            String name = (semicolon < 0 ? token : token.substring(0, semicolon)).trim();
+            float q = semicolon < 0 ? 1.0f : parseQuality(token.substring(semicolon + 1));
+            if ("*".equals(name)) {
+                wildcard = q;
+                continue;
+            }
+            for (Encoding encoding : preferredEncodings) {
+                if (encoding.contentEncoding.equalsIgnoreCase(name)) {
+                    // use the max value if repeated
+                    qualities[encoding.ordinal()] = Math.max(qualities[encoding.ordinal()], q);
+                }
+            }
+        }
+        Encoding selected = null;
+        float selectedQuality = 0;
+        for (Encoding encoding : preferredEncodings) {
+            float q = qualities[encoding.ordinal()];
+            if (q < 0) {
+                q = wildcard;
+            }
+            if (q > selectedQuality && isApplicable(encoding, contentLength, full)) {
+                selected = encoding;
+                selectedQuality = q;
+            }
+        }
+        return selected;
+    }
+
+    private boolean isApplicable(Encoding encoding, int contentLength, boolean full) {
+        switch (encoding) {
+        case BR:
+            return brotliQuality >= 0 && full && contentLength >= brotliContentSizeThreshold;
+        default:
+            return compressionLevel > 0 && (contentLength < 0 || contentLength >= contentSizeThreshold);
+        }
+    }
+
+    private static final float parseQuality(String params) {
+        for (String param : params.split(";")) {
+            param = param.trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1.0f;
+    }
+
+    /**
+     * Creates a new encoder for the specified content encoding.
+     * 
+     * @param encoding the content encoding
+     * @return a new encoder
+     */
+    ChannelHandler newEncoder(Encoding encoding) {
+        AdaptiveCompressionPolicy adaptivePolicy = this.adaptivePolicy;
+        switch (encoding) {
+        case BR:
+            int quality = adaptivePolicy == null ? brotliQuality : adaptivePolicy.brotliQuality(brotliQuality);
+            return BrotliEncoders.newEncoder(quality);
+        case GZIP:
+        case DEFLATE:
+            int level = adaptivePolicy == null ? compressionLevel : adaptivePolicy.compressionLevel(compressionLevel);
+            ZlibWrapper wrapper = encoding == Encoding.GZIP ? ZlibWrapper.GZIP : ZlibWrapper.ZLIB;
+            return ZlibCodecFactory.newZlibEncoder(wrapper, level, windowBits, memLevel);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Isolates the references to {@code brotli4j}, which is an optional
+     * dependency.
+     */
+    private static final class BrotliEncoders {
+
+        private static final ChannelHandler newEncoder(int quality) {
+            return new BrotliEncoder(new Encoder.Parameters().setQuality(quality));
+        }
+
     }
 
     @Override
     public String toString() {
         return "HttpContentCompressorFactory(compressionLevel=" + compressionLevel + ", windowBits=" + windowBits
-                + ", memLevel=" + memLevel + ", contentSizeThreshold=" + contentSizeThreshold + ")";
+                + ", memLevel=" + memLevel + ", contentSizeThreshold=" + contentSizeThreshold + ", brotliQuality="
+                + brotliQuality + ", brotliContentSizeThreshold=" + brotliContentSizeThreshold
+                + ", preferredEncodings=" + Arrays.toString(preferredEncodings) + ", excludedContentTypes="
+                + Arrays.toString(excludedContentTypes) + ", adaptivePolicy=" + adaptivePolicy + ")";
     }
 
 }
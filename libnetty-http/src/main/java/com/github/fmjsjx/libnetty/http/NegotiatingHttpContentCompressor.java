@@ -0,0 +1,76 @@
+package com.github.fmjsjx.libnetty.http;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_ENCODING;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpResponse;
+
+/**
+ * The {@link HttpContentCompressor} created by
+ * {@link HttpContentCompressorFactory}.
+ * <p>
+ * Selects the encoding with the highest quality value in the
+ * {@code Accept-Encoding} header, ties are broken by the preferred order of
+ * the factory. Each encoding has its own compression level and content size
+ * threshold, and the responses with excluded content types are never
+ * compressed.
+ *
+ * @since 2.3
+ *
+ * @author MJ Fang
+ */
+class NegotiatingHttpContentCompressor extends HttpContentCompressor {
+
+    private final HttpContentCompressorFactory factory;
+
+    private ChannelHandlerContext ctx;
+
+    NegotiatingHttpContentCompressor(HttpContentCompressorFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        super.handlerAdded(ctx);
+    }
+
+    @Override
+    protected Result beginEncode(HttpResponse httpResponse, String acceptEncoding) throws Exception {
+        if (httpResponse.headers().contains(CONTENT_ENCODING)) {
+            // Content-Encoding was set, either as something specific or as the IDENTITY encoding
+            return null;
+        }
+        String contentType = httpResponse.headers().get(CONTENT_TYPE);
+        if (contentType != null && factory.isExcludedContentType(contentType)) {
+            return null;
+        }
+        boolean full = httpResponse instanceof HttpContent;
+        int contentLength = full ? ((HttpContent) httpResponse).content().readableBytes() : -1;
+        AdaptiveCompressionPolicy adaptivePolicy = factory.adaptivePolicy();
+        if (adaptivePolicy != null) {
+            adaptivePolicy.sample(ctx.executor());
+            if (adaptivePolicy.shouldSkip(contentLength)) {
+                return null;
+            }
+        }
+        HttpContentCompressorFactory.Encoding encoding = factory.negotiate(acceptEncoding, contentLength, full);
+        if (encoding == null) {
+            return null;
+        }
+        ChannelHandler encoder = factory.newEncoder(encoding);
+        if (encoder == null) {
+            return null;
+        }
+        Channel channel = ctx.channel();
+        return new Result(encoding.contentEncoding(), new EmbeddedChannel(channel.id(),
+                channel.metadata().hasDisconnect(), channel.config(), encoder));
+    }
+
+}
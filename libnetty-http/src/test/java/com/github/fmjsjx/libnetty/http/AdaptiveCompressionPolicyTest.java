@@ -0,0 +1,46 @@
+package com.github.fmjsjx.libnetty.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveCompressionPolicyTest {
+
+    @Test
+    public void testAdjust() {
+        AdaptiveCompressionPolicy policy = AdaptiveCompressionPolicy.builder().steps(4).minCompressionLevel(1)
+                .minBrotliQuality(1).watermarks(8, 64).overload(256, 1024).build();
+        assertEquals(6, policy.compressionLevel(6));
+        assertEquals(5, policy.brotliQuality(5));
+
+        policy.adjust(100);
+        assertEquals(1, policy.currentStep());
+        assertEquals(5, policy.compressionLevel(6));
+        assertEquals(4, policy.brotliQuality(5));
+        assertFalse(policy.shouldSkip(1 << 20));
+
+        policy.adjust(1000);
+        policy.adjust(1000);
+        policy.adjust(1000);
+        policy.adjust(1000);
+        assertEquals(4, policy.currentStep());
+        assertEquals(1, policy.compressionLevel(6));
+        assertEquals(1, policy.brotliQuality(5));
+        assertEquals(4, policy.levelDownCount());
+        assertTrue(policy.isOverloaded());
+        assertTrue(policy.shouldSkip(1 << 20));
+        assertTrue(policy.shouldSkip(-1));
+        assertFalse(policy.shouldSkip(512));
+        assertEquals(2, policy.skippedCount());
+
+        // between the watermarks
+        policy.adjust(32);
+        assertEquals(4, policy.currentStep());
+        assertFalse(policy.isOverloaded());
+
+        policy.adjust(0);
+        assertEquals(3, policy.currentStep());
+        assertEquals(1, policy.levelUpCount());
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.github.fmjsjx.libnetty.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.libnetty.http.HttpContentCompressorFactory.Encoding;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+public class HttpContentCompressorFactoryTest {
+
+    @Test
+    public void testNegotiate() {
+        HttpContentCompressorFactory factory = HttpContentCompressorFactory.builder().build();
+        assertEquals(Encoding.GZIP, factory.negotiate("gzip, deflate", 2048, true));
+        assertEquals(Encoding.DEFLATE, factory.negotiate("gzip;q=0.5, deflate", 2048, true));
+        assertEquals(Encoding.GZIP, factory.negotiate("*", 2048, true));
+        assertEquals(Encoding.DEFLATE, factory.negotiate("gzip;q=0, *", 2048, true));
+        assertEquals(Encoding.GZIP, factory.negotiate("gzip", -1, false));
+        assertNull(factory.negotiate("identity", 2048, true));
+        assertNull(factory.negotiate("gzip", 100, true));
+        // brotli is not enabled
+        assertEquals(Encoding.GZIP, factory.negotiate("br, gzip", 2048, true));
+
+        factory = HttpContentCompressorFactory.builder().preferredEncodings("deflate", "gzip")
+                .contentSizeThreshold(0).build();
+        assertEquals(Encoding.DEFLATE, factory.negotiate("gzip, deflate", 10, true));
+        assertEquals(Encoding.GZIP, factory.negotiate("gzip, deflate;q=0.1", 10, true));
+    }
+
+    @Test
+    public void testExcludedContentTypes() {
+        HttpContentCompressorFactory factory = HttpContentCompressorFactory.builder().build();
+        assertTrue(factory.isExcludedContentType("image/png"));
+        assertTrue(factory.isExcludedContentType("video/mp4"));
+        assertTrue(factory.isExcludedContentType("application/zip; charset=binary"));
+        assertFalse(factory.isExcludedContentType("image/svg+xml"));
+        assertFalse(factory.isExcludedContentType("application/json; charset=UTF-8"));
+
+        factory = HttpContentCompressorFactory.builder().excludedContentTypes("text/").build();
+        assertTrue(factory.isExcludedContentType("text/html"));
+        assertFalse(factory.isExcludedContentType("image/png"));
+    }
+
+    @Test
+    public void testCreate() {
+        HttpContentCompressorFactory factory = HttpContentCompressorFactory.builder().contentSizeThreshold(0)
+                .build();
+        EmbeddedChannel channel = new EmbeddedChannel(factory.create());
+        try {
+            DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+            request.headers().set(HttpHeaderNames.ACCEPT_ENCODING, "deflate;q=0.5, gzip");
+            assertTrue(channel.writeInbound(request));
+            assertNotNull(channel.readInbound());
+
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                    Unpooled.copiedBuffer(new byte[64]));
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
+            assertTrue(channel.writeOutbound(response));
+            Object encoded = channel.readOutbound();
+            assertTrue(encoded instanceof HttpResponse);
+            assertEquals("gzip", ((HttpResponse) encoded).headers().get(HttpHeaderNames.CONTENT_ENCODING));
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+}
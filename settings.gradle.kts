@@ -6,6 +6,7 @@ include(":libnetty-handler")
 include(":libnetty-http")
 include(":libnetty-http-client")
 include(":libnetty-http-server")
+include(":libnetty-http-server-processor")
 include(":libnetty-resp")
 include(":libnetty-resp3")
 include(":libnetty-transport")